@@ -27,10 +27,12 @@ import org.sonar.api.measures.Metric;
 import org.sonar.api.resources.Project;
 import org.sonar.api.resources.Resource;
 import org.sonar.api.resources.ResourceUtils;
+import org.sonar.batch.phases.ThreadSafeDecorator;
 
 import java.util.Arrays;
 import java.util.Collection;
 
+@ThreadSafeDecorator
 public abstract class AbstractCoverageDecorator implements Decorator {
 
   @Override
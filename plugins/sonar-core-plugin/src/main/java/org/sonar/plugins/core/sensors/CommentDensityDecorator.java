@@ -29,10 +29,12 @@ import org.sonar.api.measures.MeasureUtils;
 import org.sonar.api.measures.Metric;
 import org.sonar.api.resources.Project;
 import org.sonar.api.resources.Resource;
+import org.sonar.batch.phases.ThreadSafeDecorator;
 
 import java.util.Arrays;
 import java.util.List;
 
+@ThreadSafeDecorator
 public class CommentDensityDecorator implements Decorator {
 
   @DependsUpon
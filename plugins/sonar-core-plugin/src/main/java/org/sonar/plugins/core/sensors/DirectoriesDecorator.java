@@ -29,12 +29,14 @@ import org.sonar.api.measures.Metric;
 import org.sonar.api.resources.Project;
 import org.sonar.api.resources.Resource;
 import org.sonar.api.resources.ResourceUtils;
+import org.sonar.batch.phases.ThreadSafeDecorator;
 
 import java.util.Collection;
 
 /**
  * @since 2.2
  */
+@ThreadSafeDecorator
 public final class DirectoriesDecorator implements Decorator {
 
   @Override
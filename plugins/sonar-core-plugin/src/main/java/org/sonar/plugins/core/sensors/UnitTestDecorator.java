@@ -29,11 +29,13 @@ import org.sonar.api.measures.Metric;
 import org.sonar.api.resources.Project;
 import org.sonar.api.resources.Resource;
 import org.sonar.api.resources.ResourceUtils;
+import org.sonar.batch.phases.ThreadSafeDecorator;
 
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
+@ThreadSafeDecorator
 public class UnitTestDecorator implements Decorator {
 
   @DependedUpon
@@ -25,7 +25,10 @@ import org.sonar.api.batch.DecoratorContext;
 import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.measures.Measure;
 import org.sonar.api.test.IsMeasure;
+import org.sonar.api.utils.AnnotationUtils;
+import org.sonar.batch.phases.ThreadSafeDecorator;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -73,4 +76,9 @@ public class CommentDensityDecoratorTest {
     decorator.decorate(null, context);
     verify(context).saveMeasure(argThat(new IsMeasure(CoreMetrics.COMMENT_LINES_DENSITY, 0.0)));
   }
+
+  @Test
+  public void is_thread_safe() {
+    assertThat(AnnotationUtils.getAnnotation(CommentDensityDecorator.class, ThreadSafeDecorator.class)).isNotNull();
+  }
 }
@@ -27,10 +27,13 @@ import org.sonar.api.resources.Directory;
 import org.sonar.api.resources.File;
 import org.sonar.api.resources.Project;
 import org.sonar.api.resources.Resource;
+import org.sonar.api.utils.AnnotationUtils;
+import org.sonar.batch.phases.ThreadSafeDecorator;
 
 import java.util.Arrays;
 import java.util.Collections;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.anyDouble;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
@@ -88,4 +91,9 @@ public class DirectoriesDecoratorTest {
     decorator.decorate(project, context);
     verify(context, never()).saveMeasure(eq(CoreMetrics.DIRECTORIES), anyDouble());
   }
+
+  @Test
+  public void is_thread_safe() {
+    assertThat(AnnotationUtils.getAnnotation(DirectoriesDecorator.class, ThreadSafeDecorator.class)).isNotNull();
+  }
 }
@@ -31,6 +31,8 @@ import org.sonar.api.measures.Measure;
 import org.sonar.api.resources.Project;
 import org.sonar.api.resources.Qualifiers;
 import org.sonar.api.resources.Resource;
+import org.sonar.api.utils.AnnotationUtils;
+import org.sonar.batch.phases.ThreadSafeDecorator;
 
 import java.util.Arrays;
 
@@ -109,4 +111,8 @@ public class FilesDecoratorTest {
     verify(context).saveMeasure(eq(CoreMetrics.FILES), eq(5.0));
   }
 
+  @Test
+  public void is_thread_safe() {
+    assertThat(AnnotationUtils.getAnnotation(FilesDecorator.class, ThreadSafeDecorator.class)).isNotNull();
+  }
 }
@@ -26,6 +26,8 @@ import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.measures.Measure;
 import org.sonar.api.resources.Project;
 import org.sonar.api.resources.Scopes;
+import org.sonar.api.utils.AnnotationUtils;
+import org.sonar.batch.phases.ThreadSafeDecorator;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.anyDouble;
@@ -93,4 +95,9 @@ public class LineCoverageDecoratorTest {
     when(context.getMeasure(CoreMetrics.UNCOVERED_LINES)).thenReturn(new Measure(CoreMetrics.UNCOVERED_LINES, (double) uncoveredLines));
     return context;
   }
+
+  @Test
+  public void is_thread_safe() {
+    assertThat(AnnotationUtils.getAnnotation(LineCoverageDecorator.class, ThreadSafeDecorator.class)).isNotNull();
+  }
 }
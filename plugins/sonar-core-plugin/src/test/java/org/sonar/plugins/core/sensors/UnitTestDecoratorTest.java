@@ -27,6 +27,8 @@ import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.measures.Measure;
 import org.sonar.api.measures.Metric;
 import org.sonar.api.resources.Project;
+import org.sonar.api.utils.AnnotationUtils;
+import org.sonar.batch.phases.ThreadSafeDecorator;
 
 import java.util.Arrays;
 
@@ -85,4 +87,9 @@ public class UnitTestDecoratorTest {
   private void mockChildrenMeasures(Metric metric, double value) {
     when(context.getChildrenMeasures(metric)).thenReturn(Arrays.asList(new Measure(metric, value), new Measure(metric, value)));
   }
+
+  @Test
+  public void is_thread_safe() {
+    assertThat(AnnotationUtils.getAnnotation(UnitTestDecorator.class, ThreadSafeDecorator.class)).isNotNull();
+  }
 }
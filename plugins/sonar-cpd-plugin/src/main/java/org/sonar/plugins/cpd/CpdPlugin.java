@@ -67,6 +67,14 @@ public final class CpdPlugin extends SonarPlugin {
         .subCategory(CoreProperties.SUBCATEGORY_DUPLICATIONS_EXCLUSIONS)
         .multiValues(true)
         .build(),
+      PropertyDefinition.builder(JavaCpdEngine.THREADS_PROPERTY)
+        .name("Number of threads")
+        .description("Number of Java files searched for duplications in parallel. Defaults to the number of available processors.")
+        .onQualifiers(Qualifiers.PROJECT)
+        .category(CoreProperties.CATEGORY_GENERAL)
+        .subCategory(CoreProperties.SUBCATEGORY_DUPLICATIONS)
+        .type(PropertyType.INTEGER)
+        .build(),
 
       CpdSensor.class,
       CpdMappings.class,
@@ -22,6 +22,7 @@ package org.sonar.plugins.cpd;
 
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -53,13 +54,16 @@ import org.sonar.duplications.token.TokenChunker;
 import org.sonar.plugins.cpd.index.IndexFactory;
 import org.sonar.plugins.cpd.index.SonarDuplicationsIndex;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.util.ArrayDeque;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -71,12 +75,17 @@ public class JavaCpdEngine extends CpdEngine {
 
   private static final Logger LOG = LoggerFactory.getLogger(JavaCpdEngine.class);
 
+  /**
+   * Number of files searched for duplications in parallel. Defaults to the number of available processors.
+   */
+  public static final String THREADS_PROPERTY = "sonar.cpd.threads";
+
   private static final int BLOCK_SIZE = 10;
 
   /**
-   * Limit of time to analyse one file (in seconds).
+   * Limit of time to analyse one file (in milliseconds), counted from the start of its analysis.
    */
-  private static final int TIMEOUT = 5 * 60;
+  private static final long TIMEOUT = TimeUnit.MINUTES.toMillis(5);
 
   private final IndexFactory indexFactory;
   private final FileSystem fs;
@@ -147,44 +156,105 @@ public class JavaCpdEngine extends CpdEngine {
   }
 
   private void detect(SonarDuplicationsIndex index, org.sonar.api.batch.sensor.SensorContext context, List<InputFile> sourceFiles) {
-    ExecutorService executorService = Executors.newSingleThreadExecutor();
+    int threads = threads();
+    ExecutorService executorService = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setNameFormat("cpd-%d").setDaemon(true).build());
+    // Files are searched concurrently but results are saved in the order of files. The number of pending files
+    // is bounded as each of them holds its blocks from other projects.
+    Deque<PendingDetection> pending = new ArrayDeque<PendingDetection>();
     try {
       for (InputFile inputFile : sourceFiles) {
         LOG.debug("Detection of duplications for {}", inputFile);
         String resourceEffectiveKey = ((DeprecatedDefaultInputFile) inputFile).key();
 
-        Collection<Block> fileBlocks = index.getByInputFile(inputFile, resourceEffectiveKey);
-
-        List<CloneGroup> clones;
-        try {
-          clones = executorService.submit(new Task(index, fileBlocks)).get(TIMEOUT, TimeUnit.SECONDS);
-        } catch (TimeoutException e) {
-          clones = null;
-          LOG.warn("Timeout during detection of duplications for " + inputFile, e);
-        } catch (InterruptedException e) {
-          throw new SonarException("Fail during detection of duplication for " + inputFile, e);
-        } catch (ExecutionException e) {
-          throw new SonarException("Fail during detection of duplication for " + inputFile, e);
+        CloneIndex fileIndex = index.forInputFile(inputFile);
+        Collection<Block> fileBlocks = fileIndex.getByResourceId(resourceEffectiveKey);
+        Task task = new Task(fileIndex, fileBlocks);
+        pending.add(new PendingDetection(inputFile, task, executorService.submit(task), TIMEOUT));
+        if (pending.size() > 2 * threads) {
+          pending.poll().save(context);
         }
-
-        save(context, inputFile, clones);
+      }
+      while (!pending.isEmpty()) {
+        pending.poll().save(context);
       }
     } finally {
-      executorService.shutdown();
+      executorService.shutdownNow();
+    }
+  }
+
+  private int threads() {
+    int threads = settings.getInt(THREADS_PROPERTY);
+    return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+  }
+
+  static class PendingDetection {
+    private final InputFile inputFile;
+    private final Task task;
+    private final Future<List<CloneGroup>> future;
+    private final long timeout;
+
+    PendingDetection(InputFile inputFile, Task task, Future<List<CloneGroup>> future, long timeout) {
+      this.inputFile = inputFile;
+      this.task = task;
+      this.future = future;
+      this.timeout = timeout;
+    }
+
+    void save(org.sonar.api.batch.sensor.SensorContext context) {
+      JavaCpdEngine.save(context, inputFile, get());
+    }
+
+    /**
+     * Waits for the detection at most until its timeout, counted from the start of the task rather than
+     * from this call, as the task may have been running while the previous files were saved.
+     *
+     * @return the duplications, or null if the detection timed out
+     */
+    @CheckForNull
+    List<CloneGroup> get() {
+      try {
+        while (true) {
+          long startedAt = task.startedAt();
+          // a task which is not started yet is waited for the whole timeout, then checked again
+          long remaining = startedAt == 0L ? timeout : (startedAt + timeout - System.currentTimeMillis());
+          try {
+            return future.get(Math.max(0L, remaining), TimeUnit.MILLISECONDS);
+          } catch (TimeoutException e) {
+            if (task.startedAt() != 0L && System.currentTimeMillis() - task.startedAt() >= timeout) {
+              future.cancel(true);
+              LOG.warn("Timeout during detection of duplications for " + inputFile, e);
+              return null;
+            }
+          }
+        }
+      } catch (InterruptedException e) {
+        throw new SonarException("Fail during detection of duplication for " + inputFile, e);
+      } catch (ExecutionException e) {
+        throw new SonarException("Fail during detection of duplication for " + inputFile, e);
+      }
     }
   }
 
   static class Task implements Callable<List<CloneGroup>> {
     private final CloneIndex index;
     private final Collection<Block> fileBlocks;
+    private volatile long startedAt = 0L;
 
     public Task(CloneIndex index, Collection<Block> fileBlocks) {
       this.index = index;
       this.fileBlocks = fileBlocks;
     }
 
+    /**
+     * @return the time the detection started at, or 0 if it's not started yet
+     */
+    long startedAt() {
+      return startedAt;
+    }
+
     @Override
     public List<CloneGroup> call() {
+      startedAt = System.currentTimeMillis();
       return SuffixTreeCloneDetectionAlgorithm.detect(index, fileBlocks);
     }
   }
@@ -19,8 +19,13 @@
  */
 package org.sonar.plugins.cpd.index;
 
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.fs.internal.DefaultInputFile;
 import org.sonar.api.database.DatabaseSession;
@@ -31,20 +36,24 @@ import org.sonar.core.duplication.DuplicationDao;
 import org.sonar.core.duplication.DuplicationUnitDto;
 import org.sonar.duplications.block.Block;
 import org.sonar.duplications.block.ByteArray;
+import org.sonar.duplications.index.CloneIndex;
+import org.sonar.duplications.index.MemoryCloneIndex;
+import org.sonar.duplications.index.PackedMemoryCloneIndex;
 
+import javax.annotation.CheckForNull;
 import javax.persistence.Query;
 
 import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 
 public class DbDuplicationsIndex {
 
+  private static final Logger LOG = LoggerFactory.getLogger(DbDuplicationsIndex.class);
+
   private static final String RESOURCE_ID = "resourceId";
   private static final String LAST = "last";
 
-  private final Map<ByteArray, Collection<Block>> cache = Maps.newHashMap();
+  private CloneIndex cache = new MemoryCloneIndex();
 
   private final int currentProjectSnapshotId;
   private final Integer lastSnapshotId;
@@ -52,9 +61,22 @@ public class DbDuplicationsIndex {
   private final DuplicationDao dao;
   private final DatabaseSession session;
   private final ResourceCache resourceCache;
+  private final int maxProjectCandidates;
+
+  private boolean projectCandidatesLoaded = false;
+  private CloneIndex projectCandidates;
 
   public DbDuplicationsIndex(Project currentProject, DuplicationDao dao,
     String language, DatabaseSession session, ResourceCache resourceCache) {
+    this(currentProject, dao, language, session, resourceCache, 0);
+  }
+
+  /**
+   * @param maxProjectCandidates maximum number of blocks of other projects loaded at once for all the files of
+   *                             the project. Candidates are loaded file by file when this limit is exceeded or is zero.
+   */
+  public DbDuplicationsIndex(Project currentProject, DuplicationDao dao,
+    String language, DatabaseSession session, ResourceCache resourceCache, int maxProjectCandidates) {
     this.dao = dao;
     this.session = session;
     this.resourceCache = resourceCache;
@@ -62,6 +84,7 @@ public class DbDuplicationsIndex {
     this.currentProjectSnapshotId = resourceCache.get(currentProject.getEffectiveKey()).snapshotId();
     this.lastSnapshotId = lastSnapshot == null ? null : lastSnapshot.getId();
     this.languageKey = language;
+    this.maxProjectCandidates = maxProjectCandidates;
   }
 
   private Snapshot getLastSnapshot(int resourceId) {
@@ -77,42 +100,70 @@ public class DbDuplicationsIndex {
   }
 
   public void prepareCache(InputFile inputFile) {
+    cache = loadCandidates(inputFile);
+  }
+
+  /**
+   * Blocks of the last snapshot of other projects that may duplicate the given file. Must be called once
+   * all the blocks of the project are inserted. Lookups by hash in the returned index are thread-safe.
+   */
+  CloneIndex loadCandidates(InputFile inputFile) {
+    if (!projectCandidatesLoaded) {
+      projectCandidatesLoaded = true;
+      projectCandidates = loadProjectCandidates();
+    }
+    if (projectCandidates != null) {
+      return projectCandidates;
+    }
     int resourceSnapshotId = getSnapshotIdFor(inputFile);
     List<DuplicationUnitDto> units = dao.selectCandidates(resourceSnapshotId, lastSnapshotId, languageKey);
-    cache.clear();
+    CloneIndex candidates = new MemoryCloneIndex();
     // TODO Godin: maybe remove conversion of units to blocks?
     for (DuplicationUnitDto unit : units) {
-      String hash = unit.getHash();
-      String resourceKey = unit.getResourceKey();
-      int indexInFile = unit.getIndexInFile();
-      int startLine = unit.getStartLine();
-      int endLine = unit.getEndLine();
-
-      // TODO Godin: in fact we could work directly with id instead of key - this will allow to decrease memory consumption
-      Block block = Block.builder()
-        .setResourceId(resourceKey)
-        .setBlockHash(new ByteArray(hash))
-        .setIndexInFile(indexInFile)
-        .setLines(startLine, endLine)
-        .build();
-
-      // Group blocks by hash
-      Collection<Block> sameHash = cache.get(block.getBlockHash());
-      if (sameHash == null) {
-        sameHash = Lists.newArrayList();
-        cache.put(block.getBlockHash(), sameHash);
-      }
-      sameHash.add(block);
+      candidates.insert(toBlock(unit, unit.getResourceKey()));
     }
+    return candidates;
   }
 
-  public Collection<Block> getByHash(ByteArray hash) {
-    Collection<Block> result = cache.get(hash);
-    if (result != null) {
-      return result;
-    } else {
-      return Collections.emptyList();
+  /**
+   * Loads with a single query the candidates of all the files of the project, packed in memory.
+   * Returns null if there are more than {@link #maxProjectCandidates} blocks. Blocks are counted
+   * before being loaded, so that they are not loaded in vain.
+   */
+  @CheckForNull
+  private CloneIndex loadProjectCandidates() {
+    if (maxProjectCandidates <= 0) {
+      return null;
+    }
+    long count = dao.countCandidatesOfProject(currentProjectSnapshotId, lastSnapshotId, languageKey);
+    if (count > maxProjectCandidates) {
+      LOG.info("{} blocks of other projects are candidates for duplications, more than {}. They are loaded file by file", count, maxProjectCandidates);
+      return null;
+    }
+    ProjectCandidatesHandler handler = new ProjectCandidatesHandler(maxProjectCandidates);
+    dao.selectCandidatesOfProject(currentProjectSnapshotId, lastSnapshotId, languageKey, handler);
+    if (handler.overflow) {
+      // blocks have been added since they were counted
+      LOG.info("More than {} blocks of other projects are candidates for duplications, they are loaded file by file", maxProjectCandidates);
+      return null;
     }
+    // the index is then only searched by hash, without modifying it
+    handler.index.ensureSorted();
+    return handler.index;
+  }
+
+  private static Block toBlock(DuplicationUnitDto unit, String resourceKey) {
+    // TODO Godin: in fact we could work directly with id instead of key - this will allow to decrease memory consumption
+    return Block.builder()
+      .setResourceId(resourceKey)
+      .setBlockHash(new ByteArray(unit.getHash()))
+      .setIndexInFile(unit.getIndexInFile())
+      .setLines(unit.getStartLine(), unit.getEndLine())
+      .build();
+  }
+
+  public Collection<Block> getByHash(ByteArray hash) {
+    return cache.getBySequenceHash(hash);
   }
 
   public void insert(InputFile inputFile, Collection<Block> blocks) {
@@ -134,4 +185,29 @@ public class DbDuplicationsIndex {
     dao.insert(units);
   }
 
+  private static class ProjectCandidatesHandler implements ResultHandler {
+    private final int max;
+    private final PackedMemoryCloneIndex index = new PackedMemoryCloneIndex();
+    // the same resource key is returned for every block of a file
+    private final Interner<String> resourceKeys = Interners.newStrongInterner();
+    private int count = 0;
+    private boolean overflow = false;
+
+    ProjectCandidatesHandler(int max) {
+      this.max = max;
+    }
+
+    @Override
+    public void handleResult(ResultContext context) {
+      if (count >= max) {
+        overflow = true;
+        context.stop();
+        return;
+      }
+      DuplicationUnitDto unit = (DuplicationUnitDto) context.getResultObject();
+      index.insert(toBlock(unit, resourceKeys.intern(unit.getResourceKey())));
+      count++;
+    }
+  }
+
 }
@@ -38,6 +38,13 @@ public class IndexFactory implements BatchComponent {
 
   private static final Logger LOG = LoggerFactory.getLogger(IndexFactory.class);
 
+  /**
+   * Maximum number of blocks of other projects loaded in memory at once in cross-project mode. Zero loads
+   * them file by file.
+   */
+  public static final String MAX_PROJECT_CANDIDATES_PROPERTY = "sonar.cpd.cross_project.maxCandidates";
+  public static final int MAX_PROJECT_CANDIDATES_DEFAULT = 1000000;
+
   private final Settings settings;
   private final DuplicationDao dao;
   private final AnalysisMode mode;
@@ -61,7 +68,11 @@ public class IndexFactory implements BatchComponent {
 
   public SonarDuplicationsIndex create(@Nullable Project project, String languageKey) {
     if (verifyCrossProject(project, LOG) && dao != null && session != null) {
-      return new SonarDuplicationsIndex(new DbDuplicationsIndex(project, dao, languageKey, session, resourceCache));
+      int maxProjectCandidates = MAX_PROJECT_CANDIDATES_DEFAULT;
+      if (settings.hasKey(MAX_PROJECT_CANDIDATES_PROPERTY)) {
+        maxProjectCandidates = settings.getInt(MAX_PROJECT_CANDIDATES_PROPERTY);
+      }
+      return new SonarDuplicationsIndex(new DbDuplicationsIndex(project, dao, languageKey, session, resourceCache, maxProjectCandidates));
     }
     return new SonarDuplicationsIndex();
   }
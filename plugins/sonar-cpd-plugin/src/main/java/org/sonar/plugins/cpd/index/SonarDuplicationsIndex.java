@@ -27,12 +27,14 @@ import org.sonar.duplications.index.AbstractCloneIndex;
 import org.sonar.duplications.index.CloneIndex;
 import org.sonar.duplications.index.PackedMemoryCloneIndex;
 
+import javax.annotation.Nullable;
+
 import java.util.Collection;
 import java.util.List;
 
 public class SonarDuplicationsIndex extends AbstractCloneIndex {
 
-  private final CloneIndex mem = new PackedMemoryCloneIndex();
+  private final PackedMemoryCloneIndex mem = new PackedMemoryCloneIndex();
   private final DbDuplicationsIndex db;
 
   public SonarDuplicationsIndex() {
@@ -44,8 +46,10 @@ public class SonarDuplicationsIndex extends AbstractCloneIndex {
   }
 
   public void insert(InputFile inputFile, Collection<Block> blocks) {
-    for (Block block : blocks) {
-      mem.insert(block);
+    synchronized (mem) {
+      for (Block block : blocks) {
+        mem.insert(block);
+      }
     }
     if (db != null) {
       db.insert(inputFile, blocks);
@@ -56,20 +60,50 @@ public class SonarDuplicationsIndex extends AbstractCloneIndex {
     if (db != null) {
       db.prepareCache(inputFile);
     }
-    return mem.getByResourceId(resourceKey);
+    return memByResourceId(resourceKey);
+  }
+
+  /**
+   * View of this index dedicated to the detection of duplications of a given file. Blocks of other projects
+   * are loaded once for this file. Lookups by hash in the view are thread-safe, so that several files
+   * can be searched concurrently. Must be called once all the blocks of the project are inserted.
+   *
+   * @since 5.1
+   */
+  public CloneIndex forInputFile(InputFile inputFile) {
+    synchronized (mem) {
+      mem.ensureSorted();
+    }
+    return new InputFileIndex(db == null ? null : db.loadCandidates(inputFile));
   }
 
   @Override
   public Collection<Block> getBySequenceHash(ByteArray hash) {
     if (db == null) {
-      return mem.getBySequenceHash(hash);
+      return memBySequenceHash(hash);
     } else {
-      List<Block> result = Lists.newArrayList(mem.getBySequenceHash(hash));
+      List<Block> result = Lists.newArrayList(memBySequenceHash(hash));
       result.addAll(db.getByHash(hash));
       return result;
     }
   }
 
+  /**
+   * {@link PackedMemoryCloneIndex} sorts its content lazily and searches by resource through its own arrays,
+   * so these lookups must not run concurrently.
+   */
+  private Collection<Block> memByResourceId(String resourceKey) {
+    synchronized (mem) {
+      return mem.getByResourceId(resourceKey);
+    }
+  }
+
+  private Collection<Block> memBySequenceHash(ByteArray hash) {
+    synchronized (mem) {
+      return mem.getBySequenceHash(hash);
+    }
+  }
+
   @Override
   public Collection<Block> getByResourceId(String resourceId) {
     throw new UnsupportedOperationException();
@@ -80,4 +114,36 @@ public class SonarDuplicationsIndex extends AbstractCloneIndex {
     throw new UnsupportedOperationException();
   }
 
+  private class InputFileIndex extends AbstractCloneIndex {
+    // may be shared by the views of all files
+    private final CloneIndex candidates;
+
+    InputFileIndex(@Nullable CloneIndex candidates) {
+      this.candidates = candidates;
+    }
+
+    /**
+     * Both indexes are sorted, so they are read without locking
+     */
+    @Override
+    public Collection<Block> getBySequenceHash(ByteArray hash) {
+      if (candidates == null) {
+        return mem.getBySequenceHash(hash);
+      }
+      List<Block> result = Lists.newArrayList(mem.getBySequenceHash(hash));
+      result.addAll(candidates.getBySequenceHash(hash));
+      return result;
+    }
+
+    @Override
+    public Collection<Block> getByResourceId(String resourceId) {
+      return memByResourceId(resourceId);
+    }
+
+    @Override
+    public void insert(Block block) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
 }
@@ -43,9 +43,16 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
@@ -157,6 +164,32 @@ public class JavaCpdEngineTest {
     inOrder.verify(duplicationBuilder).build();
   }
 
+  @Test
+  public void count_timeout_from_start_of_task() throws Exception {
+    JavaCpdEngine.Task task = mock(JavaCpdEngine.Task.class);
+    when(task.startedAt()).thenReturn(System.currentTimeMillis() - 10000L);
+    Future<List<CloneGroup>> future = mock(Future.class);
+    when(future.get(anyLong(), eq(TimeUnit.MILLISECONDS))).thenThrow(new TimeoutException());
+
+    assertThat(new JavaCpdEngine.PendingDetection(inputFile, task, future, 1000L).get()).isNull();
+
+    verify(future).get(0L, TimeUnit.MILLISECONDS);
+    verify(future).cancel(true);
+  }
+
+  @Test
+  public void do_not_timeout_before_start_of_task() throws Exception {
+    JavaCpdEngine.Task task = mock(JavaCpdEngine.Task.class);
+    when(task.startedAt()).thenReturn(0L, 0L, System.currentTimeMillis());
+    Future<List<CloneGroup>> future = mock(Future.class);
+    List<CloneGroup> groups = Collections.emptyList();
+    when(future.get(anyLong(), eq(TimeUnit.MILLISECONDS))).thenThrow(new TimeoutException()).thenReturn(groups);
+
+    assertThat(new JavaCpdEngine.PendingDetection(inputFile, task, future, 1000L).get()).isSameAs(groups);
+
+    verify(future, never()).cancel(true);
+  }
+
   private CloneGroup newCloneGroup(ClonePart... parts) {
     return CloneGroup.builder().setLength(0).setOrigin(parts[0]).setParts(Arrays.asList(parts)).build();
   }
@@ -0,0 +1,158 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.cpd.index;
+
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.DefaultInputFile;
+import org.sonar.api.database.DatabaseSession;
+import org.sonar.api.database.model.Snapshot;
+import org.sonar.api.resources.File;
+import org.sonar.api.resources.Project;
+import org.sonar.api.resources.Resource;
+import org.sonar.batch.index.ResourceCache;
+import org.sonar.core.duplication.DuplicationDao;
+import org.sonar.core.duplication.DuplicationUnitDto;
+import org.sonar.duplications.block.ByteArray;
+import org.sonar.duplications.index.CloneIndex;
+
+import javax.persistence.Query;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DbDuplicationsIndexTest {
+
+  static final String HASH = "aaaaaaaaaaaaaaaa";
+
+  DuplicationDao dao = mock(DuplicationDao.class);
+  DatabaseSession session = mock(DatabaseSession.class);
+  ResourceCache resourceCache = new ResourceCache();
+  Project project = new Project("foo");
+  InputFile foo = new DefaultInputFile("foo", "src/Foo.java");
+  InputFile bar = new DefaultInputFile("foo", "src/Bar.java");
+
+  @Before
+  public void setUp() {
+    project.setId(1);
+    Query query = mock(Query.class);
+    when(session.createQuery(anyString())).thenReturn(query);
+    addToCache(project, 10);
+    addToCache(File.create("src/Foo.java").setEffectiveKey("foo:src/Foo.java"), 11);
+    addToCache(File.create("src/Bar.java").setEffectiveKey("foo:src/Bar.java"), 12);
+  }
+
+  @Test
+  public void load_candidates_of_all_files_with_a_single_query() {
+    streamCandidates(unit("other:src/Other.java", 0), unit("other:src/Other.java", 1));
+    when(dao.countCandidatesOfProject(eq(10), any(Integer.class), eq("java"))).thenReturn(2L);
+    DbDuplicationsIndex index = new DbDuplicationsIndex(project, dao, "java", session, resourceCache, 10);
+
+    CloneIndex fooCandidates = index.loadCandidates(foo);
+    CloneIndex barCandidates = index.loadCandidates(bar);
+
+    assertThat(barCandidates).isSameAs(fooCandidates);
+    assertThat(fooCandidates.getBySequenceHash(new ByteArray(HASH))).hasSize(2);
+    verify(dao).selectCandidatesOfProject(eq(10), any(Integer.class), eq("java"), any(ResultHandler.class));
+    verify(dao, never()).selectCandidates(anyInt(), any(Integer.class), anyString());
+  }
+
+  @Test
+  public void load_candidates_file_by_file_when_too_many_blocks() {
+    when(dao.countCandidatesOfProject(eq(10), any(Integer.class), eq("java"))).thenReturn(2L);
+    when(dao.selectCandidates(11, null, "java")).thenReturn(Arrays.asList(unit("other:src/Other.java", 0)));
+    DbDuplicationsIndex index = new DbDuplicationsIndex(project, dao, "java", session, resourceCache, 1);
+
+    CloneIndex fooCandidates = index.loadCandidates(foo);
+    index.loadCandidates(bar);
+
+    assertThat(fooCandidates.getBySequenceHash(new ByteArray(HASH))).hasSize(1);
+    verify(dao, never()).selectCandidatesOfProject(anyInt(), any(Integer.class), anyString(), any(ResultHandler.class));
+    verify(dao).selectCandidates(11, null, "java");
+    verify(dao).selectCandidates(12, null, "java");
+  }
+
+  @Test
+  public void load_candidates_file_by_file_when_blocks_are_added_after_count() {
+    when(dao.countCandidatesOfProject(eq(10), any(Integer.class), eq("java"))).thenReturn(1L);
+    streamCandidates(unit("other:src/Other.java", 0), unit("other:src/Other.java", 1));
+    when(dao.selectCandidates(11, null, "java")).thenReturn(Arrays.asList(unit("other:src/Other.java", 0)));
+    DbDuplicationsIndex index = new DbDuplicationsIndex(project, dao, "java", session, resourceCache, 1);
+
+    CloneIndex fooCandidates = index.loadCandidates(foo);
+
+    assertThat(fooCandidates.getBySequenceHash(new ByteArray(HASH))).hasSize(1);
+    verify(dao).selectCandidates(11, null, "java");
+  }
+
+  @Test
+  public void load_candidates_file_by_file_when_disabled() {
+    DbDuplicationsIndex index = new DbDuplicationsIndex(project, dao, "java", session, resourceCache, 0);
+
+    index.prepareCache(foo);
+
+    assertThat(index.getByHash(new ByteArray(HASH))).isEmpty();
+    verify(dao, never()).countCandidatesOfProject(anyInt(), any(Integer.class), anyString());
+    verify(dao, never()).selectCandidatesOfProject(anyInt(), any(Integer.class), anyString(), any(ResultHandler.class));
+    verify(dao).selectCandidates(11, null, "java");
+  }
+
+  private void addToCache(Resource resource, int snapshotId) {
+    Snapshot snapshot = new Snapshot();
+    snapshot.setId(snapshotId);
+    resourceCache.add(resource, null).setSnapshot(snapshot);
+  }
+
+  private void streamCandidates(final DuplicationUnitDto... units) {
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        ResultHandler handler = (ResultHandler) invocation.getArguments()[3];
+        ResultContext context = mock(ResultContext.class);
+        for (DuplicationUnitDto unit : units) {
+          when(context.getResultObject()).thenReturn(unit);
+          handler.handleResult(context);
+        }
+        return null;
+      }
+    }).when(dao).selectCandidatesOfProject(anyInt(), any(Integer.class), anyString(), any(ResultHandler.class));
+  }
+
+  private static DuplicationUnitDto unit(String resourceKey, int indexInFile) {
+    DuplicationUnitDto unit = new DuplicationUnitDto(1, 2, HASH, indexInFile, indexInFile + 1, indexInFile + 2);
+    unit.setResourceKey(resourceKey);
+    return unit;
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.cpd.index;
+
+import org.junit.Test;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.DefaultInputFile;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+import org.sonar.duplications.index.CloneIndex;
+import org.sonar.duplications.index.MemoryCloneIndex;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SonarDuplicationsIndexTest {
+
+  InputFile foo = new DefaultInputFile("foo", "src/Foo.java");
+  InputFile bar = new DefaultInputFile("foo", "src/Bar.java");
+
+  @Test
+  public void file_index_should_search_blocks_of_the_project() {
+    SonarDuplicationsIndex index = new SonarDuplicationsIndex();
+    index.insert(foo, Arrays.asList(block("foo:src/Foo.java", "aaaaaaaaaaaaaaaa", 0), block("foo:src/Foo.java", "bbbbbbbbbbbbbbbb", 1)));
+    index.insert(bar, Arrays.asList(block("foo:src/Bar.java", "bbbbbbbbbbbbbbbb", 0)));
+
+    CloneIndex fileIndex = index.forInputFile(foo);
+
+    assertThat(fileIndex.getByResourceId("foo:src/Foo.java")).hasSize(2);
+    assertThat(fileIndex.getBySequenceHash(new ByteArray("aaaaaaaaaaaaaaaa"))).hasSize(1);
+    assertThat(fileIndex.getBySequenceHash(new ByteArray("bbbbbbbbbbbbbbbb"))).hasSize(2);
+    assertThat(fileIndex.getBySequenceHash(new ByteArray("cccccccccccccccc"))).isEmpty();
+  }
+
+  @Test
+  public void file_index_should_search_blocks_of_other_projects() {
+    DbDuplicationsIndex db = mock(DbDuplicationsIndex.class);
+    Block otherProjectBlock = block("other:src/Other.java", "bbbbbbbbbbbbbbbb", 0);
+    CloneIndex candidates = new MemoryCloneIndex();
+    candidates.insert(otherProjectBlock);
+    when(db.loadCandidates(foo)).thenReturn(candidates);
+    SonarDuplicationsIndex index = new SonarDuplicationsIndex(db);
+    index.insert(foo, Arrays.asList(block("foo:src/Foo.java", "aaaaaaaaaaaaaaaa", 0), block("foo:src/Foo.java", "bbbbbbbbbbbbbbbb", 1)));
+
+    CloneIndex fileIndex = index.forInputFile(foo);
+
+    assertThat(fileIndex.getBySequenceHash(new ByteArray("aaaaaaaaaaaaaaaa"))).hasSize(1);
+    assertThat(fileIndex.getBySequenceHash(new ByteArray("bbbbbbbbbbbbbbbb"))).hasSize(2).contains(otherProjectBlock);
+  }
+
+  private static Block block(String resourceKey, String hash, int indexInFile) {
+    return Block.builder()
+      .setResourceId(resourceKey)
+      .setBlockHash(new ByteArray(hash))
+      .setIndexInFile(indexInFile)
+      .setLines(indexInFile + 1, indexInFile + 2)
+      .build();
+  }
+}
@@ -20,7 +20,11 @@
 package org.sonar.plugins.scm.git;
 
 import com.google.common.collect.ImmutableList;
+import org.sonar.api.CoreProperties;
+import org.sonar.api.PropertyType;
 import org.sonar.api.SonarPlugin;
+import org.sonar.api.config.PropertyDefinition;
+import org.sonar.api.resources.Qualifiers;
 
 import java.util.List;
 
@@ -32,6 +36,26 @@ public final class GitPlugin extends SonarPlugin {
   public List getExtensions() {
     return ImmutableList.of(
       GitScmProvider.class,
-      JGitBlameCommand.class);
+      JGitBlameCommand.class,
+      PropertyDefinition.builder(JGitBlameCommand.SINGLE_PASS_THRESHOLD_PROP_KEY)
+        .name("Minimum number of files for single pass blame")
+        .description("When at least this number of files must be blamed, the history is walked once for all files instead of once per file. "
+          + "Set to 0 to always blame files one by one.")
+        .type(PropertyType.INTEGER)
+        .defaultValue(String.valueOf(JGitBlameCommand.SINGLE_PASS_THRESHOLD_DEFAULT))
+        .onQualifiers(Qualifiers.PROJECT)
+        .category(CoreProperties.CATEGORY_SCM)
+        .subCategory(CATEGORY_GIT)
+        .build(),
+      PropertyDefinition.builder(JGitBlameCommand.BLAME_CACHE_DISABLED_PROP_KEY)
+        .name("Disable the blame cache")
+        .description("Do not store the blame of files in the cache of the user home (~/.sonar/cache/_blame), "
+          + "nor read it from there. The cache is limited to 100 MB and entries unused for 30 days are removed.")
+        .type(PropertyType.BOOLEAN)
+        .defaultValue("false")
+        .onQualifiers(Qualifiers.PROJECT)
+        .category(CoreProperties.CATEGORY_SCM)
+        .subCategory(CATEGORY_GIT)
+        .build());
   }
 }
@@ -19,22 +19,42 @@
  */
 package org.sonar.plugins.scm.git;
 
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.io.IOUtils;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.diff.RawTextComparator;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.lib.RepositoryBuilder;
+import org.eclipse.jgit.revwalk.RevCommit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.scm.BlameCommand;
 import org.sonar.api.batch.scm.BlameLine;
+import org.sonar.api.config.Settings;
 import org.sonar.api.scan.filesystem.PathResolver;
+import org.sonar.home.cache.BlameCache;
+import org.sonar.home.cache.BlameCacheBuilder;
+import org.sonar.home.cache.CachedBlameOutput;
+import org.sonar.home.log.Slf4jLog;
+
+import javax.annotation.CheckForNull;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -45,10 +65,34 @@ public class JGitBlameCommand extends BlameCommand {
 
   private static final Logger LOG = LoggerFactory.getLogger(JGitBlameCommand.class);
 
+  /**
+   * Minimum number of files to blame for the history to be walked once for all files instead of once per file.
+   */
+  public static final String SINGLE_PASS_THRESHOLD_PROP_KEY = "sonar.git.singlePassBlame.minFiles";
+  public static final int SINGLE_PASS_THRESHOLD_DEFAULT = 100;
+
+  /**
+   * Disables the cache of blame in the user home
+   */
+  public static final String BLAME_CACHE_DISABLED_PROP_KEY = "sonar.git.blameCache.disabled";
+
   private final PathResolver pathResolver;
+  private final Settings settings;
+  private BlameCache blameCache;
 
-  public JGitBlameCommand(PathResolver pathResolver) {
+  public JGitBlameCommand(PathResolver pathResolver, Settings settings) {
     this.pathResolver = pathResolver;
+    this.settings = settings;
+  }
+
+  @VisibleForTesting
+  JGitBlameCommand(PathResolver pathResolver, Settings settings, BlameCache blameCache) {
+    this(pathResolver, settings);
+    this.blameCache = blameCache;
+  }
+
+  public JGitBlameCommand(PathResolver pathResolver) {
+    this(pathResolver, new Settings());
   }
 
   @Override
@@ -58,14 +102,138 @@ public class JGitBlameCommand extends BlameCommand {
     try {
       Git git = Git.wrap(repo);
       File gitBaseDir = repo.getWorkTree();
+      List<InputFile> filesToBlame = new ArrayList<InputFile>();
+      for (InputFile inputFile : input.filesToBlame()) {
+        filesToBlame.add(inputFile);
+      }
+      BlameOutput blameOutput = output;
+      ObjectId head = resolveHead(repo);
+      if (head != null && !settings.getBoolean(BLAME_CACHE_DISABLED_PROP_KEY)) {
+        CachedBlameOutput cachedOutput = new CachedBlameOutput(blameCache(), output);
+        filesToBlame = serveFromCache(cachedOutput, repo, head.name(), filesToBlame);
+        blameOutput = cachedOutput;
+      }
+      if (filesToBlame.size() >= singlePassThreshold()) {
+        filesToBlame = blameInSinglePass(blameOutput, repo, gitBaseDir, filesToBlame);
+      }
       ExecutorService executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() + 1);
-      List<Future<Void>> tasks = submitTasks(input, output, git, gitBaseDir, executorService);
-      waitForTaskToComplete(tasks);
+      try {
+        List<Future<Void>> tasks = submitTasks(filesToBlame, blameOutput, git, gitBaseDir, executorService);
+        waitForTaskToComplete(tasks);
+      } finally {
+        executorService.shutdown();
+      }
     } finally {
       repo.close();
     }
   }
 
+  private BlameCache blameCache() {
+    if (blameCache == null) {
+      blameCache = new BlameCacheBuilder().setLog(new Slf4jLog(BlameCache.class)).setUserHome(settings.getString("sonar.userHome")).build();
+    }
+    return blameCache;
+  }
+
+  @CheckForNull
+  private static ObjectId resolveHead(Repository repo) {
+    try {
+      return repo.resolve(Constants.HEAD);
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to resolve HEAD", e);
+    }
+  }
+
+  /**
+   * @return the files which were not blamed on the same HEAD commit with the same content by a previous analysis
+   */
+  private List<InputFile> serveFromCache(CachedBlameOutput cachedOutput, Repository repo, String head, List<InputFile> filesToBlame) {
+    File gitBaseDir = repo.getWorkTree();
+    File indexFile = repo.getIndexFile();
+    DirCache index = readIndex(repo);
+    ObjectInserter.Formatter formatter = new ObjectInserter.Formatter();
+    List<InputFile> remaining = new ArrayList<InputFile>();
+    for (InputFile inputFile : filesToBlame) {
+      String path = pathResolver.relativePath(gitBaseDir, inputFile.file());
+      if (!cachedOutput.serveFromCache(inputFile, head, path, blobId(index, indexFile, formatter, path, inputFile.file()))) {
+        remaining.add(inputFile);
+      }
+    }
+    LOG.debug("{} files blamed from the cache over {} files to blame", filesToBlame.size() - remaining.size(), filesToBlame.size());
+    return remaining;
+  }
+
+  private static DirCache readIndex(Repository repo) {
+    try {
+      return repo.readDirCache();
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to read the index of " + repo.getWorkTree(), e);
+    }
+  }
+
+  /**
+   * The blob id is read from the index when its stat data shows that the file was not modified since it was
+   * staged, as git status does. The file is read only when it may differ from the index.
+   */
+  @VisibleForTesting
+  static String blobId(DirCache index, File indexFile, ObjectInserter.Formatter formatter, String path, File file) {
+    DirCacheEntry entry = index.getEntry(path);
+    if (entry != null && !entry.isSmudged() && entry.getLength() == file.length() && entry.getLastModified() == file.lastModified()
+      // a file modified in the same timestamp as the index was written is racily clean
+      && file.lastModified() < indexFile.lastModified()) {
+      return entry.getObjectId().name();
+    }
+    InputStream input = null;
+    try {
+      input = new FileInputStream(file);
+      return formatter.idFor(Constants.OBJ_BLOB, file.length(), input).name();
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to read file " + file, e);
+    } finally {
+      IOUtils.closeQuietly(input);
+    }
+  }
+
+  private int singlePassThreshold() {
+    if (settings.hasKey(SINGLE_PASS_THRESHOLD_PROP_KEY)) {
+      int threshold = settings.getInt(SINGLE_PASS_THRESHOLD_PROP_KEY);
+      return threshold > 0 ? threshold : Integer.MAX_VALUE;
+    }
+    return SINGLE_PASS_THRESHOLD_DEFAULT;
+  }
+
+  /**
+   * @return the files that can't be blamed in a single pass, for example because they are modified in the working tree
+   */
+  private List<InputFile> blameInSinglePass(BlameOutput output, Repository repo, File gitBaseDir, List<InputFile> filesToBlame) {
+    Map<String, File> filesByPath = new HashMap<String, File>();
+    for (InputFile inputFile : filesToBlame) {
+      filesByPath.put(pathResolver.relativePath(gitBaseDir, inputFile.file()), inputFile.file());
+    }
+    Map<String, RevCommit[]> commitsByPath;
+    try {
+      commitsByPath = new SinglePassBlame(repo, RawTextComparator.WS_IGNORE_ALL).blame(filesByPath);
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to blame files", e);
+    }
+    LOG.debug("{} files blamed in a single pass over {} files to blame", commitsByPath.size(), filesToBlame.size());
+    List<InputFile> remaining = new ArrayList<InputFile>();
+    for (InputFile inputFile : filesToBlame) {
+      RevCommit[] commits = commitsByPath.get(pathResolver.relativePath(gitBaseDir, inputFile.file()));
+      if (commits == null) {
+        remaining.add(inputFile);
+      } else {
+        List<BlameLine> lines = new ArrayList<BlameLine>();
+        for (RevCommit commit : commits) {
+          PersonIdent author = commit.getAuthorIdent();
+          lines.add(new BlameLine().date(author.getWhen()).revision(commit.getName()).author(author.getEmailAddress()));
+        }
+        saveBlameLines(output, inputFile, lines);
+      }
+    }
+    return remaining;
+  }
+
   private void waitForTaskToComplete(List<Future<Void>> tasks) {
     for (Future<Void> task : tasks) {
       try {
@@ -79,9 +247,9 @@ public class JGitBlameCommand extends BlameCommand {
     }
   }
 
-  private List<Future<Void>> submitTasks(BlameInput input, BlameOutput output, Git git, File gitBaseDir, ExecutorService executorService) {
+  private List<Future<Void>> submitTasks(List<InputFile> filesToBlame, BlameOutput output, Git git, File gitBaseDir, ExecutorService executorService) {
     List<Future<Void>> tasks = new ArrayList<Future<Void>>();
-    for (InputFile inputFile : input.filesToBlame()) {
+    for (InputFile inputFile : filesToBlame) {
       tasks.add(submitTask(output, git, gitBaseDir, inputFile, executorService));
     }
     return tasks;
@@ -124,6 +292,10 @@ public class JGitBlameCommand extends BlameCommand {
       lines.add(new org.sonar.api.batch.scm.BlameLine().date(blameResult.getSourceAuthor(i).getWhen()).revision(blameResult.getSourceCommit(i).getName())
         .author(blameResult.getSourceAuthor(i).getEmailAddress()));
     }
+    saveBlameLines(output, inputFile, lines);
+  }
+
+  private static void saveBlameLines(BlameOutput output, InputFile inputFile, List<BlameLine> lines) {
     if (lines.size() == inputFile.lines() - 1) {
       // SONARPLUGINS-3097 Git do not report blame on last empty line
       lines.add(lines.get(lines.size() - 1));
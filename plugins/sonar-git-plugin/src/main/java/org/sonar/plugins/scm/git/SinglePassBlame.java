@@ -0,0 +1,540 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.scm.git;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.eclipse.jgit.diff.DiffAlgorithm;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.diff.HistogramDiff;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.diff.RawTextComparator;
+import org.eclipse.jgit.diff.RenameDetector;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Blames many files with a single walk of the history from HEAD. The rules are the ones of
+ * {@link org.eclipse.jgit.blame.BlameGenerator} (same diff algorithm, rename detection and handling of merges),
+ * but each commit is visited once for all the files: trees are compared once per commit, renames are detected
+ * once per commit and the contents of blobs are shared between files.
+ * <p/>
+ * Only files that are committed as they are in the working tree can be blamed this way. Other files are not
+ * part of the result.
+ */
+class SinglePassBlame {
+
+  private static final long TEXT_CACHE_MAX_BYTES = 64L * 1024 * 1024;
+
+  private final Repository repo;
+  private final RawTextComparator comparator;
+  private final DiffAlgorithm diffAlgorithm = new HistogramDiff();
+  private final Map<RevCommit, List<Candidate>> candidatesByCommit = Maps.newHashMap();
+  private final PriorityQueue<RevCommit> queue = new PriorityQueue<RevCommit>(11, new Comparator<RevCommit>() {
+    @Override
+    public int compare(RevCommit c1, RevCommit c2) {
+      // most recent first, as BlameGenerator
+      return c2.getCommitTime() - c1.getCommitTime();
+    }
+  });
+  private final TextCache texts = new TextCache();
+  private ObjectReader reader;
+  private RevWalk revWalk;
+  private RevCommit[][] results;
+
+  // filter of the last walked commit, most of the time the same paths are still pending in its parent
+  private Set<String> filteredPaths = Collections.emptySet();
+  private TreeFilter pathsFilter;
+
+  SinglePassBlame(Repository repo, RawTextComparator comparator) {
+    this.repo = repo;
+    this.comparator = comparator;
+  }
+
+  /**
+   * @param filesByPath files of the working tree, by path relative to the work tree
+   * @return for each file that could be blamed, the commit of each of its lines
+   */
+  Map<String, RevCommit[]> blame(Map<String, File> filesByPath) throws IOException {
+    Map<String, RevCommit[]> result = Maps.newHashMap();
+    ObjectId head = repo.resolve(Constants.HEAD);
+    if (head == null || filesByPath.isEmpty()) {
+      return result;
+    }
+    reader = repo.newObjectReader();
+    revWalk = new RevWalk(reader);
+    try {
+      List<String> paths = Lists.newArrayList(filesByPath.keySet());
+      results = new RevCommit[paths.size()][];
+      RevCommit headCommit = revWalk.parseCommit(head);
+      Map<String, ObjectId> headBlobs = blobs(headCommit, paths);
+      DirCache index = repo.readDirCache();
+      for (int file = 0; file < paths.size(); file++) {
+        String path = paths.get(file);
+        ObjectId blob = headBlobs.get(path);
+        if (blob != null && isCommitted(path, blob, filesByPath.get(path), index)) {
+          int lines = text(blob).size();
+          results[file] = new RevCommit[lines];
+          if (lines > 0) {
+            Candidate candidate = new Candidate(file, path, blob);
+            candidate.regions.add(new Region(0, 0, lines));
+            push(headCommit, candidate);
+          }
+        }
+      }
+
+      while (!queue.isEmpty()) {
+        RevCommit commit = queue.poll();
+        List<Candidate> candidates = candidatesByCommit.remove(commit);
+        if (candidates != null) {
+          process(commit, candidates);
+        }
+      }
+
+      for (int file = 0; file < paths.size(); file++) {
+        if (results[file] != null) {
+          result.put(paths.get(file), results[file]);
+        }
+      }
+      return result;
+    } finally {
+      revWalk.release();
+      reader.release();
+    }
+  }
+
+  /**
+   * Same content in working tree, index and HEAD. Otherwise BlameCommand would blame some lines on the
+   * working tree or on the index.
+   */
+  private boolean isCommitted(String path, ObjectId blob, File file, DirCache index) throws IOException {
+    DirCacheEntry entry = index.getEntry(path);
+    if (entry == null || !blob.equals(entry.getObjectId()) || !file.isFile() || file.length() != reader.getObjectSize(blob, Constants.OBJ_BLOB)) {
+      return false;
+    }
+    return Arrays.equals(Files.readAllBytes(file.toPath()), reader.open(blob, Constants.OBJ_BLOB).getCachedBytes(Integer.MAX_VALUE));
+  }
+
+  private void process(RevCommit commit, List<Candidate> candidates) throws IOException {
+    RevCommit[] parents = commit.getParents();
+    if (parents.length == 0) {
+      for (Candidate candidate : candidates) {
+        blameOn(commit, candidate);
+      }
+      return;
+    }
+    List<Map<String, ObjectId>> changes = Lists.newArrayList();
+    for (RevCommit parent : parents) {
+      revWalk.parseHeaders(parent);
+      changes.add(changes(parent, commit, candidates));
+    }
+    Renames renames = new Renames(commit, parents);
+    for (Candidate candidate : candidates) {
+      if (parents.length == 1) {
+        processOne(commit, parents[0], changes.get(0), renames, candidate);
+      } else {
+        processMerge(commit, parents, changes, renames, candidate);
+      }
+    }
+  }
+
+  private void processOne(RevCommit commit, RevCommit parent, Map<String, ObjectId> changes, Renames renames, Candidate candidate) throws IOException {
+    if (!changes.containsKey(candidate.path)) {
+      // not modified by this commit
+      push(parent, candidate);
+      return;
+    }
+    ObjectId parentBlob = changes.get(candidate.path);
+    if (parentBlob != null) {
+      split(commit, parent, new Candidate(candidate.file, candidate.path, parentBlob), candidate);
+      return;
+    }
+    DiffEntry rename = renames.get(0, candidate.path);
+    if (rename == null) {
+      blameOn(commit, candidate);
+    } else if (rename.getOldId().toObjectId().equals(candidate.blob)) {
+      push(parent, candidate.moveTo(rename.getOldPath()));
+    } else {
+      split(commit, parent, new Candidate(candidate.file, rename.getOldPath(), rename.getOldId().toObjectId()), candidate);
+    }
+  }
+
+  private void processMerge(RevCommit commit, RevCommit[] parents, List<Map<String, ObjectId>> changes, Renames renames, Candidate candidate) throws IOException {
+    // if any parent has the same content, follow only this parent
+    ObjectId[] parentBlobs = new ObjectId[parents.length];
+    for (int i = 0; i < parents.length; i++) {
+      if (!changes.get(i).containsKey(candidate.path)) {
+        push(parents[i], candidate);
+        return;
+      }
+      parentBlobs[i] = changes.get(i).get(candidate.path);
+    }
+    String[] parentPaths = new String[parents.length];
+    for (int i = 0; i < parents.length; i++) {
+      if (parentBlobs[i] != null) {
+        parentPaths[i] = candidate.path;
+        continue;
+      }
+      DiffEntry rename = renames.get(i, candidate.path);
+      if (rename == null) {
+        continue;
+      }
+      if (rename.getOldId().toObjectId().equals(candidate.blob)) {
+        push(parents[i], candidate.moveTo(rename.getOldPath()));
+        return;
+      }
+      parentPaths[i] = rename.getOldPath();
+      parentBlobs[i] = rename.getOldId().toObjectId();
+    }
+
+    Candidate[] parentCandidates = new Candidate[parents.length];
+    for (int i = 0; i < parents.length; i++) {
+      if (parentBlobs[i] == null) {
+        continue;
+      }
+      Candidate parentCandidate = new Candidate(candidate.file, parentPaths[i], parentBlobs[i]);
+      EditList edits = diffAlgorithm.diff(comparator, text(parentCandidate.blob), text(candidate.blob));
+      if (edits.isEmpty()) {
+        // same content once whitespaces are ignored
+        parentCandidate.regions = candidate.regions;
+        candidate.regions = Lists.newArrayList();
+        parentCandidates[i] = parentCandidate;
+        break;
+      }
+      takeBlame(edits, parentCandidate, candidate);
+      if (!parentCandidate.regions.isEmpty()) {
+        parentCandidates[i] = parentCandidate;
+      }
+    }
+    for (int i = 0; i < parents.length; i++) {
+      if (parentCandidates[i] != null) {
+        push(parents[i], parentCandidates[i]);
+      }
+    }
+    blameOn(commit, candidate);
+  }
+
+  private void split(RevCommit commit, RevCommit parent, Candidate parentCandidate, Candidate candidate) throws IOException {
+    EditList edits = diffAlgorithm.diff(comparator, text(parentCandidate.blob), text(candidate.blob));
+    if (edits.isEmpty()) {
+      // same content once whitespaces are ignored
+      parentCandidate.regions = candidate.regions;
+      push(parent, parentCandidate);
+      return;
+    }
+    takeBlame(edits, parentCandidate, candidate);
+    if (!parentCandidate.regions.isEmpty()) {
+      push(parent, parentCandidate);
+    }
+    blameOn(commit, candidate);
+  }
+
+  /**
+   * Moves to the parent the regions of the child that are not modified by the edits. Port of
+   * {@code org.eclipse.jgit.blame.Candidate#takeBlame(EditList, Candidate)}.
+   */
+  private static void takeBlame(EditList edits, Candidate parent, Candidate child) {
+    Iterator<Region> regions = child.regions.iterator();
+    List<Region> toParent = Lists.newArrayList();
+    List<Region> toChild = Lists.newArrayList();
+    Region r = regions.hasNext() ? regions.next() : null;
+    int eIdx = 0;
+    while (eIdx < edits.size() && r != null) {
+      Edit e = edits.get(eIdx);
+      if (e.getEndB() <= r.sourceStart) {
+        // edit ends before the region
+        eIdx++;
+        continue;
+      }
+      if (r.sourceStart < e.getBeginB()) {
+        // region starts before the edit, its beginning is not modified
+        int d = e.getBeginB() - r.sourceStart;
+        if (r.length <= d) {
+          r.sourceStart = e.getBeginA() - d;
+          toParent.add(r);
+          r = regions.hasNext() ? regions.next() : null;
+          continue;
+        }
+        toParent.add(new Region(r.resultStart, e.getBeginA() - d, d));
+        r.slideAndShrink(d);
+      }
+      if (e.getLengthB() == 0) {
+        // deletion, no line of the region is modified
+        eIdx++;
+        continue;
+      }
+      int rEnd = r.sourceStart + r.length;
+      if (rEnd <= e.getEndB()) {
+        // region is fully modified by the edit
+        toChild.add(r);
+        r = regions.hasNext() ? regions.next() : null;
+        if (rEnd == e.getEndB()) {
+          eIdx++;
+        }
+        continue;
+      }
+      int len = e.getEndB() - r.sourceStart;
+      toChild.add(new Region(r.resultStart, r.sourceStart, len));
+      r.slideAndShrink(len);
+      eIdx++;
+    }
+    if (r != null) {
+      // remaining regions are after the last edit
+      Edit last = edits.get(edits.size() - 1);
+      int endB = last.getEndB();
+      int d = endB - last.getEndA();
+      while (r != null) {
+        if (endB <= r.sourceStart) {
+          r.sourceStart -= d;
+        }
+        toParent.add(r);
+        r = regions.hasNext() ? regions.next() : null;
+      }
+    }
+    parent.regions = toParent;
+    child.regions = toChild;
+  }
+
+  private void blameOn(RevCommit commit, Candidate candidate) {
+    for (Region region : candidate.regions) {
+      Arrays.fill(results[candidate.file], region.resultStart, region.resultStart + region.length, commit);
+    }
+    candidate.regions = Lists.newArrayList();
+  }
+
+  private void push(RevCommit commit, Candidate candidate) throws IOException {
+    List<Candidate> candidates = candidatesByCommit.get(commit);
+    if (candidates == null) {
+      revWalk.parseHeaders(commit);
+      candidates = Lists.newArrayList();
+      candidatesByCommit.put(commit, candidates);
+      queue.add(commit);
+    }
+    for (Candidate other : candidates) {
+      if (other.file == candidate.file && other.path.equals(candidate.path)) {
+        // reached by several children of a merge
+        other.regions.addAll(candidate.regions);
+        Collections.sort(other.regions);
+        return;
+      }
+    }
+    candidates.add(candidate);
+  }
+
+  /**
+   * Blobs in parent of the paths of candidates that are modified by the commit. Value is null if the path
+   * does not exist in parent.
+   */
+  private Map<String, ObjectId> changes(RevCommit parent, RevCommit commit, List<Candidate> candidates) throws IOException {
+    Set<String> paths = Sets.newHashSet();
+    for (Candidate candidate : candidates) {
+      paths.add(candidate.path);
+    }
+    if (!paths.equals(filteredPaths)) {
+      filteredPaths = paths;
+      pathsFilter = AndTreeFilter.create(PathFilterGroup.createFromStrings(paths), TreeFilter.ANY_DIFF);
+    }
+    Map<String, ObjectId> changes = Maps.newHashMap();
+    TreeWalk treeWalk = new TreeWalk(reader);
+    treeWalk.setRecursive(true);
+    treeWalk.setFilter(pathsFilter);
+    treeWalk.addTree(parent.getTree());
+    treeWalk.addTree(commit.getTree());
+    while (treeWalk.next()) {
+      String path = treeWalk.getPathString();
+      if (!paths.contains(path)) {
+        continue;
+      }
+      if (!isFile(treeWalk.getRawMode(0))) {
+        changes.put(path, null);
+      } else if (!treeWalk.idEqual(0, 1)) {
+        // a change of file mode only is not a change of content
+        changes.put(path, treeWalk.getObjectId(0));
+      }
+    }
+    return changes;
+  }
+
+  private Map<String, ObjectId> blobs(RevCommit commit, List<String> paths) throws IOException {
+    Map<String, ObjectId> blobs = Maps.newHashMap();
+    TreeWalk treeWalk = new TreeWalk(reader);
+    treeWalk.setRecursive(true);
+    treeWalk.setFilter(PathFilterGroup.createFromStrings(paths));
+    treeWalk.addTree(commit.getTree());
+    while (treeWalk.next()) {
+      if (isFile(treeWalk.getRawMode(0))) {
+        blobs.put(treeWalk.getPathString(), treeWalk.getObjectId(0));
+      }
+    }
+    return blobs;
+  }
+
+  private static boolean isFile(int rawMode) {
+    return (rawMode & FileMode.TYPE_MASK) == FileMode.TYPE_FILE;
+  }
+
+  private RawText text(ObjectId blob) throws IOException {
+    RawText text = texts.get(blob);
+    if (text == null) {
+      byte[] bytes = reader.open(blob, Constants.OBJ_BLOB).getCachedBytes(Integer.MAX_VALUE);
+      text = new RawText(bytes);
+      texts.put(blob, text, bytes.length);
+    }
+    return text;
+  }
+
+  /**
+   * Renames detected between a commit and its parents, computed only if needed and then shared by all files.
+   */
+  private class Renames {
+    private final RevCommit commit;
+    private final RevCommit[] parents;
+    private final List<Map<String, DiffEntry>> byNewPath;
+
+    Renames(RevCommit commit, RevCommit[] parents) {
+      this.commit = commit;
+      this.parents = parents;
+      this.byNewPath = Lists.newArrayList(Collections.<Map<String, DiffEntry>>nCopies(parents.length, null));
+    }
+
+    DiffEntry get(int parentIndex, String path) throws IOException {
+      Map<String, DiffEntry> renames = byNewPath.get(parentIndex);
+      if (renames == null) {
+        renames = Maps.newHashMap();
+        TreeWalk treeWalk = new TreeWalk(reader);
+        treeWalk.setRecursive(true);
+        treeWalk.setFilter(TreeFilter.ANY_DIFF);
+        treeWalk.addTree(parents[parentIndex].getTree());
+        treeWalk.addTree(commit.getTree());
+        RenameDetector detector = new RenameDetector(repo);
+        detector.addAll(DiffEntry.scan(treeWalk));
+        for (DiffEntry entry : detector.compute(reader, NullProgressMonitor.INSTANCE)) {
+          if (entry.getChangeType() == DiffEntry.ChangeType.RENAME || entry.getChangeType() == DiffEntry.ChangeType.COPY) {
+            renames.put(entry.getNewPath(), entry);
+          }
+        }
+        byNewPath.set(parentIndex, renames);
+      }
+      return renames.get(path);
+    }
+  }
+
+  /**
+   * Lines of a file that are not blamed yet, at a given path in a given commit.
+   */
+  private static class Candidate {
+    private final int file;
+    private final String path;
+    private final ObjectId blob;
+    private List<Region> regions = Lists.newArrayList();
+
+    Candidate(int file, String path, ObjectId blob) {
+      this.file = file;
+      this.path = path;
+      this.blob = blob;
+    }
+
+    Candidate moveTo(String newPath) {
+      Candidate moved = new Candidate(file, newPath, blob);
+      moved.regions = regions;
+      return moved;
+    }
+  }
+
+  /**
+   * Range of lines of the blamed file, starting at line {@code resultStart}, that are lines starting at
+   * {@code sourceStart} in the candidate.
+   */
+  private static class Region implements Comparable<Region> {
+    private int resultStart;
+    private int sourceStart;
+    private int length;
+
+    Region(int resultStart, int sourceStart, int length) {
+      this.resultStart = resultStart;
+      this.sourceStart = sourceStart;
+      this.length = length;
+    }
+
+    void slideAndShrink(int d) {
+      resultStart += d;
+      sourceStart += d;
+      length -= d;
+    }
+
+    @Override
+    public int compareTo(Region other) {
+      return sourceStart - other.sourceStart;
+    }
+  }
+
+  /**
+   * Contents of blobs, bounded by size. The blob of a file in a commit is most of the time the blob of the
+   * same file in the parent commit.
+   */
+  private static class TextCache extends LinkedHashMap<ObjectId, RawText> {
+    private final Map<ObjectId, Integer> sizes = Maps.newHashMap();
+    private long bytes = 0L;
+
+    TextCache() {
+      super(16, 0.75f, true);
+    }
+
+    void put(ObjectId blob, RawText text, int size) {
+      put(blob, text);
+      sizes.put(blob, size);
+      bytes += size;
+      Iterator<Map.Entry<ObjectId, RawText>> it = entrySet().iterator();
+      while (bytes > TEXT_CACHE_MAX_BYTES && size() > 1 && it.hasNext()) {
+        ObjectId eldest = it.next().getKey();
+        it.remove();
+        bytes -= sizes.remove(eldest);
+      }
+    }
+  }
+}
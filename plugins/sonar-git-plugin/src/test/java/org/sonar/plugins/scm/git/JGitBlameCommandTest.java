@@ -22,6 +22,11 @@ package org.sonar.plugins.scm.git;
 import com.google.common.io.Closeables;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.RepositoryBuilder;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -33,21 +38,28 @@ import org.sonar.api.batch.fs.internal.DefaultInputFile;
 import org.sonar.api.batch.scm.BlameCommand.BlameInput;
 import org.sonar.api.batch.scm.BlameCommand.BlameOutput;
 import org.sonar.api.batch.scm.BlameLine;
+import org.sonar.api.config.Settings;
 import org.sonar.api.scan.filesystem.PathResolver;
 import org.sonar.api.utils.DateUtils;
+import org.sonar.home.cache.BlameCache;
+import org.sonar.home.log.Slf4jLog;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 public class JGitBlameCommandTest {
@@ -75,7 +87,7 @@ public class JGitBlameCommandTest {
     File projectDir = temp.newFolder();
     javaUnzip(new File("test-repos/dummy-git.zip"), projectDir);
 
-    JGitBlameCommand jGitBlameCommand = new JGitBlameCommand(new PathResolver());
+    JGitBlameCommand jGitBlameCommand = newBlameCommand(new Settings());
 
     File baseDir = new File(projectDir, "dummy-git");
     fs.setBaseDir(baseDir);
@@ -120,12 +132,146 @@ public class JGitBlameCommandTest {
         new BlameLine().revision(revision).date(revisionDate).author(author)));
   }
 
+  @Test
+  public void testBlameInSinglePass() throws IOException {
+    File projectDir = temp.newFolder();
+    javaUnzip(new File("test-repos/dummy-git.zip"), projectDir);
+
+    Settings settings = new Settings();
+    settings.setProperty(JGitBlameCommand.SINGLE_PASS_THRESHOLD_PROP_KEY, 1);
+    JGitBlameCommand jGitBlameCommand = newBlameCommand(settings);
+
+    File baseDir = new File(projectDir, "dummy-git");
+    fs.setBaseDir(baseDir);
+    DefaultInputFile inputFile = new DefaultInputFile("foo", DUMMY_JAVA)
+      .setFile(new File(baseDir, DUMMY_JAVA))
+      .setLines(27);
+    fs.add(inputFile);
+
+    BlameOutput blameResult = mock(BlameOutput.class);
+    when(input.filesToBlame()).thenReturn(Arrays.<InputFile>asList(inputFile));
+    jGitBlameCommand.blame(input, blameResult);
+
+    Date revisionDate = DateUtils.parseDateTime("2012-07-17T16:12:48+0200");
+    String revision = "6b3aab35a3ea32c1636fee56f996e677653c48ea";
+    String author = "david@gageot.net";
+    verify(blameResult).blameResult(inputFile, Collections.nCopies(27, new BlameLine().revision(revision).date(revisionDate).author(author)));
+  }
+
+  @Test
+  public void testBlameOnModifiedFileInSinglePass() throws IOException {
+    File projectDir = temp.newFolder();
+    javaUnzip(new File("test-repos/dummy-git.zip"), projectDir);
+
+    Settings settings = new Settings();
+    settings.setProperty(JGitBlameCommand.SINGLE_PASS_THRESHOLD_PROP_KEY, 1);
+    JGitBlameCommand jGitBlameCommand = newBlameCommand(settings);
+
+    File baseDir = new File(projectDir, "dummy-git");
+    fs.setBaseDir(baseDir);
+    DefaultInputFile inputFile = new DefaultInputFile("foo", DUMMY_JAVA)
+      .setFile(new File(baseDir, DUMMY_JAVA));
+    fs.add(inputFile);
+
+    // Emulate a modification, the file is then blamed on its own
+    FileUtils.write(new File(baseDir, DUMMY_JAVA), "modification and \n some new line", true);
+
+    BlameOutput blameResult = mock(BlameOutput.class);
+
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Unable to blame file " + DUMMY_JAVA + ". No blame info at line 27. Is file commited?");
+    when(input.filesToBlame()).thenReturn(Arrays.<InputFile>asList(inputFile));
+    jGitBlameCommand.blame(input, blameResult);
+  }
+
+  @Test
+  public void testBlameFromCache() throws IOException {
+    File projectDir = temp.newFolder();
+    javaUnzip(new File("test-repos/dummy-git.zip"), projectDir);
+
+    File baseDir = new File(projectDir, "dummy-git");
+    fs.setBaseDir(baseDir);
+    DefaultInputFile inputFile = new DefaultInputFile("foo", DUMMY_JAVA)
+      .setFile(new File(baseDir, DUMMY_JAVA))
+      .setLines(27);
+    fs.add(inputFile);
+    when(input.filesToBlame()).thenReturn(Arrays.<InputFile>asList(inputFile));
+
+    Repository repo = new RepositoryBuilder().findGitDir(baseDir).build();
+    String head = repo.resolve(Constants.HEAD).name();
+    repo.close();
+    String blobId = new ObjectInserter.Formatter().idFor(Constants.OBJ_BLOB, FileUtils.readFileToByteArray(new File(baseDir, DUMMY_JAVA))).name();
+
+    // first analysis populates the cache
+    BlameCache cache = BlameCache.create(temp.newFolder(), new Slf4jLog(JGitBlameCommandTest.class));
+    new JGitBlameCommand(new PathResolver(), new Settings(), cache).blame(input, mock(BlameOutput.class));
+    Date revisionDate = DateUtils.parseDateTime("2012-07-17T16:12:48+0200");
+    List<BlameLine> lines = Collections.nCopies(27, new BlameLine().revision("6b3aab35a3ea32c1636fee56f996e677653c48ea").date(revisionDate).author("david@gageot.net"));
+    assertThat(cache.get(head, DUMMY_JAVA, blobId)).isEqualTo(lines);
+
+    // next analysis does not blame the file again
+    List<BlameLine> cachedLines = Collections.nCopies(27, new BlameLine().revision("cached").date(revisionDate).author("cached@gageot.net"));
+    cache.put(head, DUMMY_JAVA, blobId, cachedLines);
+    BlameOutput blameResult = mock(BlameOutput.class);
+    new JGitBlameCommand(new PathResolver(), new Settings(), cache).blame(input, blameResult);
+    verify(blameResult).blameResult(inputFile, cachedLines);
+  }
+
+  @Test
+  public void read_blob_id_from_index_when_file_is_not_modified() throws Exception {
+    File baseDir = temp.newFolder();
+    Git git = Git.init().setDirectory(baseDir).call();
+    File file = new File(baseDir, "Foo.java");
+    FileUtils.write(file, "class Foo {}");
+    long lastModified = file.lastModified() - 10000L;
+    file.setLastModified(lastModified);
+    git.add().addFilepattern("Foo.java").call();
+    Repository repo = git.getRepository();
+    String stagedBlobId = new ObjectInserter.Formatter().idFor(Constants.OBJ_BLOB, "class Foo {}".getBytes()).name();
+
+    // same stat data as the index, the file is not read
+    FileUtils.write(file, "class Bar {}");
+    file.setLastModified(lastModified);
+    assertThat(JGitBlameCommand.blobId(repo.readDirCache(), repo.getIndexFile(), new ObjectInserter.Formatter(), "Foo.java", file)).isEqualTo(stagedBlobId);
+
+    // modified file
+    FileUtils.write(file, "class Bar2 {}");
+    assertThat(JGitBlameCommand.blobId(repo.readDirCache(), repo.getIndexFile(), new ObjectInserter.Formatter(), "Foo.java", file))
+      .isEqualTo(new ObjectInserter.Formatter().idFor(Constants.OBJ_BLOB, "class Bar2 {}".getBytes()).name());
+    repo.close();
+  }
+
+  @Test
+  public void do_not_use_cache_when_disabled() throws IOException {
+    File projectDir = temp.newFolder();
+    javaUnzip(new File("test-repos/dummy-git.zip"), projectDir);
+
+    File baseDir = new File(projectDir, "dummy-git");
+    fs.setBaseDir(baseDir);
+    DefaultInputFile inputFile = new DefaultInputFile("foo", DUMMY_JAVA)
+      .setFile(new File(baseDir, DUMMY_JAVA))
+      .setLines(27);
+    fs.add(inputFile);
+    when(input.filesToBlame()).thenReturn(Arrays.<InputFile>asList(inputFile));
+    Settings settings = new Settings();
+    settings.setProperty(JGitBlameCommand.BLAME_CACHE_DISABLED_PROP_KEY, true);
+    BlameCache cache = mock(BlameCache.class);
+
+    BlameOutput blameResult = mock(BlameOutput.class);
+    new JGitBlameCommand(new PathResolver(), settings, cache).blame(input, blameResult);
+
+    Date revisionDate = DateUtils.parseDateTime("2012-07-17T16:12:48+0200");
+    verify(blameResult).blameResult(inputFile,
+      Collections.nCopies(27, new BlameLine().revision("6b3aab35a3ea32c1636fee56f996e677653c48ea").date(revisionDate).author("david@gageot.net")));
+    verifyZeroInteractions(cache);
+  }
+
   @Test
   public void testBlameOnNestedModule() throws IOException {
     File projectDir = temp.newFolder();
     javaUnzip(new File("test-repos/dummy-git-nested.zip"), projectDir);
 
-    JGitBlameCommand jGitBlameCommand = new JGitBlameCommand(new PathResolver());
+    JGitBlameCommand jGitBlameCommand = newBlameCommand(new Settings());
 
     File baseDir = new File(projectDir, "dummy-git-nested/dummy-project");
     fs.setBaseDir(baseDir);
@@ -175,7 +321,7 @@ public class JGitBlameCommandTest {
     File projectDir = temp.newFolder();
     javaUnzip(new File("test-repos/dummy-git.zip"), projectDir);
 
-    JGitBlameCommand jGitBlameCommand = new JGitBlameCommand(new PathResolver());
+    JGitBlameCommand jGitBlameCommand = newBlameCommand(new Settings());
 
     File baseDir = new File(projectDir, "dummy-git");
     fs.setBaseDir(baseDir);
@@ -200,7 +346,7 @@ public class JGitBlameCommandTest {
     File projectDir = temp.newFolder();
     javaUnzip(new File("test-repos/dummy-git.zip"), projectDir);
 
-    JGitBlameCommand jGitBlameCommand = new JGitBlameCommand(new PathResolver());
+    JGitBlameCommand jGitBlameCommand = newBlameCommand(new Settings());
 
     File baseDir = new File(projectDir, "dummy-git");
     fs.setBaseDir(baseDir);
@@ -224,6 +370,10 @@ public class JGitBlameCommandTest {
     jGitBlameCommand.blame(input, blameResult);
   }
 
+  private JGitBlameCommand newBlameCommand(Settings settings) throws IOException {
+    return new JGitBlameCommand(new PathResolver(), settings, BlameCache.create(temp.newFolder(), new Slf4jLog(JGitBlameCommandTest.class)));
+  }
+
   private static void javaUnzip(File zip, File toDir) {
     try {
       ZipFile zipFile = new ZipFile(zip);
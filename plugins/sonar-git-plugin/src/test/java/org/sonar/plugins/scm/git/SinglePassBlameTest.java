@@ -0,0 +1,246 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.scm.git;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.MergeResult;
+import org.eclipse.jgit.blame.BlameResult;
+import org.eclipse.jgit.diff.RawTextComparator;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SinglePassBlameTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  File workTree;
+  Git git;
+  long time = 1400000000000L;
+
+  @Before
+  public void prepare() throws Exception {
+    workTree = temp.newFolder();
+    git = Git.init().setDirectory(workTree).call();
+  }
+
+  @Test
+  public void blame_linear_history() throws Exception {
+    write("A.java", "a1", "a2", "a3");
+    write("B.java", "b1", "b2");
+    commit("first");
+    write("A.java", "a1", "a2 modified", "a3", "a4");
+    commit("second");
+    write("B.java", "b0", "b1", "b2");
+    commit("third");
+
+    Map<String, RevCommit[]> result = singlePassBlame("A.java", "B.java");
+
+    assertSameAsBlameCommand(result, "A.java", "B.java");
+    assertThat(messages(result.get("A.java"))).containsExactly("first", "second", "first", "second");
+    assertThat(messages(result.get("B.java"))).containsExactly("third", "first", "first");
+  }
+
+  @Test
+  public void blame_merges() throws Exception {
+    write("A.java", "1", "2", "3", "4", "5", "6");
+    commit("base");
+    git.branchCreate().setName("feature").call();
+    write("A.java", "1", "2 master", "3", "4", "5", "6");
+    commit("on master");
+    git.checkout().setName("feature").call();
+    write("A.java", "1", "2", "3", "4", "5 feature", "6");
+    commit("on feature");
+    git.checkout().setName("master").call();
+    MergeResult merge = git.merge().include(git.getRepository().resolve("feature")).setCommit(false).call();
+    assertThat(merge.getMergeStatus().isSuccessful()).isTrue();
+    write("A.java", "1", "2 master", "3", "4 merge", "5 feature", "6");
+    commit("merge");
+
+    Map<String, RevCommit[]> result = singlePassBlame("A.java");
+
+    assertSameAsBlameCommand(result, "A.java");
+    assertThat(messages(result.get("A.java"))).containsExactly("base", "on master", "base", "merge", "on feature", "base");
+  }
+
+  @Test
+  public void blame_renamed_files() throws Exception {
+    write("old/A.java", "a1", "a2", "a3", "a4", "a5", "a6", "a7", "a8");
+    write("B.java", "b1", "b2");
+    commit("first");
+    FileUtils.moveFile(new File(workTree, "old/A.java"), new File(workTree, "new/A.java"));
+    git.rm().addFilepattern("old/A.java").call();
+    commit("pure rename");
+    write("new/A.java", "a1", "a2", "a3", "a4", "a5", "a6", "a7", "a8");
+    FileUtils.moveFile(new File(workTree, "B.java"), new File(workTree, "C.java"));
+    git.rm().addFilepattern("B.java").call();
+    write("C.java", "b1", "b2", "c3");
+    commit("rename with modification");
+    write("new/A.java", "a1", "a2", "a3", "a4", "a5", "a6", "a7", "a8", "a9");
+    commit("last");
+
+    Map<String, RevCommit[]> result = singlePassBlame("new/A.java", "C.java");
+
+    assertSameAsBlameCommand(result, "new/A.java", "C.java");
+    assertThat(messages(result.get("new/A.java"))).containsExactly("first", "first", "first", "first", "first", "first", "first", "first", "last");
+  }
+
+  @Test
+  public void ignore_whitespaces() throws Exception {
+    write("A.java", "int a = 1;", "int b = 2;");
+    commit("first");
+    write("A.java", "  int a =  1;", "int b = 3;");
+    commit("second");
+
+    Map<String, RevCommit[]> result = singlePassBlame("A.java");
+
+    assertSameAsBlameCommand(result, "A.java");
+    assertThat(messages(result.get("A.java"))).containsExactly("first", "second");
+  }
+
+  /**
+   * Linear history only: on merges, BlameGenerator of JGit 3.5 may shift regions that reach a commit through
+   * several children, while this implementation gives the same results as "git blame -w".
+   */
+  @Test
+  public void same_results_as_blame_command_on_random_history() throws Exception {
+    Random random = new Random(42);
+    List<String> paths = new ArrayList<String>();
+    for (int i = 0; i < 10; i++) {
+      paths.add("src/File" + i + ".java");
+      write(paths.get(i), randomLines(random, 30));
+    }
+    commit("initial");
+    for (int c = 0; c < 40; c++) {
+      editRandomFiles(random, paths);
+      commit("commit " + c);
+    }
+
+    Map<String, RevCommit[]> result = singlePassBlame(paths.toArray(new String[paths.size()]));
+
+    assertSameAsBlameCommand(result, paths.toArray(new String[paths.size()]));
+  }
+
+  @Test
+  public void do_not_blame_files_that_are_not_committed() throws Exception {
+    write("A.java", "a1");
+    write("B.java", "b1");
+    write("C.java", "c1");
+    commit("first");
+    write("A.java", "a1", "modified");
+    write("B.java", "b1", "staged");
+    git.add().addFilepattern("B.java").call();
+    write("B.java", "b1");
+    write("New.java", "new");
+
+    Map<String, RevCommit[]> result = singlePassBlame("A.java", "B.java", "C.java", "New.java");
+
+    assertThat(result.keySet()).containsOnly("C.java");
+  }
+
+  private Map<String, RevCommit[]> singlePassBlame(String... paths) throws IOException {
+    Map<String, File> files = new HashMap<String, File>();
+    for (String path : paths) {
+      files.put(path, new File(workTree, path));
+    }
+    return new SinglePassBlame(git.getRepository(), RawTextComparator.WS_IGNORE_ALL).blame(files);
+  }
+
+  private void assertSameAsBlameCommand(Map<String, RevCommit[]> result, String... paths) throws Exception {
+    for (String path : paths) {
+      BlameResult expected = git.blame().setTextComparator(RawTextComparator.WS_IGNORE_ALL).setFilePath(path).call();
+      RevCommit[] commits = result.get(path);
+      assertThat(commits).as(path).hasSize(expected.getResultContents().size());
+      for (int line = 0; line < commits.length; line++) {
+        assertThat(commits[line]).as(path + " at line " + (line + 1)).isEqualTo(expected.getSourceCommit(line));
+      }
+    }
+  }
+
+  private void editRandomFiles(Random random, List<String> paths) throws IOException {
+    for (String path : paths) {
+      if (random.nextInt(3) == 0) {
+        List<String> lines = new ArrayList<String>(FileUtils.readLines(new File(workTree, path)));
+        int edits = 1 + random.nextInt(4);
+        for (int i = 0; i < edits; i++) {
+          int line = random.nextInt(lines.size());
+          switch (random.nextInt(3)) {
+            case 0:
+              lines.set(line, "line " + random.nextInt(1000));
+              break;
+            case 1:
+              lines.add(line, "line " + random.nextInt(1000));
+              break;
+            default:
+              if (lines.size() > 1) {
+                lines.remove(line);
+              }
+          }
+        }
+        write(path, lines.toArray(new String[lines.size()]));
+      }
+    }
+  }
+
+  private static String[] randomLines(Random random, int count) {
+    String[] lines = new String[count];
+    for (int i = 0; i < count; i++) {
+      lines[i] = "line " + random.nextInt(1000);
+    }
+    return lines;
+  }
+
+  private void write(String path, String... lines) throws IOException {
+    FileUtils.writeLines(new File(workTree, path), Arrays.asList(lines), "\n");
+  }
+
+  private RevCommit commit(String message) throws Exception {
+    git.add().addFilepattern(".").call();
+    time += 60000L;
+    PersonIdent ident = new PersonIdent("Sonar", "sonar@sonarsource.com", new Date(time), TimeZone.getTimeZone("UTC"));
+    return git.commit().setMessage(message).setAuthor(ident).setCommitter(ident).call();
+  }
+
+  private static List<String> messages(RevCommit[] commits) {
+    List<String> messages = new ArrayList<String>();
+    for (RevCommit commit : commits) {
+      messages.add(commit.getFullMessage());
+    }
+    return messages;
+  }
+}
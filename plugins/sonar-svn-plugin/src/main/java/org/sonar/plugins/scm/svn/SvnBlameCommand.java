@@ -20,6 +20,7 @@
 package org.sonar.plugins.scm.svn;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.batch.fs.FileSystem;
@@ -31,10 +32,19 @@ import org.sonar.api.utils.command.CommandException;
 import org.sonar.api.utils.command.CommandExecutor;
 import org.sonar.api.utils.command.StreamConsumer;
 import org.sonar.api.utils.command.StringStreamConsumer;
+import org.sonar.home.cache.BlameCache;
+import org.sonar.home.cache.BlameCacheBuilder;
+import org.sonar.home.cache.CachedBlameOutput;
+import org.sonar.home.cache.FileHashes;
+import org.sonar.home.log.Slf4jLog;
+
+import javax.annotation.CheckForNull;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
@@ -45,8 +55,15 @@ import java.util.concurrent.Future;
 public class SvnBlameCommand extends BlameCommand {
 
   private static final Logger LOG = LoggerFactory.getLogger(SvnBlameCommand.class);
+
+  /**
+   * Keeps the command line far below the limit of Windows (32K characters)
+   */
+  private static final int MAX_FILES_PER_COMMAND = 50;
+
   private final CommandExecutor commandExecutor;
   private final SvnConfiguration configuration;
+  private BlameCache blameCache;
 
   public SvnBlameCommand(SvnConfiguration configuration) {
     this(CommandExecutor.create(), configuration);
@@ -57,16 +74,47 @@ public class SvnBlameCommand extends BlameCommand {
     this.configuration = configuration;
   }
 
+  SvnBlameCommand(CommandExecutor commandExecutor, SvnConfiguration configuration, BlameCache blameCache) {
+    this(commandExecutor, configuration);
+    this.blameCache = blameCache;
+  }
+
   @Override
   public void blame(final BlameInput input, final BlameOutput output) {
     FileSystem fs = input.fileSystem();
     LOG.debug("Working directory: " + fs.baseDir().getAbsolutePath());
-    ExecutorService executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() + 1);
-    List<Future<Void>> tasks = new ArrayList<Future<Void>>();
+    List<InputFile> filesToBlame = new ArrayList<InputFile>();
     for (InputFile inputFile : input.filesToBlame()) {
-      tasks.add(submitTask(fs, output, executorService, inputFile));
+      filesToBlame.add(inputFile);
+    }
+    BlameOutput blameOutput = output;
+    SvnInfoConsumer info = configuration.blameCacheDisabled() ? null : workingCopyInfo(fs.baseDir());
+    if (info != null && !info.getRevisionsByPath().isEmpty()) {
+      CachedBlameOutput cachedOutput = new CachedBlameOutput(blameCache(), output);
+      filesToBlame = serveFromCache(cachedOutput, info, filesToBlame);
+      blameOutput = cachedOutput;
+    }
+    int threads = Math.max(1, configuration.threads());
+    ExecutorService executorService = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<Void>> tasks = new ArrayList<Future<Void>>();
+      for (List<InputFile> files : Lists.partition(filesToBlame, filesPerCommand(filesToBlame.size(), threads))) {
+        tasks.add(submitTask(fs, blameOutput, executorService, files));
+      }
+      waitForTasksToComplete(tasks);
+    } finally {
+      executorService.shutdownNow();
     }
+  }
+
+  /**
+   * Files are spread over the threads, without exceeding {@link #MAX_FILES_PER_COMMAND}
+   */
+  private static int filesPerCommand(int files, int threads) {
+    return Math.max(1, Math.min(MAX_FILES_PER_COMMAND, (files + threads - 1) / threads));
+  }
 
+  private static void waitForTasksToComplete(List<Future<Void>> tasks) {
     for (Future<Void> task : tasks) {
       try {
         task.get();
@@ -79,16 +127,113 @@ public class SvnBlameCommand extends BlameCommand {
     }
   }
 
-  private Future<Void> submitTask(final FileSystem fs, final BlameOutput result, ExecutorService executorService, final InputFile inputFile) {
+  private BlameCache blameCache() {
+    if (blameCache == null) {
+      blameCache = new BlameCacheBuilder().setLog(new Slf4jLog(BlameCache.class)).setUserHome(configuration.userHome()).build();
+    }
+    return blameCache;
+  }
+
+  /**
+   * @return the repository, path in the repository and last changed revision of the files of the working copy, or null
+   * if they can't be retrieved, in which case the blame cache is not used.
+   */
+  @CheckForNull
+  private SvnInfoConsumer workingCopyInfo(File baseDir) {
+    Command cl = createInfoCommandLine(baseDir);
+    SvnInfoConsumer consumer = new SvnInfoConsumer();
+    StringStreamConsumer stderr = new StringStreamConsumer();
+    try {
+      int exitCode = execute(cl, consumer, stderr);
+      if (exitCode != 0) {
+        LOG.warn("The svn info command [" + cl.toString() + "] failed, the blame cache is not used: " + stderr.getOutput());
+        return null;
+      }
+    } catch (CommandException e) {
+      LOG.warn("The svn info command [" + cl.toString() + "] failed, the blame cache is not used", e);
+      return null;
+    }
+    return consumer;
+  }
+
+  /**
+   * @return the files which were not blamed at the same revision with the same content by a previous analysis
+   */
+  private List<InputFile> serveFromCache(CachedBlameOutput cachedOutput, SvnInfoConsumer info, List<InputFile> filesToBlame) {
+    FileHashes hashes = new FileHashes();
+    String blameOptions = configuration.useMergeHistory() ? "+g" : "";
+    List<InputFile> remaining = new ArrayList<InputFile>();
+    for (InputFile inputFile : filesToBlame) {
+      String revision = info.getRevisionsByPath().get(inputFile.relativePath());
+      // the path in the repository, as files of different modules can have the same relative path
+      String repositoryPath = info.getRepositoryPathsByPath().get(inputFile.relativePath());
+      if (revision == null || repositoryPath == null
+        || !cachedOutput.serveFromCache(inputFile, revision + blameOptions, repositoryPath, hashes.of(inputFile.file()))) {
+        remaining.add(inputFile);
+      }
+    }
+    LOG.debug("{} files blamed from the cache over {} files to blame", filesToBlame.size() - remaining.size(), filesToBlame.size());
+    return remaining;
+  }
+
+  private Future<Void> submitTask(final FileSystem fs, final BlameOutput result, ExecutorService executorService, final List<InputFile> inputFiles) {
     return executorService.submit(new Callable<Void>() {
       @Override
       public Void call() {
-        blame(fs, inputFile, result);
+        if (inputFiles.size() == 1) {
+          blame(fs, inputFiles.get(0), result);
+        } else {
+          blame(fs, inputFiles, result);
+        }
         return null;
       }
     });
   }
 
+  /**
+   * Blames several files with a single svn command, which saves the startup of the process and the
+   * connection to the repository. The blame lines are saved once the command is completed, on the current thread,
+   * so that an invalid blame fails the analysis. If the command fails, the files which were not reported are blamed
+   * one by one in order to get the error of the right file.
+   */
+  private void blame(FileSystem fs, List<InputFile> inputFiles, BlameOutput output) {
+    final Map<String, List<BlameLine>> linesByPath = new HashMap<String, List<BlameLine>>();
+    String[] filenames = new String[inputFiles.size()];
+    for (int i = 0; i < inputFiles.size(); i++) {
+      filenames[i] = inputFiles.get(i).relativePath();
+    }
+    Command cl = createCommandLine(fs.baseDir(), filenames);
+    SvnBlameConsumer consumer = new SvnBlameConsumer(new SvnBlameConsumer.TargetHandler() {
+      @Override
+      public void blameResult(String path, List<BlameLine> lines) {
+        // called by the thread reading the output of the command
+        synchronized (linesByPath) {
+          linesByPath.put(path.replace('\\', '/'), lines);
+        }
+      }
+    });
+    StringStreamConsumer stderr = new StringStreamConsumer();
+    try {
+      int exitCode = execute(cl, consumer, stderr);
+      if (exitCode != 0) {
+        LOG.debug("The svn blame command [" + cl.toString() + "] failed, files are blamed one by one: " + stderr.getOutput());
+      }
+    } catch (CommandException e) {
+      LOG.debug("The svn blame command [" + cl.toString() + "] failed, files are blamed one by one", e);
+    }
+    for (InputFile inputFile : inputFiles) {
+      List<BlameLine> lines;
+      synchronized (linesByPath) {
+        lines = linesByPath.get(inputFile.relativePath());
+      }
+      if (lines == null) {
+        blame(fs, inputFile, output);
+      } else {
+        saveBlameLines(output, inputFile, lines);
+      }
+    }
+  }
+
   private void blame(final FileSystem fs, final InputFile inputFile, final BlameOutput output) {
     String filename = inputFile.relativePath();
     Command cl = createCommandLine(fs.baseDir(), filename);
@@ -104,7 +249,10 @@ public class SvnBlameCommand extends BlameCommand {
     if (exitCode != 0) {
       throw new IllegalStateException("The svn blame command [" + cl.toString() + "] failed: " + stderr.getOutput());
     }
-    List<BlameLine> lines = consumer.getLines();
+    saveBlameLines(output, inputFile, consumer.getLines());
+  }
+
+  private static void saveBlameLines(BlameOutput output, InputFile inputFile, List<BlameLine> lines) {
     if (lines.size() == inputFile.lines() - 1) {
       // SONARPLUGINS-3097 SVN do not report blame on last empty line
       lines.add(lines.get(lines.size() - 1));
@@ -118,14 +266,8 @@ public class SvnBlameCommand extends BlameCommand {
   }
 
   @VisibleForTesting
-  Command createCommandLine(File baseDir, String filename) {
-    Command cl = Command.create("svn");
-    for (Entry<String, String> env : System.getenv().entrySet()) {
-      cl.setEnvironmentVariable(env.getKey(), env.getValue());
-    }
-    cl.setEnvironmentVariable("LC_MESSAGES", "en");
-
-    cl.setDirectory(baseDir);
+  Command createCommandLine(File baseDir, String... filenames) {
+    Command cl = createSvnCommand(baseDir);
     cl.addArgument("blame");
     cl.addArgument("--xml");
     if (configuration.useMergeHistory()) {
@@ -152,7 +294,34 @@ public class SvnBlameCommand extends BlameCommand {
     if (configuration.trustServerCert()) {
       cl.addArgument("--trust-server-cert");
     }
-    cl.addArgument(filename);
+    for (String filename : filenames) {
+      cl.addArgument(filename);
+    }
+    return cl;
+  }
+
+  @VisibleForTesting
+  Command createInfoCommandLine(File baseDir) {
+    Command cl = createSvnCommand(baseDir);
+    cl.addArgument("info");
+    cl.addArgument("--xml");
+    cl.addArgument("-R");
+    cl.addArgument("--non-interactive");
+    String configDir = configuration.configDir();
+    if (configDir != null) {
+      cl.addArgument("--config-dir");
+      cl.addArgument(configDir);
+    }
+    return cl;
+  }
+
+  private static Command createSvnCommand(File baseDir) {
+    Command cl = Command.create("svn");
+    for (Entry<String, String> env : System.getenv().entrySet()) {
+      cl.setEnvironmentVariable(env.getKey(), env.getValue());
+    }
+    cl.setEnvironmentVariable("LC_MESSAGES", "en");
+    cl.setDirectory(baseDir);
     return cl;
   }
 }
@@ -38,12 +38,14 @@ package org.sonar.plugins.scm.svn;
  * under the License.
  */
 
+import org.apache.commons.lang.StringEscapeUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.batch.scm.BlameLine;
 import org.sonar.api.utils.command.StreamConsumer;
 
 import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -60,6 +62,8 @@ public class SvnBlameConsumer implements StreamConsumer {
 
   private static final String SVN_TIMESTAMP_PATTERN = "yyyy-MM-dd HH:mm:ss";
 
+  private static final Pattern TARGET_PATH_PATTERN = Pattern.compile("path=\"(.*)\"");
+
   private static final Pattern LINE_PATTERN = Pattern.compile("line-number=\"(.*)\"");
 
   private static final Pattern REVISION_PATTERN = Pattern.compile("revision=\"(.*)\"");
@@ -75,10 +79,30 @@ public class SvnBlameConsumer implements StreamConsumer {
 
   private List<BlameLine> lines = new ArrayList<BlameLine>();
 
-  private final String filename;
+  private String filename;
+
+  private final TargetHandler targetHandler;
+
+  private boolean readingTargetPath = false;
+
+  /**
+   * Receives the blame of each target as soon as it is parsed, when several files are blamed by the same command
+   */
+  public interface TargetHandler {
+    void blameResult(String path, List<BlameLine> lines);
+  }
 
   public SvnBlameConsumer(String filename) {
+    this(filename, null);
+  }
+
+  public SvnBlameConsumer(TargetHandler targetHandler) {
+    this(null, targetHandler);
+  }
+
+  private SvnBlameConsumer(@Nullable String filename, @Nullable TargetHandler targetHandler) {
     this.filename = filename;
+    this.targetHandler = targetHandler;
     dateFormat = new SimpleDateFormat(SVN_TIMESTAMP_PATTERN);
     dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
   }
@@ -95,6 +119,9 @@ public class SvnBlameConsumer implements StreamConsumer {
   @Override
   public void consumeLine(String line) {
     Matcher matcher;
+    if (targetHandler != null && consumeTargetLine(line)) {
+      return;
+    }
     if ((matcher = LINE_PATTERN.matcher(line)).find()) {
       String lineNumberStr = matcher.group(1);
       lineNumber = Integer.parseInt(lineNumberStr);
@@ -143,6 +170,25 @@ public class SvnBlameConsumer implements StreamConsumer {
     }
   }
 
+  private boolean consumeTargetLine(String line) {
+    if (line.contains("<target")) {
+      readingTargetPath = true;
+      filename = null;
+    }
+    Matcher matcher;
+    if (readingTargetPath && (matcher = TARGET_PATH_PATTERN.matcher(line)).find()) {
+      filename = StringEscapeUtils.unescapeXml(matcher.group(1));
+      readingTargetPath = false;
+      return true;
+    }
+    if (line.contains("</target>")) {
+      targetHandler.blameResult(filename, lines);
+      lines = new ArrayList<BlameLine>();
+      return true;
+    }
+    return readingTargetPath;
+  }
+
   @CheckForNull
   protected Date parseDateTime(String dateTimeStr) {
     try {
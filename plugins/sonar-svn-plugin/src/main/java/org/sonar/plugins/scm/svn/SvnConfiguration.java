@@ -41,6 +41,8 @@ public class SvnConfiguration implements BatchComponent {
   public static final String CONFIG_DIR_PROP_KEY = "sonar.svn.config_dir";
   public static final String TRUST_SERVER_PROP_KEY = "sonar.svn.trust_server_cert";
   public static final String USE_MERGE_HISTORY_KEY = "sonar.svn.use_merge_history";
+  public static final String THREADS_PROP_KEY = "sonar.svn.threads";
+  public static final String BLAME_CACHE_DISABLED_PROP_KEY = "sonar.svn.blameCache.disabled";
   private final Settings settings;
 
   public SvnConfiguration(Settings settings) {
@@ -97,6 +99,28 @@ public class SvnConfiguration implements BatchComponent {
         .category(CoreProperties.CATEGORY_SCM)
         .subCategory(CATEGORY_SVN)
         .index(4)
+        .build(),
+      PropertyDefinition
+        .builder(THREADS_PROP_KEY)
+        .name("Number of threads for blame")
+        .description("Number of svn blame commands executed in parallel. Defaults to the number of available processors plus one.")
+        .type(PropertyType.INTEGER)
+        .onQualifiers(Qualifiers.PROJECT)
+        .category(CoreProperties.CATEGORY_SCM)
+        .subCategory(CATEGORY_SVN)
+        .index(5)
+        .build(),
+      PropertyDefinition
+        .builder(BLAME_CACHE_DISABLED_PROP_KEY)
+        .name("Disable the blame cache")
+        .description("Do not store the blame of files in the cache of the user home (~/.sonar/cache/_blame), "
+          + "nor read it from there. The cache is limited to 100 MB and entries unused for 30 days are removed.")
+        .type(PropertyType.BOOLEAN)
+        .defaultValue("false")
+        .onQualifiers(Qualifiers.PROJECT)
+        .category(CoreProperties.CATEGORY_SCM)
+        .subCategory(CATEGORY_SVN)
+        .index(6)
         .build());
   }
 
@@ -123,4 +147,18 @@ public class SvnConfiguration implements BatchComponent {
     return settings.getBoolean(USE_MERGE_HISTORY_KEY);
   }
 
+  public int threads() {
+    int threads = settings.getInt(THREADS_PROP_KEY);
+    return threads > 0 ? threads : (Runtime.getRuntime().availableProcessors() + 1);
+  }
+
+  public boolean blameCacheDisabled() {
+    return settings.getBoolean(BLAME_CACHE_DISABLED_PROP_KEY);
+  }
+
+  @CheckForNull
+  public String userHome() {
+    return settings.getString("sonar.userHome");
+  }
+
 }
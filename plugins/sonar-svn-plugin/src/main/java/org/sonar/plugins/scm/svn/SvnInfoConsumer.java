@@ -0,0 +1,117 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.scm.svn;
+
+import org.sonar.api.utils.command.StreamConsumer;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the output of <code>svn info --xml -R</code> to know, for each file of the working copy, the repository
+ * it belongs to, its path in this repository and the last revision in which it was changed.
+ */
+public class SvnInfoConsumer implements StreamConsumer {
+
+  private static final Pattern PATH_PATTERN = Pattern.compile("path=\"(.*)\"");
+
+  private static final Pattern KIND_PATTERN = Pattern.compile("kind=\"(.*)\"");
+
+  private static final Pattern REVISION_PATTERN = Pattern.compile("revision=\"(.*)\"");
+
+  private static final Pattern UUID_PATTERN = Pattern.compile("<uuid>(.*)</uuid>");
+
+  private static final Pattern URL_PATTERN = Pattern.compile("<url>(.*)</url>");
+
+  private static final Pattern ROOT_PATTERN = Pattern.compile("<root>(.*)</root>");
+
+  private final Map<String, String> revisionsByPath = new HashMap<String, String>();
+  private final Map<String, String> repositoryPathsByPath = new HashMap<String, String>();
+
+  private boolean insideCommitSection = false;
+  private String path;
+  private String kind;
+  private String uuid;
+  private String url;
+  private String root;
+  private String commitRevision;
+
+  @Override
+  public void consumeLine(String line) {
+    Matcher matcher;
+    if (line.contains("<commit")) {
+      insideCommitSection = true;
+    }
+    if ((matcher = PATH_PATTERN.matcher(line)).find()) {
+      path = matcher.group(1);
+    }
+    if ((matcher = KIND_PATTERN.matcher(line)).find()) {
+      kind = matcher.group(1);
+    }
+    if (insideCommitSection && (matcher = REVISION_PATTERN.matcher(line)).find()) {
+      commitRevision = matcher.group(1);
+    }
+    if ((matcher = UUID_PATTERN.matcher(line)).find()) {
+      uuid = matcher.group(1);
+    }
+    if ((matcher = URL_PATTERN.matcher(line)).find()) {
+      url = matcher.group(1);
+    }
+    if ((matcher = ROOT_PATTERN.matcher(line)).find()) {
+      root = matcher.group(1);
+    }
+    if (line.contains("</entry>")) {
+      endEntry();
+    }
+  }
+
+  private void endEntry() {
+    if ("file".equals(kind) && path != null && uuid != null && commitRevision != null && url != null && root != null && url.startsWith(root)) {
+      String normalizedPath = path.replace('\\', '/');
+      revisionsByPath.put(normalizedPath, uuid + "@" + commitRevision);
+      repositoryPathsByPath.put(normalizedPath, url.substring(root.length()));
+    }
+    insideCommitSection = false;
+    path = null;
+    kind = null;
+    uuid = null;
+    url = null;
+    root = null;
+    commitRevision = null;
+  }
+
+  /**
+   * @return the repository UUID and the last changed revision of the files, by path relative to the directory
+   * the command was executed in
+   */
+  public Map<String, String> getRevisionsByPath() {
+    return revisionsByPath;
+  }
+
+  /**
+   * @return the path of the files in their repository, for example /trunk/src/Foo.java, by path relative to the
+   * directory the command was executed in
+   */
+  public Map<String, String> getRepositoryPathsByPath() {
+    return repositoryPathsByPath;
+  }
+}
@@ -38,19 +38,28 @@ import org.sonar.api.config.PropertyDefinitions;
 import org.sonar.api.config.Settings;
 import org.sonar.api.utils.DateUtils;
 import org.sonar.api.utils.command.Command;
+import org.sonar.api.utils.command.CommandException;
 import org.sonar.api.utils.command.CommandExecutor;
 import org.sonar.api.utils.command.StreamConsumer;
+import org.sonar.home.cache.BlameCache;
+import org.sonar.home.log.Slf4jLog;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 public class SvnBlameCommandTest {
@@ -230,6 +239,239 @@ public class SvnBlameCommandTest {
     new SvnBlameCommand(commandExecutor, mock(SvnConfiguration.class)).blame(input, result);
   }
 
+  @Test
+  public void testBlameFromCache() throws IOException {
+    File source = new File(baseDir, "src/foo.xoo");
+    FileUtils.write(source, "sample content");
+    DefaultInputFile inputFile = new DefaultInputFile("foo", "src/foo.xoo").setAbsolutePath(new File(baseDir, "src/foo.xoo").getAbsolutePath()).setLines(3);
+    fs.add(inputFile);
+    when(input.filesToBlame()).thenReturn(Arrays.<InputFile>asList(inputFile));
+
+    final AtomicBoolean svnBlameAvailable = new AtomicBoolean(true);
+    CommandExecutor commandExecutor = mock(CommandExecutor.class);
+    when(commandExecutor.execute(any(Command.class), any(StreamConsumer.class), any(StreamConsumer.class), anyLong())).thenAnswer(new Answer<Integer>() {
+
+      @Override
+      public Integer answer(InvocationOnMock invocation) throws Throwable {
+        boolean info = ((Command) invocation.getArguments()[0]).getArguments().contains("info");
+        if (!info && !svnBlameAvailable.get()) {
+          return 1;
+        }
+        StreamConsumer outConsumer = (StreamConsumer) invocation.getArguments()[1];
+        List<String> lines = IOUtils.readLines(getClass().getResourceAsStream(info ? "/info.xml" : "/blame.xml"), "UTF-8");
+        for (String line : lines) {
+          outConsumer.consumeLine(line);
+        }
+        return 0;
+      }
+    });
+    List<BlameLine> expected = Arrays.asList(
+      new BlameLine().date(DateUtils.parseDateTime("2009-04-18T10:29:59+0000")).revision("9491").author("simon.brandhof"),
+      new BlameLine().date(DateUtils.parseDateTime("2009-04-18T10:29:59+0000")).revision("9491").author("simon.brandhof"),
+      new BlameLine().date(DateUtils.parseDateTime("2009-08-31T22:32:17+0000")).revision("10558").author("david"));
+    BlameCache cache = BlameCache.create(temp.newFolder(), new Slf4jLog(SvnBlameCommandTest.class));
+
+    // first analysis populates the cache
+    BlameOutput result = mock(BlameOutput.class);
+    new SvnBlameCommand(commandExecutor, mock(SvnConfiguration.class), cache).blame(input, result);
+    verify(result).blameResult(inputFile, expected);
+
+    // next analysis does not blame the file again
+    svnBlameAvailable.set(false);
+    result = mock(BlameOutput.class);
+    new SvnBlameCommand(commandExecutor, mock(SvnConfiguration.class), cache).blame(input, result);
+    verify(result).blameResult(inputFile, expected);
+
+    // but a modified file is blamed again
+    FileUtils.write(source, "modified content");
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("The svn blame command");
+    new SvnBlameCommand(commandExecutor, mock(SvnConfiguration.class), cache).blame(input, mock(BlameOutput.class));
+  }
+
+  @Test
+  public void do_not_share_cache_between_files_with_different_paths_in_repository() throws IOException {
+    File source = new File(baseDir, "src/foo.xoo");
+    FileUtils.write(source, "sample content");
+    DefaultInputFile inputFile = new DefaultInputFile("foo", "src/foo.xoo").setAbsolutePath(source.getAbsolutePath()).setLines(3);
+    fs.add(inputFile);
+    when(input.filesToBlame()).thenReturn(Arrays.<InputFile>asList(inputFile));
+
+    final AtomicBoolean otherModule = new AtomicBoolean(false);
+    CommandExecutor commandExecutor = mock(CommandExecutor.class);
+    when(commandExecutor.execute(any(Command.class), any(StreamConsumer.class), any(StreamConsumer.class), anyLong())).thenAnswer(new Answer<Integer>() {
+
+      @Override
+      public Integer answer(InvocationOnMock invocation) throws Throwable {
+        boolean info = ((Command) invocation.getArguments()[0]).getArguments().contains("info");
+        if (!info && otherModule.get()) {
+          return 1;
+        }
+        StreamConsumer outConsumer = (StreamConsumer) invocation.getArguments()[1];
+        for (String line : IOUtils.readLines(getClass().getResourceAsStream(info ? "/info.xml" : "/blame.xml"), "UTF-8")) {
+          // same relative path and content, but another module of the repository
+          outConsumer.consumeLine(otherModule.get() ? line.replace("/trunk", "/trunk/other-module") : line);
+        }
+        return 0;
+      }
+    });
+    BlameCache cache = BlameCache.create(temp.newFolder(), new Slf4jLog(SvnBlameCommandTest.class));
+    new SvnBlameCommand(commandExecutor, mock(SvnConfiguration.class), cache).blame(input, mock(BlameOutput.class));
+
+    otherModule.set(true);
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("The svn blame command");
+    new SvnBlameCommand(commandExecutor, mock(SvnConfiguration.class), cache).blame(input, mock(BlameOutput.class));
+  }
+
+  @Test
+  public void do_not_use_cache_when_disabled() throws IOException {
+    DefaultInputFile inputFile = newInputFile("src/foo.xoo").setLines(3);
+    when(input.filesToBlame()).thenReturn(Arrays.<InputFile>asList(inputFile));
+    CommandExecutor commandExecutor = mock(CommandExecutor.class);
+    when(commandExecutor.execute(any(Command.class), any(StreamConsumer.class), any(StreamConsumer.class), anyLong())).thenAnswer(new Answer<Integer>() {
+
+      @Override
+      public Integer answer(InvocationOnMock invocation) throws Throwable {
+        StreamConsumer outConsumer = (StreamConsumer) invocation.getArguments()[1];
+        for (String line : IOUtils.readLines(getClass().getResourceAsStream("/blame.xml"), "UTF-8")) {
+          outConsumer.consumeLine(line);
+        }
+        return 0;
+      }
+    });
+    SvnConfiguration configuration = mock(SvnConfiguration.class);
+    when(configuration.blameCacheDisabled()).thenReturn(true);
+    BlameCache cache = mock(BlameCache.class);
+
+    BlameOutput result = mock(BlameOutput.class);
+    new SvnBlameCommand(commandExecutor, configuration, cache).blame(input, result);
+
+    verify(result).blameResult(eq(inputFile), anyListOf(BlameLine.class));
+    // no svn info
+    verify(commandExecutor, times(1)).execute(any(Command.class), any(StreamConsumer.class), any(StreamConsumer.class), anyLong());
+    verifyZeroInteractions(cache);
+  }
+
+  @Test
+  public void testBlameOfSeveralFilesWithOneCommand() throws IOException {
+    DefaultInputFile foo = newInputFile("src/foo.xoo");
+    DefaultInputFile bar = newInputFile("src/bar.xoo");
+    when(input.filesToBlame()).thenReturn(Arrays.<InputFile>asList(foo, bar));
+
+    CommandExecutor commandExecutor = mock(CommandExecutor.class);
+    when(commandExecutor.execute(any(Command.class), any(StreamConsumer.class), any(StreamConsumer.class), anyLong())).thenAnswer(new Answer<Integer>() {
+
+      @Override
+      public Integer answer(InvocationOnMock invocation) throws Throwable {
+        Command command = (Command) invocation.getArguments()[0];
+        if (command.getArguments().contains("blame")) {
+          assertThat(command.getArguments()).contains("src/foo.xoo", "src/bar.xoo");
+          StreamConsumer outConsumer = (StreamConsumer) invocation.getArguments()[1];
+          for (String line : IOUtils.readLines(getClass().getResourceAsStream("/blame-multiple-targets.xml"), "UTF-8")) {
+            outConsumer.consumeLine(line);
+          }
+        }
+        return 0;
+      }
+    });
+    Settings settings = new Settings();
+    settings.setProperty(SvnConfiguration.THREADS_PROP_KEY, 1);
+
+    BlameOutput result = mock(BlameOutput.class);
+    new SvnBlameCommand(commandExecutor, new SvnConfiguration(settings)).blame(input, result);
+
+    verify(result).blameResult(foo,
+      Arrays.asList(
+        new BlameLine().date(DateUtils.parseDateTime("2009-04-18T10:29:59+0000")).revision("9491").author("simon.brandhof"),
+        new BlameLine().date(DateUtils.parseDateTime("2009-08-31T22:32:17+0000")).revision("10558").author("david")));
+    verify(result).blameResult(bar,
+      Arrays.asList(new BlameLine().date(DateUtils.parseDateTime("2009-08-31T22:32:17+0000")).revision("10558").author("david")));
+    // svn info and a single svn blame
+    verify(commandExecutor, times(2)).execute(any(Command.class), any(StreamConsumer.class), any(StreamConsumer.class), anyLong());
+  }
+
+  @Test
+  public void blame_files_one_by_one_when_command_on_several_files_fails() throws IOException {
+    DefaultInputFile foo = newInputFile("src/foo.xoo");
+    DefaultInputFile bar = newInputFile("src/bar.xoo");
+    when(input.filesToBlame()).thenReturn(Arrays.<InputFile>asList(foo, bar));
+
+    CommandExecutor commandExecutor = mock(CommandExecutor.class);
+    when(commandExecutor.execute(any(Command.class), any(StreamConsumer.class), any(StreamConsumer.class), anyLong())).thenAnswer(new Answer<Integer>() {
+
+      @Override
+      public Integer answer(InvocationOnMock invocation) throws Throwable {
+        Command command = (Command) invocation.getArguments()[0];
+        if (command.getArguments().contains("src/bar.xoo")) {
+          StreamConsumer errConsumer = (StreamConsumer) invocation.getArguments()[2];
+          errConsumer.consumeLine("svn: E195002: src/bar.xoo is not under version control");
+          return 1;
+        }
+        if (command.getArguments().contains("src/foo.xoo")) {
+          StreamConsumer outConsumer = (StreamConsumer) invocation.getArguments()[1];
+          for (String line : IOUtils.readLines(getClass().getResourceAsStream("/blame.xml"), "UTF-8")) {
+            outConsumer.consumeLine(line);
+          }
+        }
+        return 0;
+      }
+    });
+    Settings settings = new Settings();
+    settings.setProperty(SvnConfiguration.THREADS_PROP_KEY, 1);
+
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("The svn blame command [svn blame --xml --non-interactive -x -w src/bar.xoo] failed: svn: E195002: src/bar.xoo is not under version control");
+    BlameOutput result = mock(BlameOutput.class);
+    try {
+      new SvnBlameCommand(commandExecutor, new SvnConfiguration(settings)).blame(input, result);
+    } finally {
+      verify(result).blameResult(eq(foo), anyListOf(BlameLine.class));
+    }
+  }
+
+  @Test
+  public void fail_if_blame_of_one_of_several_files_is_invalid() throws IOException {
+    DefaultInputFile foo = newInputFile("src/foo.xoo");
+    DefaultInputFile bar = newInputFile("src/bar.xoo");
+    when(input.filesToBlame()).thenReturn(Arrays.<InputFile>asList(foo, bar));
+
+    CommandExecutor commandExecutor = mock(CommandExecutor.class);
+    when(commandExecutor.execute(any(Command.class), any(StreamConsumer.class), any(StreamConsumer.class), anyLong())).thenAnswer(new Answer<Integer>() {
+
+      @Override
+      public Integer answer(InvocationOnMock invocation) throws Throwable {
+        Command command = (Command) invocation.getArguments()[0];
+        if (command.getArguments().contains("blame")) {
+          StreamConsumer outConsumer = (StreamConsumer) invocation.getArguments()[1];
+          try {
+            for (String line : IOUtils.readLines(getClass().getResourceAsStream("/blame-multiple-targets.xml"), "UTF-8")) {
+              outConsumer.consumeLine(line);
+            }
+          } catch (RuntimeException e) {
+            // as the thread of CommandExecutor which reads the output
+            throw new CommandException(command, "Error inside stdOut stream", e);
+          }
+        }
+        return 0;
+      }
+    });
+    BlameOutput result = mock(BlameOutput.class);
+    doThrow(new IllegalArgumentException("Expected one blame result per line but provider returned 2 blame lines while file src/foo.xoo has 5 lines"))
+      .when(result).blameResult(eq(foo), anyListOf(BlameLine.class));
+    Settings settings = new Settings();
+    settings.setProperty(SvnConfiguration.THREADS_PROP_KEY, 1);
+
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("provider returned 2 blame lines while file src/foo.xoo has 5 lines");
+    try {
+      new SvnBlameCommand(commandExecutor, new SvnConfiguration(settings)).blame(input, result);
+    } finally {
+      // svn info and a single svn blame, the file is not blamed again
+      verify(commandExecutor, times(2)).execute(any(Command.class), any(StreamConsumer.class), any(StreamConsumer.class), anyLong());
+    }
+  }
+
   @Test
   public void testAllParams() {
     CommandExecutor commandExecutor = mock(CommandExecutor.class);
@@ -256,5 +498,16 @@ public class SvnBlameCommandTest {
     assertThat(commandLine.toString())
       .isEqualTo(
         "svn blame --xml --use-merge-history --non-interactive -x -w --config-dir /home/julien/.svn --username ******** --password ******** --trust-server-cert src/main/java/Foo.java");
+
+    commandLine = svnBlameCommand.createInfoCommandLine(baseDir);
+    assertThat(commandLine.toCommandLine()).isEqualTo("svn info --xml -R --non-interactive --config-dir /home/julien/.svn");
+  }
+
+  private DefaultInputFile newInputFile(String relativePath) throws IOException {
+    File source = new File(baseDir, relativePath);
+    FileUtils.write(source, "sample content");
+    DefaultInputFile inputFile = new DefaultInputFile("foo", relativePath).setAbsolutePath(source.getAbsolutePath());
+    fs.add(inputFile);
+    return inputFile;
   }
 }
@@ -0,0 +1,238 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.index;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.CoreProperties;
+import org.sonar.api.batch.measure.MetricFinder;
+import org.sonar.api.issue.internal.DefaultIssue;
+import org.sonar.api.measures.CoreMetrics;
+import org.sonar.api.measures.Measure;
+import org.sonar.api.measures.Metric;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.batch.bootstrap.BootstrapProperties;
+import org.sonar.batch.bootstrap.TempFolderProvider;
+import org.sonar.batch.scan.measure.MeasureCache;
+import org.sonar.server.benchmark.Benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares the backends of batch caches on a workload similar to the one of measures and issues
+ * during an analysis: each file gets its measures and issues, which are then read file by file
+ * (sensors and decorators) and all at once (persisters).
+ * <p/>
+ * Declared in package org.sonar.batch.index as {@link MemoryCache} is not public.
+ */
+public class CachesBenchmarkTest {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger("benchmarkCaches");
+  private static final int FILES = 5000;
+  private static final int ISSUES_PER_FILE = 10;
+  private static final List<Metric> METRICS = CoreMetrics.getMetrics();
+  private static final int ROUNDS = 3;
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Rule
+  public Benchmark benchmark = new Benchmark();
+
+  Caches caches;
+
+  @Before
+  public void setUp() throws Exception {
+    BootstrapProperties bootstrapProps = new BootstrapProperties(ImmutableMap.of(CoreProperties.WORKING_DIRECTORY, temp.newFolder().getAbsolutePath()));
+    caches = new Caches(new TempFolderProvider().provide(bootstrapProps));
+    caches.start();
+    // registers the value coder of measures
+    new MeasureCache(caches, new MapMetricFinder());
+  }
+
+  @After
+  public void tearDown() {
+    caches.stop();
+  }
+
+  @Test
+  public void persistit() {
+    long period = run(new Backend() {
+      @Override
+      public <V> Cache<V> create(String name) {
+        return caches.createCache(name);
+      }
+    });
+    benchmark.expectLessThanOrEqualTo("Time to use Persistit caches", period, 30000L);
+  }
+
+  @Test
+  public void heap() {
+    long period = run(new Backend() {
+      @Override
+      public <V> Cache<V> create(String name) {
+        return new MemoryCache<V>(name, caches.persistit());
+      }
+    });
+    benchmark.expectLessThanOrEqualTo("Time to use in-memory caches", period, 15000L);
+  }
+
+  @Test
+  public void off_heap() {
+    long period = run(new Backend() {
+      @Override
+      public <V> Cache<V> create(String name) {
+        return new MemoryCache<V>(name, caches.persistit()) {
+          @Override
+          ByteBuffer allocate(int size) {
+            return ByteBuffer.allocateDirect(size);
+          }
+        };
+      }
+    });
+    benchmark.expectLessThanOrEqualTo("Time to use off-heap caches", period, 20000L);
+  }
+
+  private long run(Backend backend) {
+    long bestPeriod = Long.MAX_VALUE;
+    for (int round = 0; round < ROUNDS; round++) {
+      Cache<Measure> measures = backend.create("measures" + round);
+      Cache<DefaultIssue> issues = backend.create("issues" + round);
+
+      long start = System.currentTimeMillis();
+      write(measures, issues);
+      long written = System.currentTimeMillis();
+      readByFile(measures, issues);
+      long readByFile = System.currentTimeMillis();
+      readAll(measures, issues);
+      long end = System.currentTimeMillis();
+
+      LOGGER.info(String.format("Round %d: write in %d ms, read by file in %d ms, read all in %d ms", round + 1,
+        written - start, readByFile - written, end - readByFile));
+      bestPeriod = Math.min(bestPeriod, end - start);
+      measures.clear();
+      issues.clear();
+    }
+    LOGGER.info(String.format("Best round: %d ms for %d measures and %d issues", bestPeriod, FILES * METRICS.size(), FILES * ISSUES_PER_FILE));
+    return bestPeriod;
+  }
+
+  private void write(Cache<Measure> measures, Cache<DefaultIssue> issues) {
+    Date now = new Date();
+    for (int file = 0; file < FILES; file++) {
+      String fileKey = fileKey(file);
+      for (Metric metric : METRICS) {
+        Measure measure = new Measure(metric);
+        if (metric.isNumericType()) {
+          measure.setValue((double) file);
+        } else {
+          measure.setData("1=2;3=4;5=6;7=8;9=10");
+        }
+        measures.put(fileKey, metric.getKey(), metric.getKey() + "||", measure);
+      }
+      for (int i = 0; i < ISSUES_PER_FILE; i++) {
+        String issueKey = "ISSUE-" + file + "-" + i;
+        DefaultIssue issue = new DefaultIssue()
+          .setKey(issueKey)
+          .setComponentKey(fileKey)
+          .setProjectKey("project")
+          .setRuleKey(RuleKey.of("squid", "S" + i))
+          .setSeverity("MAJOR")
+          .setMessage("Fix this issue at line " + i)
+          .setLine(i + 1)
+          .setStatus("OPEN")
+          .setCreationDate(now);
+        issues.put(fileKey, issueKey, issue);
+      }
+    }
+  }
+
+  private void readByFile(Cache<Measure> measures, Cache<DefaultIssue> issues) {
+    for (int file = 0; file < FILES; file++) {
+      String fileKey = fileKey(file);
+      int count = 0;
+      for (Measure measure : measures.values(fileKey)) {
+        count++;
+      }
+      for (DefaultIssue issue : issues.values(fileKey)) {
+        count++;
+      }
+      assertThat(count).isEqualTo(METRICS.size() + ISSUES_PER_FILE);
+      assertThat(measures.get(fileKey, CoreMetrics.NCLOC_KEY, CoreMetrics.NCLOC_KEY + "||")).isNotNull();
+    }
+  }
+
+  private void readAll(Cache<Measure> measures, Cache<DefaultIssue> issues) {
+    int count = 0;
+    for (Measure measure : measures.values()) {
+      count++;
+    }
+    for (DefaultIssue issue : issues.values()) {
+      count++;
+    }
+    assertThat(count).isEqualTo(FILES * (METRICS.size() + ISSUES_PER_FILE));
+  }
+
+  private static String fileKey(int file) {
+    return "project:src/main/java/org/sonar/dir" + (file / 50) + "/File" + file + ".java";
+  }
+
+  private interface Backend {
+    <V> Cache<V> create(String name);
+  }
+
+  private static class MapMetricFinder implements MetricFinder {
+    private final Map<String, Metric> metricsByKey = Maps.newHashMap();
+
+    MapMetricFinder() {
+      for (Metric metric : METRICS) {
+        metricsByKey.put(metric.getKey(), metric);
+      }
+    }
+
+    @Override
+    public Metric findByKey(String key) {
+      return metricsByKey.get(key);
+    }
+
+    @Override
+    public Collection<org.sonar.api.batch.measure.Metric> findAll(List<String> metricKeys) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Collection<org.sonar.api.batch.measure.Metric> findAll() {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
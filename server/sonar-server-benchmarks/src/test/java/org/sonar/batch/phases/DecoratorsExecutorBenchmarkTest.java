@@ -0,0 +1,217 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.phases;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.CoreProperties;
+import org.sonar.api.batch.BatchExtensionDictionnary;
+import org.sonar.api.batch.Decorator;
+import org.sonar.api.batch.DecoratorContext;
+import org.sonar.api.batch.SonarIndex;
+import org.sonar.api.config.Settings;
+import org.sonar.api.measures.CoreMetrics;
+import org.sonar.api.measures.MeasureUtils;
+import org.sonar.api.measures.Metric;
+import org.sonar.api.measures.MetricFinder;
+import org.sonar.api.platform.ComponentContainer;
+import org.sonar.api.resources.Directory;
+import org.sonar.api.resources.File;
+import org.sonar.api.resources.Project;
+import org.sonar.api.resources.Resource;
+import org.sonar.api.resources.ResourceUtils;
+import org.sonar.batch.bootstrap.BootstrapProperties;
+import org.sonar.batch.bootstrap.TempFolderProvider;
+import org.sonar.batch.duplication.DuplicationCache;
+import org.sonar.batch.events.EventBus;
+import org.sonar.batch.index.Caches;
+import org.sonar.batch.scan.measure.MeasureCache;
+import org.sonar.batch.sensor.coverage.CoverageExclusions;
+import org.sonar.server.benchmark.Benchmark;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Decorates a project of 10,000 files with aggregation decorators similar to the ones of the core plugin,
+ * sequentially then concurrently. Measures are stored in Persistit caches.
+ */
+public class DecoratorsExecutorBenchmarkTest {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger("benchmarkDecorators");
+  private static final int DIRS = 200;
+  private static final int FILES_PER_DIR = 50;
+  private static final List<Metric> METRICS = Arrays.<Metric>asList(CoreMetrics.NCLOC, CoreMetrics.LINES, CoreMetrics.STATEMENTS,
+    CoreMetrics.FUNCTIONS, CoreMetrics.CLASSES, CoreMetrics.COMPLEXITY, CoreMetrics.COMMENT_LINES, CoreMetrics.LINES_TO_COVER,
+    CoreMetrics.UNCOVERED_LINES, CoreMetrics.CONDITIONS_TO_COVER);
+  private static final int ROUNDS = 3;
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Rule
+  public Benchmark benchmark = new Benchmark();
+
+  @Test
+  public void sequential() throws Exception {
+    long period = run(1);
+    benchmark.expectLessThanOrEqualTo("Time to decorate sequentially", period, 30000L);
+  }
+
+  @Test
+  public void concurrent() throws Exception {
+    long period = run(4);
+    benchmark.expectLessThanOrEqualTo("Time to decorate with 4 threads", period, 30000L);
+  }
+
+  private long run(int threads) throws Exception {
+    long bestPeriod = Long.MAX_VALUE;
+    for (int round = 0; round < ROUNDS; round++) {
+      BootstrapProperties bootstrapProps = new BootstrapProperties(ImmutableMap.of(CoreProperties.WORKING_DIRECTORY, temp.newFolder().getAbsolutePath()));
+      Caches caches = new Caches(new TempFolderProvider().provide(bootstrapProps));
+      caches.start();
+      try {
+        Project project = new Project("project");
+        MeasureCache measureCache = new MeasureCache(caches, mockBatchMetricFinder());
+        DecoratorsExecutor executor = newExecutor(project, measureCache, threads);
+
+        long start = System.currentTimeMillis();
+        executor.execute();
+        long period = System.currentTimeMillis() - start;
+
+        LOGGER.info(String.format("Round %d: %d threads decorate %d files in %d ms", round + 1, threads, DIRS * FILES_PER_DIR, period));
+        bestPeriod = Math.min(bestPeriod, period);
+        assertThat(measureCache.byMetric(project, CoreMetrics.NCLOC_KEY).iterator().next().getValue()).isEqualTo(DIRS * FILES_PER_DIR * 10.0);
+      } finally {
+        caches.stop();
+      }
+    }
+    LOGGER.info(String.format("Best round with %d threads: %d ms", threads, bestPeriod));
+    return bestPeriod;
+  }
+
+  private DecoratorsExecutor newExecutor(Project project, MeasureCache measureCache, int threads) {
+    SonarIndex index = mock(SonarIndex.class);
+    List<Resource> dirs = Lists.newArrayList();
+    for (int i = 0; i < DIRS; i++) {
+      Directory dir = Directory.create("src/dir" + i, "dir" + i);
+      dir.setEffectiveKey("project:src/dir" + i);
+      List<Resource> files = Lists.newArrayList();
+      for (int j = 0; j < FILES_PER_DIR; j++) {
+        File file = File.create("src/dir" + i + "/File" + j + ".java", "dir" + i + "/File" + j + ".java", null, false);
+        file.setEffectiveKey("project:src/dir" + i + "/File" + j + ".java");
+        files.add(file);
+      }
+      when(index.getChildren(dir)).thenReturn(files);
+      dirs.add(dir);
+    }
+    when(index.getChildren(project)).thenReturn(dirs);
+
+    Settings settings = new Settings();
+    settings.setProperty(DecoratorsExecutor.THREADS_PROPERTY, threads);
+    ComponentContainer container = new ComponentContainer();
+    container.addSingleton(new FileMeasuresDecorator());
+    container.addSingleton(new SumDecorator());
+
+    return new DecoratorsExecutor(new BatchExtensionDictionnary(container), project, index, mock(EventBus.class), new CoverageExclusions(settings),
+      measureCache, mockMetricFinder(), mock(DuplicationCache.class), settings);
+  }
+
+  private static MetricFinder mockMetricFinder() {
+    MetricFinder metricFinder = mock(MetricFinder.class);
+    when(metricFinder.findByKey(anyString())).thenAnswer(new MetricAnswer());
+    return metricFinder;
+  }
+
+  private static org.sonar.api.batch.measure.MetricFinder mockBatchMetricFinder() {
+    org.sonar.api.batch.measure.MetricFinder metricFinder = mock(org.sonar.api.batch.measure.MetricFinder.class);
+    when(metricFinder.findByKey(anyString())).thenAnswer(new MetricAnswer());
+    return metricFinder;
+  }
+
+  private static class MetricAnswer implements Answer<Metric> {
+    private final Map<String, Metric> metricsByKey = Maps.newHashMap();
+
+    MetricAnswer() {
+      for (Metric metric : CoreMetrics.getMetrics()) {
+        metricsByKey.put(metric.getKey(), metric);
+      }
+    }
+
+    @Override
+    public Metric answer(InvocationOnMock invocation) {
+      return metricsByKey.get(invocation.getArguments()[0]);
+    }
+  }
+
+  /**
+   * Simulates the measures of sensors on files
+   */
+  @ThreadSafeDecorator
+  static class FileMeasuresDecorator implements Decorator {
+    @Override
+    public void decorate(Resource resource, DecoratorContext context) {
+      if (ResourceUtils.isFile(resource)) {
+        for (Metric metric : METRICS) {
+          context.saveMeasure(metric, 10.0);
+        }
+      }
+    }
+
+    @Override
+    public boolean shouldExecuteOnProject(Project project) {
+      return true;
+    }
+  }
+
+  /**
+   * Sums the measures of children, like the aggregation decorators of the core plugin
+   */
+  @ThreadSafeDecorator
+  static class SumDecorator implements Decorator {
+    @Override
+    public void decorate(Resource resource, DecoratorContext context) {
+      if (!ResourceUtils.isFile(resource)) {
+        for (Metric metric : METRICS) {
+          context.saveMeasure(metric, MeasureUtils.sum(true, context.getChildrenMeasures(metric)));
+        }
+      }
+    }
+
+    @Override
+    public boolean shouldExecuteOnProject(Project project) {
+      return true;
+    }
+  }
+}
@@ -0,0 +1,208 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.scan.filesystem;
+
+import com.google.common.base.Charsets;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.server.benchmark.Benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Declared in package org.sonar.batch.scan.filesystem as {@link FileMetadata} is not public.
+ */
+public class FileMetadataBenchmarkTest {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger("benchmarkFileMetadata");
+  private static final int NUMBER_OF_FILES = 1000;
+  private static final int LINES_PER_FILE = 1000;
+  private static final int ROUNDS = 5;
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Rule
+  public Benchmark benchmark = new Benchmark();
+
+  @Test
+  public void benchmark() throws Exception {
+    List<File> files = prepareFiles();
+    long totalSize = 0L;
+    for (File file : files) {
+      totalSize += file.length();
+    }
+
+    final FileMetadata fileMetadata = new FileMetadata();
+    long bestPeriod = run("current", files, totalSize, new MetadataReader() {
+      @Override
+      public String hash(File file) {
+        FileMetadata.Metadata metadata = fileMetadata.read(file, Charsets.UTF_8);
+        assertThat(metadata.lines).isEqualTo(LINES_PER_FILE + 1);
+        return metadata.hash;
+      }
+    });
+    long baselinePeriod = run("baseline", files, totalSize, new MetadataReader() {
+      @Override
+      public String hash(File file) {
+        return CharByCharFileMetadata.hash(file, Charsets.UTF_8);
+      }
+    });
+
+    // both implementations must compute the same hashes
+    for (File file : files) {
+      assertThat(fileMetadata.read(file, Charsets.UTF_8).hash).isEqualTo(CharByCharFileMetadata.hash(file, Charsets.UTF_8));
+    }
+    LOGGER.info(String.format("Current implementation is %.1f times faster than baseline", (double) baselinePeriod / Math.max(1L, bestPeriod)));
+    benchmark.expectLessThanOrEqualTo("Time to read metadata of files", bestPeriod, 2000L);
+    benchmark.expectLessThanOrEqualTo("Time to read metadata of files, compared to baseline", bestPeriod, baselinePeriod);
+  }
+
+  private long run(String name, List<File> files, long totalSize, MetadataReader reader) {
+    long bestPeriod = Long.MAX_VALUE;
+    for (int round = 0; round < ROUNDS; round++) {
+      long start = System.currentTimeMillis();
+      for (File file : files) {
+        reader.hash(file);
+      }
+      long period = System.currentTimeMillis() - start;
+      LOGGER.info(String.format("%s - Round %d: metadata of %d files (%s) read in %d ms", name, round + 1, NUMBER_OF_FILES,
+        FileUtils.byteCountToDisplaySize(totalSize), period));
+      bestPeriod = Math.min(bestPeriod, period);
+    }
+    long throughputPerSecond = 1000L * totalSize / Math.max(1L, bestPeriod) / FileUtils.ONE_MB;
+    LOGGER.info(String.format("%s - Best round: %d ms (%d Mb/second)", name, bestPeriod, throughputPerSecond));
+    return bestPeriod;
+  }
+
+  private List<File> prepareFiles() throws IOException {
+    LOGGER.info("Generate source files");
+    File dir = temp.newFolder();
+    List<File> files = new ArrayList<File>();
+    for (int i = 0; i < NUMBER_OF_FILES; i++) {
+      StringBuilder sb = new StringBuilder();
+      for (int line = 0; line < LINES_PER_FILE; line++) {
+        sb.append("  public String method").append(line).append("() { return \"héllo €\" + ").append(line).append("; }\r\n");
+      }
+      File file = new File(dir, "File" + i + ".java");
+      FileUtils.write(file, sb, Charsets.UTF_8);
+      files.add(file);
+    }
+    return files;
+  }
+
+  private interface MetadataReader {
+    String hash(File file);
+  }
+
+  /**
+   * Baseline: the implementation of {@link FileMetadata} before 5.1, which reads and encodes the file
+   * char by char. Only the global hash is computed, line offsets and line hashes are ignored.
+   */
+  private static class CharByCharFileMetadata {
+
+    private static final char LINE_FEED = '\n';
+    private static final char CARRIAGE_RETURN = '\r';
+    private static final char BOM = '\uFEFF';
+
+    static String hash(File file, Charset encoding) {
+      List<Long> originalLineOffsets = new ArrayList<Long>();
+      List<Object> lineHashes = new ArrayList<Object>();
+      long currentOriginalOffset = 0;
+      char c = (char) -1;
+      try (Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), encoding))) {
+        MessageDigest globalMd5Digest = DigestUtils.getMd5Digest();
+        MessageDigest lineMd5Digest = DigestUtils.getMd5Digest();
+        int i = reader.read();
+        boolean afterCR = false;
+        originalLineOffsets.add(0L);
+        boolean blankline = true;
+        while (i != -1) {
+          c = (char) i;
+          if (c == BOM) {
+            i = reader.read();
+            continue;
+          }
+          currentOriginalOffset++;
+          if (afterCR) {
+            afterCR = false;
+            if (c == LINE_FEED) {
+              originalLineOffsets.set(originalLineOffsets.size() - 1, originalLineOffsets.get(originalLineOffsets.size() - 1) + 1);
+              i = reader.read();
+              continue;
+            }
+          }
+          if (c == CARRIAGE_RETURN) {
+            afterCR = true;
+            c = LINE_FEED;
+          }
+          if (c == LINE_FEED) {
+            originalLineOffsets.add(currentOriginalOffset);
+            lineHashes.add(blankline ? null : lineMd5Digest.digest());
+            blankline = true;
+          } else if (!Character.isWhitespace(c)) {
+            blankline = false;
+            updateDigestUTF8Char(c, lineMd5Digest);
+          }
+          updateDigestUTF8Char(c, globalMd5Digest);
+          i = reader.read();
+        }
+        if (c != (char) -1) {
+          lineHashes.add(blankline ? null : lineMd5Digest.digest());
+        }
+        return Hex.encodeHexString(globalMd5Digest.digest());
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    private static void updateDigestUTF8Char(char c, MessageDigest md5Digest) {
+      CharBuffer cb = CharBuffer.allocate(1);
+      cb.put(c);
+      cb.flip();
+      ByteBuffer bb = Charsets.UTF_8.encode(cb);
+      byte[] array = bb.array();
+      for (int i = 0; i < array.length; i++) {
+        if (array[i] != 0) {
+          md5Digest.update(array[i]);
+        }
+      }
+    }
+  }
+}
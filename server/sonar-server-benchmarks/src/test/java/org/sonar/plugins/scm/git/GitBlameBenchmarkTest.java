@@ -0,0 +1,145 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.plugins.scm.git;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.blame.BlameResult;
+import org.eclipse.jgit.diff.RawTextComparator;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.server.benchmark.Benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Blame of all the files of a generated Git repository, file by file (as JGit BlameCommand) versus
+ * in a single walk of the history.
+ * <p/>
+ * Declared in package org.sonar.plugins.scm.git as {@link SinglePassBlame} is not public.
+ */
+public class GitBlameBenchmarkTest {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger("benchmarkGitBlame");
+  private static final int FILES = 200;
+  private static final int LINES_PER_FILE = 100;
+  private static final int COMMITS = 500;
+  private static final int FILES_PER_COMMIT = 5;
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Rule
+  public Benchmark benchmark = new Benchmark();
+
+  @Test
+  public void benchmark() throws Exception {
+    File workTree = temp.newFolder();
+    Git git = Git.init().setDirectory(workTree).call();
+    List<String> paths = generateHistory(git, workTree);
+
+    long start = System.currentTimeMillis();
+    Map<String, BlameResult> expected = new HashMap<String, BlameResult>();
+    for (String path : paths) {
+      expected.put(path, git.blame().setTextComparator(RawTextComparator.WS_IGNORE_ALL).setFilePath(path).call());
+    }
+    long fileByFilePeriod = System.currentTimeMillis() - start;
+    LOGGER.info(String.format("%d files blamed one by one in %d ms", paths.size(), fileByFilePeriod));
+
+    start = System.currentTimeMillis();
+    Map<String, File> files = new HashMap<String, File>();
+    for (String path : paths) {
+      files.put(path, new File(workTree, path));
+    }
+    Map<String, RevCommit[]> result = new SinglePassBlame(git.getRepository(), RawTextComparator.WS_IGNORE_ALL).blame(files);
+    long singlePassPeriod = System.currentTimeMillis() - start;
+    LOGGER.info(String.format("%d files blamed in a single pass in %d ms", result.size(), singlePassPeriod));
+
+    assertThat(result).hasSize(FILES);
+    for (String path : paths) {
+      RevCommit[] commits = result.get(path);
+      BlameResult blame = expected.get(path);
+      assertThat(commits).hasSize(blame.getResultContents().size());
+      for (int line = 0; line < commits.length; line++) {
+        assertThat(commits[line]).as(path + ":" + (line + 1)).isEqualTo(blame.getSourceCommit(line));
+      }
+    }
+    benchmark.expectLessThanOrEqualTo("Time to blame files in a single pass", singlePassPeriod, fileByFilePeriod);
+  }
+
+  /**
+   * Linear history where each commit modifies some lines of a few files
+   */
+  private List<String> generateHistory(Git git, File workTree) throws Exception {
+    LOGGER.info("Generate a Git repository of {} files and {} commits", FILES, COMMITS);
+    Random random = new Random(42);
+    List<String> paths = new ArrayList<String>();
+    List<List<String>> contents = new ArrayList<List<String>>();
+    for (int file = 0; file < FILES; file++) {
+      String path = "src/main/java/org/sonar/dir" + (file / 20) + "/File" + file + ".java";
+      List<String> lines = new ArrayList<String>();
+      for (int line = 0; line < LINES_PER_FILE; line++) {
+        lines.add("  int field" + line + " = " + random.nextInt() + ";");
+      }
+      paths.add(path);
+      contents.add(lines);
+      write(workTree, path, lines);
+    }
+    long time = 1400000000000L;
+    commit(git, "initial", time);
+    for (int c = 0; c < COMMITS; c++) {
+      for (int i = 0; i < FILES_PER_COMMIT; i++) {
+        int file = random.nextInt(FILES);
+        List<String> lines = contents.get(file);
+        lines.set(random.nextInt(lines.size()), "  int changed" + c + " = " + random.nextInt() + ";");
+        lines.add(random.nextInt(lines.size()), "  int added" + c + " = " + random.nextInt() + ";");
+        write(workTree, paths.get(file), lines);
+      }
+      time += 60000L;
+      commit(git, "commit " + c, time);
+    }
+    return paths;
+  }
+
+  private static void write(File workTree, String path, List<String> lines) throws IOException {
+    FileUtils.writeLines(new File(workTree, path), lines, "\n");
+  }
+
+  private static void commit(Git git, String message, long time) throws Exception {
+    git.add().addFilepattern(".").call();
+    PersonIdent ident = new PersonIdent("Sonar", "sonar@sonarsource.com", new Date(time), TimeZone.getTimeZone("UTC"));
+    git.commit().setMessage(message).setAuthor(ident).setCommitter(ident).call();
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.benchmark;
+
+import org.apache.commons.dbutils.DbUtils;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.junit.Rule;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.core.duplication.DuplicationDao;
+import org.sonar.core.persistence.DbTester;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Loading of the candidates for cross-project duplications of a module, file by file versus all at once.
+ */
+public class DuplicationsIndexBenchmarkTest {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger("benchmarkDuplicationsIndex");
+  private static final int FILES = 2000;
+  private static final int BLOCKS_PER_FILE = 50;
+  // half of the blocks of each file of the module are duplicated in another project
+  private static final int DUPLICATED_BLOCKS_PER_FILE = BLOCKS_PER_FILE / 2;
+
+  private static final int OTHER_PROJECT_SNAPSHOT_ID = 1;
+  private static final int MODULE_SNAPSHOT_ID = 2;
+  private static final int LAST_MODULE_SNAPSHOT_ID = 3;
+  private static final int OTHER_FILE_SNAPSHOT_OFFSET = 100000;
+  private static final int MODULE_FILE_SNAPSHOT_OFFSET = 200000;
+
+  @Rule
+  public DbTester dbTester = new DbTester();
+
+  @Rule
+  public Benchmark benchmark = new Benchmark();
+
+  @Test
+  public void benchmark() throws Exception {
+    prepareData();
+    DuplicationDao dao = new DuplicationDao(dbTester.myBatis());
+
+    long start = System.currentTimeMillis();
+    long fileByFileCount = 0L;
+    for (int file = 0; file < FILES; file++) {
+      fileByFileCount += dao.selectCandidates(MODULE_FILE_SNAPSHOT_OFFSET + file, LAST_MODULE_SNAPSHOT_ID, "java").size();
+    }
+    long fileByFilePeriod = System.currentTimeMillis() - start;
+    LOGGER.info(String.format("%d candidates loaded file by file with %d queries in %d ms", fileByFileCount, FILES, fileByFilePeriod));
+
+    start = System.currentTimeMillis();
+    CountHandler handler = new CountHandler();
+    dao.selectCandidatesOfProject(MODULE_SNAPSHOT_ID, LAST_MODULE_SNAPSHOT_ID, "java", handler);
+    long bulkPeriod = System.currentTimeMillis() - start;
+    LOGGER.info(String.format("%d candidates loaded at once with 1 query in %d ms", handler.count, bulkPeriod));
+
+    assertThat(fileByFileCount).isEqualTo((long) FILES * DUPLICATED_BLOCKS_PER_FILE);
+    assertThat(handler.count).isEqualTo(fileByFileCount);
+    benchmark.expectLessThanOrEqualTo("Time to load candidates at once", bulkPeriod, fileByFilePeriod);
+  }
+
+  private void prepareData() throws SQLException {
+    LOGGER.info("Populate tables PROJECTS, SNAPSHOTS and DUPLICATIONS_INDEX");
+    Connection connection = dbTester.openConnection();
+    try {
+      connection.setAutoCommit(false);
+      PreparedStatement projects = connection.prepareStatement("INSERT INTO projects (id, uuid, kee, scope, qualifier, language, enabled) VALUES (?, ?, ?, 'FIL', 'CLA', 'java', true)");
+      PreparedStatement snapshots = connection.prepareStatement("INSERT INTO snapshots (id, project_id, status, islast) VALUES (?, ?, 'P', true)");
+      PreparedStatement blocks = connection.prepareStatement(
+        "INSERT INTO duplications_index (project_snapshot_id, snapshot_id, hash, index_in_file, start_line, end_line) VALUES (?, ?, ?, ?, ?, ?)");
+      for (int file = 0; file < FILES; file++) {
+        // file of another project, with a last snapshot
+        int resourceId = file + 1;
+        projects.setInt(1, resourceId);
+        projects.setString(2, "UUID_" + resourceId);
+        projects.setString(3, "other:src/main/java/File" + file + ".java");
+        projects.addBatch();
+        snapshots.setInt(1, OTHER_FILE_SNAPSHOT_OFFSET + file);
+        snapshots.setInt(2, resourceId);
+        snapshots.addBatch();
+
+        for (int block = 0; block < BLOCKS_PER_FILE; block++) {
+          addBlock(blocks, OTHER_PROJECT_SNAPSHOT_ID, OTHER_FILE_SNAPSHOT_OFFSET + file, hash(file, block, false), block);
+          boolean duplicated = block < DUPLICATED_BLOCKS_PER_FILE;
+          addBlock(blocks, MODULE_SNAPSHOT_ID, MODULE_FILE_SNAPSHOT_OFFSET + file, hash(file, block, !duplicated), block);
+        }
+        if (file % 100 == 99) {
+          projects.executeBatch();
+          snapshots.executeBatch();
+          blocks.executeBatch();
+        }
+      }
+      projects.executeBatch();
+      snapshots.executeBatch();
+      blocks.executeBatch();
+      connection.commit();
+    } finally {
+      DbUtils.closeQuietly(connection);
+    }
+  }
+
+  private static void addBlock(PreparedStatement stmt, int projectSnapshotId, int snapshotId, String hash, int indexInFile) throws SQLException {
+    stmt.setInt(1, projectSnapshotId);
+    stmt.setInt(2, snapshotId);
+    stmt.setString(3, hash);
+    stmt.setInt(4, indexInFile);
+    stmt.setInt(5, indexInFile * 10 + 1);
+    stmt.setInt(6, indexInFile * 10 + 10);
+    stmt.addBatch();
+  }
+
+  private static String hash(int file, int block, boolean unique) {
+    long value = (long) file * BLOCKS_PER_FILE + block;
+    if (unique) {
+      value |= 1L << 40;
+    }
+    return String.format("%016x", value);
+  }
+
+  private static class CountHandler implements ResultHandler {
+    private long count = 0L;
+
+    @Override
+    public void handleResult(ResultContext context) {
+      count++;
+    }
+  }
+}
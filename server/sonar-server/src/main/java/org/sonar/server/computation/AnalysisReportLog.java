@@ -25,6 +25,10 @@ import org.sonar.core.activity.ActivityLog;
 import org.sonar.core.component.ComponentDto;
 import org.sonar.core.computation.db.AnalysisReportDto;
 
+import javax.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 import static org.sonar.api.utils.DateUtils.formatDateTimeNullSafe;
@@ -34,17 +38,28 @@ public class AnalysisReportLog implements ActivityLog {
 
   private static final String ACTION = "LOG_ANALYSIS_REPORT";
 
+  /**
+   * Value of the items and bytes of the steps which don't count them
+   */
+  static final String NOT_APPLICABLE = "n/a";
+
   private final AnalysisReportDto report;
   private final ComponentDto project;
+  private final List<ComputationStepProfile> stepProfiles;
 
   public AnalysisReportLog(AnalysisReportDto report, ComponentDto project) {
+    this(report, project, Collections.<ComputationStepProfile>emptyList());
+  }
+
+  public AnalysisReportLog(AnalysisReportDto report, ComponentDto project, List<ComputationStepProfile> stepProfiles) {
     this.report = report;
     this.project = project;
+    this.stepProfiles = stepProfiles;
   }
 
   @Override
   public Map<String, String> getDetails() {
-    return ImmutableMap.<String, String>builder()
+    ImmutableMap.Builder<String, String> details = ImmutableMap.<String, String>builder()
       .put("key", String.valueOf(report.getId()))
       .put("projectKey", project.key())
       .put("projectName", project.name())
@@ -52,8 +67,19 @@ public class AnalysisReportLog implements ActivityLog {
       .put("status", String.valueOf(report.getStatus()))
       .put("submittedAt", formatDateTimeNullSafe(timeToDate(report.getCreatedAt())))
       .put("startedAt", formatDateTimeNullSafe(timeToDate(report.getStartedAt())))
-      .put("finishedAt", formatDateTimeNullSafe(timeToDate(report.getFinishedAt())))
-      .build();
+      .put("finishedAt", formatDateTimeNullSafe(timeToDate(report.getFinishedAt())));
+    // details are serialized with KeyValueFormat, so values can't be nested
+    for (ComputationStepProfile stepProfile : stepProfiles) {
+      String prefix = "step:" + stepProfile.getStepKey() + ":";
+      details.put(prefix + "duration", String.valueOf(stepProfile.getDurationMs()));
+      details.put(prefix + "items", valueOrNotApplicable(stepProfile.getProcessedItems()));
+      details.put(prefix + "bytes", valueOrNotApplicable(stepProfile.getReadBytes()));
+    }
+    return details.build();
+  }
+
+  private static String valueOrNotApplicable(@Nullable Long value) {
+    return value == null ? NOT_APPLICABLE : String.valueOf(value);
   }
 
   @Override
@@ -41,10 +41,14 @@ public class AnalysisReportQueue implements ServerComponent {
 
   private final DbClient dbClient;
   private final System2 system2;
+  private final AnalysisReportQueueSignal signal;
+  private final AnalysisReportStore store;
 
-  public AnalysisReportQueue(DbClient dbClient, System2 system2) {
+  public AnalysisReportQueue(DbClient dbClient, System2 system2, AnalysisReportQueueSignal signal, AnalysisReportStore store) {
     this.dbClient = dbClient;
     this.system2 = system2;
+    this.signal = signal;
+    this.store = store;
   }
 
   /**
@@ -55,12 +59,18 @@ public class AnalysisReportQueue implements ServerComponent {
     UserSession.get().checkGlobalPermission(GlobalPermissions.SCAN_EXECUTION);
 
     AnalysisReportDto report = newPendingAnalysisReport(projectKey)
-      .setSnapshotId(snapshotId)
-      .setData(reportData);
+      .setSnapshotId(snapshotId);
     DbSession session = dbClient.openSession(false);
     try {
       checkThatProjectExistsInDatabase(projectKey, session);
-      return insertInDb(report, session).getKey();
+      if (reportData != null && store.isFileStorageEnabled()) {
+        insertInStore(report, reportData, session);
+      } else {
+        insertInDb(report.setData(reportData), session);
+      }
+      String reportKey = report.getKey();
+      signal.reportAdded();
+      return reportKey;
     } finally {
       MyBatis.closeQuietly(session);
     }
@@ -83,6 +93,24 @@ public class AnalysisReportQueue implements ServerComponent {
     return report;
   }
 
+  /**
+   * The row is committed only once the file is complete, so that workers can't pop the report before
+   */
+  private void insertInStore(AnalysisReportDto report, InputStream reportData, DbSession session) {
+    boolean stored = false;
+    try {
+      dbClient.analysisReportDao().insert(session, report, false);
+      store.write(report.getId(), reportData);
+      session.commit(true);
+      stored = true;
+    } finally {
+      if (!stored) {
+        session.rollback(true);
+        store.delete(report);
+      }
+    }
+  }
+
   public void remove(AnalysisReportDto report) {
     checkArgument(report.getStatus().isInFinalState());
 
@@ -91,6 +119,7 @@ public class AnalysisReportQueue implements ServerComponent {
       report.setFinishedAt(system2.now());
       dbClient.analysisReportDao().delete(session, report.getId());
       session.commit();
+      store.delete(report);
     } finally {
       MyBatis.closeQuietly(session);
     }
@@ -40,10 +40,12 @@ public class AnalysisReportQueueCleaner implements Startable, ServerComponent {
 
   private final ServerUpgradeStatus serverUpgradeStatus;
   private final DbClient dbClient;
+  private final AnalysisReportStore store;
 
-  public AnalysisReportQueueCleaner(ServerUpgradeStatus serverUpgradeStatus, DbClient dbClient) {
+  public AnalysisReportQueueCleaner(ServerUpgradeStatus serverUpgradeStatus, DbClient dbClient, AnalysisReportStore store) {
     this.serverUpgradeStatus = serverUpgradeStatus;
     this.dbClient = dbClient;
+    this.store = store;
   }
 
   @Override
@@ -53,6 +55,7 @@ public class AnalysisReportQueueCleaner implements Startable, ServerComponent {
     try {
       if (serverUpgradeStatus.isUpgraded()) {
         dao.truncate(session);
+        store.clean();
       } else {
         dao.resetAllToPendingStatus(session);
       }
@@ -0,0 +1,49 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation;
+
+import org.sonar.api.ServerComponent;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wakes up the idle {@link ComputationWorker}s as soon as a report is added to {@link AnalysisReportQueue},
+ * so that they do not have to poll the database.
+ */
+public class AnalysisReportQueueSignal implements ServerComponent {
+
+  private final Semaphore addedReports = new Semaphore(0);
+
+  /**
+   * Must be called once the new report is committed
+   */
+  public void reportAdded() {
+    addedReports.release();
+  }
+
+  /**
+   * Waits for a report to be added, at most the given time.
+   * @return true if a report was added, false if the timeout elapsed
+   */
+  public boolean awaitReport(long timeout, TimeUnit unit) throws InterruptedException {
+    return addedReports.tryAcquire(timeout, unit);
+  }
+}
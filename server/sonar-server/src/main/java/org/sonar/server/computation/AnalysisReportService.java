@@ -21,8 +21,7 @@
 package org.sonar.server.computation;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.base.Function;
-import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import org.apache.commons.io.IOUtils;
 import org.sonar.api.ServerComponent;
 import org.sonar.api.issue.internal.DefaultIssue;
@@ -41,6 +40,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Date;
+import java.util.List;
 
 public class AnalysisReportService implements ServerComponent {
 
@@ -53,6 +53,7 @@ public class AnalysisReportService implements ServerComponent {
   public void digest(ComputationContext context) {
     loadResources(context);
     saveIssues(context);
+    context.addReadBytes(context.getReportSize());
   }
 
   @VisibleForTesting
@@ -86,13 +87,13 @@ public class AnalysisReportService implements ServerComponent {
     }
   }
 
-  private void saveIssues(final ComputationContext context, IssueStorage issueStorage, Iterable<ReportIssue> reportIssues) {
-    issueStorage.save(Iterables.transform(reportIssues, new Function<ReportIssue, DefaultIssue>() {
-      @Override
-      public DefaultIssue apply(ReportIssue input) {
-        return toIssue(context, input);
-      }
-    }));
+  private void saveIssues(ComputationContext context, IssueStorage issueStorage, Iterable<ReportIssue> reportIssues) {
+    List<DefaultIssue> issues = Lists.newArrayList();
+    for (ReportIssue reportIssue : reportIssues) {
+      issues.add(toIssue(context, reportIssue));
+    }
+    issueStorage.save(issues);
+    context.addProcessedItems(issues.size());
   }
 
   private DefaultIssue toIssue(ComputationContext context, ReportIssue issue) {
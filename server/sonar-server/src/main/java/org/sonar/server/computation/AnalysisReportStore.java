@@ -0,0 +1,148 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation;
+
+import org.apache.commons.io.FileUtils;
+import org.sonar.api.Properties;
+import org.sonar.api.Property;
+import org.sonar.api.ServerComponent;
+import org.sonar.api.config.Settings;
+import org.sonar.api.utils.ZipUtils;
+import org.sonar.core.computation.db.AnalysisReportDto;
+import org.sonar.process.ProcessConstants;
+
+import javax.annotation.CheckForNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Stores the zipped reports in the directory {@code <data dir>/analysis_reports} instead of the column
+ * {@code analysis_reports.report_data}, so that the upload is streamed to disk and the database contains
+ * only the metadata of reports.
+ * <p/>
+ * Files are named by the id of the report. The row of the report is committed only once its file is complete,
+ * so that the report can't be popped from the queue before.
+ * <p/>
+ * The report is still decompressed to a temporary directory before the computation steps run.
+ */
+@Properties({
+  @Property(
+    key = AnalysisReportStore.PROPERTY_STORAGE,
+    defaultValue = AnalysisReportStore.DB_STORAGE,
+    name = "Storage of analysis reports",
+    description = "Either 'db' to store the submitted reports in database or 'file' to store them in the data directory.",
+    project = false,
+    global = false)
+})
+public class AnalysisReportStore implements ServerComponent {
+
+  public static final String PROPERTY_STORAGE = "sonar.computation.reportStorage";
+  public static final String DB_STORAGE = "db";
+  public static final String FILE_STORAGE = "file";
+
+  private final Settings settings;
+
+  public AnalysisReportStore(Settings settings) {
+    this.settings = settings;
+  }
+
+  public boolean isFileStorageEnabled() {
+    return FILE_STORAGE.equals(settings.getString(PROPERTY_STORAGE));
+  }
+
+  /**
+   * Copies the zipped report to the store. The stream is not closed.
+   */
+  public void write(long reportId, InputStream reportData) {
+    File target = file(reportId);
+    File tmp = new File(target.getParentFile(), target.getName() + ".tmp");
+    try {
+      FileUtils.forceMkdir(target.getParentFile());
+      FileUtils.copyInputStreamToFile(reportData, tmp);
+      Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      FileUtils.deleteQuietly(tmp);
+      throw new IllegalStateException(String.format("Failed to store report '%d' in %s", reportId, target), e);
+    }
+  }
+
+  /**
+   * Decompresses the whole report, as steps read it from a directory through
+   * {@link org.sonar.batch.protocol.output.ReportHelper}. The file is looked up even if the file storage
+   * is now disabled, so that the reports queued before the setting changed are still processed.
+   *
+   * @return false if the report is not in the store
+   */
+  public boolean decompressToDir(AnalysisReportDto report, File toDir) {
+    File file = find(report);
+    if (file == null) {
+      return false;
+    }
+    try {
+      ZipUtils.unzip(file, toDir);
+      return true;
+    } catch (IOException e) {
+      throw new IllegalStateException(String.format("Failed to decompress report '%d'", report.getId()), e);
+    }
+  }
+
+  /**
+   * @return the size in bytes of the zipped report, or 0 if it's not in the store
+   */
+  public long size(AnalysisReportDto report) {
+    File file = find(report);
+    return file == null ? 0L : file.length();
+  }
+
+  public void delete(AnalysisReportDto report) {
+    File file = find(report);
+    if (file != null) {
+      FileUtils.deleteQuietly(file);
+    }
+  }
+
+  /**
+   * Removes all the reports from the store
+   */
+  public void clean() {
+    FileUtils.deleteQuietly(dir());
+  }
+
+  @CheckForNull
+  private File find(AnalysisReportDto report) {
+    if (report.getId() == null) {
+      return null;
+    }
+    File file = file(report.getId());
+    return file.isFile() ? file : null;
+  }
+
+  private File file(long reportId) {
+    return new File(dir(), reportId + ".zip");
+  }
+
+  private File dir() {
+    return new File(settings.getString(ProcessConstants.PATH_DATA), "analysis_reports");
+  }
+}
@@ -29,8 +29,10 @@ import org.sonar.core.computation.db.AnalysisReportDto;
 import javax.annotation.CheckForNull;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class ComputationContext {
@@ -40,6 +42,9 @@ public class ComputationContext {
   private final File reportDirectory;
   private Map<Long, ReportComponent> components = new HashMap<>();
   private Date analysisDate;
+  private long reportSize = 0L;
+  private final List<ComputationStepProfile> stepProfiles = new ArrayList<>();
+  private ComputationStepProfile currentStepProfile = new ComputationStepProfile("none");
 
   public ComputationContext(AnalysisReportDto reportDto, ComponentDto project, File reportDir) {
     this.reportDto = reportDto;
@@ -85,4 +90,39 @@ public class ComputationContext {
   public Date getAnalysisDate() {
     return analysisDate;
   }
+
+  /**
+   * Size in bytes of the zipped report
+   */
+  public long getReportSize() {
+    return reportSize;
+  }
+
+  void setReportSize(long reportSize) {
+    this.reportSize = reportSize;
+  }
+
+  /**
+   * Counts the items (issues, files, lines...) processed by the current step
+   */
+  public void addProcessedItems(long count) {
+    currentStepProfile.addProcessedItems(count);
+  }
+
+  /**
+   * Counts the bytes of the report read by the current step
+   */
+  public void addReadBytes(long count) {
+    currentStepProfile.addReadBytes(count);
+  }
+
+  ComputationStepProfile startStepProfile(String stepKey) {
+    currentStepProfile = new ComputationStepProfile(stepKey);
+    stepProfiles.add(currentStepProfile);
+    return currentStepProfile;
+  }
+
+  public List<ComputationStepProfile> getStepProfiles() {
+    return stepProfiles;
+  }
 }
@@ -20,6 +20,7 @@
 
 package org.sonar.server.computation;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Throwables;
 import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
@@ -53,13 +54,25 @@ public class ComputationService implements ServerComponent {
   private final ComputationStepRegistry stepRegistry;
   private final ActivityService activityService;
   private final TempFolder tempFolder;
+  private final AnalysisReportStore reportStore;
+  private final ComputationStepStatistics stepStatistics;
+  private final System2 system;
 
   public ComputationService(DbClient dbClient, ComputationStepRegistry stepRegistry, ActivityService activityService,
-                            TempFolder tempFolder) {
+                            TempFolder tempFolder, AnalysisReportStore reportStore, ComputationStepStatistics stepStatistics) {
+    this(dbClient, stepRegistry, activityService, tempFolder, reportStore, stepStatistics, System2.INSTANCE);
+  }
+
+  @VisibleForTesting
+  ComputationService(DbClient dbClient, ComputationStepRegistry stepRegistry, ActivityService activityService,
+                     TempFolder tempFolder, AnalysisReportStore reportStore, ComputationStepStatistics stepStatistics, System2 system) {
     this.dbClient = dbClient;
     this.stepRegistry = stepRegistry;
     this.activityService = activityService;
     this.tempFolder = tempFolder;
+    this.reportStore = reportStore;
+    this.stepStatistics = stepStatistics;
+    this.system = system;
   }
 
   public void process(AnalysisReportDto report) {
@@ -71,13 +84,15 @@ public class ComputationService implements ServerComponent {
 
     ComponentDto project = findProject(report, session);
     File reportDir = tempFolder.newDir();
+    ComputationContext context = new ComputationContext(report, project, reportDir);
     try {
-      ComputationContext context = new ComputationContext(report, project, reportDir);
-      dbClient.analysisReportDao().selectAndDecompressToDir(session, report.getId(), reportDir);
+      if (reportStore.decompressToDir(report, reportDir)) {
+        context.setReportSize(reportStore.size(report));
+      } else {
+        context.setReportSize(dbClient.analysisReportDao().selectAndDecompressToDir(session, report.getId(), reportDir));
+      }
       for (ComputationStep step : stepRegistry.steps()) {
-        TimeProfiler stepProfiler = new TimeProfiler(LOG).start(step.getDescription());
-        step.execute(session, context);
-        stepProfiler.stop();
+        execute(step, session, context);
       }
       report.succeed();
 
@@ -87,19 +102,32 @@ public class ComputationService implements ServerComponent {
 
     } finally {
       FileUtils.deleteQuietly(reportDir);
-      logActivity(session, report, project);
+      logActivity(session, report, project, context);
       session.commit();
       MyBatis.closeQuietly(session);
       profiler.stop();
     }
   }
 
+  private void execute(ComputationStep step, DbSession session, ComputationContext context) {
+    TimeProfiler stepProfiler = new TimeProfiler(LOG).start(step.getDescription());
+    ComputationStepProfile stepProfile = context.startStepProfile(step.getClass().getSimpleName());
+    long start = system.now();
+    try {
+      step.execute(session, context);
+    } finally {
+      stepProfile.setDurationMs(system.now() - start);
+      stepStatistics.add(stepProfile);
+      stepProfiler.stop();
+    }
+  }
+
   private ComponentDto findProject(AnalysisReportDto report, DbSession session) {
     return dbClient.componentDao().getByKey(session, report.getProjectKey());
   }
 
-  private void logActivity(DbSession session, AnalysisReportDto report, ComponentDto project) {
-    report.setFinishedAt(System2.INSTANCE.now());
-    activityService.write(session, Activity.Type.ANALYSIS_REPORT, new AnalysisReportLog(report, project));
+  private void logActivity(DbSession session, AnalysisReportDto report, ComponentDto project, ComputationContext context) {
+    report.setFinishedAt(system.now());
+    activityService.write(session, Activity.Type.ANALYSIS_REPORT, new AnalysisReportLog(report, project, context.getStepProfiles()));
   }
 }
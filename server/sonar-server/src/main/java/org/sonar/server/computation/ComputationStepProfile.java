@@ -0,0 +1,71 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * Duration, number of processed items and number of read bytes of a {@link org.sonar.server.computation.step.ComputationStep}
+ * executed on a report. Items and bytes are null when the step does not count them, and are then logged as not applicable.
+ */
+public class ComputationStepProfile {
+
+  private final String stepKey;
+  private long durationMs = 0L;
+  private Long processedItems = null;
+  private Long readBytes = null;
+
+  public ComputationStepProfile(String stepKey) {
+    this.stepKey = stepKey;
+  }
+
+  public String getStepKey() {
+    return stepKey;
+  }
+
+  public long getDurationMs() {
+    return durationMs;
+  }
+
+  public ComputationStepProfile setDurationMs(long durationMs) {
+    this.durationMs = durationMs;
+    return this;
+  }
+
+  @CheckForNull
+  public Long getProcessedItems() {
+    return processedItems;
+  }
+
+  public ComputationStepProfile addProcessedItems(long count) {
+    this.processedItems = processedItems == null ? count : (processedItems + count);
+    return this;
+  }
+
+  @CheckForNull
+  public Long getReadBytes() {
+    return readBytes;
+  }
+
+  public ComputationStepProfile addReadBytes(long count) {
+    this.readBytes = readBytes == null ? count : (readBytes + count);
+    return this;
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.sonar.api.ServerComponent;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps in memory the durations of the last executions of each computation step, in order to
+ * provide percentiles without having to search the history of reports.
+ */
+public class ComputationStepStatistics implements ServerComponent {
+
+  static final int WINDOW_SIZE = 1000;
+
+  private final Map<String, Window> windowsByStep = new TreeMap<>();
+
+  public synchronized void add(ComputationStepProfile profile) {
+    Window window = windowsByStep.get(profile.getStepKey());
+    if (window == null) {
+      window = new Window(WINDOW_SIZE);
+      windowsByStep.put(profile.getStepKey(), window);
+    }
+    window.add(profile.getDurationMs());
+  }
+
+  /**
+   * Statistics by step key, sorted by step key
+   */
+  public synchronized Map<String, Summary> summaries() {
+    Map<String, Summary> result = new TreeMap<>();
+    for (Map.Entry<String, Window> entry : windowsByStep.entrySet()) {
+      result.put(entry.getKey(), entry.getValue().summarize());
+    }
+    return result;
+  }
+
+  public static class Summary {
+    private final int count;
+    private final long p50;
+    private final long p95;
+    private final long p99;
+
+    Summary(int count, long p50, long p95, long p99) {
+      this.count = count;
+      this.p50 = p50;
+      this.p95 = p95;
+      this.p99 = p99;
+    }
+
+    /**
+     * Number of executions taken into account, at most {@link #WINDOW_SIZE}
+     */
+    public int count() {
+      return count;
+    }
+
+    public long p50() {
+      return p50;
+    }
+
+    public long p95() {
+      return p95;
+    }
+
+    public long p99() {
+      return p99;
+    }
+  }
+
+  private static class Window {
+    private final long[] durations;
+    private int next = 0;
+    private int count = 0;
+
+    Window(int size) {
+      this.durations = new long[size];
+    }
+
+    void add(long duration) {
+      durations[next] = duration;
+      next = (next + 1) % durations.length;
+      count = Math.min(count + 1, durations.length);
+    }
+
+    Summary summarize() {
+      long[] sorted = Arrays.copyOf(durations, count);
+      Arrays.sort(sorted);
+      return new Summary(count, percentile(sorted, 50), percentile(sorted, 95), percentile(sorted, 99));
+    }
+  }
+
+  /**
+   * Nearest-rank percentile
+   */
+  @VisibleForTesting
+  static long percentile(long[] sorted, int percent) {
+    if (sorted.length == 0) {
+      return 0L;
+    }
+    int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+    return sorted[Math.max(rank, 1) - 1];
+  }
+}
@@ -40,6 +40,13 @@ public class ComputationWorker implements Runnable {
 
   @Override
   public void run() {
+    processNextReport();
+  }
+
+  /**
+   * @return true if a report has been popped from the queue, false if the queue is empty
+   */
+  boolean processNextReport() {
     AnalysisReportDto report = null;
     try {
       report = queue.pop();
@@ -56,6 +63,7 @@ public class ComputationWorker implements Runnable {
         removeSilentlyFromQueue(report);
       }
     }
+    return report != null;
   }
 
   private void removeSilentlyFromQueue(AnalysisReportDto report) {
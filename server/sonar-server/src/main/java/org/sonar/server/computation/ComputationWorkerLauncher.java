@@ -23,7 +23,11 @@ package org.sonar.server.computation;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.picocontainer.Startable;
+import org.sonar.api.Properties;
+import org.sonar.api.Property;
+import org.sonar.api.PropertyType;
 import org.sonar.api.ServerComponent;
+import org.sonar.api.config.Settings;
 import org.sonar.api.platform.Server;
 import org.sonar.api.platform.ServerStartHandler;
 
@@ -32,35 +36,56 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Launches the pool of {@link ComputationWorker}. Reports of different projects are processed concurrently,
+ * reports of a same project are processed one after the other (see {@link AnalysisReportQueue#pop()}).
+ * <p/>
+ * Idle workers are woken up by {@link AnalysisReportQueueSignal} as soon as a report is submitted. The queue
+ * is still polled as a fallback, with a delay that doubles from {@code minDelay} to {@code maxDelay} while
+ * the queue stays empty.
+ */
+@Properties({
+  @Property(
+    key = ComputationWorkerLauncher.PROPERTY_WORKERS,
+    defaultValue = "" + ComputationWorkerLauncher.DEFAULT_WORKERS,
+    name = "Number of analysis reports processed concurrently",
+    description = "Zero disables the processing of analysis reports on this server.",
+    type = PropertyType.INTEGER,
+    project = false,
+    global = false)
+})
 public class ComputationWorkerLauncher implements Startable, ServerComponent, ServerStartHandler {
 
   public static final String THREAD_NAME_PREFIX = "computation-";
+  public static final String PROPERTY_WORKERS = "sonar.computation.workers";
+  static final int DEFAULT_WORKERS = 1;
 
   private final ComputationService service;
   private final AnalysisReportQueue queue;
+  private final AnalysisReportQueueSignal signal;
   private final ScheduledExecutorService executorService;
 
-  private final long delayBetweenTasks;
+  private final int workers;
   private final long delayForFirstStart;
+  private final long minDelay;
+  private final long maxDelay;
   private final TimeUnit timeUnit;
 
-  public ComputationWorkerLauncher(ComputationService service, AnalysisReportQueue queue) {
-    this.service = service;
-    this.queue = queue;
-    this.executorService = Executors.newSingleThreadScheduledExecutor(threadFactoryWithSpecificNameForLogging());
-
-    this.delayBetweenTasks = 10;
-    this.delayForFirstStart = 0;
-    this.timeUnit = TimeUnit.SECONDS;
+  public ComputationWorkerLauncher(Settings settings, ComputationService service, AnalysisReportQueue queue, AnalysisReportQueueSignal signal) {
+    this(service, queue, signal, 0, 10, 300, TimeUnit.SECONDS, settings.getInt(PROPERTY_WORKERS));
   }
 
   @VisibleForTesting
-  ComputationWorkerLauncher(ComputationService service, AnalysisReportQueue queue, long delayForFirstStart, long delayBetweenTasks, TimeUnit timeUnit) {
+  ComputationWorkerLauncher(ComputationService service, AnalysisReportQueue queue, AnalysisReportQueueSignal signal,
+    long delayForFirstStart, long minDelay, long maxDelay, TimeUnit timeUnit, int workers) {
     this.queue = queue;
-    this.executorService = Executors.newSingleThreadScheduledExecutor(threadFactoryWithSpecificNameForLogging());
+    this.signal = signal;
+    this.workers = Math.max(0, workers);
+    this.executorService = Executors.newScheduledThreadPool(this.workers, threadFactoryWithSpecificNameForLogging());
 
-    this.delayBetweenTasks = delayBetweenTasks;
     this.delayForFirstStart = delayForFirstStart;
+    this.minDelay = minDelay;
+    this.maxDelay = Math.max(minDelay, maxDelay);
     this.timeUnit = timeUnit;
     this.service = service;
   }
@@ -72,16 +97,20 @@ public class ComputationWorkerLauncher implements Startable, ServerComponent, Se
 
   @Override
   public void stop() {
-    executorService.shutdown();
-  }
-
-  public void startAnalysisTaskNow() {
-    executorService.execute(new ComputationWorker(queue, service));
+    // interrupt the idle workers
+    executorService.shutdownNow();
   }
 
   @Override
   public void onServerStart(Server server) {
-    executorService.scheduleAtFixedRate(new ComputationWorker(queue, service), delayForFirstStart, delayBetweenTasks, timeUnit);
+    for (int i = 0; i < workers; i++) {
+      executorService.schedule(new WorkerLoop(new ComputationWorker(queue, service)), delayForFirstStart, timeUnit);
+    }
+  }
+
+  @VisibleForTesting
+  int getWorkers() {
+    return workers;
   }
 
   /**
@@ -91,4 +120,39 @@ public class ComputationWorkerLauncher implements Startable, ServerComponent, Se
     return new ThreadFactoryBuilder()
       .setNameFormat(THREAD_NAME_PREFIX + "%d").setPriority(Thread.MIN_PRIORITY).build();
   }
+
+  private class WorkerLoop implements Runnable {
+    private final ComputationWorker worker;
+
+    private WorkerLoop(ComputationWorker worker) {
+      this.worker = worker;
+    }
+
+    @Override
+    public void run() {
+      long delay = minDelay;
+      while (!Thread.currentThread().isInterrupted()) {
+        if (worker.processNextReport()) {
+          delay = minDelay;
+        } else {
+          delay = waitForReport(delay);
+        }
+      }
+    }
+
+    /**
+     * @return the delay to wait the next time the queue is empty
+     */
+    private long waitForReport(long delay) {
+      try {
+        if (signal.awaitReport(delay, timeUnit)) {
+          return minDelay;
+        }
+        return Math.min(delay * 2, maxDelay);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return delay;
+      }
+    }
+  }
 }
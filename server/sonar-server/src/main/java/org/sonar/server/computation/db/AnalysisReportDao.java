@@ -23,6 +23,7 @@ package org.sonar.server.computation.db;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.io.ByteStreams;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
 import org.sonar.api.utils.System2;
 import org.sonar.api.utils.ZipUtils;
 import org.sonar.core.computation.db.AnalysisReportDto;
@@ -76,15 +77,21 @@ public class AnalysisReportDao implements DaoComponent {
     return mapper(session).selectById(id);
   }
 
+  /**
+   * Books the oldest available report. Several workers can call this method concurrently:
+   * a report is claimed by at most one worker and two reports of the same project are never
+   * claimed at the same time.
+   */
   @CheckForNull
   public AnalysisReportDto pop(DbSession session) {
     List<Long> reportIds = mapper(session).selectAvailables(PENDING, WORKING);
-    if (reportIds.isEmpty()) {
-      return null;
+    for (Long reportId : reportIds) {
+      AnalysisReportDto report = tryToPop(session, reportId);
+      if (report != null) {
+        return report;
+      }
     }
-
-    long reportId = reportIds.get(0);
-    return tryToPop(session, reportId);
+    return null;
   }
 
   @VisibleForTesting
@@ -94,27 +101,54 @@ public class AnalysisReportDao implements DaoComponent {
     if (nbOfReportBooked == 0) {
       return null;
     }
+    session.commit();
 
+    // the booking is committed before this check so that, when two workers concurrently book two reports of the
+    // same project, at least the last one sees the other and releases its booking
     AnalysisReportDto result = mapper.selectById(reportId);
-    session.commit();
+    if (isAnotherReportOfProjectWorking(mapper, result)) {
+      mapper.updateWithUnbookingReport(reportId, PENDING, WORKING);
+      session.commit();
+      return null;
+    }
     return result;
   }
 
+  private static boolean isAnotherReportOfProjectWorking(AnalysisReportMapper mapper, AnalysisReportDto report) {
+    for (AnalysisReportDto other : mapper.selectByProjectKey(report.getProjectKey())) {
+      if (!other.getId().equals(report.getId()) && WORKING.equals(other.getStatus())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   public List<AnalysisReportDto> selectAll(DbSession session) {
     return mapper(session).selectAll();
   }
 
   public AnalysisReportDto insert(DbSession session, AnalysisReportDto report) {
+    return insert(session, report, true);
+  }
+
+  /**
+   * The generated id is set on the report.
+   *
+   * @param commit if false, the caller is responsible for committing the session, for example after having
+   *               stored the report data outside the database
+   */
+  public AnalysisReportDto insert(DbSession session, AnalysisReportDto report, boolean commit) {
     report.setCreatedAt(system2.now());
     report.setUpdatedAt(system2.now());
 
     Connection connection = session.getConnection();
     PreparedStatement ps = null;
+    ResultSet generatedKeys = null;
     try {
       ps = connection.prepareStatement(
         "insert into analysis_reports " +
           " (project_key, snapshot_id, report_status, report_data, created_at, updated_at, started_at, finished_at)" +
-          " values (?, ?, ?, ?, ?, ?, ?, ?)");
+          " values (?, ?, ?, ?, ?, ?, ?, ?)", new String[] {"id"});
       ps.setString(1, report.getProjectKey());
       ps.setLong(2, report.getSnapshotId());
       ps.setString(3, report.getStatus().toString());
@@ -125,10 +159,17 @@ public class AnalysisReportDao implements DaoComponent {
       setLong(ps, 8, report.getFinishedAt());
 
       ps.executeUpdate();
-      connection.commit();
+      generatedKeys = ps.getGeneratedKeys();
+      if (generatedKeys.next()) {
+        report.setId(generatedKeys.getLong(1));
+      }
+      if (commit) {
+        connection.commit();
+      }
     } catch (SQLException | IOException e) {
       throw new IllegalStateException(String.format("Failed to insert %s in the database", report), e);
     } finally {
+      DatabaseUtils.closeQuietly(generatedKeys);
       DatabaseUtils.closeQuietly(ps);
     }
 
@@ -152,9 +193,12 @@ public class AnalysisReportDao implements DaoComponent {
   }
 
   @CheckForNull
-  public void selectAndDecompressToDir(DbSession session, long id, File toDir) {
+  /**
+   * @return the size in bytes of the zipped report
+   */
+  public long selectAndDecompressToDir(DbSession session, long id, File toDir) {
     Connection connection = session.getConnection();
-    InputStream stream = null;
+    CountingInputStream stream = null;
     PreparedStatement ps = null;
     ResultSet rs;
     try {
@@ -163,12 +207,15 @@ public class AnalysisReportDao implements DaoComponent {
 
       rs = ps.executeQuery();
       if (rs.next()) {
-        stream = rs.getBinaryStream(1);
-        if (stream != null) {
+        InputStream data = rs.getBinaryStream(1);
+        if (data != null) {
+          stream = new CountingInputStream(data);
           ZipUtils.unzip(stream, toDir);
+          return stream.getByteCount();
         }
       }
       // TODO what to do if id not found or no stream ?
+      return 0L;
     } catch (SQLException e) {
       throw new IllegalStateException(String.format("Failed to read report '%d' in the database", id), e);
     } catch (IOException e) {
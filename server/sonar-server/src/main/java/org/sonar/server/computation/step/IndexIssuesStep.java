@@ -39,7 +39,7 @@ public class IndexIssuesStep implements ComputationStep {
   @Override
   public void execute(DbSession session, ComputationContext context) {
     authorizationIndexer.index();
-    indexer.index();
+    indexer.index(context.getProject().uuid());
   }
 
   @Override
@@ -0,0 +1,75 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.ws;
+
+import org.sonar.api.server.ws.Request;
+import org.sonar.api.server.ws.RequestHandler;
+import org.sonar.api.server.ws.Response;
+import org.sonar.api.server.ws.WebService;
+import org.sonar.api.utils.text.JsonWriter;
+import org.sonar.core.permission.GlobalPermissions;
+import org.sonar.server.computation.ComputationStepStatistics;
+import org.sonar.server.user.UserSession;
+
+import java.util.Map;
+
+/**
+ * @since 5.1
+ */
+public class StepStatsWsAction implements ComputationWsAction, RequestHandler {
+
+  public static final String ACTION = "step_stats";
+
+  private final ComputationStepStatistics statistics;
+
+  public StepStatsWsAction(ComputationStepStatistics statistics) {
+    this.statistics = statistics;
+  }
+
+  @Override
+  public void define(WebService.NewController controller) {
+    controller
+      .createAction(ACTION)
+      .setDescription("Percentiles of the durations, in milliseconds, of the last executions of each computation step since server startup")
+      .setSince("5.1")
+      .setInternal(true)
+      .setHandler(this);
+  }
+
+  @Override
+  public void handle(Request request, Response response) {
+    UserSession.get().checkGlobalPermission(GlobalPermissions.SYSTEM_ADMIN);
+
+    JsonWriter json = response.newJsonWriter().beginObject();
+    json.name("steps").beginArray();
+    for (Map.Entry<String, ComputationStepStatistics.Summary> entry : statistics.summaries().entrySet()) {
+      ComputationStepStatistics.Summary summary = entry.getValue();
+      json.beginObject()
+        .prop("key", entry.getKey())
+        .prop("count", summary.count())
+        .prop("p50", summary.p50())
+        .prop("p95", summary.p95())
+        .prop("p99", summary.p99())
+        .endObject();
+    }
+    json.endArray();
+    json.endObject().close();
+  }
+}
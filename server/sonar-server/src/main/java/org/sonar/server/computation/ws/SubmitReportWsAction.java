@@ -25,7 +25,6 @@ import org.sonar.api.server.ws.RequestHandler;
 import org.sonar.api.server.ws.Response;
 import org.sonar.api.server.ws.WebService;
 import org.sonar.server.computation.AnalysisReportQueue;
-import org.sonar.server.computation.ComputationWorkerLauncher;
 
 import java.io.InputStream;
 
@@ -37,11 +36,9 @@ public class SubmitReportWsAction implements ComputationWsAction, RequestHandler
   public static final String PARAM_REPORT_DATA = "report";
 
   private final AnalysisReportQueue queue;
-  private final ComputationWorkerLauncher workerLauncher;
 
-  public SubmitReportWsAction(AnalysisReportQueue queue, ComputationWorkerLauncher workerLauncher) {
+  public SubmitReportWsAction(AnalysisReportQueue queue) {
     this.queue = queue;
-    this.workerLauncher = workerLauncher;
   }
 
   @Override
@@ -76,7 +73,6 @@ public class SubmitReportWsAction implements ComputationWsAction, RequestHandler
     long snapshotId = request.mandatoryParamAsLong(PARAM_SNAPSHOT);
     try (InputStream reportData = request.paramAsInputStream(PARAM_REPORT_DATA)) {
       String reportKey = queue.add(projectKey, snapshotId, reportData);
-      workerLauncher.startAnalysisTaskNow();
       response.newJsonWriter()
         .beginObject()
         .prop("key", reportKey)
@@ -0,0 +1,103 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.db.migrations.v51;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.commons.io.IOUtils;
+import org.sonar.core.persistence.Database;
+import org.sonar.core.source.db.FileSourceDataColumn;
+import org.sonar.core.source.db.FileSourceDataWriter;
+import org.sonar.server.db.migrations.BaseDataChange;
+import org.sonar.server.db.migrations.MassUpdate;
+import org.sonar.server.db.migrations.Select;
+import org.sonar.server.db.migrations.SqlStatement;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Converts the CSV data of FILE_SOURCES.DATA to the binary format of FILE_SOURCES.BINARY_DATA. The data hash
+ * is computed on the binary data, as done by the batch, so that the files which don't change are not
+ * written again by their next analysis.
+ * @since 5.1
+ */
+public class FeedFileSourcesBinaryData extends BaseDataChange {
+
+  public FeedFileSourcesBinaryData(Database db) {
+    super(db);
+  }
+
+  @Override
+  public void execute(Context context) throws SQLException {
+    MassUpdate massUpdate = context.prepareMassUpdate();
+    massUpdate.select("SELECT fs.id, fs.data FROM file_sources fs WHERE fs.binary_data IS NULL AND fs.data IS NOT NULL");
+    massUpdate.update("UPDATE file_sources SET binary_data=?, data_hash=?, data=NULL WHERE id=?");
+    massUpdate.rowPluralName("file sources");
+    massUpdate.execute(new MassUpdate.Handler() {
+      @Override
+      public boolean handle(Select.Row row, SqlStatement update) throws SQLException {
+        Long id = row.getLong(1);
+        String data = row.getString(2);
+        byte[] binaryData = toBinary(id, data);
+        update.setBytes(1, binaryData);
+        update.setString(2, DigestUtils.md5Hex(binaryData));
+        update.setLong(3, id);
+        return true;
+      }
+    });
+  }
+
+  static byte[] toBinary(Long fileSourceId, String csvData) {
+    List<CSVRecord> records;
+    CSVParser parser = null;
+    try {
+      parser = new CSVParser(new StringReader(csvData), CSVFormat.DEFAULT);
+      records = parser.getRecords();
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to parse CSV data of file source " + fileSourceId, e);
+    } finally {
+      IOUtils.closeQuietly(parser);
+    }
+
+    FileSourceDataColumn[] columns = FileSourceDataColumn.values();
+    FileSourceDataWriter writer = new FileSourceDataWriter(records.size());
+    int line = 1;
+    for (CSVRecord record : records) {
+      // source is always the last value, even if the row has less columns than expected. The missing
+      // columns are considered as empty.
+      int lastIndex = record.size() - 1;
+      for (int i = 0; i < columns.length - 1; i++) {
+        writer.set(columns[i], line, i < lastIndex ? nullIfEmpty(record.get(i)) : null);
+      }
+      writer.set(FileSourceDataColumn.SOURCE, line, record.get(lastIndex));
+      line++;
+    }
+    return writer.toBytes();
+  }
+
+  private static String nullIfEmpty(String s) {
+    return s.isEmpty() ? null : s;
+  }
+}
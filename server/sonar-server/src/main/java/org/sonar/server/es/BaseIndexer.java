@@ -47,16 +47,31 @@ public abstract class BaseIndexer implements ServerComponent, Startable {
 
   public void index() {
     final long requestedAt = System.currentTimeMillis();
-    Future submit = executor.submit(new Runnable() {
+    submitAndWait(new Runnable() {
       @Override
       public void run() {
         if (requestedAt > lastUpdatedAt) {
-          long l = doIndex(lastUpdatedAt);
-          // l can be 0 if no documents were indexed
-          lastUpdatedAt = Math.max(l, lastUpdatedAt);
+          indexUpdatedDocuments();
         }
       }
     });
+  }
+
+  /**
+   * Indexes the documents of the given project that were updated since the last indexing. Unlike {@link #index()},
+   * it does not depend on the number of documents updated in the other projects.
+   */
+  public void index(final String projectUuid) {
+    submitAndWait(new Runnable() {
+      @Override
+      public void run() {
+        doIndex(projectUuid, lastUpdatedAt);
+      }
+    });
+  }
+
+  private void submitAndWait(Runnable task) {
+    Future submit = executor.submit(task);
     try {
       Uninterruptibles.getUninterruptibly(submit);
     } catch (ExecutionException e) {
@@ -64,6 +79,20 @@ public abstract class BaseIndexer implements ServerComponent, Startable {
     }
   }
 
+  private void indexUpdatedDocuments() {
+    long l = doIndex(lastUpdatedAt);
+    // l can be 0 if no documents were indexed
+    lastUpdatedAt = Math.max(l, lastUpdatedAt);
+  }
+
+  /**
+   * Must not change the date of last indexing, as documents of other projects are not indexed. By default
+   * the documents of all the projects are indexed.
+   */
+  protected void doIndex(String projectUuid, long lastUpdatedAt) {
+    indexUpdatedDocuments();
+  }
+
   protected abstract long doIndex(long lastUpdatedAt);
 
   @Override
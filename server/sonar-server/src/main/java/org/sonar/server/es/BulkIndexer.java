@@ -22,6 +22,7 @@ package org.sonar.server.es;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.ActionRequest;
 import org.elasticsearch.action.admin.indices.settings.get.GetSettingsResponse;
 import org.elasticsearch.action.admin.indices.settings.put.UpdateSettingsRequestBuilder;
@@ -38,7 +39,11 @@ import org.sonar.server.util.ProgressLogger;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Helper to bulk requests in an efficient way :
@@ -46,12 +51,21 @@ import java.util.concurrent.atomic.AtomicLong;
  *   <li>bulk request is sent on the wire when its size is higher than 5Mb</li>
  *   <li>on large table indexing, replicas and automatic refresh can be temporarily disabled</li>
  *   <li>index refresh is optional (enabled by default)</li>
+ *   <li>bulk requests can be sent asynchronously, with a bounded number of requests in flight, so that
+ *   reading the next documents is not blocked by Elasticsearch (disabled by default)</li>
  * </ul>
  */
 public class BulkIndexer implements Startable {
   private static final Logger LOGGER = LoggerFactory.getLogger(BulkIndexer.class);
   private static final long FLUSH_BYTE_SIZE = new ByteSizeValue(5, ByteSizeUnit.MB).bytes();
   private static final String REFRESH_INTERVAL_SETTING = "index.refresh_interval";
+
+  /**
+   * Number of concurrent bulk requests recommended on large indexing
+   * @see #setConcurrentRequests(int)
+   */
+  public static final int LARGE_CONCURRENT_REQUESTS = 2;
+
   private static final String ALREADY_STARTED_MESSAGE = "Bulk indexing is already started";
 
   private final EsClient client;
@@ -59,8 +73,12 @@ public class BulkIndexer implements Startable {
   private boolean large = false;
   private boolean refresh = true;
   private long flushByteSize = FLUSH_BYTE_SIZE;
+  private int concurrentRequests = 0;
   private BulkRequestBuilder bulkRequest = null;
   private Map<String, Object> largeInitialSettings = null;
+  private Semaphore inFlightRequests = null;
+  private final Queue<ActionRequest> failedRequests = new ConcurrentLinkedQueue<>();
+  private final AtomicReference<Throwable> bulkFailure = new AtomicReference<>();
 
   private final AtomicLong counter = new AtomicLong(0L);
   private final ProgressLogger progress;
@@ -98,6 +116,17 @@ public class BulkIndexer implements Startable {
     return this;
   }
 
+  /**
+   * Maximum number of bulk requests that are executed asynchronously while new requests
+   * are being added. Zero, the default value, means that bulk requests are executed synchronously.
+   */
+  public BulkIndexer setConcurrentRequests(int i) {
+    Preconditions.checkState(bulkRequest == null, ALREADY_STARTED_MESSAGE);
+    Preconditions.checkArgument(i >= 0, "Number of concurrent requests must be positive or zero: " + i);
+    this.concurrentRequests = i;
+    return this;
+  }
+
   @Override
   public void start() {
     Preconditions.checkState(bulkRequest == null, ALREADY_STARTED_MESSAGE);
@@ -121,6 +150,9 @@ public class BulkIndexer implements Startable {
       updateSettings(bulkSettings);
     }
     bulkRequest = client.prepareBulk();
+    if (concurrentRequests > 0) {
+      inFlightRequests = new Semaphore(concurrentRequests);
+    }
     counter.set(0L);
     progress.start();
   }
@@ -140,6 +172,7 @@ public class BulkIndexer implements Startable {
       if (bulkRequest.numberOfActions() > 0) {
         executeBulk(bulkRequest);
       }
+      awaitInFlightRequests();
     } finally {
       progress.stop();
     }
@@ -156,6 +189,7 @@ public class BulkIndexer implements Startable {
       updateSettings(largeInitialSettings);
     }
     bulkRequest = null;
+    inFlightRequests = null;
   }
 
   private void updateSettings(Map<String, Object> settings) {
@@ -165,16 +199,90 @@ public class BulkIndexer implements Startable {
   }
 
   private void executeBulk(BulkRequestBuilder bulkRequest) {
-    List<ActionRequest> retries = Lists.newArrayList();
-    BulkResponse response = bulkRequest.get();
+    if (inFlightRequests == null) {
+      BulkResponse response = bulkRequest.get();
+      retry(failedRequests(bulkRequest, response));
+    } else {
+      executeAsyncBulk(bulkRequest);
+    }
+  }
+
+  /**
+   * Waits for a free slot, then sends the bulk request without waiting for its response.
+   * Failed items are retried by the thread that adds requests, never by the Elasticsearch
+   * thread that notifies the response.
+   */
+  private void executeAsyncBulk(final BulkRequestBuilder bulkRequest) {
+    acquire(1);
+    retry(pollFailedRequests());
+    checkNoBulkFailure();
+    bulkRequest.execute(new ActionListener<BulkResponse>() {
+      @Override
+      public void onResponse(BulkResponse response) {
+        try {
+          failedRequests.addAll(failedRequests(bulkRequest, response));
+        } finally {
+          inFlightRequests.release();
+        }
+      }
 
+      @Override
+      public void onFailure(Throwable e) {
+        try {
+          bulkFailure.compareAndSet(null, e);
+        } finally {
+          inFlightRequests.release();
+        }
+      }
+    });
+  }
+
+  private void awaitInFlightRequests() {
+    if (inFlightRequests != null) {
+      acquire(concurrentRequests);
+      inFlightRequests.release(concurrentRequests);
+      retry(pollFailedRequests());
+      checkNoBulkFailure();
+    }
+  }
+
+  private void acquire(int permits) {
+    try {
+      inFlightRequests.acquire(permits);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for bulk requests on index " + indexName, e);
+    }
+  }
+
+  private void checkNoBulkFailure() {
+    Throwable failure = bulkFailure.getAndSet(null);
+    if (failure != null) {
+      throw new IllegalStateException("Fail to execute bulk request on index " + indexName, failure);
+    }
+  }
+
+  private List<ActionRequest> pollFailedRequests() {
+    List<ActionRequest> requests = Lists.newArrayList();
+    ActionRequest request = failedRequests.poll();
+    while (request != null) {
+      requests.add(request);
+      request = failedRequests.poll();
+    }
+    return requests;
+  }
+
+  private static List<ActionRequest> failedRequests(BulkRequestBuilder bulkRequest, BulkResponse response) {
+    List<ActionRequest> failures = Lists.newArrayList();
     for (BulkItemResponse item : response.getItems()) {
       if (item.isFailed()) {
-        ActionRequest retry = bulkRequest.request().requests().get(item.getItemId());
-        retries.add(retry);
+        failures.add(bulkRequest.request().requests().get(item.getItemId()));
       }
     }
+    return failures;
+  }
 
+  private void retry(List<ActionRequest> retries) {
     if (!retries.isEmpty()) {
       LOGGER.warn(String.format("%d index requests failed. Trying again.", retries.size()));
       BulkRequestBuilder retryBulk = client.prepareBulk();
@@ -0,0 +1,144 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.es;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.server.util.ProgressLogger;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Full indexing that is split by project. Projects are distributed between a fixed number of threads, each one
+ * reading db with its own connection and sending documents through its own {@link BulkIndexer}.
+ * Replicas and automatic refresh are disabled during the whole indexing, as with {@link BulkIndexer#setLarge(boolean)}.
+ */
+public class ParallelProjectIndexer {
+
+  public static final int DEFAULT_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+  public interface ProjectIndexer {
+    /**
+     * Adds the documents of the given project to a started bulk, and returns the max update date of documents.
+     */
+    long index(String projectUuid, BulkIndexer bulk);
+  }
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ParallelProjectIndexer.class);
+
+  private final EsClient client;
+  private final String indexName;
+  private int threads = DEFAULT_THREADS;
+
+  public ParallelProjectIndexer(EsClient client, String indexName) {
+    this.client = client;
+    this.indexName = indexName;
+  }
+
+  public ParallelProjectIndexer setThreads(int i) {
+    if (i < 1) {
+      throw new IllegalArgumentException("Number of threads must be strictly positive: " + i);
+    }
+    this.threads = i;
+    return this;
+  }
+
+  public int getThreads() {
+    return threads;
+  }
+
+  /**
+   * @return the max update date of indexed documents, 0 if no documents
+   */
+  public long index(Collection<String> projectUuids, final ProjectIndexer projectIndexer) {
+    final Queue<String> remainingProjects = new ConcurrentLinkedQueue<>(projectUuids);
+    final AtomicLong counter = new AtomicLong(0L);
+    ProgressLogger progress = new ProgressLogger(String.format("Progress[ParallelProjectIndexer[%s]]", indexName), counter, LOGGER)
+      .setPluralLabel("projects");
+
+    // no documents are sent through this bulk. It only disables replicas and refresh during the whole
+    // indexing, then optimizes and refreshes index.
+    BulkIndexer largeSettings = new BulkIndexer(client, indexName).setLarge(true);
+    largeSettings.start();
+    progress.start();
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<Long>> futures = Lists.newArrayList();
+      for (int i = 0; i < threads; i++) {
+        futures.add(executor.submit(new Callable<Long>() {
+          @Override
+          public Long call() {
+            return indexProjects(remainingProjects, projectIndexer, counter);
+          }
+        }));
+      }
+      long maxUpdatedAt = 0L;
+      for (Future<Long> future : futures) {
+        maxUpdatedAt = Math.max(maxUpdatedAt, getResult(future));
+      }
+      return maxUpdatedAt;
+
+    } finally {
+      // stop other threads on failure
+      executor.shutdownNow();
+      progress.stop();
+      largeSettings.stop();
+    }
+  }
+
+  private long indexProjects(Queue<String> remainingProjects, ProjectIndexer projectIndexer, AtomicLong counter) {
+    BulkIndexer bulk = new BulkIndexer(client, indexName)
+      .setRefresh(false)
+      .setConcurrentRequests(BulkIndexer.LARGE_CONCURRENT_REQUESTS);
+    bulk.start();
+    long maxUpdatedAt = 0L;
+    try {
+      String projectUuid = remainingProjects.poll();
+      while (projectUuid != null && !Thread.currentThread().isInterrupted()) {
+        maxUpdatedAt = Math.max(maxUpdatedAt, projectIndexer.index(projectUuid, bulk));
+        counter.incrementAndGet();
+        projectUuid = remainingProjects.poll();
+      }
+    } finally {
+      bulk.stop();
+    }
+    return maxUpdatedAt;
+  }
+
+  private static long getResult(Future<Long> future) {
+    try {
+      return Uninterruptibles.getUninterruptibly(future);
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+}
@@ -29,9 +29,11 @@ import org.sonar.server.db.DbClient;
 import org.sonar.server.es.BaseIndexer;
 import org.sonar.server.es.BulkIndexer;
 import org.sonar.server.es.EsClient;
+import org.sonar.server.es.ParallelProjectIndexer;
 
 import java.sql.Connection;
 import java.util.Iterator;
+import java.util.List;
 
 public class IssueIndexer extends BaseIndexer {
 
@@ -44,18 +46,66 @@ public class IssueIndexer extends BaseIndexer {
 
   @Override
   protected long doIndex(long lastUpdatedAt) {
-    return doIndex(createBulkIndexer(false), lastUpdatedAt);
+    if (lastUpdatedAt == 0L) {
+      return indexAllByProject();
+    }
+    return doIndex(createBulkIndexer(), lastUpdatedAt);
+  }
+
+  @Override
+  protected void doIndex(String projectUuid, long lastUpdatedAt) {
+    BulkIndexer bulk = createBulkIndexer();
+    bulk.start();
+    addProjectIssues(bulk, projectUuid, lastUpdatedAt);
+    bulk.stop();
   }
 
   public void indexAll() {
-    doIndex(createBulkIndexer(true), 0L);
+    indexAllByProject();
+  }
+
+  /**
+   * Issues are indexed project by project, in parallel
+   */
+  private long indexAllByProject() {
+    List<String> projectUuids;
+    DbSession dbSession = dbClient.openSession(false);
+    Connection dbConnection = dbSession.getConnection();
+    try {
+      projectUuids = IssueResultSetIterator.selectProjectUuids(dbClient, dbConnection);
+    } finally {
+      DbUtils.closeQuietly(dbConnection);
+      dbSession.close();
+    }
+
+    return new ParallelProjectIndexer(esClient, IssueIndexDefinition.INDEX).index(projectUuids, new ParallelProjectIndexer.ProjectIndexer() {
+      @Override
+      public long index(String projectUuid, BulkIndexer bulk) {
+        return addProjectIssues(bulk, projectUuid, 0L);
+      }
+    });
+  }
+
+  private long addProjectIssues(BulkIndexer bulk, String projectUuid, long lastUpdatedAt) {
+    DbSession dbSession = dbClient.openSession(false);
+    Connection dbConnection = dbSession.getConnection();
+    try {
+      IssueResultSetIterator rowIt = IssueResultSetIterator.createForProject(dbClient, dbConnection, projectUuid, lastUpdatedAt);
+      long maxDate = addIssues(bulk, rowIt);
+      rowIt.close();
+      return maxDate;
+
+    } finally {
+      DbUtils.closeQuietly(dbConnection);
+      dbSession.close();
+    }
   }
 
   /**
    * For benchmarks
    */
   public void index(Iterator<IssueDoc> issues) {
-    doIndex(createBulkIndexer(false), issues);
+    doIndex(createBulkIndexer(), issues);
   }
 
   private long doIndex(BulkIndexer bulk, long lastUpdatedAt) {
@@ -76,6 +126,12 @@ public class IssueIndexer extends BaseIndexer {
 
   private long doIndex(BulkIndexer bulk, Iterator<IssueDoc> issues) {
     bulk.start();
+    long maxDate = addIssues(bulk, issues);
+    bulk.stop();
+    return maxDate;
+  }
+
+  private long addIssues(BulkIndexer bulk, Iterator<IssueDoc> issues) {
     long maxDate = 0L;
     while (issues.hasNext()) {
       IssueDoc issue = issues.next();
@@ -84,7 +140,6 @@ public class IssueIndexer extends BaseIndexer {
       // it's more efficient to sort programmatically than in SQL on some databases (MySQL for instance)
       maxDate = Math.max(maxDate, issue.updateDate().getTime());
     }
-    bulk.stop();
     return maxDate;
   }
 
@@ -99,10 +154,8 @@ public class IssueIndexer extends BaseIndexer {
     }
   }
 
-  BulkIndexer createBulkIndexer(boolean large) {
-    BulkIndexer bulk = new BulkIndexer(esClient, IssueIndexDefinition.INDEX);
-    bulk.setLarge(large);
-    return bulk;
+  BulkIndexer createBulkIndexer() {
+    return new BulkIndexer(esClient, IssueIndexDefinition.INDEX);
   }
 
   private UpdateRequest newUpsertRequest(IssueDoc issue) {
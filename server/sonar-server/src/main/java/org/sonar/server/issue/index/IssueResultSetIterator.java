@@ -24,6 +24,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Date;
+import java.util.List;
 
 import org.apache.commons.lang.StringUtils;
 import org.sonar.api.rule.RuleKey;
@@ -33,6 +34,7 @@ import org.sonar.server.db.migrations.SqlUtil;
 
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 /**
@@ -82,6 +84,13 @@ class IssueResultSetIterator extends ResultSetIterator<IssueDoc> {
 
   private static final String SQL_AFTER_DATE = SQL_ALL + " where i.updated_at>?";
 
+  private static final String SQL_PROJECT = SQL_ALL + " where root.uuid=?";
+
+  private static final String SQL_PROJECT_AFTER_DATE = SQL_PROJECT + " and i.updated_at>?";
+
+  private static final String SQL_PROJECT_UUIDS = "select distinct root.uuid from issues i " +
+    "inner join projects root on root.id=i.root_component_id";
+
   private static final Splitter TAGS_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
 
   static IssueResultSetIterator create(DbClient dbClient, Connection connection, long afterDate) {
@@ -97,6 +106,45 @@ class IssueResultSetIterator extends ResultSetIterator<IssueDoc> {
     }
   }
 
+  /**
+   * Issues of the given project, so that the number of rows does not depend on the activity of the other projects
+   */
+  static IssueResultSetIterator createForProject(DbClient dbClient, Connection connection, String projectUuid, long afterDate) {
+    try {
+      String sql = afterDate > 0L ? SQL_PROJECT_AFTER_DATE : SQL_PROJECT;
+      PreparedStatement stmt = dbClient.newScrollingSelectStatement(connection, sql);
+      stmt.setString(1, projectUuid);
+      if (afterDate > 0L) {
+        stmt.setLong(2, afterDate);
+      }
+      return new IssueResultSetIterator(stmt);
+    } catch (SQLException e) {
+      throw new IllegalStateException("Fail to prepare SQL request to select issues of project " + projectUuid, e);
+    }
+  }
+
+  /**
+   * UUIDs of the projects that have issues, used to split indexing of all issues
+   */
+  static List<String> selectProjectUuids(DbClient dbClient, Connection connection) {
+    try {
+      PreparedStatement stmt = dbClient.newScrollingSelectStatement(connection, SQL_PROJECT_UUIDS);
+      ResultSetIterator<String> it = new ResultSetIterator<String>(stmt) {
+        @Override
+        protected String read(ResultSet rs) throws SQLException {
+          return rs.getString(1);
+        }
+      };
+      try {
+        return Lists.newArrayList(it);
+      } finally {
+        it.close();
+      }
+    } catch (SQLException e) {
+      throw new IllegalStateException("Fail to select the projects that have issues", e);
+    }
+  }
+
   private IssueResultSetIterator(PreparedStatement stmt) throws SQLException {
     super(stmt);
   }
@@ -0,0 +1,183 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.notifications;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.notifications.Notification;
+import org.sonar.api.notifications.NotificationChannel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers the notifications of a channel with a bounded pool of threads, so that a slow channel
+ * does not delay the other ones. All the notifications of a recipient are delivered by the same thread,
+ * so they are received in the order they have been queued.
+ *
+ * @since 5.1
+ */
+class NotificationChannelDeliverer {
+
+  private static final Logger LOG = LoggerFactory.getLogger(NotificationChannelDeliverer.class);
+
+  /**
+   * When the queue of a thread is full, the caller waits for a free slot. The task is rejected if the thread
+   * is stopped in the meantime, as it would never be executed.
+   */
+  private static final RejectedExecutionHandler WAIT_FOR_FREE_SLOT = new RejectedExecutionHandler() {
+    @Override
+    public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+      try {
+        while (!executor.isShutdown()) {
+          if (executor.getQueue().offer(task, 100L, TimeUnit.MILLISECONDS)) {
+            if (executor.isShutdown() && executor.getQueue().remove(task)) {
+              break;
+            }
+            return;
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RejectedExecutionException("Interrupted while waiting for delivery of notifications", e);
+      }
+      throw new RejectedExecutionException("Notification service is stopped");
+    }
+  };
+
+  private final NotificationChannel channel;
+  private final ThreadPoolExecutor[] workers;
+  private final AtomicLong deliveredCount = new AtomicLong();
+  private final AtomicLong failedCount = new AtomicLong();
+
+  NotificationChannelDeliverer(NotificationChannel channel, int threads, int queueCapacity) {
+    this.channel = channel;
+    this.workers = new ThreadPoolExecutor[threads];
+    for (int i = 0; i < threads; i++) {
+      workers[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity),
+        new ThreadFactoryBuilder().setNameFormat("notifications-" + channel.getKey() + "-" + i).setDaemon(true).build(),
+        WAIT_FOR_FREE_SLOT);
+    }
+  }
+
+  NotificationChannel channel() {
+    return channel;
+  }
+
+  /**
+   * Schedules the delivery of the notification. Blocks while the queue of the thread of the recipient is full.
+   * The notification is dropped if the deliverer is stopped.
+   */
+  void deliver(Notification notification, String username) {
+    ThreadPoolExecutor worker = workers[(username.hashCode() & Integer.MAX_VALUE) % workers.length];
+    Delivery delivery = new Delivery(notification, username);
+    try {
+      worker.execute(delivery);
+    } catch (RejectedExecutionException e) {
+      logDropped(delivery);
+    }
+  }
+
+  private void logDropped(Delivery delivery) {
+    LOG.warn("Notification " + delivery.notification + " for user " + delivery.username + " via " + channel + " is not delivered as the server is stopping");
+  }
+
+  long deliveredCount() {
+    return deliveredCount.get();
+  }
+
+  long failedCount() {
+    return failedCount.get();
+  }
+
+  /**
+   * Number of deliveries which are scheduled but not completed yet
+   */
+  long backlog() {
+    long backlog = 0;
+    for (ThreadPoolExecutor worker : workers) {
+      backlog += worker.getQueue().size() + worker.getActiveCount();
+    }
+    return backlog;
+  }
+
+  /**
+   * Stops accepting deliveries and waits for the scheduled ones during at most the given delay. The deliveries
+   * which are not started by then are dropped and logged.
+   */
+  void stop(long timeoutInMs) throws InterruptedException {
+    shutdown();
+    awaitTermination(System.currentTimeMillis() + timeoutInMs);
+  }
+
+  /**
+   * Stops accepting deliveries. The scheduled ones are still executed.
+   */
+  void shutdown() {
+    for (ThreadPoolExecutor worker : workers) {
+      worker.shutdown();
+    }
+  }
+
+  /**
+   * Waits for the scheduled deliveries until the given date, in milliseconds. The deliveries which are not started
+   * by then are dropped and logged.
+   */
+  void awaitTermination(long deadline) throws InterruptedException {
+    for (ThreadPoolExecutor worker : workers) {
+      worker.awaitTermination(Math.max(0L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+      // the delivery in progress, if any, is not interrupted
+      List<Runnable> dropped = new ArrayList<Runnable>();
+      worker.getQueue().drainTo(dropped);
+      for (Runnable delivery : dropped) {
+        logDropped((Delivery) delivery);
+      }
+    }
+  }
+
+  private class Delivery implements Runnable {
+    private final Notification notification;
+    private final String username;
+
+    Delivery(Notification notification, String username) {
+      this.notification = notification;
+      this.username = username;
+    }
+
+    @Override
+    public void run() {
+      try {
+        channel.deliver(notification, username);
+        deliveredCount.incrementAndGet();
+      } catch (Exception e) {
+        // catch all exceptions in order to deliver the next notifications
+        failedCount.incrementAndGet();
+        LOG.warn("Unable to deliver notification " + notification + " for user " + username + " via " + channel, e);
+      }
+    }
+  }
+}
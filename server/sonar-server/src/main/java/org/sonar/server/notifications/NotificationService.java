@@ -21,6 +21,7 @@ package org.sonar.server.notifications;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Maps;
 import com.google.common.collect.SetMultimap;
 import org.picocontainer.Startable;
 import org.slf4j.Logger;
@@ -58,6 +59,13 @@ import java.util.concurrent.TimeUnit;
     defaultValue = "600",
     name = "Delay before reporting notification status, in seconds",
     project = false,
+    global = false),
+  @Property(
+    key = NotificationService.PROPERTY_THREADS_PER_CHANNEL,
+    defaultValue = "1",
+    name = "Number of threads delivering the notifications of each channel",
+    description = "With more than one thread, a channel delivers the notifications of different users concurrently.",
+    project = false,
     global = false)
 })
 public class NotificationService implements ServerComponent, Startable {
@@ -66,6 +74,23 @@ public class NotificationService implements ServerComponent, Startable {
 
   public static final String PROPERTY_DELAY = "sonar.notifications.delay";
   public static final String PROPERTY_DELAY_BEFORE_REPORTING_STATUS = "sonar.notifications.runningDelayBeforeReportingStatus";
+  public static final String PROPERTY_THREADS_PER_CHANNEL = "sonar.notifications.threadsPerChannel";
+
+  /**
+   * Number of notifications read at once from the queue
+   */
+  private static final int QUEUE_BATCH_SIZE = 100;
+
+  /**
+   * Maximum number of deliveries waiting for each thread of a channel. Notifications are removed from the queue
+   * before being delivered, so the waiting ones are lost if the server stops.
+   */
+  private static final int DELIVERIES_PER_THREAD = 10;
+
+  /**
+   * Maximum time to wait for the notifications being processed when the server stops
+   */
+  private static final long STOP_TIMEOUT_MS = 5000L;
 
   private static final TimeProfiler TIME_PROFILER = new TimeProfiler(LOG).setLevelToDebug();
 
@@ -73,6 +98,8 @@ public class NotificationService implements ServerComponent, Startable {
   private final long delayBeforeReportingStatusInSeconds;
   private final DefaultNotificationManager manager;
   private final NotificationDispatcher[] dispatchers;
+  private final int threadsPerChannel;
+  private final Map<NotificationChannel, NotificationChannelDeliverer> deliverers = Maps.newConcurrentMap();
 
   private ScheduledExecutorService executorService;
   private boolean stopping = false;
@@ -83,6 +110,7 @@ public class NotificationService implements ServerComponent, Startable {
   public NotificationService(Settings settings, DefaultNotificationManager manager, NotificationDispatcher[] dispatchers) {
     delayInSeconds = settings.getLong(PROPERTY_DELAY);
     delayBeforeReportingStatusInSeconds = settings.getLong(PROPERTY_DELAY_BEFORE_REPORTING_STATUS);
+    threadsPerChannel = Math.max(1, settings.getInt(PROPERTY_THREADS_PER_CHANNEL));
     this.manager = manager;
     this.dispatchers = dispatchers;
   }
@@ -115,8 +143,15 @@ public class NotificationService implements ServerComponent, Startable {
   public void stop() {
     try {
       stopping = true;
+      long deadline = System.currentTimeMillis() + STOP_TIMEOUT_MS;
       executorService.shutdown();
-      executorService.awaitTermination(5, TimeUnit.SECONDS);
+      for (NotificationChannelDeliverer deliverer : deliverers.values()) {
+        deliverer.shutdown();
+      }
+      executorService.awaitTermination(Math.max(0L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+      for (NotificationChannelDeliverer deliverer : deliverers.values()) {
+        deliverer.awaitTermination(deadline);
+      }
     } catch (InterruptedException e) {
       LOG.error("Error during stop of notification service", e);
     }
@@ -130,10 +165,12 @@ public class NotificationService implements ServerComponent, Startable {
     long lastLog = start;
     long notifSentCount = 0;
 
-    Notification notifToSend = manager.getFromQueue();
-    while (notifToSend != null) {
-      deliver(notifToSend);
-      notifSentCount++;
+    List<Notification> notifsToSend = manager.getFromQueue(QUEUE_BATCH_SIZE);
+    while (!notifsToSend.isEmpty()) {
+      for (Notification notifToSend : notifsToSend) {
+        deliver(notifToSend);
+        notifSentCount++;
+      }
       if (stopping) {
         break;
       }
@@ -144,7 +181,7 @@ public class NotificationService implements ServerComponent, Startable {
         long spentTimeInMinutes = (now - start) / (60 * 1000);
         log(notifSentCount, remainingNotifCount, spentTimeInMinutes);
       }
-      notifToSend = manager.getFromQueue();
+      notifsToSend = manager.getFromQueue(QUEUE_BATCH_SIZE);
     }
 
     TIME_PROFILER.stop();
@@ -153,6 +190,10 @@ public class NotificationService implements ServerComponent, Startable {
   @VisibleForTesting
   void log(long notifSentCount, long remainingNotifCount, long spentTimeInMinutes) {
     LOG.info("{} notifications sent during the past {} minutes and {} still waiting to be sent", new Object[] {notifSentCount, spentTimeInMinutes, remainingNotifCount});
+    for (NotificationChannelDeliverer deliverer : deliverers.values()) {
+      LOG.info("Channel {}: {} notifications delivered and {} failed since startup, {} waiting for delivery",
+        new Object[] {deliverer.channel().getKey(), deliverer.deliveredCount(), deliverer.failedCount(), deliverer.backlog()});
+    }
   }
 
   @VisibleForTesting
@@ -187,22 +228,34 @@ public class NotificationService implements ServerComponent, Startable {
     dispatch(notification, recipients);
   }
 
+  /**
+   * Deliveries are executed by the threads of the channels, so that a slow channel does not delay the others
+   */
   private void dispatch(Notification notification, SetMultimap<String, NotificationChannel> recipients) {
     for (Map.Entry<String, Collection<NotificationChannel>> entry : recipients.asMap().entrySet()) {
       String username = entry.getKey();
       Collection<NotificationChannel> userChannels = entry.getValue();
       LOG.debug("For user {} via {}", username, userChannels);
       for (NotificationChannel channel : userChannels) {
-        try {
-          channel.deliver(notification, username);
-        } catch (Exception e) {
-          // catch all exceptions in order to deliver via other channels
-          LOG.warn("Unable to deliver notification " + notification + " for user " + username + " via " + channel, e);
-        }
+        deliverer(channel).deliver(notification, username);
       }
     }
   }
 
+  private NotificationChannelDeliverer deliverer(NotificationChannel channel) {
+    NotificationChannelDeliverer deliverer = deliverers.get(channel);
+    if (deliverer == null) {
+      deliverer = new NotificationChannelDeliverer(channel, threadsPerChannel, DELIVERIES_PER_THREAD);
+      deliverers.put(channel, deliverer);
+    }
+    return deliverer;
+  }
+
+  @VisibleForTesting
+  Collection<NotificationChannelDeliverer> getDeliverers() {
+    return deliverers.values();
+  }
+
   @VisibleForTesting
   protected List<NotificationDispatcher> getDispatchers() {
     return Arrays.asList(dispatchers);
@@ -631,11 +631,15 @@ class ServerComponents {
       PurgeDatastoresStep.class));
     pico.addSingleton(AnalysisReportService.class);
     pico.addSingleton(AnalysisReportQueue.class);
+    pico.addSingleton(AnalysisReportQueueSignal.class);
+    pico.addSingleton(AnalysisReportStore.class);
+    pico.addSingleton(ComputationStepStatistics.class);
     pico.addSingleton(ComputationWorkerLauncher.class);
     pico.addSingleton(ComputationWebService.class);
     pico.addSingleton(IsQueueEmptyWebService.class);
     pico.addSingleton(QueueWsAction.class);
     pico.addSingleton(HistoryWsAction.class);
+    pico.addSingleton(StepStatsWsAction.class);
     pico.addSingleton(DefaultPeriodCleaner.class);
     pico.addSingleton(DefaultPurgeTask.class);
     pico.addSingleton(ProjectCleaner.class);
@@ -34,7 +34,7 @@ public class IndexSourceLinesStep implements ComputationStep {
 
   @Override
   public void execute(DbSession session, ComputationContext context) {
-    indexer.index();
+    indexer.index(context.getProject().uuid());
   }
 
   @Override
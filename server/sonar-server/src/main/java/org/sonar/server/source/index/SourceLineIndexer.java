@@ -27,9 +27,11 @@ import org.sonar.server.db.DbClient;
 import org.sonar.server.es.BaseIndexer;
 import org.sonar.server.es.BulkIndexer;
 import org.sonar.server.es.EsClient;
+import org.sonar.server.es.ParallelProjectIndexer;
 
 import java.sql.Connection;
 import java.util.Iterator;
+import java.util.List;
 
 import static org.sonar.server.source.index.SourceLineIndexDefinition.FIELD_FILE_UUID;
 import static org.sonar.server.source.index.SourceLineIndexDefinition.FIELD_PROJECT_UUID;
@@ -45,8 +47,10 @@ public class SourceLineIndexer extends BaseIndexer {
 
   @Override
   protected long doIndex(long lastUpdatedAt) {
+    if (lastUpdatedAt == 0L) {
+      return indexAllByProject();
+    }
     final BulkIndexer bulk = new BulkIndexer(esClient, SourceLineIndexDefinition.INDEX);
-    bulk.setLarge(lastUpdatedAt == 0L);
 
     DbSession dbSession = dbClient.openSession(false);
     Connection dbConnection = dbSession.getConnection();
@@ -61,14 +65,62 @@ public class SourceLineIndexer extends BaseIndexer {
     }
   }
 
+  @Override
+  protected void doIndex(String projectUuid, long lastUpdatedAt) {
+    final BulkIndexer bulk = new BulkIndexer(esClient, SourceLineIndexDefinition.INDEX);
+    bulk.start();
+    addProjectFiles(bulk, projectUuid, lastUpdatedAt);
+    bulk.stop();
+  }
+
+  /**
+   * Files are indexed project by project, in parallel
+   */
+  private long indexAllByProject() {
+    List<String> projectUuids;
+    DbSession dbSession = dbClient.openSession(false);
+    try {
+      projectUuids = SourceLineResultSetIterator.selectProjectUuids(dbClient, dbSession.getConnection());
+    } finally {
+      dbSession.close();
+    }
+
+    return new ParallelProjectIndexer(esClient, SourceLineIndexDefinition.INDEX).index(projectUuids, new ParallelProjectIndexer.ProjectIndexer() {
+      @Override
+      public long index(String projectUuid, BulkIndexer bulk) {
+        return addProjectFiles(bulk, projectUuid, 0L);
+      }
+    });
+  }
+
+  private long addProjectFiles(BulkIndexer bulk, String projectUuid, long lastUpdatedAt) {
+    DbSession dbSession = dbClient.openSession(false);
+    Connection dbConnection = dbSession.getConnection();
+    try {
+      SourceLineResultSetIterator rowIt = SourceLineResultSetIterator.createForProject(dbClient, dbConnection, projectUuid, lastUpdatedAt);
+      long maxUpdatedAt = addFiles(bulk, rowIt);
+      rowIt.close();
+      return maxUpdatedAt;
+
+    } finally {
+      dbSession.close();
+    }
+  }
+
   public long index(Iterator<SourceLineResultSetIterator.SourceFile> sourceFiles) {
     final BulkIndexer bulk = new BulkIndexer(esClient, SourceLineIndexDefinition.INDEX);
     return doIndex(bulk, sourceFiles);
   }
 
   private long doIndex(BulkIndexer bulk, Iterator<SourceLineResultSetIterator.SourceFile> files) {
-    long maxUpdatedAt = 0L;
     bulk.start();
+    long maxUpdatedAt = addFiles(bulk, files);
+    bulk.stop();
+    return maxUpdatedAt;
+  }
+
+  private long addFiles(BulkIndexer bulk, Iterator<SourceLineResultSetIterator.SourceFile> files) {
+    long maxUpdatedAt = 0L;
     while (files.hasNext()) {
       SourceLineResultSetIterator.SourceFile file = files.next();
       for (SourceLineDoc line : file.getLines()) {
@@ -77,7 +129,6 @@ public class SourceLineIndexer extends BaseIndexer {
       deleteLinesFromFileAbove(file.getFileUuid(), file.getLines().size());
       maxUpdatedAt = Math.max(maxUpdatedAt, file.getUpdatedAt());
     }
-    bulk.stop();
     return maxUpdatedAt;
   }
 
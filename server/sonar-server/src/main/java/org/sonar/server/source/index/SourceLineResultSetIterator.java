@@ -28,6 +28,8 @@ import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.math.NumberUtils;
 import org.sonar.api.utils.DateUtils;
+import org.sonar.core.source.db.FileSourceDataColumn;
+import org.sonar.core.source.db.FileSourceDataReader;
 import org.sonar.server.db.DbClient;
 import org.sonar.server.db.ResultSetIterator;
 import org.sonar.server.db.migrations.SqlUtil;
@@ -46,8 +48,8 @@ import java.util.List;
 import java.util.StringTokenizer;
 
 /**
- * Scroll over table FILE_SOURCES and directly parse CSV field required to
- * populate the index sourcelines
+ * Scroll over table FILE_SOURCES and directly decode the binary data (or the CSV data of the rows that
+ * are not migrated yet) required to populate the index sourcelines
  */
 public class SourceLineResultSetIterator extends ResultSetIterator<SourceLineResultSetIterator.SourceFile> {
 
@@ -83,13 +85,20 @@ public class SourceLineResultSetIterator extends ResultSetIterator<SourceLineRes
     "project_uuid",
     "file_uuid",
     "updated_at",
-    "data"
+    "data",
+    "binary_data"
   };
 
   private static final String SQL_ALL = "select " + StringUtils.join(FIELDS, ",") + " from file_sources";
 
   private static final String SQL_AFTER_DATE = SQL_ALL + " where updated_at>?";
 
+  private static final String SQL_PROJECT = SQL_ALL + " where project_uuid=?";
+
+  private static final String SQL_PROJECT_AFTER_DATE = SQL_PROJECT + " and updated_at>?";
+
+  private static final String SQL_PROJECT_UUIDS = "select distinct project_uuid from file_sources";
+
   public static SourceLineResultSetIterator create(DbClient dbClient, Connection connection, long afterDate) {
     try {
       String sql = afterDate > 0L ? SQL_AFTER_DATE : SQL_ALL;
@@ -104,6 +113,45 @@ public class SourceLineResultSetIterator extends ResultSetIterator<SourceLineRes
     }
   }
 
+  /**
+   * Files of the given project, so that the number of rows does not depend on the activity of the other projects
+   */
+  public static SourceLineResultSetIterator createForProject(DbClient dbClient, Connection connection, String projectUuid, long afterDate) {
+    try {
+      String sql = afterDate > 0L ? SQL_PROJECT_AFTER_DATE : SQL_PROJECT;
+      PreparedStatement stmt = dbClient.newScrollingSingleRowSelectStatement(connection, sql);
+      stmt.setString(1, projectUuid);
+      if (afterDate > 0L) {
+        stmt.setLong(2, afterDate);
+      }
+      return new SourceLineResultSetIterator(stmt);
+    } catch (SQLException e) {
+      throw new IllegalStateException("Fail to prepare SQL request to select file sources of project " + projectUuid, e);
+    }
+  }
+
+  /**
+   * UUIDs of the projects that have file sources, used to split indexing of all file sources
+   */
+  public static List<String> selectProjectUuids(DbClient dbClient, Connection connection) {
+    try {
+      PreparedStatement stmt = dbClient.newScrollingSelectStatement(connection, SQL_PROJECT_UUIDS);
+      ResultSetIterator<String> it = new ResultSetIterator<String>(stmt) {
+        @Override
+        protected String read(ResultSet rs) throws SQLException {
+          return rs.getString(1);
+        }
+      };
+      try {
+        return Lists.newArrayList(it);
+      } finally {
+        it.close();
+      }
+    } catch (SQLException e) {
+      throw new IllegalStateException("Fail to select the projects that have file sources", e);
+    }
+  }
+
   private SourceLineResultSetIterator(PreparedStatement stmt) throws SQLException {
     super(stmt);
   }
@@ -119,6 +167,12 @@ public class SourceLineResultSetIterator extends ResultSetIterator<SourceLineRes
     Date updatedDate = new Date(updatedAt);
     SourceFile result = new SourceFile(fileUuid, updatedAt);
 
+    byte[] binaryData = rs.getBytes(5);
+    if (binaryData != null) {
+      readBinaryData(projectUuid, updatedDate, result, binaryData);
+      return result;
+    }
+
     Reader csv = rs.getCharacterStream(4);
     if (csv == null) {
       return result;
@@ -174,6 +228,62 @@ public class SourceLineResultSetIterator extends ResultSetIterator<SourceLineRes
     return result;
   }
 
+  private static void readBinaryData(String projectUuid, Date updatedDate, SourceFile file, byte[] binaryData) {
+    FileSourceDataReader reader = new FileSourceDataReader(binaryData);
+    String[] revisions = reader.readStrings(FileSourceDataColumn.SCM_REVISION);
+    String[] authors = reader.readStrings(FileSourceDataColumn.SCM_AUTHOR);
+    String[] dates = reader.readStrings(FileSourceDataColumn.SCM_DATE);
+    Integer[] utLineHits = reader.readIntegers(FileSourceDataColumn.UT_LINE_HITS);
+    Integer[] utConditions = reader.readIntegers(FileSourceDataColumn.UT_CONDITIONS);
+    Integer[] utCoveredConditions = reader.readIntegers(FileSourceDataColumn.UT_COVERED_CONDITIONS);
+    Integer[] itLineHits = reader.readIntegers(FileSourceDataColumn.IT_LINE_HITS);
+    Integer[] itConditions = reader.readIntegers(FileSourceDataColumn.IT_CONDITIONS);
+    Integer[] itCoveredConditions = reader.readIntegers(FileSourceDataColumn.IT_COVERED_CONDITIONS);
+    Integer[] overallLineHits = reader.readIntegers(FileSourceDataColumn.OVERALL_LINE_HITS);
+    Integer[] overallConditions = reader.readIntegers(FileSourceDataColumn.OVERALL_CONDITIONS);
+    Integer[] overallCoveredConditions = reader.readIntegers(FileSourceDataColumn.OVERALL_COVERED_CONDITIONS);
+    String[] highlightings = reader.readStrings(FileSourceDataColumn.HIGHLIGHTING);
+    String[] symbols = reader.readStrings(FileSourceDataColumn.SYMBOLS);
+    int[][] duplications = reader.readIntegerLists(FileSourceDataColumn.DUPLICATIONS);
+    String[] sources = reader.readStrings(FileSourceDataColumn.SOURCE);
+
+    for (int i = 0; i < reader.lines(); i++) {
+      SourceLineDoc doc = new SourceLineDoc(Maps.<String, Object>newHashMap());
+      doc.setProjectUuid(projectUuid);
+      doc.setFileUuid(file.getFileUuid());
+      doc.setLine(i + 1);
+      doc.setUpdateDate(updatedDate);
+      // empty strings, as in CSV format
+      doc.setScmRevision(StringUtils.defaultString(revisions[i]));
+      doc.setScmAuthor(StringUtils.defaultString(authors[i]));
+      doc.setScmDate(DateUtils.parseDateTimeQuietly(dates[i]));
+      doc.setUtLineHits(utLineHits[i]);
+      doc.setUtConditions(utConditions[i]);
+      doc.setUtCoveredConditions(utCoveredConditions[i]);
+      doc.setItLineHits(itLineHits[i]);
+      doc.setItConditions(itConditions[i]);
+      doc.setItCoveredConditions(itCoveredConditions[i]);
+      doc.setOverallLineHits(overallLineHits[i]);
+      doc.setOverallConditions(overallConditions[i]);
+      doc.setOverallCoveredConditions(overallCoveredConditions[i]);
+      doc.setHighlighting(StringUtils.defaultString(highlightings[i]));
+      doc.setSymbols(StringUtils.defaultString(symbols[i]));
+      doc.setDuplications(toList(duplications[i]));
+      doc.setSource(StringUtils.defaultString(sources[i]));
+      file.addLine(doc);
+    }
+  }
+
+  private static List<Integer> toList(@Nullable int[] values) {
+    List<Integer> result = Lists.newArrayList();
+    if (values != null) {
+      for (int value : values) {
+        result.add(value);
+      }
+    }
+    return result;
+  }
+
   private List<Integer> parseDuplications(@Nullable String duplications) {
     List<Integer> dups = Lists.newArrayList();
     if (StringUtils.isNotEmpty(duplications)) {
@@ -36,11 +36,14 @@ import org.sonar.server.component.ComponentTesting;
 import org.sonar.server.db.DbClient;
 import org.sonar.server.tester.ServerTester;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.sonar.core.activity.Activity.Type.ANALYSIS_REPORT;
 import static org.sonar.core.computation.db.AnalysisReportDto.Status.FAILED;
+import static org.sonar.core.computation.db.AnalysisReportDto.Status.SUCCESS;
 
 public class AnalysisReportLogMediumTest {
   @ClassRule
@@ -93,4 +96,26 @@ public class AnalysisReportLogMediumTest {
     assertThat(details.get("finishedAt")).isEqualTo("2014-10-18T00:00:00+0200");
   }
 
+  @Test
+  public void insert_step_profiles() {
+    AnalysisReportDto report = AnalysisReportDto.newForTests(1L)
+      .setProjectKey("projectKey")
+      .setStatus(SUCCESS);
+    ComponentDto project = ComponentTesting.newProjectDto();
+    List<ComputationStepProfile> stepProfiles = Arrays.asList(
+      new ComputationStepProfile("DigestReportStep").setDurationMs(120L).addProcessedItems(42L).addReadBytes(2048L),
+      new ComputationStepProfile("IndexIssuesStep").setDurationMs(30L));
+
+    service.write(dbSession, ANALYSIS_REPORT, new AnalysisReportLog(report, project, stepProfiles));
+    dbSession.commit();
+
+    Activity activity = Iterables.getFirst(index.findAll().getHits(), null);
+    Map<String, String> details = activity.details();
+    assertThat(details.get("step:DigestReportStep:duration")).isEqualTo("120");
+    assertThat(details.get("step:DigestReportStep:items")).isEqualTo("42");
+    assertThat(details.get("step:DigestReportStep:bytes")).isEqualTo("2048");
+    assertThat(details.get("step:IndexIssuesStep:duration")).isEqualTo("30");
+    assertThat(details.get("step:IndexIssuesStep:items")).isEqualTo(AnalysisReportLog.NOT_APPLICABLE);
+    assertThat(details.get("step:IndexIssuesStep:bytes")).isEqualTo(AnalysisReportLog.NOT_APPLICABLE);
+  }
 }
@@ -36,6 +36,7 @@ public class AnalysisReportQueueCleanerTest {
   DbClient dbClient;
   AnalysisReportDao analysisReportDao;
   DbSession session;
+  AnalysisReportStore store;
 
   @Before
   public void before() {
@@ -43,17 +44,19 @@ public class AnalysisReportQueueCleanerTest {
     serverUpgradeStatus = mock(ServerUpgradeStatus.class);
     dbClient = mock(DbClient.class);
     session = mock(DbSession.class);
+    store = mock(AnalysisReportStore.class);
 
     when(dbClient.analysisReportDao()).thenReturn(analysisReportDao);
     when(dbClient.openSession(false)).thenReturn(session);
 
-    sut = new AnalysisReportQueueCleaner(serverUpgradeStatus, dbClient);
+    sut = new AnalysisReportQueueCleaner(serverUpgradeStatus, dbClient, store);
   }
 
   @Test
   public void start_must_call_dao_clean_update_to_pending_by_default() {
     sut.start();
     verify(analysisReportDao).resetAllToPendingStatus(any(DbSession.class));
+    verify(store, never()).clean();
     sut.stop();
   }
 
@@ -62,6 +65,7 @@ public class AnalysisReportQueueCleanerTest {
     when(serverUpgradeStatus.isUpgraded()).thenReturn(Boolean.TRUE);
     sut.start();
     verify(analysisReportDao).truncate(any(DbSession.class));
+    verify(store).clean();
     sut.stop();
   }
 }
@@ -50,7 +50,7 @@ public class AnalysisReportQueueMediumTest {
   private static final String DEFAULT_PROJECT_KEY = "123456789-987654321";
 
   @ClassRule
-  public static ServerTester tester = new ServerTester();
+  public static ServerTester tester = new ServerTester().setProperty(ComputationWorkerLauncher.PROPERTY_WORKERS, "0");
 
   private AnalysisReportQueue sut;
 
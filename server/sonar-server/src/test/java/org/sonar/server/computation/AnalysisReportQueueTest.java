@@ -0,0 +1,119 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonar.api.utils.System2;
+import org.sonar.core.computation.db.AnalysisReportDto;
+import org.sonar.core.permission.GlobalPermissions;
+import org.sonar.core.persistence.DbSession;
+import org.sonar.server.component.db.ComponentDao;
+import org.sonar.server.computation.db.AnalysisReportDao;
+import org.sonar.server.db.DbClient;
+import org.sonar.server.user.MockUserSession;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AnalysisReportQueueTest {
+
+  DbClient dbClient = mock(DbClient.class);
+  DbSession session = mock(DbSession.class);
+  AnalysisReportDao dao = mock(AnalysisReportDao.class);
+  AnalysisReportStore store = mock(AnalysisReportStore.class);
+  AnalysisReportQueue sut;
+
+  @Before
+  public void setUp() {
+    MockUserSession.set().setGlobalPermissions(GlobalPermissions.SCAN_EXECUTION);
+    when(dbClient.openSession(false)).thenReturn(session);
+    when(dbClient.analysisReportDao()).thenReturn(dao);
+    when(dbClient.componentDao()).thenReturn(mock(ComponentDao.class));
+    when(dao.insert(eq(session), any(AnalysisReportDto.class), eq(false))).thenAnswer(new Answer<AnalysisReportDto>() {
+      @Override
+      public AnalysisReportDto answer(InvocationOnMock invocation) {
+        return ((AnalysisReportDto) invocation.getArguments()[1]).setId(42L);
+      }
+    });
+    when(store.isFileStorageEnabled()).thenReturn(true);
+    sut = new AnalysisReportQueue(dbClient, System2.INSTANCE, mock(AnalysisReportQueueSignal.class), store);
+  }
+
+  @After
+  public void tearDown() {
+    MockUserSession.set();
+  }
+
+  @Test
+  public void commit_report_once_its_file_is_stored() {
+    InputStream data = new ByteArrayInputStream(new byte[] {1, 2, 3});
+
+    String key = sut.add("P1", 123L, data);
+
+    assertThat(key).isEqualTo("42");
+    InOrder inOrder = inOrder(dao, store, session);
+    inOrder.verify(dao).insert(eq(session), any(AnalysisReportDto.class), eq(false));
+    inOrder.verify(store).write(42L, data);
+    inOrder.verify(session).commit(true);
+    verify(store, never()).delete(any(AnalysisReportDto.class));
+  }
+
+  @Test
+  public void delete_stored_file_if_report_is_not_committed() {
+    InputStream data = new ByteArrayInputStream(new byte[] {1, 2, 3});
+    doThrow(new IllegalStateException("Connection lost")).when(session).commit(true);
+
+    try {
+      sut.add("P1", 123L, data);
+      fail();
+    } catch (IllegalStateException e) {
+      verify(store).write(42L, data);
+      verify(session).rollback(true);
+      verify(store).delete(any(AnalysisReportDto.class));
+    }
+  }
+
+  @Test
+  public void store_report_in_db_when_file_storage_is_disabled() {
+    when(store.isFileStorageEnabled()).thenReturn(false);
+
+    sut.add("P1", 123L, new ByteArrayInputStream(new byte[] {1, 2, 3}));
+
+    verify(dao).insert(eq(session), any(AnalysisReportDto.class));
+    verify(store, never()).write(anyLong(), any(InputStream.class));
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.config.Settings;
+import org.sonar.core.computation.db.AnalysisReportDto;
+import org.sonar.process.ProcessConstants;
+
+import java.io.File;
+import java.io.InputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AnalysisReportStoreTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  File dataDir;
+  Settings settings = new Settings();
+  AnalysisReportStore sut;
+
+  @Before
+  public void setUp() throws Exception {
+    dataDir = temp.newFolder();
+    settings.setProperty(ProcessConstants.PATH_DATA, dataDir.getAbsolutePath());
+    settings.setProperty(AnalysisReportStore.PROPERTY_STORAGE, AnalysisReportStore.FILE_STORAGE);
+    sut = new AnalysisReportStore(settings);
+  }
+
+  @Test
+  public void file_storage_is_disabled_by_default() {
+    assertThat(new AnalysisReportStore(new Settings()).isFileStorageEnabled()).isFalse();
+    assertThat(sut.isFileStorageEnabled()).isTrue();
+  }
+
+  @Test
+  public void write_then_decompress_report() throws Exception {
+    AnalysisReportDto report = AnalysisReportDto.newForTests(1L).setSnapshotId(123L);
+    writeZip(1L);
+    File toDir = temp.newFolder();
+
+    boolean found = sut.decompressToDir(report, toDir);
+
+    assertThat(found).isTrue();
+    assertThat(sut.size(report)).isEqualTo(new File(dataDir, "analysis_reports/1.zip").length()).isPositive();
+    assertThat(toDir.list()).hasSize(3);
+    assertThat(new File(dataDir, "analysis_reports").list()).containsOnly("1.zip");
+  }
+
+  @Test
+  public void reports_of_same_snapshot_are_stored_separately() throws Exception {
+    AnalysisReportDto report = AnalysisReportDto.newForTests(1L).setSnapshotId(123L);
+    AnalysisReportDto resubmittedReport = AnalysisReportDto.newForTests(2L).setSnapshotId(123L);
+    writeZip(1L);
+    writeZip(2L);
+
+    sut.delete(report);
+
+    assertThat(sut.decompressToDir(resubmittedReport, temp.newFolder())).isTrue();
+  }
+
+  @Test
+  public void decompress_report_stored_before_file_storage_was_disabled() throws Exception {
+    AnalysisReportDto report = AnalysisReportDto.newForTests(1L).setSnapshotId(123L);
+    writeZip(1L);
+    settings.setProperty(AnalysisReportStore.PROPERTY_STORAGE, AnalysisReportStore.DB_STORAGE);
+
+    assertThat(sut.decompressToDir(report, temp.newFolder())).isTrue();
+  }
+
+  @Test
+  public void decompress_returns_false_if_report_is_not_in_store() throws Exception {
+    AnalysisReportDto report = AnalysisReportDto.newForTests(1L).setSnapshotId(123L);
+
+    assertThat(sut.decompressToDir(report, temp.newFolder())).isFalse();
+  }
+
+  @Test
+  public void delete_report() throws Exception {
+    AnalysisReportDto report = AnalysisReportDto.newForTests(1L).setSnapshotId(123L);
+    writeZip(1L);
+
+    sut.delete(report);
+
+    assertThat(sut.decompressToDir(report, temp.newFolder())).isFalse();
+  }
+
+  @Test
+  public void clean_all_reports() throws Exception {
+    writeZip(1L);
+    writeZip(2L);
+
+    sut.clean();
+
+    assertThat(new File(dataDir, "analysis_reports")).doesNotExist();
+  }
+
+  private void writeZip(long reportId) throws Exception {
+    InputStream zip = getClass().getResource("/org/sonar/server/computation/db/AnalysisReportDaoTest/zip.zip").openStream();
+    try {
+      sut.write(reportId, zip);
+    } finally {
+      IOUtils.closeQuietly(zip);
+    }
+  }
+}
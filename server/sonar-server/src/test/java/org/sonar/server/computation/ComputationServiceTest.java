@@ -0,0 +1,143 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.sonar.api.utils.System2;
+import org.sonar.api.utils.TempFolder;
+import org.sonar.core.activity.Activity;
+import org.sonar.core.computation.db.AnalysisReportDto;
+import org.sonar.core.persistence.DbSession;
+import org.sonar.server.activity.ActivityService;
+import org.sonar.server.component.ComponentTesting;
+import org.sonar.server.component.db.ComponentDao;
+import org.sonar.server.computation.step.ComputationStep;
+import org.sonar.server.computation.step.ComputationStepRegistry;
+import org.sonar.server.db.DbClient;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+public class ComputationServiceTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  DbClient dbClient = mock(DbClient.class, RETURNS_DEEP_STUBS);
+  ComputationStepRegistry stepRegistry = mock(ComputationStepRegistry.class);
+  ActivityService activityService = mock(ActivityService.class);
+  TempFolder tempFolder = mock(TempFolder.class);
+  AnalysisReportStore reportStore = mock(AnalysisReportStore.class);
+  ComputationStepStatistics stepStatistics = new ComputationStepStatistics();
+  System2 system = mock(System2.class);
+  ComputationService sut;
+
+  @Before
+  public void setUp() throws Exception {
+    ComponentDao componentDao = mock(ComponentDao.class);
+    when(dbClient.componentDao()).thenReturn(componentDao);
+    when(componentDao.getByKey(any(DbSession.class), anyString())).thenReturn(ComponentTesting.newProjectDto());
+    when(tempFolder.newDir()).thenReturn(temp.newFolder());
+    when(reportStore.decompressToDir(any(AnalysisReportDto.class), any(File.class))).thenReturn(true);
+    sut = new ComputationService(dbClient, stepRegistry, activityService, tempFolder, reportStore, stepStatistics, system);
+  }
+
+  @Test
+  public void profile_each_step() throws Exception {
+    when(system.now()).thenReturn(1000L, 1100L, 2000L, 2500L, 3000L);
+    ComputationStep step1 = new FakeStep(42);
+    ComputationStep step2 = mock(ComputationStep.class);
+    when(stepRegistry.steps()).thenReturn(Arrays.asList(step1, step2));
+
+    sut.process(AnalysisReportDto.newForTests(1L).setProjectKey("P1"));
+
+    ArgumentCaptor<AnalysisReportLog> log = ArgumentCaptor.forClass(AnalysisReportLog.class);
+    verify(activityService).write(any(DbSession.class), eq(Activity.Type.ANALYSIS_REPORT), log.capture());
+    assertThat(log.getValue().getDetails().get("status")).isEqualTo("SUCCESS");
+    assertThat(log.getValue().getDetails().get("step:FakeStep:duration")).isEqualTo("100");
+    assertThat(log.getValue().getDetails().get("step:FakeStep:items")).isEqualTo("42");
+    assertThat(log.getValue().getDetails().get("step:FakeStep:bytes")).isEqualTo(AnalysisReportLog.NOT_APPLICABLE);
+    assertThat(stepStatistics.summaries().get("FakeStep").p50()).isEqualTo(100L);
+    assertThat(stepStatistics.summaries()).hasSize(2);
+  }
+
+  @Test
+  public void set_size_of_zipped_report() throws Exception {
+    when(reportStore.size(any(AnalysisReportDto.class))).thenReturn(2048L);
+    final long[] reportSize = new long[1];
+    when(stepRegistry.steps()).thenReturn(Arrays.<ComputationStep>asList(new FakeStep(0) {
+      @Override
+      public void execute(DbSession session, ComputationContext context) {
+        reportSize[0] = context.getReportSize();
+      }
+    }));
+
+    sut.process(AnalysisReportDto.newForTests(1L).setProjectKey("P1"));
+
+    assertThat(reportSize[0]).isEqualTo(2048L);
+  }
+
+  @Test
+  public void profile_failing_step() throws Exception {
+    when(system.now()).thenReturn(1000L, 1300L, 2000L);
+    ComputationStep step = mock(ComputationStep.class);
+    doThrow(new IllegalStateException()).when(step).execute(any(DbSession.class), any(ComputationContext.class));
+    when(stepRegistry.steps()).thenReturn(Arrays.<ComputationStep>asList(step));
+
+    try {
+      sut.process(AnalysisReportDto.newForTests(1L).setProjectKey("P1"));
+    } catch (IllegalStateException e) {
+      // expected
+    }
+
+    ArgumentCaptor<AnalysisReportLog> log = ArgumentCaptor.forClass(AnalysisReportLog.class);
+    verify(activityService).write(any(DbSession.class), eq(Activity.Type.ANALYSIS_REPORT), log.capture());
+    assertThat(log.getValue().getDetails().get("status")).isEqualTo("FAILED");
+    assertThat(stepStatistics.summaries().values().iterator().next().p50()).isEqualTo(300L);
+  }
+
+  private static class FakeStep implements ComputationStep {
+    private final long items;
+
+    FakeStep(long items) {
+      this.items = items;
+    }
+
+    @Override
+    public void execute(DbSession session, ComputationContext context) {
+      context.addProcessedItems(items);
+    }
+
+    @Override
+    public String getDescription() {
+      return "fake";
+    }
+  }
+}
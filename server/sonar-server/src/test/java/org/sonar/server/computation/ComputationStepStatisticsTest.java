@@ -0,0 +1,76 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ComputationStepStatisticsTest {
+
+  ComputationStepStatistics sut = new ComputationStepStatistics();
+
+  @Test
+  public void no_statistics_by_default() {
+    assertThat(sut.summaries()).isEmpty();
+  }
+
+  @Test
+  public void percentiles_by_step() {
+    for (int i = 1; i <= 100; i++) {
+      sut.add(new ComputationStepProfile("DigestReportStep").setDurationMs(i));
+    }
+    sut.add(new ComputationStepProfile("IndexIssuesStep").setDurationMs(7L));
+
+    Map<String, ComputationStepStatistics.Summary> summaries = sut.summaries();
+
+    assertThat(summaries.keySet()).containsExactly("DigestReportStep", "IndexIssuesStep");
+    ComputationStepStatistics.Summary digest = summaries.get("DigestReportStep");
+    assertThat(digest.count()).isEqualTo(100);
+    assertThat(digest.p50()).isEqualTo(50L);
+    assertThat(digest.p95()).isEqualTo(95L);
+    assertThat(digest.p99()).isEqualTo(99L);
+    ComputationStepStatistics.Summary index = summaries.get("IndexIssuesStep");
+    assertThat(index.count()).isEqualTo(1);
+    assertThat(index.p50()).isEqualTo(7L);
+    assertThat(index.p99()).isEqualTo(7L);
+  }
+
+  @Test
+  public void keep_only_last_executions() {
+    for (int i = 0; i < ComputationStepStatistics.WINDOW_SIZE; i++) {
+      sut.add(new ComputationStepProfile("DigestReportStep").setDurationMs(1000L));
+    }
+    for (int i = 0; i < ComputationStepStatistics.WINDOW_SIZE; i++) {
+      sut.add(new ComputationStepProfile("DigestReportStep").setDurationMs(10L));
+    }
+
+    ComputationStepStatistics.Summary summary = sut.summaries().get("DigestReportStep");
+    assertThat(summary.count()).isEqualTo(ComputationStepStatistics.WINDOW_SIZE);
+    assertThat(summary.p99()).isEqualTo(10L);
+  }
+
+  @Test
+  public void percentile_of_empty_array() {
+    assertThat(ComputationStepStatistics.percentile(new long[0], 50)).isEqualTo(0L);
+  }
+}
@@ -27,10 +27,14 @@ import org.junit.Test;
 import org.junit.rules.DisableOnDebug;
 import org.junit.rules.TestRule;
 import org.junit.rules.Timeout;
+import org.sonar.api.config.PropertyDefinitions;
+import org.sonar.api.config.Settings;
 import org.sonar.api.platform.Server;
+import org.sonar.core.computation.db.AnalysisReportDto;
 
 import java.util.concurrent.TimeUnit;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.*;
 
 public class ComputationWorkerLauncherTest {
@@ -41,11 +45,13 @@ public class ComputationWorkerLauncherTest {
   private ComputationWorkerLauncher sut;
   private ComputationService service;
   private AnalysisReportQueue queue;
+  private AnalysisReportQueueSignal signal;
 
   @Before
   public void before() {
     this.service = mock(ComputationService.class);
     this.queue = mock(AnalysisReportQueue.class);
+    this.signal = new AnalysisReportQueueSignal();
   }
 
   @After
@@ -55,7 +61,7 @@ public class ComputationWorkerLauncherTest {
 
   @Test
   public void call_findAndBook_when_launching_a_recurrent_task() throws Exception {
-    sut = new ComputationWorkerLauncher(service, queue, 0, 1, TimeUnit.MILLISECONDS);
+    sut = new ComputationWorkerLauncher(service, queue, signal, 0, 1, 1, TimeUnit.MILLISECONDS, 1);
 
     sut.onServerStart(mock(Server.class));
 
@@ -65,15 +71,66 @@ public class ComputationWorkerLauncherTest {
   }
 
   @Test
-  public void call_findAndBook_when_executing_task_immediately() throws Exception {
-    sut = new ComputationWorkerLauncher(service, queue, 1, 1, TimeUnit.HOURS);
-    sut.start();
+  public void call_findAndBook_when_a_report_is_added() throws Exception {
+    sut = new ComputationWorkerLauncher(service, queue, signal, 0, 1, 1, TimeUnit.HOURS, 1);
+    sut.onServerStart(mock(Server.class));
+    sleep();
+    verify(queue, times(1)).pop();
+
+    signal.reportAdded();
+    sleep();
 
-    sut.startAnalysisTaskNow();
+    verify(queue, times(2)).pop();
+  }
+
+  @Test
+  public void do_not_wait_before_popping_again_when_a_report_has_been_processed() throws Exception {
+    when(queue.pop()).thenReturn(AnalysisReportDto.newForTests(1L), AnalysisReportDto.newForTests(2L), null);
+    sut = new ComputationWorkerLauncher(service, queue, signal, 0, 1, 1, TimeUnit.HOURS, 1);
 
+    sut.onServerStart(mock(Server.class));
     sleep();
 
-    verify(queue, atLeastOnce()).pop();
+    verify(queue, times(3)).pop();
+    verify(service, times(2)).process(any(AnalysisReportDto.class));
+  }
+
+  @Test
+  public void launch_as_many_recurrent_tasks_as_workers() throws Exception {
+    sut = new ComputationWorkerLauncher(service, queue, signal, 0, 1, 1, TimeUnit.HOURS, 3);
+
+    sut.onServerStart(mock(Server.class));
+
+    sleep();
+
+    verify(queue, times(3)).pop();
+  }
+
+  @Test
+  public void number_of_workers_is_configurable() throws Exception {
+    Settings settings = new Settings().setProperty(ComputationWorkerLauncher.PROPERTY_WORKERS, 4);
+    sut = new ComputationWorkerLauncher(settings, service, queue, signal);
+
+    assertThat(sut.getWorkers()).isEqualTo(4);
+  }
+
+  @Test
+  public void one_worker_by_default() throws Exception {
+    Settings settings = new Settings(new PropertyDefinitions(ComputationWorkerLauncher.class));
+    sut = new ComputationWorkerLauncher(settings, service, queue, signal);
+
+    assertThat(sut.getWorkers()).isEqualTo(1);
+  }
+
+  @Test
+  public void zero_worker_disables_processing() throws Exception {
+    sut = new ComputationWorkerLauncher(service, queue, signal, 0, 1, 1, TimeUnit.MILLISECONDS, 0);
+
+    sut.onServerStart(mock(Server.class));
+    signal.reportAdded();
+    sleep();
+
+    verifyZeroInteractions(queue);
   }
 
   private void sleep() throws InterruptedException {
@@ -24,6 +24,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.sonar.core.computation.db.AnalysisReportDto;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.*;
 
@@ -59,6 +60,14 @@ public class ComputationWorkerTest {
     verify(service).process(report);
   }
 
+  @Test
+  public void processNextReport_returns_whether_a_report_has_been_popped() {
+    assertThat(sut.processNextReport()).isFalse();
+
+    when(queue.pop()).thenReturn(AnalysisReportDto.newForTests(1L));
+    assertThat(sut.processNextReport()).isTrue();
+  }
+
   @Test
   public void when_the_analysis_throws_an_exception_it_does_not_break_the_task() throws Exception {
     AnalysisReportDto report = AnalysisReportDto.newForTests(1L);
@@ -90,6 +90,18 @@ public class AnalysisReportDaoTest {
     db.assertDbUnit(getClass(), "insert-result.xml", "analysis_reports");
   }
 
+  @Test
+  public void insert_sets_generated_id() throws Exception {
+    db.prepareDbUnit(getClass(), "empty.xml");
+
+    AnalysisReportDto report1 = sut.insert(session, newDefaultAnalysisReport().setId(null));
+    AnalysisReportDto report2 = sut.insert(session, newDefaultAnalysisReport().setId(null));
+
+    assertThat(report1.getId()).isNotNull();
+    assertThat(report2.getId()).isNotNull().isNotEqualTo(report1.getId());
+    assertThat(sut.selectById(session, report2.getId())).isNotNull();
+  }
+
   @Test
   public void insert_report_data_do_not_throw_exception() throws Exception {
     db.prepareDbUnit(getClass(), "empty.xml");
@@ -161,6 +173,53 @@ public class AnalysisReportDaoTest {
     assertThat(nextAvailableReport).isNull();
   }
 
+  @Test
+  public void book_available_report_while_having_one_working_on_another_project() {
+    db.prepareDbUnit(getClass(), "book_available_report_analysis_while_having_one_working_on_another_project.xml");
+
+    AnalysisReportDto report = sut.tryToPop(session, 1L);
+
+    assertThat(report.getId()).isEqualTo(1L);
+    assertThat(report.getStatus()).isEqualTo(WORKING);
+    assertThat(report.getStartedAt()).isEqualTo(parseDate("2014-09-26").getTime());
+  }
+
+  @Test
+  public void do_not_book_report_if_another_one_is_working_on_same_project() {
+    db.prepareDbUnit(getClass(), "one_available_analysis_but_another_busy_on_same_project.xml");
+
+    AnalysisReportDto report = sut.tryToPop(session, 1L);
+
+    assertThat(report).isNull();
+    AnalysisReportDto reloaded = sut.selectById(session, 1L);
+    assertThat(reloaded.getStatus()).isEqualTo(PENDING);
+    assertThat(reloaded.getStartedAt()).isNull();
+  }
+
+  @Test
+  public void do_not_book_report_already_booked_by_another_worker() {
+    db.prepareDbUnit(getClass(), "one_busy_report_analysis.xml");
+
+    AnalysisReportDto report = sut.tryToPop(session, 1L);
+
+    assertThat(report).isNull();
+  }
+
+  @Test
+  public void concurrent_pops_never_return_same_report_nor_same_project() throws Exception {
+    db.prepareDbUnit(getClass(), "pop_oldest_pending.xml");
+    DbSession otherSession = db.myBatis().openSession(false);
+    try {
+      AnalysisReportDto first = sut.pop(session);
+      AnalysisReportDto second = sut.pop(otherSession);
+
+      assertThat(first.getId()).isEqualTo(3L);
+      assertThat(second).isNull();
+    } finally {
+      MyBatis.closeQuietly(otherSession);
+    }
+  }
+
   @Test
   public void getById_maps_all_the_fields_except_the_data() {
     db.prepareDbUnit(getClass(), "one_analysis_report.xml");
@@ -237,10 +296,11 @@ public class AnalysisReportDaoTest {
     IOUtils.closeQuietly(zip);
 
     // ACT
-    sut.selectAndDecompressToDir(session, 1L, toDir);
+    long size = sut.selectAndDecompressToDir(session, 1L, toDir);
 
     // ASSERT
     assertThat(toDir.list()).hasSize(3);
+    assertThat(size).isEqualTo(new File(getClass().getResource("/org/sonar/server/computation/db/AnalysisReportDaoTest/zip.zip").getFile()).length());
   }
 
   private AnalysisReportDto newDefaultAnalysisReport() {
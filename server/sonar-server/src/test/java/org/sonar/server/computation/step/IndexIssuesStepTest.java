@@ -21,6 +21,7 @@
 package org.sonar.server.computation.step;
 
 import org.junit.Test;
+import org.sonar.core.component.ComponentDto;
 import org.sonar.core.persistence.DbSession;
 import org.sonar.server.computation.ComputationContext;
 import org.sonar.server.issue.index.IssueAuthorizationIndexer;
@@ -28,6 +29,7 @@ import org.sonar.server.issue.index.IssueIndexer;
 
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class IndexIssuesStepTest {
 
@@ -39,9 +41,12 @@ public class IndexIssuesStepTest {
     IssueIndexer issueIndexer = mock(IssueIndexer.class);
     sut = new IndexIssuesStep(authorizationIndexer, issueIndexer);
 
-    sut.execute(mock(DbSession.class), mock(ComputationContext.class));
+    ComputationContext context = mock(ComputationContext.class);
+    when(context.getProject()).thenReturn(new ComponentDto().setUuid("PROJECT_UUID"));
+
+    sut.execute(mock(DbSession.class), context);
 
     verify(authorizationIndexer).index();
-    verify(issueIndexer).index();
+    verify(issueIndexer).index("PROJECT_UUID");
   }
 }
@@ -39,6 +39,7 @@ import org.sonar.server.activity.ActivityService;
 import org.sonar.server.component.ComponentTesting;
 import org.sonar.server.computation.AnalysisReportLog;
 import org.sonar.server.computation.AnalysisReportQueue;
+import org.sonar.server.computation.ComputationWorkerLauncher;
 import org.sonar.server.db.DbClient;
 import org.sonar.server.exceptions.ForbiddenException;
 import org.sonar.server.tester.ServerTester;
@@ -58,7 +59,7 @@ public class HistoryWsActionMediumTest {
   private static final String DEFAULT_REPORT_DATA = "default-project";
 
   @ClassRule
-  public static ServerTester tester = new ServerTester();
+  public static ServerTester tester = new ServerTester().setProperty(ComputationWorkerLauncher.PROPERTY_WORKERS, "0");
 
   private DbClient dbClient;
   private DbSession session;
@@ -0,0 +1,64 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.ws;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.core.permission.GlobalPermissions;
+import org.sonar.server.computation.ComputationStepProfile;
+import org.sonar.server.computation.ComputationStepStatistics;
+import org.sonar.server.exceptions.ForbiddenException;
+import org.sonar.server.user.MockUserSession;
+import org.sonar.server.ws.WsTester;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StepStatsWsActionTest {
+
+  WsTester tester;
+  ComputationStepStatistics statistics = new ComputationStepStatistics();
+
+  @Before
+  public void setup() throws Exception {
+    tester = new WsTester(new ComputationWebService(new StepStatsWsAction(statistics)));
+  }
+
+  @Test
+  public void define() throws Exception {
+    assertThat(tester.controller(ComputationWebService.API_ENDPOINT).action(StepStatsWsAction.ACTION)).isNotNull();
+  }
+
+  @Test
+  public void list_step_percentiles() throws Exception {
+    MockUserSession.set().setGlobalPermissions(GlobalPermissions.SYSTEM_ADMIN);
+    statistics.add(new ComputationStepProfile("DigestReportStep").setDurationMs(120L));
+    statistics.add(new ComputationStepProfile("IndexIssuesStep").setDurationMs(30L));
+
+    WsTester.TestRequest request = tester.newGetRequest(ComputationWebService.API_ENDPOINT, StepStatsWsAction.ACTION);
+    request.execute().assertJson(getClass(), "list_step_percentiles.json", false);
+  }
+
+  @Test(expected = ForbiddenException.class)
+  public void requires_admin_permission() throws Exception {
+    MockUserSession.set().setGlobalPermissions(GlobalPermissions.SCAN_EXECUTION);
+
+    tester.newGetRequest(ComputationWebService.API_ENDPOINT, StepStatsWsAction.ACTION).execute();
+  }
+}
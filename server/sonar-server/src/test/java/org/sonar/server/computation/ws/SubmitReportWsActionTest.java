@@ -24,7 +24,6 @@ import org.junit.Before;
 import org.junit.Test;
 import org.sonar.api.server.ws.WebService;
 import org.sonar.server.computation.AnalysisReportQueue;
-import org.sonar.server.computation.ComputationWorkerLauncher;
 import org.sonar.server.ws.WsTester;
 
 import java.io.InputStream;
@@ -38,13 +37,12 @@ public class SubmitReportWsActionTest {
   private SubmitReportWsAction sut;
 
   private WsTester wsTester;
-  private ComputationWorkerLauncher workerLauncher = mock(ComputationWorkerLauncher.class);
   private AnalysisReportQueue queue;
 
   @Before
   public void before() {
     queue = mock(AnalysisReportQueue.class);
-    sut = new SubmitReportWsAction(queue, workerLauncher);
+    sut = new SubmitReportWsAction(queue);
     wsTester = new WsTester(new ComputationWebService(sut));
   }
 
@@ -61,7 +59,7 @@ public class SubmitReportWsActionTest {
   }
 
   @Test
-  public void add_element_to_queue_and_launch_analysis_task() throws Exception {
+  public void add_element_to_queue() throws Exception {
     when(queue.add(any(String.class), anyLong(), any(InputStream.class))).thenReturn("P1");
 
     WsTester.TestRequest request = wsTester
@@ -72,7 +70,6 @@ public class SubmitReportWsActionTest {
     request.execute();
 
     verify(queue).add(eq("P1"), eq(456L), any(InputStream.class));
-    verify(workerLauncher).startAnalysisTaskNow();
   }
 
   @Test
@@ -0,0 +1,127 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.db.migrations.v51;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.dbutils.DbUtils;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.sonar.core.persistence.DbTester;
+import org.sonar.core.source.db.FileSourceDataColumn;
+import org.sonar.core.source.db.FileSourceDataReader;
+import org.sonar.server.db.migrations.DatabaseMigration;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class FeedFileSourcesBinaryDataTest {
+
+  @ClassRule
+  public static DbTester db = new DbTester().schema(FeedFileSourcesBinaryDataTest.class, "schema.sql");
+
+  @Test
+  public void convert_csv_to_binary_format() throws Exception {
+    db.prepareDbUnit(getClass(), "data.xml");
+
+    DatabaseMigration migration = new FeedFileSourcesBinaryData(db.database());
+    migration.execute();
+
+    assertThat(db.countSql("select count(*) from file_sources where data is not null")).isEqualTo(0);
+    assertThat(db.countSql("select count(*) from file_sources where binary_data is not null")).isEqualTo(1);
+
+    FileSourceDataReader reader = new FileSourceDataReader(selectBinaryData(1L));
+    assertThat(reader.lines()).isEqualTo(2);
+    assertThat(reader.readStrings(FileSourceDataColumn.SCM_REVISION)).containsExactly("aef12a", "abe465");
+    assertThat(reader.readStrings(FileSourceDataColumn.SCM_AUTHOR)).containsExactly("alice", "bob");
+    assertThat(reader.readStrings(FileSourceDataColumn.SCM_DATE)).containsExactly("2014-04-25T12:34:56+0100", "2014-07-25T12:34:56+0100");
+    assertThat(reader.readIntegers(FileSourceDataColumn.UT_LINE_HITS)).containsExactly(1, null);
+    assertThat(reader.readIntegers(FileSourceDataColumn.OVERALL_COVERED_CONDITIONS)).containsExactly(4, null);
+    assertThat(reader.readStrings(FileSourceDataColumn.HIGHLIGHTING)).containsExactly("0,3,a", null);
+    assertThat(reader.readStrings(FileSourceDataColumn.SYMBOLS)).containsExactly("1,2,1;0,2,2", null);
+    assertThat(reader.readIntegerLists(FileSourceDataColumn.DUPLICATIONS)).containsExactly(new int[] {1, 3}, null);
+    assertThat(reader.readStrings(FileSourceDataColumn.SOURCE)).containsExactly("class Foo {", "  // Empty");
+  }
+
+  @Test
+  public void compute_data_hash_of_binary_data() throws Exception {
+    db.prepareDbUnit(getClass(), "data.xml");
+
+    DatabaseMigration migration = new FeedFileSourcesBinaryData(db.database());
+    migration.execute();
+
+    assertThat(selectDataHash(1L)).isEqualTo(DigestUtils.md5Hex(selectBinaryData(1L)));
+  }
+
+  @Test
+  public void convert_rows_with_missing_columns() throws Exception {
+    FileSourceDataReader reader = new FileSourceDataReader(FeedFileSourcesBinaryData.toBinary(1L, "aef12a,alice,class Foo {\r\n  // Empty\r\n"));
+
+    assertThat(reader.lines()).isEqualTo(2);
+    assertThat(reader.readStrings(FileSourceDataColumn.SCM_REVISION)).containsExactly("aef12a", null);
+    assertThat(reader.readStrings(FileSourceDataColumn.SCM_AUTHOR)).containsExactly("alice", null);
+    assertThat(reader.readStrings(FileSourceDataColumn.SCM_DATE)).containsExactly(null, null);
+    assertThat(reader.readIntegers(FileSourceDataColumn.UT_LINE_HITS)).containsExactly(null, null);
+    assertThat(reader.readStrings(FileSourceDataColumn.SOURCE)).containsExactly("class Foo {", "  // Empty");
+  }
+
+  @Test
+  public void fail_on_invalid_csv() throws Exception {
+    try {
+      FeedFileSourcesBinaryData.toBinary(1L, "a,b,c,not_a_number,,,,,,,,,,,,foo");
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("Value of column UT_LINE_HITS is not an integer: not_a_number");
+    }
+  }
+
+  private String selectDataHash(long id) throws Exception {
+    Connection connection = db.openConnection();
+    PreparedStatement stmt = null;
+    ResultSet rs = null;
+    try {
+      stmt = connection.prepareStatement("select data_hash from file_sources where id=?");
+      stmt.setLong(1, id);
+      rs = stmt.executeQuery();
+      rs.next();
+      return rs.getString(1);
+    } finally {
+      DbUtils.closeQuietly(connection, stmt, rs);
+    }
+  }
+
+  private byte[] selectBinaryData(long id) throws Exception {
+    Connection connection = db.openConnection();
+    PreparedStatement stmt = null;
+    ResultSet rs = null;
+    try {
+      stmt = connection.prepareStatement("select binary_data from file_sources where id=?");
+      stmt.setLong(1, id);
+      rs = stmt.executeQuery();
+      rs.next();
+      return rs.getBytes(1);
+    } finally {
+      DbUtils.closeQuietly(connection, stmt, rs);
+    }
+  }
+}
@@ -84,6 +84,46 @@ public class BulkIndexerTest {
     assertThat(replicas()).isEqualTo(1);
   }
 
+  @Test
+  public void concurrent_indexing() throws Exception {
+    BulkIndexer indexer = new BulkIndexer(esTester.client(), FakeIndexDefinition.INDEX)
+      .setConcurrentRequests(2)
+      .setFlushByteSize(new ByteSizeValue(1, ByteSizeUnit.BYTES).bytes());
+    indexer.start();
+    for (int i = 0; i < 100; i++) {
+      indexer.add(newIndexRequest(i));
+    }
+    indexer.stop();
+
+    // all in-flight requests are completed when indexer is stopped
+    assertThat(count()).isEqualTo(100);
+  }
+
+  @Test
+  public void large_concurrent_indexing() throws Exception {
+    assertThat(replicas()).isEqualTo(1);
+
+    BulkIndexer indexer = new BulkIndexer(esTester.client(), FakeIndexDefinition.INDEX)
+      .setLarge(true)
+      .setConcurrentRequests(BulkIndexer.LARGE_CONCURRENT_REQUESTS)
+      .setFlushByteSize(new ByteSizeValue(1, ByteSizeUnit.BYTES).bytes());
+    indexer.start();
+    assertThat(replicas()).isEqualTo(0);
+
+    for (int i = 0; i < 10; i++) {
+      indexer.add(newIndexRequest(i));
+    }
+    indexer.stop();
+
+    assertThat(count()).isEqualTo(10);
+    assertThat(replicas()).isEqualTo(1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void fail_if_negative_concurrent_requests() throws Exception {
+    new BulkIndexer(esTester.client(), FakeIndexDefinition.INDEX).setConcurrentRequests(-1);
+  }
+
   private long count() {
     return esTester.countDocuments("fakes", "fake");
   }
@@ -0,0 +1,115 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.es;
+
+import com.google.common.collect.ImmutableMap;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class ParallelProjectIndexerTest {
+
+  @Rule
+  public EsTester esTester = new EsTester().addDefinitions(new FakeIndexDefinition().setReplicas(1));
+
+  @Test
+  public void index_projects_in_parallel() throws Exception {
+    final List<String> indexedProjects = new CopyOnWriteArrayList<>();
+    ParallelProjectIndexer underTest = new ParallelProjectIndexer(esTester.client(), FakeIndexDefinition.INDEX).setThreads(3);
+
+    long maxUpdatedAt = underTest.index(Arrays.asList("P1", "P2", "P3", "P4", "P5"), new ParallelProjectIndexer.ProjectIndexer() {
+      @Override
+      public long index(String projectUuid, BulkIndexer bulk) {
+        // replicas are disabled during indexing
+        assertThat(replicas()).isEqualTo(0);
+        int projectIndex = Integer.parseInt(projectUuid.substring(1));
+        for (int i = 0; i < 10; i++) {
+          bulk.add(newIndexRequest(projectIndex * 100 + i));
+        }
+        indexedProjects.add(projectUuid);
+        return projectIndex * 1000L;
+      }
+    });
+
+    assertThat(maxUpdatedAt).isEqualTo(5000L);
+    assertThat(indexedProjects).containsOnly("P1", "P2", "P3", "P4", "P5");
+    assertThat(esTester.countDocuments(FakeIndexDefinition.INDEX, FakeIndexDefinition.TYPE)).isEqualTo(50);
+    assertThat(replicas()).isEqualTo(1);
+  }
+
+  @Test
+  public void index_no_projects() throws Exception {
+    ParallelProjectIndexer underTest = new ParallelProjectIndexer(esTester.client(), FakeIndexDefinition.INDEX);
+
+    long maxUpdatedAt = underTest.index(Collections.<String>emptyList(), new ParallelProjectIndexer.ProjectIndexer() {
+      @Override
+      public long index(String projectUuid, BulkIndexer bulk) {
+        throw new IllegalStateException("No projects to index");
+      }
+    });
+
+    assertThat(maxUpdatedAt).isEqualTo(0L);
+    assertThat(replicas()).isEqualTo(1);
+  }
+
+  @Test
+  public void propagate_failure_and_restore_settings() throws Exception {
+    ParallelProjectIndexer underTest = new ParallelProjectIndexer(esTester.client(), FakeIndexDefinition.INDEX).setThreads(2);
+
+    try {
+      underTest.index(Arrays.asList("P1", "P2"), new ParallelProjectIndexer.ProjectIndexer() {
+        @Override
+        public long index(String projectUuid, BulkIndexer bulk) {
+          throw new IllegalStateException("Fail to index " + projectUuid);
+        }
+      });
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage()).startsWith("Fail to index P");
+    }
+    assertThat(replicas()).isEqualTo(1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void fail_if_no_threads() throws Exception {
+    new ParallelProjectIndexer(esTester.client(), FakeIndexDefinition.INDEX).setThreads(0);
+  }
+
+  private int replicas() {
+    GetSettingsResponse settingsResp = esTester.client().nativeClient().admin().indices()
+      .prepareGetSettings(FakeIndexDefinition.INDEX).get();
+    return Integer.parseInt(settingsResp.getSetting(FakeIndexDefinition.INDEX, IndexMetaData.SETTING_NUMBER_OF_REPLICAS));
+  }
+
+  private IndexRequest newIndexRequest(int intField) {
+    return new IndexRequest(FakeIndexDefinition.INDEX, FakeIndexDefinition.TYPE)
+      .source(ImmutableMap.of(FakeIndexDefinition.INT_FIELD, intField));
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.notifications;
+
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonar.api.notifications.Notification;
+import org.sonar.api.notifications.NotificationChannel;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+public class NotificationChannelDelivererTest {
+
+  NotificationChannel channel = mock(NotificationChannel.class);
+  Notification first = mock(Notification.class);
+  Notification second = mock(Notification.class);
+  Notification third = mock(Notification.class);
+  CountDownLatch release = new CountDownLatch(1);
+
+  @Test
+  public void drop_deliveries_not_started_at_stop() throws Exception {
+    blockDeliveryOf(first);
+    NotificationChannelDeliverer deliverer = new NotificationChannelDeliverer(channel, 1, 10);
+
+    deliverer.deliver(first, "simon");
+    deliverer.deliver(second, "simon");
+    verify(channel, timeout(2000)).deliver(first, "simon");
+    deliverer.stop(10L);
+    release.countDown();
+
+    verify(channel, never()).deliver(second, "simon");
+  }
+
+  @Test
+  public void do_not_wait_for_deliveries_after_deadline() throws Exception {
+    blockDeliveryOf(first);
+    NotificationChannelDeliverer deliverer = new NotificationChannelDeliverer(channel, 1, 10);
+    deliverer.deliver(first, "simon");
+    deliverer.deliver(second, "simon");
+    verify(channel, timeout(2000)).deliver(first, "simon");
+
+    deliverer.shutdown();
+    long start = System.currentTimeMillis();
+    deliverer.awaitTermination(start - 1L);
+    long duration = System.currentTimeMillis() - start;
+    release.countDown();
+
+    assertThat(duration).isLessThan(1000L);
+    verify(channel, never()).deliver(second, "simon");
+  }
+
+  @Test
+  public void drop_deliveries_once_stopped() throws Exception {
+    NotificationChannelDeliverer deliverer = new NotificationChannelDeliverer(channel, 1, 10);
+    deliverer.stop(10L);
+
+    deliverer.deliver(first, "simon");
+
+    verify(channel, never()).deliver(first, "simon");
+    assertThat(deliverer.backlog()).isEqualTo(0L);
+  }
+
+  @Test
+  public void stop_waiting_for_free_slot_when_stopped() throws Exception {
+    blockDeliveryOf(first);
+    final NotificationChannelDeliverer deliverer = new NotificationChannelDeliverer(channel, 1, 1);
+    deliverer.deliver(first, "simon");
+    verify(channel, timeout(2000)).deliver(first, "simon");
+    deliverer.deliver(second, "simon");
+
+    // the queue is full, so the caller waits for a free slot
+    Thread caller = new Thread() {
+      @Override
+      public void run() {
+        deliverer.deliver(third, "simon");
+      }
+    };
+    caller.start();
+    deliverer.stop(10L);
+    caller.join(TimeUnit.SECONDS.toMillis(5));
+    release.countDown();
+
+    assertThat(caller.isAlive()).isFalse();
+    verify(channel, never()).deliver(second, "simon");
+    verify(channel, never()).deliver(third, "simon");
+  }
+
+  private void blockDeliveryOf(Notification notification) {
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        release.await(5, TimeUnit.SECONDS);
+        return null;
+      }
+    }).when(channel).deliver(eq(notification), anyString());
+  }
+}
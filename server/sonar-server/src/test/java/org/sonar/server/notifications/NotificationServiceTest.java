@@ -20,6 +20,7 @@
 package org.sonar.server.notifications;
 
 import org.junit.Test;
+import org.mockito.InOrder;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.sonar.api.config.Settings;
@@ -28,8 +29,13 @@ import org.sonar.api.notifications.NotificationChannel;
 import org.sonar.api.notifications.NotificationDispatcher;
 import org.sonar.core.notification.DefaultNotificationManager;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.same;
 import static org.mockito.Mockito.*;
@@ -53,7 +59,7 @@ public class NotificationServiceTest {
     when(gtalkChannel.getKey()).thenReturn("gtalk");
     when(commentOnReviewAssignedToMe.getKey()).thenReturn("comment on review assigned to me");
     when(commentOnReviewCreatedByMe.getKey()).thenReturn("comment on review created by me");
-    when(manager.getFromQueue()).thenReturn(notification).thenReturn(null);
+    when(manager.getFromQueue(anyInt())).thenReturn(Arrays.asList(notification)).thenReturn(Collections.<Notification>emptyList());
 
     Settings settings = new Settings().setProperty("sonar.notifications.delay", 1L);
 
@@ -160,7 +166,8 @@ public class NotificationServiceTest {
   @Test
   public void shouldNotStopWhenException() {
     setUpMocks();
-    when(manager.getFromQueue()).thenThrow(new RuntimeException("Unexpected exception")).thenReturn(notification).thenReturn(null);
+    when(manager.getFromQueue(anyInt())).thenThrow(new RuntimeException("Unexpected exception"))
+      .thenReturn(Arrays.asList(notification)).thenReturn(Collections.<Notification>emptyList());
     doAnswer(addUser(ASSIGNEE_SIMON, emailChannel)).when(commentOnReviewAssignedToMe).dispatch(same(notification), any(NotificationDispatcher.Context.class));
     doAnswer(addUser(CREATOR_SIMON, emailChannel)).when(commentOnReviewCreatedByMe).dispatch(same(notification), any(NotificationDispatcher.Context.class));
 
@@ -202,7 +209,8 @@ public class NotificationServiceTest {
   public void shouldLogEvery10Minutes() throws InterruptedException {
     setUpMocks();
     // Emulate 2 notifications in DB
-    when(manager.getFromQueue()).thenReturn(notification).thenReturn(notification).thenReturn(null);
+    when(manager.getFromQueue(anyInt())).thenReturn(Arrays.asList(notification)).thenReturn(Arrays.asList(notification))
+      .thenReturn(Collections.<Notification>emptyList());
     when(manager.count()).thenReturn(1L).thenReturn(0L);
     service = spy(service);
     // Emulate processing of each notification take 10 min to have a log each time
@@ -213,6 +221,68 @@ public class NotificationServiceTest {
     service.stop();
   }
 
+  @Test
+  public void slow_channel_does_not_delay_other_channels() throws Exception {
+    setUpMocks();
+    doAnswer(addUser(ASSIGNEE_SIMON, new NotificationChannel[] {emailChannel, gtalkChannel}))
+      .when(commentOnReviewAssignedToMe).dispatch(same(notification), any(NotificationDispatcher.Context.class));
+    final CountDownLatch emailServerUp = new CountDownLatch(1);
+    doAnswer(new Answer<Object>() {
+      public Object answer(InvocationOnMock invocation) throws InterruptedException {
+        emailServerUp.await();
+        return null;
+      }
+    }).when(emailChannel).deliver(notification, ASSIGNEE_SIMON);
+
+    service.start();
+    verify(gtalkChannel, timeout(2000)).deliver(notification, ASSIGNEE_SIMON);
+    emailServerUp.countDown();
+    verify(emailChannel, timeout(2000)).deliver(notification, ASSIGNEE_SIMON);
+    service.stop();
+  }
+
+  @Test
+  public void deliver_notifications_of_recipient_in_order() {
+    setUpMocks();
+    Notification first = mock(Notification.class);
+    Notification second = mock(Notification.class);
+    Notification third = mock(Notification.class);
+    when(manager.getFromQueue(anyInt())).thenReturn(Arrays.asList(first, second)).thenReturn(Arrays.asList(third))
+      .thenReturn(Collections.<Notification>emptyList());
+    doAnswer(addUser(ASSIGNEE_SIMON, emailChannel)).when(commentOnReviewAssignedToMe).dispatch(any(Notification.class), any(NotificationDispatcher.Context.class));
+
+    service.start();
+    verify(emailChannel, timeout(2000)).deliver(third, ASSIGNEE_SIMON);
+    service.stop();
+
+    InOrder inOrder = inOrder(emailChannel);
+    inOrder.verify(emailChannel).deliver(first, ASSIGNEE_SIMON);
+    inOrder.verify(emailChannel).deliver(second, ASSIGNEE_SIMON);
+    inOrder.verify(emailChannel).deliver(third, ASSIGNEE_SIMON);
+  }
+
+  @Test
+  public void count_deliveries_per_channel() {
+    setUpMocks();
+    doAnswer(addUser(ASSIGNEE_SIMON, new NotificationChannel[] {emailChannel, gtalkChannel}))
+      .when(commentOnReviewAssignedToMe).dispatch(same(notification), any(NotificationDispatcher.Context.class));
+    doThrow(new IllegalStateException("Unreachable server")).when(gtalkChannel).deliver(notification, ASSIGNEE_SIMON);
+
+    service.start();
+    verify(emailChannel, timeout(2000)).deliver(notification, ASSIGNEE_SIMON);
+    verify(gtalkChannel, timeout(2000)).deliver(notification, ASSIGNEE_SIMON);
+    // waits for the end of deliveries
+    service.stop();
+
+    assertThat(service.getDeliverers()).hasSize(2);
+    for (NotificationChannelDeliverer deliverer : service.getDeliverers()) {
+      boolean email = deliverer.channel() == emailChannel;
+      assertThat(deliverer.deliveredCount()).isEqualTo(email ? 1L : 0L);
+      assertThat(deliverer.failedCount()).isEqualTo(email ? 0L : 1L);
+      assertThat(deliverer.backlog()).isZero();
+    }
+  }
+
   private static Answer<Object> addUser(final String user, final NotificationChannel channel) {
     return addUser(user, new NotificationChannel[] {channel});
   }
@@ -0,0 +1,45 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.source;
+
+import org.junit.Test;
+import org.sonar.core.component.ComponentDto;
+import org.sonar.core.persistence.DbSession;
+import org.sonar.server.computation.ComputationContext;
+import org.sonar.server.source.index.SourceLineIndexer;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class IndexSourceLinesStepTest {
+
+  @Test
+  public void index_source_lines_of_project() throws Exception {
+    SourceLineIndexer indexer = mock(SourceLineIndexer.class);
+    IndexSourceLinesStep sut = new IndexSourceLinesStep(indexer);
+    ComputationContext context = mock(ComputationContext.class);
+    when(context.getProject()).thenReturn(new ComponentDto().setUuid("PROJECT_UUID"));
+
+    sut.execute(mock(DbSession.class), context);
+
+    verify(indexer).index("PROJECT_UUID");
+  }
+}
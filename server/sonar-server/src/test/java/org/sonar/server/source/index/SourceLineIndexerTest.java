@@ -73,6 +73,19 @@ public class SourceLineIndexerTest {
     assertThat(countDocuments()).isEqualTo(2);
   }
 
+  @Test
+  public void index_source_lines_of_project() throws Exception {
+    db.prepareDbUnit(getClass(), "index_project.xml");
+
+    indexer.index("uuid-MyProject");
+
+    assertThat(countDocuments()).isEqualTo(2);
+    SearchResponse otherProject = prepareSearch()
+      .setQuery(QueryBuilders.termQuery(FIELD_PROJECT_UUID, "uuid-OtherProject"))
+      .get();
+    assertThat(otherProject.getHits().getTotalHits()).isZero();
+  }
+
   @Test
   public void update_already_indexed_lines() throws Exception {
     prepareIndex()
@@ -25,6 +25,8 @@ import org.junit.ClassRule;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 import org.sonar.core.persistence.DbTester;
+import org.sonar.core.source.db.FileSourceDataColumn;
+import org.sonar.core.source.db.FileSourceDataWriter;
 import org.sonar.server.db.DbClient;
 import org.sonar.test.DbTests;
 
@@ -92,6 +94,57 @@ public class SourceLineResultSetIteratorTest {
     iterator.close();
   }
 
+  @Test
+  public void should_generate_source_line_documents_from_binary_data() throws Exception {
+    db.prepareDbUnit(getClass(), "shared.xml");
+    byte[] binaryData = new FileSourceDataWriter(2)
+      .set(FileSourceDataColumn.SCM_REVISION, 1, "aef12a")
+      .set(FileSourceDataColumn.SCM_AUTHOR, 1, "alice")
+      .set(FileSourceDataColumn.SCM_DATE, 1, "2014-04-25T12:34:56+0100")
+      .set(FileSourceDataColumn.UT_LINE_HITS, 1, "1")
+      .set(FileSourceDataColumn.UT_CONDITIONS, 1, "0")
+      .set(FileSourceDataColumn.IT_LINE_HITS, 1, "2")
+      .set(FileSourceDataColumn.OVERALL_LINE_HITS, 1, "3")
+      .set(FileSourceDataColumn.HIGHLIGHTING, 1, "polop")
+      .set(FileSourceDataColumn.SYMBOLS, 1, "palap")
+      .set(FileSourceDataColumn.DUPLICATIONS, 1, "1,2")
+      .set(FileSourceDataColumn.SOURCE, 1, "class Foo {")
+      .set(FileSourceDataColumn.SOURCE, 2, "}")
+      .toBytes();
+    PreparedStatement stmt = connection.prepareStatement("UPDATE file_sources SET data = null, binary_data = ? WHERE id=1");
+    stmt.setBytes(1, binaryData);
+    stmt.executeUpdate();
+    stmt.close();
+
+    SourceLineResultSetIterator iterator = SourceLineResultSetIterator.create(dbClient, connection, 0L);
+    SourceLineResultSetIterator.SourceFile file = iterator.next();
+    assertThat(file.getLines()).hasSize(2);
+    SourceLineDoc firstLine = file.getLines().get(0);
+    assertThat(firstLine.projectUuid()).isEqualTo("uuid-MyProject");
+    assertThat(firstLine.fileUuid()).isEqualTo("uuid-MyFile.xoo");
+    assertThat(firstLine.line()).isEqualTo(1);
+    assertThat(firstLine.scmRevision()).isEqualTo("aef12a");
+    assertThat(firstLine.scmAuthor()).isEqualTo("alice");
+    assertThat(firstLine.highlighting()).isEqualTo("polop");
+    assertThat(firstLine.symbols()).isEqualTo("palap");
+    assertThat(firstLine.source()).isEqualTo("class Foo {");
+    assertThat(firstLine.utLineHits()).isEqualTo(1);
+    assertThat(firstLine.utConditions()).isEqualTo(0);
+    assertThat(firstLine.utCoveredConditions()).isNull();
+    assertThat(firstLine.itLineHits()).isEqualTo(2);
+    assertThat(firstLine.overallLineHits()).isEqualTo(3);
+    assertThat(firstLine.duplications()).containsExactly(1, 2);
+
+    // undefined values are empty, as in CSV format
+    SourceLineDoc secondLine = file.getLines().get(1);
+    assertThat(secondLine.line()).isEqualTo(2);
+    assertThat(secondLine.scmAuthor()).isEmpty();
+    assertThat(secondLine.utLineHits()).isNull();
+    assertThat(secondLine.duplications()).isEmpty();
+    assertThat(secondLine.source()).isEqualTo("}");
+    iterator.close();
+  }
+
   @Test
   public void should_ignore_lines_already_handled() throws Exception {
     db.prepareDbUnit(getClass(), "shared.xml");
@@ -19,58 +19,51 @@
  */
 package org.sonar.batch.index;
 
-import com.google.common.collect.Sets;
-import com.persistit.Exchange;
-import com.persistit.Key;
-import com.persistit.KeyFilter;
-import com.persistit.exception.PersistitException;
 import org.apache.commons.lang.builder.ToStringBuilder;
 
 import javax.annotation.CheckForNull;
 
-import java.util.Iterator;
-import java.util.NoSuchElementException;
 import java.util.Set;
 
 /**
  * <p>
- * This cache is not thread-safe, due to direct usage of {@link com.persistit.Exchange}
+ * Cache of values indexed by hierarchical keys. Caches are created by {@link Caches}, either on
+ * Persistit (see {@link PersistitCache}) or in memory (see {@link MemoryCache}).
+ * </p>
+ * <p>
+ * Caches are thread-safe, but iterables returned by <code>values(...)</code> and <code>entries(...)</code>
+ * must be consumed by the thread that requested them.
  * </p>
  */
-public class Cache<V> {
+public abstract class Cache<V> {
+
+  private static final Object[] NO_KEY = new Object[0];
 
   private final String name;
-  private final Exchange exchange;
 
-  Cache(String name, Exchange exchange) {
+  Cache(String name) {
     this.name = name;
-    this.exchange = exchange;
+  }
+
+  String name() {
+    return name;
   }
 
   public Cache<V> put(Object key, V value) {
-    resetKey(key);
-    return doPut(value);
+    return put(new Object[] {key}, value);
   }
 
   public Cache<V> put(Object firstKey, Object secondKey, V value) {
-    resetKey(firstKey, secondKey);
-    return doPut(value);
+    return put(new Object[] {firstKey, secondKey}, value);
   }
 
   public Cache<V> put(Object firstKey, Object secondKey, Object thirdKey, V value) {
-    resetKey(firstKey, secondKey, thirdKey);
-    return doPut(value);
+    return put(new Object[] {firstKey, secondKey, thirdKey}, value);
   }
 
   public Cache<V> put(Object[] key, V value) {
-    resetKey(key);
-    return doPut(value);
-  }
-
-  private Cache<V> doPut(V value) {
     try {
-      exchange.getValue().put(value);
-      exchange.store();
+      doPut(key, value);
       return this;
     } catch (Exception e) {
       throw new IllegalStateException("Fail to put element in the cache " + name, e);
@@ -81,8 +74,7 @@ public class Cache<V> {
    * Returns the value object associated with keys, or null if not found.
    */
   public V get(Object key) {
-    resetKey(key);
-    return doGet();
+    return get(new Object[] {key});
   }
 
   /**
@@ -90,8 +82,7 @@ public class Cache<V> {
    */
   @CheckForNull
   public V get(Object firstKey, Object secondKey) {
-    resetKey(firstKey, secondKey);
-    return doGet();
+    return get(new Object[] {firstKey, secondKey});
   }
 
   /**
@@ -99,8 +90,7 @@ public class Cache<V> {
    */
   @CheckForNull
   public V get(Object firstKey, Object secondKey, Object thirdKey) {
-    resetKey(firstKey, secondKey, thirdKey);
-    return doGet();
+    return get(new Object[] {firstKey, secondKey, thirdKey});
   }
 
   /**
@@ -108,19 +98,8 @@ public class Cache<V> {
    */
   @CheckForNull
   public V get(Object[] key) {
-    resetKey(key);
-    return doGet();
-  }
-
-  @SuppressWarnings("unchecked")
-  @CheckForNull
-  private V doGet() {
     try {
-      exchange.fetch();
-      if (!exchange.getValue().isDefined()) {
-        return null;
-      }
-      return (V) exchange.getValue().get();
+      return doGet(key);
     } catch (Exception e) {
       // TODO add parameters to message
       throw new IllegalStateException("Fail to get element from cache " + name, e);
@@ -128,29 +107,20 @@ public class Cache<V> {
   }
 
   public boolean containsKey(Object key) {
-    resetKey(key);
-    return doContainsKey();
+    return containsKey(new Object[] {key});
   }
 
   public boolean containsKey(Object firstKey, Object secondKey) {
-    resetKey(firstKey, secondKey);
-    return doContainsKey();
+    return containsKey(new Object[] {firstKey, secondKey});
   }
 
   public boolean containsKey(Object firstKey, Object secondKey, Object thirdKey) {
-    resetKey(firstKey, secondKey, thirdKey);
-    return doContainsKey();
+    return containsKey(new Object[] {firstKey, secondKey, thirdKey});
   }
 
   public boolean containsKey(Object[] key) {
-    resetKey(key);
-    return doContainsKey();
-  }
-
-  private boolean doContainsKey() {
     try {
-      exchange.fetch();
-      return exchange.isValueDefined();
+      return doContainsKey(key);
     } catch (Exception e) {
       // TODO add parameters to message
       throw new IllegalStateException("Fail to check if element is in cache " + name, e);
@@ -158,28 +128,20 @@ public class Cache<V> {
   }
 
   public boolean remove(Object key) {
-    resetKey(key);
-    return doRemove();
+    return remove(new Object[] {key});
   }
 
   public boolean remove(Object firstKey, Object secondKey) {
-    resetKey(firstKey, secondKey);
-    return doRemove();
+    return remove(new Object[] {firstKey, secondKey});
   }
 
   public boolean remove(Object firstKey, Object secondKey, Object thirdKey) {
-    resetKey(firstKey, secondKey, thirdKey);
-    return doRemove();
+    return remove(new Object[] {firstKey, secondKey, thirdKey});
   }
 
   public boolean remove(Object[] key) {
-    resetKey(key);
-    return doRemove();
-  }
-
-  private boolean doRemove() {
     try {
-      return exchange.remove();
+      return doRemove(key);
     } catch (Exception e) {
       // TODO add parameters to message
       throw new IllegalStateException("Fail to get element from cache " + name, e);
@@ -192,30 +154,20 @@ public class Cache<V> {
    * @param group The group name.
    */
   public Cache<V> clear(Object key) {
-    resetKey(key);
-    return doClear();
+    return clear(new Object[] {key});
   }
 
   public Cache<V> clear(Object firstKey, Object secondKey) {
-    resetKey(firstKey, secondKey);
-    return doClear();
+    return clear(new Object[] {firstKey, secondKey});
   }
 
   public Cache<V> clear(Object firstKey, Object secondKey, Object thirdKey) {
-    resetKey(firstKey, secondKey, thirdKey);
-    return doClear();
+    return clear(new Object[] {firstKey, secondKey, thirdKey});
   }
 
   public Cache<V> clear(Object[] key) {
-    resetKey(key);
-    return doClear();
-  }
-
-  private Cache<V> doClear() {
     try {
-      Key to = new Key(exchange.getKey());
-      to.append(Key.AFTER);
-      exchange.removeKeyRange(exchange.getKey(), to);
+      doClear(key);
       return this;
     } catch (Exception e) {
       throw new IllegalStateException("Fail to clear values from cache " + name, e);
@@ -227,8 +179,7 @@ public class Cache<V> {
    */
   public void clear() {
     try {
-      exchange.clear();
-      exchange.removeAll();
+      doClear(NO_KEY);
     } catch (Exception e) {
       throw new IllegalStateException("Fail to clear cache", e);
     }
@@ -243,37 +194,12 @@ public class Cache<V> {
    */
   @SuppressWarnings("rawtypes")
   public Set keySet(Object key) {
-    try {
-      Set<Object> keys = Sets.newLinkedHashSet();
-      exchange.clear();
-      Exchange iteratorExchange = new Exchange(exchange);
-      iteratorExchange.append(key);
-      iteratorExchange.append(Key.BEFORE);
-      while (iteratorExchange.next(false)) {
-        keys.add(iteratorExchange.getKey().indexTo(-1).decode());
-      }
-      return keys;
-    } catch (Exception e) {
-      throw new IllegalStateException("Fail to get keys from cache " + name, e);
-    }
+    return keySet(new Object[] {key});
   }
 
   @SuppressWarnings("rawtypes")
   public Set keySet(Object firstKey, Object secondKey) {
-    try {
-      Set<Object> keys = Sets.newLinkedHashSet();
-      exchange.clear();
-      Exchange iteratorExchange = new Exchange(exchange);
-      iteratorExchange.append(firstKey);
-      iteratorExchange.append(secondKey);
-      iteratorExchange.append(Key.BEFORE);
-      while (iteratorExchange.next(false)) {
-        keys.add(iteratorExchange.getKey().indexTo(-1).decode());
-      }
-      return keys;
-    } catch (Exception e) {
-      throw new IllegalStateException("Fail to get keys from cache " + name, e);
-    }
+    return keySet(new Object[] {firstKey, secondKey});
   }
 
   /**
@@ -282,15 +208,12 @@ public class Cache<V> {
    * @return The set containing the keys for this cache.
    */
   public Set<Object> keySet() {
+    return keySet(NO_KEY);
+  }
+
+  private Set<Object> keySet(Object[] key) {
     try {
-      Set<Object> keys = Sets.newLinkedHashSet();
-      exchange.clear();
-      Exchange iteratorExchange = new Exchange(exchange);
-      iteratorExchange.append(Key.BEFORE);
-      while (iteratorExchange.next(false)) {
-        keys.add(iteratorExchange.getKey().indexTo(-1).decode());
-      }
-      return keys;
+      return doKeySet(key);
     } catch (Exception e) {
       throw new IllegalStateException("Fail to get keys from cache " + name, e);
     }
@@ -300,195 +223,75 @@ public class Cache<V> {
    * Lazy-loading values for given keys
    */
   public Iterable<V> values(Object firstKey, Object secondKey) {
-    try {
-      exchange.clear();
-      exchange.append(firstKey).append(secondKey).append(Key.BEFORE);
-      Exchange iteratorExchange = new Exchange(exchange);
-      KeyFilter filter = new KeyFilter().append(KeyFilter.simpleTerm(firstKey)).append(KeyFilter.simpleTerm(secondKey));
-      return new ValueIterable<V>(iteratorExchange, filter);
-    } catch (Exception e) {
-      throw failToGetValues(e);
-    }
-  }
-
-  private IllegalStateException failToGetValues(Exception e) {
-    return new IllegalStateException("Fail to get values from cache " + name, e);
+    return values(new Object[] {firstKey, secondKey});
   }
 
   /**
    * Lazy-loading values for a given key
    */
   public Iterable<V> values(Object firstKey) {
-    try {
-      exchange.clear();
-      exchange.append(firstKey).append(Key.BEFORE);
-      Exchange iteratorExchange = new Exchange(exchange);
-      KeyFilter filter = new KeyFilter().append(KeyFilter.simpleTerm(firstKey));
-      return new ValueIterable<V>(iteratorExchange, filter);
-    } catch (Exception e) {
-      throw failToGetValues(e);
-    }
+    return values(new Object[] {firstKey});
   }
 
   /**
    * Lazy-loading values
    */
   public Iterable<V> values() {
+    return values(NO_KEY);
+  }
+
+  private Iterable<V> values(Object[] key) {
     try {
-      exchange.clear().append(Key.BEFORE);
-      Exchange iteratorExchange = new Exchange(exchange);
-      KeyFilter filter = new KeyFilter().append(KeyFilter.ALL);
-      return new ValueIterable<V>(iteratorExchange, filter);
+      return doValues(key);
     } catch (Exception e) {
-      throw failToGetValues(e);
+      throw new IllegalStateException("Fail to get values from cache " + name, e);
     }
   }
 
   public Iterable<Entry<V>> entries() {
-    exchange.clear().to(Key.BEFORE);
-    KeyFilter filter = new KeyFilter().append(KeyFilter.ALL);
-    return new EntryIterable<V>(new Exchange(exchange), filter);
+    return entries(NO_KEY);
   }
 
   public Iterable<Entry<V>> entries(Object firstKey) {
-    exchange.clear().append(firstKey).append(Key.BEFORE);
-    KeyFilter filter = new KeyFilter().append(KeyFilter.simpleTerm(firstKey));
-    return new EntryIterable<V>(new Exchange(exchange), filter);
-  }
-
-  private void resetKey(Object key) {
-    exchange.clear();
-    exchange.append(key);
-  }
-
-  private void resetKey(Object first, Object second) {
-    exchange.clear();
-    exchange.append(first).append(second);
-  }
-
-  private void resetKey(Object first, Object second, Object third) {
-    exchange.clear();
-    exchange.append(first).append(second).append(third);
-  }
-
-  private void resetKey(Object[] keys) {
-    exchange.clear();
-    for (Object o : keys) {
-      exchange.append(o);
-    }
+    return entries(new Object[] {firstKey});
   }
 
-  //
-  // LAZY ITERATORS AND ITERABLES
-  //
-
-  private static class ValueIterable<T> implements Iterable<T> {
-    private final Iterator<T> iterator;
-
-    private ValueIterable(Exchange exchange, KeyFilter keyFilter) {
-      this.iterator = new ValueIterator<T>(exchange, keyFilter);
-    }
-
-    @Override
-    public Iterator<T> iterator() {
-      return iterator;
-    }
-  }
-
-  private static class ValueIterator<T> implements Iterator<T> {
-    private final Exchange exchange;
-    private final KeyFilter keyFilter;
-
-    private ValueIterator(Exchange exchange, KeyFilter keyFilter) {
-      this.exchange = exchange;
-      this.keyFilter = keyFilter;
-    }
-
-    @Override
-    public boolean hasNext() {
-      try {
-        return exchange.hasNext(keyFilter);
-      } catch (PersistitException e) {
-        throw new IllegalStateException(e);
-      }
-    }
-
-    @SuppressWarnings("unchecked")
-    @Override
-    public T next() {
-      try {
-        exchange.next(keyFilter);
-      } catch (PersistitException e) {
-        throw new IllegalStateException(e);
-      }
-      if (exchange.getValue().isDefined()) {
-        return (T) exchange.getValue().get();
-      }
-      throw new NoSuchElementException();
-    }
-
-    @Override
-    public void remove() {
-      throw new UnsupportedOperationException("Removing an item is not supported");
+  private Iterable<Entry<V>> entries(Object[] key) {
+    try {
+      return doEntries(key);
+    } catch (Exception e) {
+      throw new IllegalStateException("Fail to get entries from cache " + name, e);
     }
   }
 
-  private static class EntryIterable<T> implements Iterable<Entry<T>> {
-    private final EntryIterator<T> it;
+  abstract void doPut(Object[] key, V value) throws Exception;
 
-    private EntryIterable(Exchange exchange, KeyFilter keyFilter) {
-      it = new EntryIterator<T>(exchange, keyFilter);
-    }
+  @CheckForNull
+  abstract V doGet(Object[] key) throws Exception;
 
-    @Override
-    public Iterator<Entry<T>> iterator() {
-      return it;
-    }
-  }
+  abstract boolean doContainsKey(Object[] key) throws Exception;
 
-  private static class EntryIterator<T> implements Iterator<Entry<T>> {
-    private final Exchange exchange;
-    private final KeyFilter keyFilter;
+  abstract boolean doRemove(Object[] key) throws Exception;
 
-    private EntryIterator(Exchange exchange, KeyFilter keyFilter) {
-      this.exchange = exchange;
-      this.keyFilter = keyFilter;
-    }
+  /**
+   * Removes the value of the given key and of all its sub-keys. An empty key removes everything.
+   */
+  abstract void doClear(Object[] key) throws Exception;
 
-    @Override
-    public boolean hasNext() {
-      try {
-        return exchange.hasNext(keyFilter);
-      } catch (PersistitException e) {
-        throw new IllegalStateException(e);
-      }
-    }
+  /**
+   * Last part of the keys that are one level below the given key.
+   */
+  abstract Set<Object> doKeySet(Object[] key) throws Exception;
 
-    @SuppressWarnings("unchecked")
-    @Override
-    public Entry<T> next() {
-      try {
-        exchange.next(keyFilter);
-      } catch (PersistitException e) {
-        throw new IllegalStateException(e);
-      }
-      if (exchange.getValue().isDefined()) {
-        T value = (T) exchange.getValue().get();
-        Key key = exchange.getKey();
-        Object[] array = new Object[key.getDepth()];
-        for (int i = 0; i < key.getDepth(); i++) {
-          array[i] = key.indexTo(i - key.getDepth()).decode();
-        }
-        return new Entry<T>(array, value);
-      }
-      throw new NoSuchElementException();
-    }
+  /**
+   * Values of all the sub-keys of the given key, excluding the value of the key itself.
+   */
+  abstract Iterable<V> doValues(Object[] key) throws Exception;
 
-    @Override
-    public void remove() {
-      throw new UnsupportedOperationException("Removing an item is not supported");
-    }
-  }
+  /**
+   * Entries of all the sub-keys of the given key, excluding the entry of the key itself.
+   */
+  abstract Iterable<Entry<V>> doEntries(Object[] key) throws Exception;
 
   public static class Entry<V> {
     private final Object[] key;
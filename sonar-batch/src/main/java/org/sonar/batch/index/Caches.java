@@ -29,10 +29,13 @@ import com.persistit.encoding.CoderManager;
 import com.persistit.encoding.ValueCoder;
 import com.persistit.exception.PersistitException;
 import com.persistit.logging.Slf4jAdapter;
+import com.google.common.annotations.VisibleForTesting;
 import org.apache.commons.io.FileUtils;
 import org.picocontainer.Startable;
+import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.BatchComponent;
+import org.sonar.api.config.Settings;
 import org.sonar.api.utils.TempFolder;
 
 import java.io.File;
@@ -46,17 +49,54 @@ import java.util.Set;
  */
 public class Caches implements BatchComponent, Startable {
 
+  /**
+   * Size in MB of the Persistit buffer pool. By default 5% of the maximum heap, between 1MB and 256MB.
+   */
+  public static final String BUFFER_POOL_SIZE_PROPERTY = "sonar.batch.cache.bufferPoolSizeInMb";
+
+  /**
+   * If true, caches are stored in heap instead of Persistit trees. Faster, but the whole
+   * content of caches must fit in heap. Default is false.
+   */
+  public static final String IN_MEMORY_PROPERTY = "sonar.batch.cache.inMemory";
+
+  private static final Logger LOG = LoggerFactory.getLogger(Caches.class);
+  private static final int PAGE_SIZE = 8192;
+  private static final int MIN_BUFFERS = 10;
+  private static final long MB = 1024L * 1024L;
+  private static final long MIN_DEFAULT_BUFFER_POOL_SIZE = MB;
+  private static final long MAX_DEFAULT_BUFFER_POOL_SIZE = 256 * MB;
+
   private final Set<String> cacheNames = Sets.newHashSet();
   private File tempDir;
   private Persistit persistit;
   private Volume volume;
   private final TempFolder tempFolder;
+  private final boolean inMemory;
+  private final int bufferCount;
 
   public Caches(TempFolder tempFolder) {
+    this(tempFolder, new Settings());
+  }
+
+  public Caches(TempFolder tempFolder, Settings settings) {
     this.tempFolder = tempFolder;
+    this.inMemory = settings.getBoolean(IN_MEMORY_PROPERTY);
+    this.bufferCount = bufferCount(settings, Runtime.getRuntime().maxMemory());
     initPersistit();
   }
 
+  @VisibleForTesting
+  static int bufferCount(Settings settings, long maxHeap) {
+    long bufferPoolSize;
+    if (settings.hasKey(BUFFER_POOL_SIZE_PROPERTY)) {
+      bufferPoolSize = settings.getLong(BUFFER_POOL_SIZE_PROPERTY) * MB;
+    } else {
+      bufferPoolSize = Math.max(MIN_DEFAULT_BUFFER_POOL_SIZE, Math.min(MAX_DEFAULT_BUFFER_POOL_SIZE, maxHeap / 20));
+    }
+    return (int) Math.max(MIN_BUFFERS, bufferPoolSize / PAGE_SIZE);
+  }
+
   private void initPersistit() {
     try {
       tempDir = tempFolder.newDir("caches");
@@ -66,13 +106,15 @@ public class Caches implements BatchComponent, Startable {
       props.setProperty("datapath", tempDir.getAbsolutePath());
       props.setProperty("logpath", "${datapath}/log");
       props.setProperty("logfile", "${logpath}/persistit_${timestamp}.log");
-      props.setProperty("buffer.count.8192", "10");
+      // buffers are not used by in-memory caches
+      props.setProperty("buffer.count." + PAGE_SIZE, String.valueOf(inMemory ? MIN_BUFFERS : bufferCount));
       props.setProperty("journalpath", "${datapath}/journal");
       props.setProperty("tmpvoldir", "${datapath}");
       props.setProperty("volume.1", "${datapath}/persistit,create,pageSize:8192,initialPages:10,extensionPages:100,maximumPages:25000");
       persistit.setProperties(props);
       persistit.initialize();
       volume = persistit.createTemporaryVolume();
+      LOG.debug("Caches are stored {}", inMemory ? "in memory" : ("in Persistit with a buffer pool of " + ((long) bufferCount * PAGE_SIZE / MB) + "MB"));
 
     } catch (Exception e) {
       throw new IllegalStateException("Fail to start caches", e);
@@ -84,13 +126,18 @@ public class Caches implements BatchComponent, Startable {
     cm.registerValueCoder(clazz, coder);
   }
 
-  public <V> Cache<V> createCache(String cacheName) {
+  public synchronized <V> Cache<V> createCache(String cacheName) {
     Preconditions.checkState(volume != null && volume.isOpened(), "Caches are not initialized");
     Preconditions.checkState(!cacheNames.contains(cacheName), "Cache is already created: " + cacheName);
     try {
-      Exchange exchange = persistit.getExchange(volume, cacheName, true);
-      exchange.setMaximumValueSize(Value.MAXIMUM_SIZE);
-      Cache<V> cache = new Cache<V>(cacheName, exchange);
+      Cache<V> cache;
+      if (inMemory) {
+        cache = new MemoryCache<V>(cacheName, persistit);
+      } else {
+        Exchange exchange = persistit.getExchange(volume, cacheName, true);
+        exchange.setMaximumValueSize(Value.MAXIMUM_SIZE);
+        cache = new PersistitCache<V>(cacheName, exchange);
+      }
       cacheNames.add(cacheName);
       return cache;
     } catch (Exception e) {
@@ -20,9 +20,15 @@
 package org.sonar.batch.index;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.config.Settings;
 import org.sonar.api.database.model.MeasureMapper;
 import org.sonar.api.database.model.MeasureModel;
 import org.sonar.api.measures.Measure;
+import org.sonar.api.measures.Metric;
 import org.sonar.api.measures.MetricFinder;
 import org.sonar.api.measures.RuleMeasure;
 import org.sonar.api.resources.Resource;
@@ -33,21 +39,45 @@ import org.sonar.api.rules.RuleFinder;
 import org.sonar.api.technicaldebt.batch.Characteristic;
 import org.sonar.batch.index.Cache.Entry;
 import org.sonar.batch.scan.measure.MeasureCache;
+import org.sonar.core.persistence.Database;
 import org.sonar.core.persistence.DbSession;
 import org.sonar.core.persistence.MyBatis;
 
 import javax.annotation.Nullable;
 
+import java.util.List;
+import java.util.Map;
+
 public class MeasurePersister implements ScanPersister {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MeasurePersister.class);
+
+  /**
+   * Number of measures written per statement when the database supports multiple rows insert, else per JDBC batch.
+   * Values greater than {@link #MAX_BATCH_SIZE} are reduced to this maximum.
+   */
+  public static final String BATCH_SIZE_PROPERTY = "sonar.batch.measures.batchSize";
+  private static final int DEFAULT_BATCH_SIZE = 100;
+
+  /**
+   * Each row binds 21 parameters, so 1000 rows stay far below the maximum of 32767 parameters per statement
+   * of the PostgreSQL driver.
+   */
+  static final int MAX_BATCH_SIZE = 1000;
+
   private final MyBatis mybatis;
+  private final Database database;
+  private final Settings settings;
   private final RuleFinder ruleFinder;
   private final MeasureCache measureCache;
   private final ResourceCache resourceCache;
   private final MetricFinder metricFinder;
 
-  public MeasurePersister(MyBatis mybatis, RuleFinder ruleFinder, MetricFinder metricFinder,
+  public MeasurePersister(MyBatis mybatis, Database database, Settings settings, RuleFinder ruleFinder, MetricFinder metricFinder,
     MeasureCache measureCache, ResourceCache resourceCache) {
     this.mybatis = mybatis;
+    this.database = database;
+    this.settings = settings;
     this.ruleFinder = ruleFinder;
     this.metricFinder = metricFinder;
     this.measureCache = measureCache;
@@ -56,8 +86,14 @@ public class MeasurePersister implements ScanPersister {
 
   @Override
   public void persist() {
+    Map<String, Metric> metricsByKey = metricsByKey();
+    int batchSize = batchSize();
+    boolean multipleRows = database.getDialect().supportsMultipleRowsInsert();
+
     try (DbSession session = mybatis.openSession(true)) {
       MeasureMapper mapper = session.getMapper(MeasureMapper.class);
+      List<MeasureModel> models = Lists.newArrayListWithCapacity(batchSize);
+      int pending = 0;
 
       for (Entry<Measure> entry : measureCache.entries()) {
         String effectiveKey = entry.key()[0].toString();
@@ -65,13 +101,24 @@ public class MeasurePersister implements ScanPersister {
         BatchResource batchResource = resourceCache.get(effectiveKey);
 
         // Reload Metric to have all Hibernate fields populated
-        measure.setMetric(metricFinder.findByKey(measure.getMetricKey()));
+        measure.setMetric(metricsByKey.get(measure.getMetricKey()));
 
         if (shouldPersistMeasure(batchResource.resource(), measure)) {
           MeasureModel measureModel = model(measure, ruleFinder).setSnapshotId(batchResource.snapshotId());
-          mapper.insert(measureModel);
+          if (multipleRows && !hasLargeData(measure)) {
+            models.add(measureModel);
+          } else {
+            // large data are not grouped, so that a statement never exceeds the maximum packet size of MySQL
+            mapper.insert(measureModel);
+          }
+          pending++;
+          if (pending == batchSize) {
+            flush(session, mapper, models);
+            pending = 0;
+          }
         }
       }
+      flush(session, mapper, models);
 
       session.commit();
     } catch (Exception e) {
@@ -79,6 +126,39 @@ public class MeasurePersister implements ScanPersister {
     }
   }
 
+  @VisibleForTesting
+  int batchSize() {
+    if (!settings.hasKey(BATCH_SIZE_PROPERTY)) {
+      return DEFAULT_BATCH_SIZE;
+    }
+    int batchSize = Math.max(1, settings.getInt(BATCH_SIZE_PROPERTY));
+    if (batchSize > MAX_BATCH_SIZE) {
+      LOG.warn("Property " + BATCH_SIZE_PROPERTY + " is reduced from " + batchSize + " to the maximum of " + MAX_BATCH_SIZE + " measures");
+      return MAX_BATCH_SIZE;
+    }
+    return batchSize;
+  }
+
+  private static void flush(DbSession session, MeasureMapper mapper, List<MeasureModel> models) {
+    if (!models.isEmpty()) {
+      mapper.insertRows(models);
+    }
+    session.flushStatements();
+    models.clear();
+  }
+
+  private Map<String, Metric> metricsByKey() {
+    Map<String, Metric> metricsByKey = Maps.newHashMap();
+    for (Metric metric : metricFinder.findAll()) {
+      metricsByKey.put(metric.getKey(), metric);
+    }
+    return metricsByKey;
+  }
+
+  private static boolean hasLargeData(Measure measure) {
+    return measure.getData() != null && measure.getData().length() > MeasureModel.TEXT_VALUE_LENGTH;
+  }
+
   @VisibleForTesting
   static boolean shouldPersistMeasure(@Nullable Resource resource, @Nullable Measure measure) {
     if (resource == null || measure == null) {
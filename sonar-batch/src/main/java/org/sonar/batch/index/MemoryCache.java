@@ -0,0 +1,188 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.index;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.UnsignedBytes;
+import com.persistit.Key;
+import com.persistit.Persistit;
+import com.persistit.Value;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Cache stored in heap, without any Persistit tree. Keys and values are encoded the same way
+ * as in {@link PersistitCache}, so that ordering of keys and isolation of stored values
+ * (values are copied, not referenced) are the same. Only the registered value coders of
+ * {@link Persistit} are used.
+ */
+class MemoryCache<V> extends Cache<V> {
+
+  private static final Comparator<byte[]> KEY_COMPARATOR = UnsignedBytes.lexicographicalComparator();
+
+  private final Persistit persistit;
+  private final ConcurrentNavigableMap<byte[], ByteBuffer> map = new ConcurrentSkipListMap<byte[], ByteBuffer>(KEY_COMPARATOR);
+
+  MemoryCache(String name, Persistit persistit) {
+    super(name);
+    this.persistit = persistit;
+  }
+
+  @Override
+  void doPut(Object[] key, V value) {
+    Value encoded = newValue();
+    encoded.put(value);
+    ByteBuffer buffer = allocate(encoded.getEncodedSize());
+    buffer.put(encoded.getEncodedBytes(), 0, encoded.getEncodedSize());
+    buffer.flip();
+    map.put(encodeKey(key, false), buffer);
+  }
+
+  /**
+   * Allocates the buffer that stores an encoded value. Values are stored in heap.
+   */
+  ByteBuffer allocate(int size) {
+    return ByteBuffer.allocate(size);
+  }
+
+  @Override
+  V doGet(Object[] key) {
+    ByteBuffer buffer = map.get(encodeKey(key, false));
+    return buffer == null ? null : decodeValue(buffer);
+  }
+
+  @Override
+  boolean doContainsKey(Object[] key) {
+    return map.containsKey(encodeKey(key, false));
+  }
+
+  @Override
+  boolean doRemove(Object[] key) {
+    return map.remove(encodeKey(key, false)) != null;
+  }
+
+  @Override
+  void doClear(Object[] key) {
+    if (key.length == 0) {
+      map.clear();
+    } else {
+      map.subMap(encodeKey(key, false), true, encodeKey(key, true), false).clear();
+    }
+  }
+
+  @Override
+  Set<Object> doKeySet(Object[] key) {
+    Set<Object> result = Sets.newLinkedHashSet();
+    byte[] to = encodeKey(key, true);
+    byte[] next = map.higherKey(encodeKey(key, false));
+    while (next != null && KEY_COMPARATOR.compare(next, to) < 0) {
+      Key subKey = decodeKey(next);
+      result.add(subKey.indexTo(key.length).decode());
+      // skip the keys that are deeper than the next level
+      subKey.setDepth(key.length + 1);
+      subKey.append(Key.AFTER);
+      next = map.higherKey(Arrays.copyOf(subKey.getEncodedBytes(), subKey.getEncodedSize()));
+    }
+    return result;
+  }
+
+  @Override
+  Iterable<V> doValues(Object[] key) {
+    return Iterables.transform(subKeys(key).values(), new Function<ByteBuffer, V>() {
+      @Override
+      public V apply(ByteBuffer input) {
+        return decodeValue(input);
+      }
+    });
+  }
+
+  @Override
+  Iterable<Entry<V>> doEntries(Object[] key) {
+    return Iterables.transform(subKeys(key).entrySet(), new Function<Map.Entry<byte[], ByteBuffer>, Entry<V>>() {
+      @Override
+      public Entry<V> apply(Map.Entry<byte[], ByteBuffer> input) {
+        Key entryKey = decodeKey(input.getKey());
+        Object[] array = new Object[entryKey.getDepth()];
+        entryKey.indexTo(0);
+        for (int i = 0; i < array.length; i++) {
+          array[i] = entryKey.decode();
+        }
+        return new Entry<V>(array, decodeValue(input.getValue()));
+      }
+    });
+  }
+
+  private ConcurrentNavigableMap<byte[], ByteBuffer> subKeys(Object[] key) {
+    return map.subMap(encodeKey(key, false), false, encodeKey(key, true), false);
+  }
+
+  /**
+   * Encoded keys are sorted as in Persistit. Appending {@link Key#AFTER} gives the upper bound of all the sub-keys.
+   */
+  private byte[] encodeKey(Object[] key, boolean after) {
+    Key encoded = new Key(persistit);
+    for (Object o : key) {
+      encoded.append(o);
+    }
+    if (after) {
+      encoded.append(Key.AFTER);
+    }
+    return Arrays.copyOf(encoded.getEncodedBytes(), encoded.getEncodedSize());
+  }
+
+  private Key decodeKey(byte[] bytes) {
+    Key decoded = new Key(persistit);
+    System.arraycopy(bytes, 0, decoded.getEncodedBytes(), 0, bytes.length);
+    decoded.setEncodedSize(bytes.length);
+    return decoded;
+  }
+
+  /**
+   * Keys and values are not thread-safe. They are not kept in thread locals, which would prevent
+   * the {@link Persistit} instance to be garbage collected.
+   */
+  private Value newValue() {
+    Value value = new Value(persistit);
+    value.setMaximumSize(Value.MAXIMUM_SIZE);
+    return value;
+  }
+
+  @SuppressWarnings("unchecked")
+  private V decodeValue(ByteBuffer buffer) {
+    Value decoded = newValue();
+    int size = buffer.remaining();
+    if (buffer.hasArray()) {
+      decoded.putEncodedBytes(buffer.array(), buffer.arrayOffset() + buffer.position(), size);
+    } else {
+      byte[] bytes = new byte[size];
+      buffer.duplicate().get(bytes);
+      decoded.putEncodedBytes(bytes, 0, size);
+    }
+    return (V) decoded.get();
+  }
+}
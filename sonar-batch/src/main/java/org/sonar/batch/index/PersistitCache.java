@@ -0,0 +1,266 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.index;
+
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Sets;
+import com.persistit.Exchange;
+import com.persistit.Key;
+import com.persistit.KeyFilter;
+import com.persistit.exception.PersistitException;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cache stored in a Persistit tree. A {@link com.persistit.Exchange} can't be shared between threads, so
+ * each thread works on its own copy of the exchange over the same tree.
+ */
+class PersistitCache<V> extends Cache<V> {
+
+  // Never positioned nor used to read or write data, only copied into per-thread exchanges
+  private final Exchange template;
+
+  // Not a thread local, which would keep the Persistit instance in memory as long as threads are alive.
+  // Threads are weak keys, so that the exchanges of the threads of short-lived pools are released with them.
+  private final ConcurrentMap<Thread, Exchange> exchanges = new MapMaker().weakKeys().makeMap();
+
+  PersistitCache(String name, Exchange exchange) {
+    super(name);
+    this.template = exchange;
+  }
+
+  @Override
+  void doPut(Object[] key, V value) throws PersistitException {
+    Exchange exchange = exchange(key);
+    exchange.getValue().put(value);
+    exchange.store();
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  V doGet(Object[] key) throws PersistitException {
+    Exchange exchange = exchange(key);
+    exchange.fetch();
+    if (!exchange.getValue().isDefined()) {
+      return null;
+    }
+    return (V) exchange.getValue().get();
+  }
+
+  @Override
+  boolean doContainsKey(Object[] key) throws PersistitException {
+    Exchange exchange = exchange(key);
+    exchange.fetch();
+    return exchange.isValueDefined();
+  }
+
+  @Override
+  boolean doRemove(Object[] key) throws PersistitException {
+    Exchange exchange = exchange(key);
+    return exchange.remove();
+  }
+
+  @Override
+  void doClear(Object[] key) throws PersistitException {
+    Exchange exchange = exchange(key);
+    if (key.length == 0) {
+      exchange.removeAll();
+    } else {
+      Key to = new Key(exchange.getKey());
+      to.append(Key.AFTER);
+      exchange.removeKeyRange(exchange.getKey(), to);
+    }
+  }
+
+  @Override
+  Set<Object> doKeySet(Object[] key) throws PersistitException {
+    Set<Object> keys = Sets.newLinkedHashSet();
+    Exchange exchange = exchange(key);
+    exchange.append(Key.BEFORE);
+    while (exchange.next(false)) {
+      keys.add(exchange.getKey().indexTo(-1).decode());
+    }
+    return keys;
+  }
+
+  @Override
+  Iterable<V> doValues(Object[] key) {
+    return new ValueIterable<V>(iteratorExchange(key), keyFilter(key));
+  }
+
+  @Override
+  Iterable<Entry<V>> doEntries(Object[] key) {
+    return new EntryIterable<V>(iteratorExchange(key), keyFilter(key));
+  }
+
+  /**
+   * Iterators are lazy, so they can't use the exchange of the thread
+   */
+  private Exchange iteratorExchange(Object[] key) {
+    Exchange exchange = exchange(key);
+    exchange.append(Key.BEFORE);
+    return new Exchange(exchange);
+  }
+
+  private static KeyFilter keyFilter(Object[] key) {
+    KeyFilter filter = new KeyFilter();
+    if (key.length == 0) {
+      return filter.append(KeyFilter.ALL);
+    }
+    for (Object o : key) {
+      filter = filter.append(KeyFilter.simpleTerm(o));
+    }
+    return filter;
+  }
+
+  /**
+   * Exchange of the current thread, positioned on the given key
+   */
+  private Exchange exchange(Object[] keys) {
+    Thread thread = Thread.currentThread();
+    Exchange exchange = exchanges.get(thread);
+    if (exchange == null) {
+      synchronized (template) {
+        exchange = new Exchange(template);
+      }
+      exchanges.put(thread, exchange);
+    }
+    exchange.clear();
+    for (Object o : keys) {
+      exchange.append(o);
+    }
+    return exchange;
+  }
+
+  //
+  // LAZY ITERATORS AND ITERABLES
+  //
+
+  private static class ValueIterable<T> implements Iterable<T> {
+    private final Iterator<T> iterator;
+
+    private ValueIterable(Exchange exchange, KeyFilter keyFilter) {
+      this.iterator = new ValueIterator<T>(exchange, keyFilter);
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+      return iterator;
+    }
+  }
+
+  private static class ValueIterator<T> implements Iterator<T> {
+    private final Exchange exchange;
+    private final KeyFilter keyFilter;
+
+    private ValueIterator(Exchange exchange, KeyFilter keyFilter) {
+      this.exchange = exchange;
+      this.keyFilter = keyFilter;
+    }
+
+    @Override
+    public boolean hasNext() {
+      try {
+        return exchange.hasNext(keyFilter);
+      } catch (PersistitException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public T next() {
+      try {
+        exchange.next(keyFilter);
+      } catch (PersistitException e) {
+        throw new IllegalStateException(e);
+      }
+      if (exchange.getValue().isDefined()) {
+        return (T) exchange.getValue().get();
+      }
+      throw new NoSuchElementException();
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException("Removing an item is not supported");
+    }
+  }
+
+  private static class EntryIterable<T> implements Iterable<Entry<T>> {
+    private final EntryIterator<T> it;
+
+    private EntryIterable(Exchange exchange, KeyFilter keyFilter) {
+      it = new EntryIterator<T>(exchange, keyFilter);
+    }
+
+    @Override
+    public Iterator<Entry<T>> iterator() {
+      return it;
+    }
+  }
+
+  private static class EntryIterator<T> implements Iterator<Entry<T>> {
+    private final Exchange exchange;
+    private final KeyFilter keyFilter;
+
+    private EntryIterator(Exchange exchange, KeyFilter keyFilter) {
+      this.exchange = exchange;
+      this.keyFilter = keyFilter;
+    }
+
+    @Override
+    public boolean hasNext() {
+      try {
+        return exchange.hasNext(keyFilter);
+      } catch (PersistitException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Entry<T> next() {
+      try {
+        exchange.next(keyFilter);
+      } catch (PersistitException e) {
+        throw new IllegalStateException(e);
+      }
+      if (exchange.getValue().isDefined()) {
+        T value = (T) exchange.getValue().get();
+        Key key = exchange.getKey();
+        Object[] array = new Object[key.getDepth()];
+        for (int i = 0; i < key.getDepth(); i++) {
+          array[i] = key.indexTo(i - key.getDepth()).decode();
+        }
+        return new Entry<T>(array, value);
+      }
+      throw new NoSuchElementException();
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException("Removing an item is not supported");
+    }
+  }
+}
@@ -19,10 +19,11 @@
  */
 package org.sonar.batch.index;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.CharMatcher;
+import com.google.common.base.Charsets;
 import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.ibatis.session.ResultContext;
 import org.apache.ibatis.session.ResultHandler;
@@ -38,11 +39,11 @@ import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.measures.Measure;
 import org.sonar.api.utils.KeyValueFormat;
 import org.sonar.api.utils.System2;
-import org.sonar.api.utils.text.CsvWriter;
 import org.sonar.batch.ProjectTree;
 import org.sonar.batch.duplication.DuplicationCache;
 import org.sonar.batch.highlighting.SyntaxHighlightingData;
 import org.sonar.batch.highlighting.SyntaxHighlightingRule;
+import org.sonar.batch.scan.filesystem.FileContents;
 import org.sonar.batch.scan.filesystem.InputPathCache;
 import org.sonar.batch.scan.measure.MeasureCache;
 import org.sonar.batch.source.CodeColorizers;
@@ -50,14 +51,16 @@ import org.sonar.batch.symbol.SymbolData;
 import org.sonar.core.persistence.DbSession;
 import org.sonar.core.persistence.MyBatis;
 import org.sonar.core.source.SnapshotDataTypes;
+import org.sonar.core.source.db.FileSourceDataColumn;
+import org.sonar.core.source.db.FileSourceDataWriter;
 import org.sonar.core.source.db.FileSourceDto;
 import org.sonar.core.source.db.FileSourceMapper;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 
-import java.io.IOException;
-import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -73,6 +76,25 @@ public class SourcePersister implements ScanPersister {
   private static final Logger LOG = LoggerFactory.getLogger(SourcePersister.class);
 
   private static final String BOM = "\uFEFF";
+
+  /**
+   * Pending inserts and updates are flushed when the size of their data reaches this limit, so that memory
+   * stays bounded even with big files.
+   */
+  static final long DEFAULT_MAX_BATCH_BYTES = 8L * 1024 * 1024;
+
+  /**
+   * Must be changed when the way data is built from its inputs changes, so that data of all files is rebuilt
+   */
+  private static final String DATA_FINGERPRINT_VERSION = "1";
+
+  private static final String[] LINE_METRIC_KEYS = {
+    CoreMetrics.SCM_AUTHORS_BY_LINE_KEY, CoreMetrics.SCM_REVISIONS_BY_LINE_KEY, CoreMetrics.SCM_LAST_COMMIT_DATETIMES_BY_LINE_KEY,
+    CoreMetrics.COVERAGE_LINE_HITS_DATA_KEY, CoreMetrics.CONDITIONS_BY_LINE_KEY, CoreMetrics.COVERED_CONDITIONS_BY_LINE_KEY,
+    CoreMetrics.IT_COVERAGE_LINE_HITS_DATA_KEY, CoreMetrics.IT_CONDITIONS_BY_LINE_KEY, CoreMetrics.IT_COVERED_CONDITIONS_BY_LINE_KEY,
+    CoreMetrics.OVERALL_COVERAGE_LINE_HITS_DATA_KEY, CoreMetrics.OVERALL_CONDITIONS_BY_LINE_KEY, CoreMetrics.OVERALL_COVERED_CONDITIONS_BY_LINE_KEY
+  };
+
   private final InputPathCache inputPathCache;
   private final MyBatis mybatis;
   private final MeasureCache measureCache;
@@ -82,10 +104,12 @@ public class SourcePersister implements ScanPersister {
   private final ResourceCache resourceCache;
   private CodeColorizers codeColorizers;
   private DuplicationCache duplicationCache;
+  private final FileContents fileContents;
+  private long maxBatchBytes = DEFAULT_MAX_BATCH_BYTES;
 
   public SourcePersister(InputPathCache inputPathCache,
     MyBatis mybatis, MeasureCache measureCache, ComponentDataCache componentDataCache, ProjectTree projectTree, System2 system2,
-    ResourceCache resourceCache, CodeColorizers codeColorizers, DuplicationCache duplicationCache) {
+    ResourceCache resourceCache, CodeColorizers codeColorizers, DuplicationCache duplicationCache, FileContents fileContents) {
     this.inputPathCache = inputPathCache;
     this.mybatis = mybatis;
     this.measureCache = measureCache;
@@ -95,12 +119,20 @@ public class SourcePersister implements ScanPersister {
     this.resourceCache = resourceCache;
     this.codeColorizers = codeColorizers;
     this.duplicationCache = duplicationCache;
+    this.fileContents = fileContents;
+  }
+
+  @VisibleForTesting
+  SourcePersister setMaxBatchBytes(long l) {
+    this.maxBatchBytes = l;
+    return this;
   }
 
   @Override
   public void persist() {
-    // Don't use batch insert for file_sources since keeping all data in memory can produce OOM for big files
-    try (DbSession session = mybatis.openSession(false)) {
+    // Batch statements are committed according to the size of data, not only to the number of rows,
+    // as keeping many big files in memory can produce OOM
+    try (DbSession session = mybatis.openSession(true)) {
 
       final Map<String, FileSourceDto> fileSourceDtoByFileUuid = new HashMap<String, FileSourceDto>();
 
@@ -115,56 +147,84 @@ public class SourcePersister implements ScanPersister {
 
       FileSourceMapper mapper = session.getMapper(FileSourceMapper.class);
 
+      long batchBytes = 0L;
       for (InputPath inputPath : inputPathCache.all()) {
         if (inputPath instanceof InputFile) {
-          persist(session, mapper, inputPath, fileSourceDtoByFileUuid);
+          batchBytes += persist(mapper, inputPath, fileSourceDtoByFileUuid);
+          if (batchBytes >= maxBatchBytes) {
+            session.commit();
+            batchBytes = 0L;
+          }
         }
       }
+      session.commit();
     } catch (Exception e) {
       throw new IllegalStateException("Unable to save file sources", e);
     }
 
   }
 
-  private void persist(DbSession session, FileSourceMapper mapper, InputPath inputPath, Map<String, FileSourceDto> fileSourceDtoByFileUuid) {
+  /**
+   * @return the approximate number of bytes sent to db, 0 if file is unchanged
+   */
+  private long persist(FileSourceMapper mapper, InputPath inputPath, Map<String, FileSourceDto> fileSourceDtoByFileUuid) {
     DefaultInputFile inputFile = (DefaultInputFile) inputPath;
     LOG.debug("Processing {}", inputFile.absolutePath());
     org.sonar.api.resources.File file = (org.sonar.api.resources.File) resourceCache.get(inputFile.key()).resource();
     String fileUuid = file.getUuid();
-    FileSourceDto previous = fileSourceDtoByFileUuid.get(fileUuid);
-    String newData = getSourceData(inputFile);
-    String newDataHash = newData != null ? DigestUtils.md5Hex(newData) : "0";
-    Date now = system2.newDate();
+    // each file is persisted once. Removing its DTO from the map lets it be garbage collected as soon as
+    // the batch of statements that references it has been flushed.
+    FileSourceDto previous = fileSourceDtoByFileUuid.remove(fileUuid);
     try {
+      String newDataFingerprint = getDataFingerprint(inputFile);
+      if (previous != null && newDataFingerprint != null && newDataFingerprint.equals(previous.getDataFingerprint())) {
+        // Neither source nor line data changed, so don't read and encode the file again
+        return 0L;
+      }
+      byte[] newData = getSourceData(inputFile);
+      String newDataHash = newData != null ? DigestUtils.md5Hex(newData) : "0";
+      Date now = system2.newDate();
       if (previous == null) {
         FileSourceDto newFileSource = new FileSourceDto()
           .setProjectUuid(projectTree.getRootProject().getUuid())
           .setFileUuid(fileUuid)
-          .setData(newData)
+          .setBinaryData(newData)
           .setDataHash(newDataHash)
+          .setDataFingerprint(newDataFingerprint)
           .setSrcHash(inputFile.hash())
           .setLineHashes(lineHashesAsMd5Hex(inputFile))
           .setCreatedAt(now.getTime())
           .setUpdatedAt(now.getTime());
         mapper.insert(newFileSource);
-        session.commit();
-      } else {
-        if (!newDataHash.equals(previous.getDataHash())) {
-          previous
-            .setData(newData)
-            .setLineHashes(lineHashesAsMd5Hex(inputFile))
-            .setDataHash(newDataHash)
-            .setSrcHash(inputFile.hash())
-            .setUpdatedAt(now.getTime());
-          mapper.update(previous);
-          session.commit();
-        }
+        return sizeOf(newFileSource);
       }
+      if (!newDataHash.equals(previous.getDataHash())) {
+        previous
+          .setBinaryData(newData)
+          .setLineHashes(lineHashesAsMd5Hex(inputFile))
+          .setDataHash(newDataHash)
+          .setDataFingerprint(newDataFingerprint)
+          .setSrcHash(inputFile.hash())
+          .setUpdatedAt(now.getTime());
+        mapper.update(previous);
+        return sizeOf(previous);
+      }
+      if (!StringUtils.equals(newDataFingerprint, previous.getDataFingerprint())) {
+        // Same data but built from different inputs, for example when fingerprint was not computed yet.
+        // Update date is kept so that file is not indexed again.
+        mapper.updateDataFingerprint(previous.setDataFingerprint(newDataFingerprint));
+      }
+      return 0L;
     } catch (Exception e) {
       throw new IllegalStateException("Unable to save file sources for " + inputPath.absolutePath(), e);
     }
   }
 
+  private static long sizeOf(FileSourceDto dto) {
+    long size = dto.getBinaryData() == null ? 0L : dto.getBinaryData().length;
+    return size + (dto.getLineHashes() == null ? 0L : dto.getLineHashes().length());
+  }
+
   @CheckForNull
   private String lineHashesAsMd5Hex(DefaultInputFile inputFile) {
     if (inputFile.lines() == 0) {
@@ -181,17 +241,62 @@ public class SourcePersister implements ScanPersister {
     return result.toString();
   }
 
+  /**
+   * Cheap hash of all the inputs of {@link #getSourceData(DefaultInputFile)}, computed without reading the file.
+   * @return null if source hash is unknown
+   */
   @CheckForNull
-  String getSourceData(DefaultInputFile file) {
-    if (file.lines() == 0) {
+  String getDataFingerprint(DefaultInputFile file) {
+    if (file.hash() == null) {
       return null;
     }
-    List<String> lines;
-    try {
-      lines = FileUtils.readLines(file.file(), file.encoding());
-    } catch (IOException e) {
-      throw new IllegalStateException("Unable to read file", e);
+    MessageDigest digest = DigestUtils.getMd5Digest();
+    updateDigest(digest, DATA_FINGERPRINT_VERSION);
+    updateDigest(digest, file.hash());
+    updateDigest(digest, String.valueOf(file.lines()));
+    updateDigest(digest, file.encoding());
+    updateDigest(digest, file.language());
+    for (String metricKey : LINE_METRIC_KEYS) {
+      updateDigest(digest, getLineMetricData(file, metricKey));
+    }
+    // When highlighting is not in cache, it is computed by colorizers from source and language, which are already hashed
+    SyntaxHighlightingData highlighting = componentDataCache.getData(file.key(), SnapshotDataTypes.SYNTAX_HIGHLIGHTING);
+    updateDigest(digest, highlighting != null ? highlighting.writeString() : null);
+    SymbolData symbolRefs = loadSymbolReferences(file);
+    updateDigest(digest, symbolRefs != null ? symbolRefs.writeString() : null);
+    List<DuplicationGroup> duplicationGroups = duplicationCache.byComponent(file.key());
+    if (duplicationGroups != null) {
+      for (DuplicationGroup group : duplicationGroups) {
+        updateDigest(digest, group.originBlock());
+        for (Block duplicate : group.duplicates()) {
+          updateDigest(digest, duplicate);
+        }
+      }
     }
+    return Hex.encodeHexString(digest.digest());
+  }
+
+  private static void updateDigest(MessageDigest digest, Block block) {
+    updateDigest(digest, block.resourceKey() + ':' + block.startLine() + ':' + block.length());
+  }
+
+  private static void updateDigest(MessageDigest digest, @Nullable String s) {
+    if (s == null) {
+      digest.update((byte) 0);
+    } else {
+      digest.update((byte) 1);
+      digest.update(s.getBytes(Charsets.UTF_8));
+      // Separator, so that consecutive values can't be confused
+      digest.update((byte) 0);
+    }
+  }
+
+  @CheckForNull
+  byte[] getSourceData(DefaultInputFile file) {
+    if (file.lines() == 0) {
+      return null;
+    }
+    List<String> lines = fileContents.lines(file.file(), encoding(file));
     // Missing empty last line
     if (lines.size() == file.lines() - 1) {
       lines.add("");
@@ -213,15 +318,25 @@ public class SourcePersister implements ScanPersister {
     String[] symbolReferencesPerLine = computeSymbolReferencesPerLine(file, loadSymbolReferences(file));
     String[] duplicationsPerLine = computeDuplicationsPerLine(file, duplicationCache.byComponent(file.key()));
 
-    StringWriter writer = new StringWriter(file.lines() * 16);
-    CsvWriter csv = CsvWriter.of(writer);
+    FileSourceDataWriter writer = new FileSourceDataWriter(file.lines());
     for (int lineIdx = 1; lineIdx <= file.lines(); lineIdx++) {
-      csv.values(revisionsByLine.get(lineIdx), authorsByLine.get(lineIdx), datesByLine.get(lineIdx),
-        utHitsByLine.get(lineIdx), utCondByLine.get(lineIdx), utCoveredCondByLine.get(lineIdx),
-        itHitsByLine.get(lineIdx), itCondByLine.get(lineIdx), itCoveredCondByLine.get(lineIdx),
-        overallHitsByLine.get(lineIdx), overallCondByLine.get(lineIdx), overallCoveredCondByLine.get(lineIdx),
-        highlightingPerLine[lineIdx - 1], symbolReferencesPerLine[lineIdx - 1], duplicationsPerLine[lineIdx - 1],
-        CharMatcher.anyOf(BOM).removeFrom(lines.get(lineIdx - 1)));
+      writer
+        .set(FileSourceDataColumn.SCM_REVISION, lineIdx, revisionsByLine.get(lineIdx))
+        .set(FileSourceDataColumn.SCM_AUTHOR, lineIdx, authorsByLine.get(lineIdx))
+        .set(FileSourceDataColumn.SCM_DATE, lineIdx, datesByLine.get(lineIdx))
+        .set(FileSourceDataColumn.UT_LINE_HITS, lineIdx, utHitsByLine.get(lineIdx))
+        .set(FileSourceDataColumn.UT_CONDITIONS, lineIdx, utCondByLine.get(lineIdx))
+        .set(FileSourceDataColumn.UT_COVERED_CONDITIONS, lineIdx, utCoveredCondByLine.get(lineIdx))
+        .set(FileSourceDataColumn.IT_LINE_HITS, lineIdx, itHitsByLine.get(lineIdx))
+        .set(FileSourceDataColumn.IT_CONDITIONS, lineIdx, itCondByLine.get(lineIdx))
+        .set(FileSourceDataColumn.IT_COVERED_CONDITIONS, lineIdx, itCoveredCondByLine.get(lineIdx))
+        .set(FileSourceDataColumn.OVERALL_LINE_HITS, lineIdx, overallHitsByLine.get(lineIdx))
+        .set(FileSourceDataColumn.OVERALL_CONDITIONS, lineIdx, overallCondByLine.get(lineIdx))
+        .set(FileSourceDataColumn.OVERALL_COVERED_CONDITIONS, lineIdx, overallCoveredCondByLine.get(lineIdx))
+        .set(FileSourceDataColumn.HIGHLIGHTING, lineIdx, highlightingPerLine[lineIdx - 1])
+        .set(FileSourceDataColumn.SYMBOLS, lineIdx, symbolReferencesPerLine[lineIdx - 1])
+        .set(FileSourceDataColumn.DUPLICATIONS, lineIdx, duplicationsPerLine[lineIdx - 1])
+        .set(FileSourceDataColumn.SOURCE, lineIdx, CharMatcher.anyOf(BOM).removeFrom(lines.get(lineIdx - 1)));
       // Free memory
       revisionsByLine.remove(lineIdx);
       authorsByLine.remove(lineIdx);
@@ -240,8 +355,7 @@ public class SourcePersister implements ScanPersister {
       duplicationsPerLine[lineIdx - 1] = null;
       lines.set(lineIdx - 1, null);
     }
-    csv.close();
-    return StringUtils.defaultIfEmpty(writer.toString(), null);
+    return writer.toBytes();
   }
 
   private String[] computeDuplicationsPerLine(DefaultInputFile file, List<DuplicationGroup> duplicationGroups) {
@@ -295,11 +409,16 @@ public class SourcePersister implements ScanPersister {
   private SyntaxHighlightingData loadHighlighting(DefaultInputFile file) {
     SyntaxHighlightingData highlighting = componentDataCache.getData(file.key(), SnapshotDataTypes.SYNTAX_HIGHLIGHTING);
     if (highlighting == null) {
-      highlighting = codeColorizers.toSyntaxHighlighting(file.file(), file.encoding(), file.language());
+      highlighting = codeColorizers.toSyntaxHighlighting(fileContents.content(file.file(), encoding(file)), file.language());
     }
     return highlighting;
   }
 
+  private static Charset encoding(DefaultInputFile file) {
+    // default charset when encoding is not defined
+    return org.apache.commons.io.Charsets.toCharset(file.encoding());
+  }
+
   @CheckForNull
   private SymbolData loadSymbolReferences(DefaultInputFile file) {
     return componentDataCache.getData(file.key(), SnapshotDataTypes.SYMBOL_HIGHLIGHTING);
@@ -451,13 +570,19 @@ public class SourcePersister implements ScanPersister {
   }
 
   private Map<Integer, String> getLineMetric(DefaultInputFile file, String metricKey) {
-    Map<Integer, String> authorsByLine;
-    Iterator<Measure> authorsIt = measureCache.byMetric(file.key(), metricKey).iterator();
-    if (authorsIt.hasNext()) {
-      authorsByLine = KeyValueFormat.parseIntString((String) authorsIt.next().value());
-    } else {
-      authorsByLine = Collections.emptyMap();
+    String data = getLineMetricData(file, metricKey);
+    if (data == null) {
+      return Collections.emptyMap();
+    }
+    return KeyValueFormat.parseIntString(data);
+  }
+
+  @CheckForNull
+  private String getLineMetricData(DefaultInputFile file, String metricKey) {
+    Iterator<Measure> it = measureCache.byMetric(file.key(), metricKey).iterator();
+    if (it.hasNext()) {
+      return (String) it.next().value();
     }
-    return authorsByLine;
+    return null;
   }
 }
@@ -26,11 +26,11 @@ import org.sonar.batch.issue.ignore.pattern.LineRange;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.BatchExtension;
+import org.sonar.batch.scan.filesystem.FileContents;
 
 import java.io.File;
 import java.io.IOException;
@@ -43,6 +43,7 @@ public class IssueExclusionsRegexpScanner implements BatchExtension {
   private static final Logger LOG = LoggerFactory.getLogger(IssueExclusionsRegexpScanner.class);
 
   private IssueExclusionPatternInitializer exclusionPatternInitializer;
+  private final FileContents fileContents;
   private List<java.util.regex.Pattern> allFilePatterns;
   private List<DoubleRegexpMatcher> blockMatchers;
 
@@ -52,8 +53,9 @@ public class IssueExclusionsRegexpScanner implements BatchExtension {
   private List<LineExclusion> lineExclusions;
   private LineExclusion currentLineExclusion;
 
-  public IssueExclusionsRegexpScanner(IssueExclusionPatternInitializer patternsInitializer) {
+  public IssueExclusionsRegexpScanner(IssueExclusionPatternInitializer patternsInitializer, FileContents fileContents) {
     this.exclusionPatternInitializer = patternsInitializer;
+    this.fileContents = fileContents;
 
     lineExclusions = Lists.newArrayList();
     allFilePatterns = Lists.newArrayList();
@@ -82,7 +84,7 @@ public class IssueExclusionsRegexpScanner implements BatchExtension {
     LOG.debug("Scanning {}", resource);
     init();
 
-    List<String> lines = FileUtils.readLines(file, sourcesEncoding.name());
+    List<String> lines = fileContents.lines(file, sourcesEncoding);
     int lineIndex = 0;
     for (String line : lines) {
       lineIndex++;
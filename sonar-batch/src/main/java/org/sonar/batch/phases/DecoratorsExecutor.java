@@ -25,9 +25,11 @@ import org.sonar.api.batch.BatchExtensionDictionnary;
 import org.sonar.api.batch.Decorator;
 import org.sonar.api.batch.DecoratorContext;
 import org.sonar.api.batch.SonarIndex;
+import org.sonar.api.config.Settings;
 import org.sonar.api.measures.MetricFinder;
 import org.sonar.api.resources.Project;
 import org.sonar.api.resources.Resource;
+import org.sonar.api.utils.AnnotationUtils;
 import org.sonar.api.utils.MessageException;
 import org.sonar.api.utils.SonarException;
 import org.sonar.batch.DecoratorsSelector;
@@ -39,9 +41,16 @@ import org.sonar.batch.sensor.coverage.CoverageExclusions;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 public class DecoratorsExecutor implements BatchComponent {
 
+  /**
+   * Experimental. Number of threads used to decorate sibling resources concurrently. Default is 1 (no concurrency).
+   */
+  public static final String THREADS_PROPERTY = "sonar.batch.decoratorThreads";
+
   private DecoratorsSelector decoratorsSelector;
   private SonarIndex index;
   private EventBus eventBus;
@@ -50,10 +59,12 @@ public class DecoratorsExecutor implements BatchComponent {
   private MeasureCache measureCache;
   private MetricFinder metricFinder;
   private final DuplicationCache duplicationCache;
+  private final Settings settings;
+  private final Object lock = new Object();
 
   public DecoratorsExecutor(BatchExtensionDictionnary batchExtDictionnary,
     Project project, SonarIndex index, EventBus eventBus, CoverageExclusions coverageFilter, MeasureCache measureCache, MetricFinder metricFinder,
-    DuplicationCache duplicationCache) {
+    DuplicationCache duplicationCache, Settings settings) {
     this.measureCache = measureCache;
     this.metricFinder = metricFinder;
     this.duplicationCache = duplicationCache;
@@ -62,15 +73,44 @@ public class DecoratorsExecutor implements BatchComponent {
     this.eventBus = eventBus;
     this.project = project;
     this.coverageFilter = coverageFilter;
+    this.settings = settings;
   }
 
   public void execute() {
     Collection<Decorator> decorators = decoratorsSelector.select(project);
     eventBus.fireEvent(new DecoratorsPhaseEvent(Lists.newArrayList(decorators), true));
-    ((DefaultDecoratorContext) decorateResource(project, decorators, true)).end();
+    int threads = Math.max(1, settings.getInt(THREADS_PROPERTY));
+    if (threads > 1) {
+      decorateConcurrently(decorators, threads);
+    } else {
+      ((DefaultDecoratorContext) decorateResource(project, decorators, true)).end();
+    }
     eventBus.fireEvent(new DecoratorsPhaseEvent(Lists.newArrayList(decorators), false));
   }
 
+  /**
+   * The resource tree is read from the index before forking, so that worker threads never access the index,
+   * which is not thread-safe.
+   */
+  private void decorateConcurrently(Collection<Decorator> decorators, int threads) {
+    DecorateTask root = newTask(project, decorators, true);
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      pool.invoke(root).end();
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  private DecorateTask newTask(Resource resource, Collection<Decorator> decorators, boolean executeDecorators) {
+    List<DecorateTask> childrenTasks = Lists.newArrayList();
+    for (Resource child : index.getChildren(resource)) {
+      boolean isModule = child instanceof Project;
+      childrenTasks.add(newTask(child, decorators, !isModule));
+    }
+    return new DecorateTask(resource, childrenTasks, decorators, executeDecorators);
+  }
+
   DecoratorContext decorateResource(Resource resource, Collection<Decorator> decorators, boolean executeDecorators) {
     List<DecoratorContext> childrenContexts = Lists.newArrayList();
     for (Resource child : index.getChildren(resource)) {
@@ -78,7 +118,10 @@ public class DecoratorsExecutor implements BatchComponent {
       DefaultDecoratorContext childContext = (DefaultDecoratorContext) decorateResource(child, decorators, !isModule);
       childrenContexts.add(childContext.end());
     }
+    return decorate(resource, childrenContexts, decorators, executeDecorators);
+  }
 
+  private DefaultDecoratorContext decorate(Resource resource, List<DecoratorContext> childrenContexts, Collection<Decorator> decorators, boolean executeDecorators) {
     DefaultDecoratorContext context = new DefaultDecoratorContext(resource, index, childrenContexts, measureCache, metricFinder, duplicationCache, coverageFilter);
     context.init();
     if (executeDecorators) {
@@ -90,6 +133,18 @@ public class DecoratorsExecutor implements BatchComponent {
   }
 
   void executeDecorator(Decorator decorator, DefaultDecoratorContext context, Resource resource) {
+    if (AnnotationUtils.getAnnotation(decorator, ThreadSafeDecorator.class) != null) {
+      doExecuteDecorator(decorator, context, resource);
+    } else {
+      // Decorators that are not declared thread-safe are executed one at a time, as they may use the index
+      // and the database session.
+      synchronized (lock) {
+        doExecuteDecorator(decorator, context, resource);
+      }
+    }
+  }
+
+  private void doExecuteDecorator(Decorator decorator, DefaultDecoratorContext context, Resource resource) {
     try {
       eventBus.fireEvent(new DecoratorExecutionEvent(decorator, true));
       decorator.decorate(resource, context);
@@ -104,4 +159,31 @@ public class DecoratorsExecutor implements BatchComponent {
     }
   }
 
+  /**
+   * Decorates the children of a resource concurrently, then the resource itself once all the children contexts are ended.
+   */
+  private class DecorateTask extends RecursiveTask<DefaultDecoratorContext> {
+    private final Resource resource;
+    private final List<DecorateTask> childrenTasks;
+    private final Collection<Decorator> decorators;
+    private final boolean executeDecorators;
+
+    DecorateTask(Resource resource, List<DecorateTask> childrenTasks, Collection<Decorator> decorators, boolean executeDecorators) {
+      this.resource = resource;
+      this.childrenTasks = childrenTasks;
+      this.decorators = decorators;
+      this.executeDecorators = executeDecorators;
+    }
+
+    @Override
+    protected DefaultDecoratorContext compute() {
+      invokeAll(childrenTasks);
+      List<DecoratorContext> childrenContexts = Lists.newArrayList();
+      for (DecorateTask childTask : childrenTasks) {
+        childrenContexts.add(childTask.join().end());
+      }
+      return decorate(resource, childrenContexts, decorators, executeDecorators);
+    }
+  }
+
 }
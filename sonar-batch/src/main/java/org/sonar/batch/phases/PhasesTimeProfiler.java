@@ -79,29 +79,40 @@ public class PhasesTimeProfiler implements SensorExecutionHandler, DecoratorExec
     }
   }
 
+  /**
+   * Decorators may be executed concurrently (see {@link DecoratorsExecutor#THREADS_PROPERTY}), so the decorator being
+   * executed is tracked per thread. Durations are then cumulated over all the threads, which only share the lock of
+   * the cumulated durations.
+   */
   static class DecoratorsProfiler {
     List<Decorator> decorators = Lists.newArrayList();
     Map<Decorator, Long> durations = new IdentityHashMap<Decorator, Long>();
-    long startTime;
-    Decorator currentDecorator;
+    ThreadLocal<Long> startTime = new ThreadLocal<Long>();
+    ThreadLocal<Decorator> currentDecorator = new ThreadLocal<Decorator>();
 
     DecoratorsProfiler() {
     }
 
     void start(Decorator decorator) {
-      this.startTime = System.currentTimeMillis();
-      this.currentDecorator = decorator;
+      this.startTime.set(System.currentTimeMillis());
+      this.currentDecorator.set(decorator);
     }
 
     void stop() {
-      final Long cumulatedDuration;
-      if (durations.containsKey(currentDecorator)) {
-        cumulatedDuration = durations.get(currentDecorator);
-      } else {
-        decorators.add(currentDecorator);
-        cumulatedDuration = 0L;
+      Decorator decorator = currentDecorator.get();
+      long duration = System.currentTimeMillis() - startTime.get();
+      currentDecorator.remove();
+      startTime.remove();
+      synchronized (durations) {
+        final Long cumulatedDuration;
+        if (durations.containsKey(decorator)) {
+          cumulatedDuration = durations.get(decorator);
+        } else {
+          decorators.add(decorator);
+          cumulatedDuration = 0L;
+        }
+        durations.put(decorator, cumulatedDuration + duration);
       }
-      durations.put(currentDecorator, cumulatedDuration + (System.currentTimeMillis() - startTime));
     }
 
     void log() {
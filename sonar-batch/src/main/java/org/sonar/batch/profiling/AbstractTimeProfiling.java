@@ -21,22 +21,34 @@ package org.sonar.batch.profiling;
 
 import org.sonar.api.utils.System2;
 import org.sonar.api.utils.TimeUtils;
+import org.sonar.api.utils.text.JsonWriter;
 
 import javax.annotation.Nullable;
 
 import java.util.*;
 
+/**
+ * Wall time of an execution, completed by the CPU time and the heap allocations of the thread that started it.
+ * Some profilings, like the ones of decorators, cumulate several executions, possibly on different threads.
+ */
 public abstract class AbstractTimeProfiling {
 
   private final long startTime;
+  private final long startCpuTime;
+  private final long startAllocatedBytes;
 
   private long totalTime;
+  private long cpuTime;
+  private long allocatedBytes;
+  private int calls;
 
   private System2 system;
 
   public AbstractTimeProfiling(System2 system) {
     this.system = system;
     this.startTime = system.now();
+    this.startCpuTime = ThreadUsage.INSTANCE.cpuTime();
+    this.startAllocatedBytes = ThreadUsage.INSTANCE.allocatedBytes();
   }
 
   protected System2 system() {
@@ -49,6 +61,9 @@ public abstract class AbstractTimeProfiling {
 
   public void stop() {
     this.totalTime = system.now() - startTime;
+    this.cpuTime = ThreadUsage.INSTANCE.cpuTime() - startCpuTime;
+    this.allocatedBytes = ThreadUsage.INSTANCE.allocatedBytes() - startAllocatedBytes;
+    this.calls = 1;
   }
 
   public long totalTime() {
@@ -63,8 +78,50 @@ public abstract class AbstractTimeProfiling {
     this.totalTime = totalTime;
   }
 
+  /**
+   * In nanoseconds
+   */
+  public long cpuTime() {
+    return cpuTime;
+  }
+
+  public long allocatedBytes() {
+    return allocatedBytes;
+  }
+
+  public int calls() {
+    return calls;
+  }
+
+  /**
+   * Cumulates an execution that was measured outside of this profiling.
+   */
+  public void addExecution(long totalTime, long cpuTime, long allocatedBytes) {
+    this.totalTime += totalTime;
+    this.cpuTime += cpuTime;
+    this.allocatedBytes += allocatedBytes;
+    this.calls++;
+  }
+
   protected void add(AbstractTimeProfiling other) {
     this.setTotalTime(this.totalTime() + other.totalTime());
+    this.cpuTime += other.cpuTime;
+    this.allocatedBytes += other.allocatedBytes;
+    this.calls += other.calls;
+  }
+
+  /**
+   * Writes the usage properties of this profiling in the current JSON object. A profiling that is not stopped yet,
+   * like the one of the module being analyzed when the report is published, is written with its usage so far.
+   */
+  protected void writeUsage(JsonWriter json) {
+    boolean running = calls == 0;
+    json
+      .prop("wallTimeMs", running ? (system.now() - startTime) : totalTime)
+      .prop("cpuTimeMs", (running ? (ThreadUsage.INSTANCE.cpuTime() - startCpuTime) : cpuTime) / 1000000L)
+      .prop("allocatedBytes", running ? (ThreadUsage.INSTANCE.allocatedBytes() - startAllocatedBytes) : allocatedBytes)
+      .prop("calls", calls)
+      .prop("running", running);
   }
 
   static <G extends AbstractTimeProfiling> Map<Object, G> sortByDescendingTotalTime(Map<?, G> unsorted) {
@@ -22,6 +22,7 @@ package org.sonar.batch.profiling;
 import com.google.common.collect.Maps;
 import org.sonar.api.resources.Project;
 import org.sonar.api.utils.System2;
+import org.sonar.api.utils.text.JsonWriter;
 import org.sonar.batch.phases.Phases;
 import org.sonar.batch.phases.Phases.Phase;
 
@@ -51,6 +52,13 @@ public class ModuleProfiling extends AbstractTimeProfiling {
     return null;
   }
 
+  public String moduleKey() {
+    if (module != null) {
+      return module.getKey();
+    }
+    return null;
+  }
+
   public PhaseProfiling getProfilingPerPhase(Phase phase) {
     return profilingPerPhase.get(phase);
   }
@@ -90,6 +98,27 @@ public class ModuleProfiling extends AbstractTimeProfiling {
     }
   }
 
+  public void writeJson(JsonWriter json) {
+    json.beginObject()
+      .prop("key", moduleKey())
+      .prop("name", moduleName());
+    writeUsage(json);
+    json.name("phases").beginArray();
+    for (Phase phase : Phases.Phase.values()) {
+      if (profilingPerPhase.containsKey(phase)) {
+        getProfilingPerPhase(phase).writeJson(json);
+      }
+    }
+    json.endArray();
+    json.name("steps").beginArray();
+    for (ItemProfiling stepProfiling : profilingPerBatchStep.values()) {
+      json.beginObject().prop("name", stepProfiling.itemName());
+      stepProfiling.writeUsage(json);
+      json.endObject();
+    }
+    json.endArray().endObject();
+  }
+
   public void merge(ModuleProfiling other) {
     super.add(other);
     for (Entry<Phases.Phase, PhaseProfiling> entry : other.profilingPerPhase.entrySet()) {
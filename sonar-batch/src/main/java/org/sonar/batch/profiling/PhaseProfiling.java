@@ -20,6 +20,7 @@
 package org.sonar.batch.profiling;
 
 import org.sonar.api.utils.System2;
+import org.sonar.api.utils.text.JsonWriter;
 import org.sonar.batch.phases.Phases.Phase;
 
 import java.util.HashMap;
@@ -84,6 +85,18 @@ public class PhaseProfiling extends AbstractTimeProfiling {
     }
   }
 
+  public void writeJson(JsonWriter json) {
+    json.beginObject().prop("name", phase.toString());
+    writeUsage(json);
+    json.name("items").beginArray();
+    for (ItemProfiling itemProfiling : sortByDescendingTotalTime(profilingPerItem).values()) {
+      json.beginObject().prop("name", itemProfiling.itemName());
+      itemProfiling.writeUsage(json);
+      json.endObject();
+    }
+    json.endArray().endObject();
+  }
+
   /**
    * Try to use toString if it is not the default {@link Object#toString()}. Else use {@link Class#getSimpleName()}
    * @param o
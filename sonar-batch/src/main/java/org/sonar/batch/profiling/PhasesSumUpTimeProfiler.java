@@ -20,7 +20,7 @@
 package org.sonar.batch.profiling;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.collect.Lists;
+import com.google.common.base.Charsets;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,19 +39,22 @@ import org.sonar.api.batch.events.SensorsPhaseHandler;
 import org.sonar.api.resources.Project;
 import org.sonar.api.utils.System2;
 import org.sonar.api.utils.TimeUtils;
+import org.sonar.api.utils.text.JsonWriter;
 import org.sonar.batch.bootstrap.BootstrapProperties;
 import org.sonar.batch.events.BatchStepHandler;
 import org.sonar.batch.phases.Phases;
 import org.sonar.batch.phases.event.PersisterExecutionHandler;
 import org.sonar.batch.phases.event.PersistersPhaseHandler;
+import org.sonar.batch.protocol.output.ReportHelper;
+import org.sonar.batch.report.ReportPublisher;
 
 import javax.annotation.Nullable;
 
 import java.io.File;
 import java.io.FileOutputStream;
-import java.util.HashMap;
-import java.util.IdentityHashMap;
-import java.util.List;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Properties;
 
@@ -60,11 +63,12 @@ import static org.sonar.batch.profiling.AbstractTimeProfiling.truncate;
 
 public class PhasesSumUpTimeProfiler implements ProjectAnalysisHandler, SensorExecutionHandler, DecoratorExecutionHandler, PostJobExecutionHandler, DecoratorsPhaseHandler,
   SensorsPhaseHandler, PostJobsPhaseHandler, MavenPhaseHandler, InitializersPhaseHandler, InitializerExecutionHandler, BatchStepHandler, PersistersPhaseHandler,
-  PersisterExecutionHandler {
+  PersisterExecutionHandler, ReportPublisher {
 
   static final Logger LOG = LoggerFactory.getLogger(PhasesSumUpTimeProfiler.class);
   private static final int TEXT_RIGHT_PAD = 60;
   private static final int TIME_LEFT_PAD = 10;
+  private static final String JSON_FILENAME = "profiling.json";
 
   @VisibleForTesting
   ModuleProfiling currentModuleProfiling;
@@ -72,7 +76,7 @@ public class PhasesSumUpTimeProfiler implements ProjectAnalysisHandler, SensorEx
   @VisibleForTesting
   ModuleProfiling totalProfiling;
 
-  private Map<Project, ModuleProfiling> modulesProfilings = new HashMap<Project, ModuleProfiling>();
+  private Map<Project, ModuleProfiling> modulesProfilings = new LinkedHashMap<Project, ModuleProfiling>();
   private DecoratorsProfiler decoratorsProfiler;
 
   private final System2 system;
@@ -124,6 +128,35 @@ public class PhasesSumUpTimeProfiler implements ProjectAnalysisHandler, SensorEx
       if (module.isRoot() && !module.getModules().isEmpty()) {
         dumpTotalExecutionSummary();
       }
+      if (module.isRoot()) {
+        dumpJson(new File(out, JSON_FILENAME));
+      }
+    }
+  }
+
+  /**
+   * The report is published before the end of the analysis of the root module, so its profiling is exported
+   * with the usage so far and without the post-jobs.
+   */
+  @Override
+  public void export(ReportHelper reportHelper) {
+    dumpJson(new File(reportHelper.reportRootDir(), JSON_FILENAME));
+  }
+
+  private void dumpJson(File file) {
+    try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), Charsets.UTF_8)) {
+      JsonWriter json = JsonWriter.of(writer);
+      json.beginObject().name("modules").beginArray();
+      for (ModuleProfiling moduleProfiling : modulesProfilings.values()) {
+        moduleProfiling.writeJson(json);
+      }
+      if (currentModuleProfiling != null && !modulesProfilings.containsValue(currentModuleProfiling)) {
+        currentModuleProfiling.writeJson(json);
+      }
+      json.endArray().endObject().close();
+      println("Profiling data stored in " + file.getAbsolutePath());
+    } catch (Exception e) {
+      throw new IllegalStateException("Unable to store profiler output: " + file, e);
     }
   }
 
@@ -200,12 +233,15 @@ public class PhasesSumUpTimeProfiler implements ProjectAnalysisHandler, SensorEx
   public void onDecoratorExecution(DecoratorExecutionEvent event) {
     PhaseProfiling profiling = currentModuleProfiling.getProfilingPerPhase(Phases.Phase.DECORATOR);
     if (event.isStart()) {
-      if (profiling.getProfilingPerItem(event.getDecorator()) == null) {
-        profiling.newItemProfiling(event.getDecorator());
+      // decorators may be executed concurrently, the profiling of the phase is their only shared state
+      synchronized (profiling) {
+        if (profiling.getProfilingPerItem(event.getDecorator()) == null) {
+          profiling.newItemProfiling(event.getDecorator());
+        }
       }
       decoratorsProfiler.start(event.getDecorator());
     } else {
-      decoratorsProfiler.stop();
+      decoratorsProfiler.stop(profiling);
     }
   }
 
@@ -214,10 +250,6 @@ public class PhasesSumUpTimeProfiler implements ProjectAnalysisHandler, SensorEx
     if (event.isStart()) {
       currentModuleProfiling.addPhaseProfiling(Phases.Phase.DECORATOR);
     } else {
-      for (Decorator decorator : decoratorsProfiler.getDurations().keySet()) {
-        currentModuleProfiling.getProfilingPerPhase(Phases.Phase.DECORATOR)
-          .getProfilingPerItem(decorator).setTotalTime(decoratorsProfiler.getDurations().get(decorator));
-      }
       currentModuleProfiling.getProfilingPerPhase(Phases.Phase.DECORATOR).stop();
     }
   }
@@ -278,35 +310,44 @@ public class PhasesSumUpTimeProfiler implements ProjectAnalysisHandler, SensorEx
     }
   }
 
+  /**
+   * A decorator is executed once per resource, possibly on different threads. Executions are tracked per thread,
+   * then cumulated in the profiling of the decorator.
+   */
   class DecoratorsProfiler {
-    private List<Decorator> decorators = Lists.newArrayList();
-    private Map<Decorator, Long> durations = new IdentityHashMap<Decorator, Long>();
-    private long startTime;
-    private Decorator currentDecorator;
+    private ThreadLocal<DecoratorExecution> currentExecution = new ThreadLocal<DecoratorExecution>();
 
     DecoratorsProfiler() {
     }
 
     void start(Decorator decorator) {
-      this.startTime = system.now();
-      this.currentDecorator = decorator;
+      currentExecution.set(new DecoratorExecution(decorator, system.now(), ThreadUsage.INSTANCE.cpuTime(), ThreadUsage.INSTANCE.allocatedBytes()));
     }
 
-    void stop() {
-      final Long cumulatedDuration;
-      if (durations.containsKey(currentDecorator)) {
-        cumulatedDuration = durations.get(currentDecorator);
-      } else {
-        decorators.add(currentDecorator);
-        cumulatedDuration = 0L;
+    void stop(PhaseProfiling profiling) {
+      DecoratorExecution execution = currentExecution.get();
+      currentExecution.remove();
+      long duration = system.now() - execution.startTime;
+      long cpuTime = ThreadUsage.INSTANCE.cpuTime() - execution.startCpuTime;
+      long allocatedBytes = ThreadUsage.INSTANCE.allocatedBytes() - execution.startAllocatedBytes;
+      synchronized (profiling) {
+        profiling.getProfilingPerItem(execution.decorator).addExecution(duration, cpuTime, allocatedBytes);
       }
-      durations.put(currentDecorator, cumulatedDuration + (system.now() - startTime));
     }
+  }
 
-    public Map<Decorator, Long> getDurations() {
-      return durations;
+  private static class DecoratorExecution {
+    private final Decorator decorator;
+    private final long startTime;
+    private final long startCpuTime;
+    private final long startAllocatedBytes;
+
+    DecoratorExecution(Decorator decorator, long startTime, long startCpuTime, long startAllocatedBytes) {
+      this.decorator = decorator;
+      this.startTime = startTime;
+      this.startCpuTime = startCpuTime;
+      this.startAllocatedBytes = startAllocatedBytes;
     }
-
   }
 
 }
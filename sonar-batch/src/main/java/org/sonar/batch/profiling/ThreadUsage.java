@@ -0,0 +1,74 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.profiling;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+
+/**
+ * CPU time and heap allocations of the current thread, or 0 when not supported by the JVM.
+ * Allocations are read by reflection as com.sun.management.ThreadMXBean is specific to HotSpot.
+ */
+class ThreadUsage {
+
+  static final ThreadUsage INSTANCE = new ThreadUsage(ManagementFactory.getThreadMXBean());
+
+  private final ThreadMXBean threadBean;
+  private final boolean cpuTimeSupported;
+  private final Method allocatedBytesMethod;
+
+  ThreadUsage(ThreadMXBean threadBean) {
+    this.threadBean = threadBean;
+    this.cpuTimeSupported = threadBean.isCurrentThreadCpuTimeSupported() && threadBean.isThreadCpuTimeEnabled();
+    this.allocatedBytesMethod = allocatedBytesMethod(threadBean);
+  }
+
+  private static Method allocatedBytesMethod(ThreadMXBean threadBean) {
+    try {
+      Class<?> hotspotBean = Class.forName("com.sun.management.ThreadMXBean");
+      if (hotspotBean.isInstance(threadBean) && (Boolean) hotspotBean.getMethod("isThreadAllocatedMemoryEnabled").invoke(threadBean)) {
+        return hotspotBean.getMethod("getThreadAllocatedBytes", long.class);
+      }
+    } catch (Exception e) {
+      // not a HotSpot JVM
+    }
+    return null;
+  }
+
+  /**
+   * In nanoseconds
+   */
+  long cpuTime() {
+    return cpuTimeSupported ? threadBean.getCurrentThreadCpuTime() : 0L;
+  }
+
+  long allocatedBytes() {
+    if (allocatedBytesMethod != null) {
+      try {
+        return (Long) allocatedBytesMethod.invoke(threadBean, Thread.currentThread().getId());
+      } catch (Exception e) {
+        return 0L;
+      }
+    }
+    return 0L;
+  }
+
+}
@@ -65,6 +65,7 @@ import org.sonar.batch.phases.GraphPersister;
 import org.sonar.batch.profiling.PhasesSumUpTimeProfiler;
 import org.sonar.batch.referential.ProjectReferentialsProvider;
 import org.sonar.batch.rule.RulesProvider;
+import org.sonar.batch.scan.filesystem.FileContents;
 import org.sonar.batch.scan.filesystem.InputPathCache;
 import org.sonar.batch.scan.maven.FakeMavenPluginExecutor;
 import org.sonar.batch.scan.maven.MavenPluginExecutor;
@@ -148,6 +149,7 @@ public class ProjectScanContainer extends ComponentContainer {
 
       // file system
       InputPathCache.class,
+      FileContents.class,
       PathResolver.class,
 
       // issues
@@ -0,0 +1,143 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.scan.filesystem;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.io.IOUtils;
+import org.sonar.api.BatchComponent;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decoded content of source files, shared by the components that need the whole file during an analysis
+ * (persistence of sources, colorization, exclusion of issues by regexp), so that files are not read and decoded
+ * several times. Files are read through a {@link FileChannel}. Least recently used contents are evicted when
+ * the total size of cache exceeds a limit. The BOM is removed.
+ * <p/>
+ * This class is thread-safe.
+ */
+public class FileContents implements BatchComponent {
+
+  static final long DEFAULT_MAX_SIZE_IN_BYTES = 64L * 1024 * 1024;
+  private static final char BOM = '\uFEFF';
+
+  private final Map<String, Content> contentsByPath = new LinkedHashMap<String, Content>(16, 0.75f, true);
+  private long maxSizeInBytes = DEFAULT_MAX_SIZE_IN_BYTES;
+  private long sizeInBytes = 0L;
+
+  @VisibleForTesting
+  FileContents setMaxSizeInBytes(long l) {
+    this.maxSizeInBytes = l;
+    return this;
+  }
+
+  public String content(File file, Charset encoding) {
+    String path = file.getAbsolutePath();
+    synchronized (this) {
+      Content content = contentsByPath.get(path);
+      if (content != null && content.encoding.equals(encoding)) {
+        return content.text;
+      }
+    }
+    // file is read outside of lock so that threads don't wait for each other
+    String text = read(file, encoding);
+    synchronized (this) {
+      put(path, new Content(encoding, text));
+    }
+    return text;
+  }
+
+  /**
+   * Lines of file, without end of line characters, as returned by {@link org.apache.commons.io.FileUtils#readLines(File)}
+   */
+  public List<String> lines(File file, Charset encoding) {
+    try {
+      return IOUtils.readLines(new StringReader(content(file, encoding)));
+    } catch (IOException e) {
+      // can't be raised when reading a String
+      throw new IllegalStateException(e);
+    }
+  }
+
+  synchronized long sizeInBytes() {
+    return sizeInBytes;
+  }
+
+  private void put(String path, Content content) {
+    Content previous = contentsByPath.remove(path);
+    if (previous != null) {
+      sizeInBytes -= previous.sizeInBytes();
+    }
+    if (content.sizeInBytes() > maxSizeInBytes) {
+      // too big, would evict all the other files
+      return;
+    }
+    contentsByPath.put(path, content);
+    sizeInBytes += content.sizeInBytes();
+    Iterator<Content> it = contentsByPath.values().iterator();
+    while (sizeInBytes > maxSizeInBytes && it.hasNext()) {
+      sizeInBytes -= it.next().sizeInBytes();
+      it.remove();
+    }
+  }
+
+  private static String read(File file, Charset encoding) {
+    try (FileInputStream input = new FileInputStream(file)) {
+      FileChannel channel = input.getChannel();
+      ByteBuffer bytes = ByteBuffer.allocate((int) channel.size());
+      while (bytes.hasRemaining() && channel.read(bytes) != -1) {
+        // read until end of file
+      }
+      bytes.flip();
+      String text = encoding.decode(bytes).toString();
+      if (!text.isEmpty() && text.charAt(0) == BOM) {
+        return text.substring(1);
+      }
+      return text;
+    } catch (IOException e) {
+      throw new IllegalStateException(String.format("Fail to read file '%s' with encoding '%s'", file.getAbsolutePath(), encoding), e);
+    }
+  }
+
+  private static class Content {
+    private final Charset encoding;
+    private final String text;
+
+    Content(Charset encoding, String text) {
+      this.encoding = encoding;
+      this.text = text;
+    }
+
+    long sizeInBytes() {
+      // 2 bytes per char
+      return 2L * text.length();
+    }
+  }
+}
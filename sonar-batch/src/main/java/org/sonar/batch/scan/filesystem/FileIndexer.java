@@ -92,14 +92,6 @@ public class FileIndexer implements BatchComponent {
 
     indexAllConcurrently(progress);
 
-    // Populate FS in a synchronous way because PersistIt Exchange is not concurrent
-    for (InputFile indexed : progress.indexed) {
-      fileSystem.add(indexed);
-    }
-    for (InputDir indexed : progress.indexedDir) {
-      fileSystem.add(indexed);
-    }
-
     LOG.info(String.format("%d files indexed", progress.count()));
 
   }
@@ -158,12 +150,15 @@ public class FileIndexer implements BatchComponent {
         DefaultInputFile completedFile = inputFileBuilder.complete(inputFile, type);
         if (completedFile != null && accept(completedFile)) {
           status.markAsIndexed(inputFile);
+          fs.add(inputFile);
           File parentDir = inputFile.file().getParentFile();
           String relativePath = new PathResolver().relativePath(fs.baseDir(), parentDir);
           if (relativePath != null) {
             DefaultInputDir inputDir = new DefaultInputDir(fs.moduleKey(), relativePath);
             inputDir.setFile(parentDir);
-            status.markAsIndexed(inputDir);
+            if (status.markAsIndexed(inputDir)) {
+              fs.add(inputDir);
+            }
           }
         }
         return null;
@@ -205,8 +200,11 @@ public class FileIndexer implements BatchComponent {
       indexed.add(inputFile);
     }
 
-    synchronized void markAsIndexed(InputDir inputDir) {
-      indexedDir.add(inputDir);
+    /**
+     * @return true if the directory was not already indexed
+     */
+    synchronized boolean markAsIndexed(InputDir inputDir) {
+      return indexedDir.add(inputDir);
     }
 
     int count() {
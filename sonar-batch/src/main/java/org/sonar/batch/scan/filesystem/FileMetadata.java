@@ -19,22 +19,18 @@
  */
 package org.sonar.batch.scan.filesystem;
 
-import com.google.common.base.Charsets;
-import com.google.common.primitives.Longs;
 import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
-import java.nio.ByteBuffer;
-import java.nio.CharBuffer;
 import java.nio.charset.Charset;
 import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -46,59 +42,58 @@ class FileMetadata {
   private static final char LINE_FEED = '\n';
   private static final char CARRIAGE_RETURN = '\r';
   private static final char BOM = '\uFEFF';
+  private static final int BUFFER_SIZE = 8192;
 
   /**
    * Compute hash of a file ignoring line ends differences.
-   * Maximum performance is needed.
+   * Maximum performance is needed, so nothing is allocated per character or per line, except line hashes.
    */
   Metadata read(File file, Charset encoding) {
     long currentOriginalOffset = 0;
-    List<Long> originalLineOffsets = new ArrayList<Long>();
-    List<Object> lineHashes = new ArrayList<Object>();
+    LineOffsets originalLineOffsets = new LineOffsets();
+    List<byte[]> lineHashes = new ArrayList<byte[]>();
     int lines = 0;
     char c = (char) -1;
-    try (Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), encoding))) {
-      MessageDigest globalMd5Digest = DigestUtils.getMd5Digest();
-      MessageDigest lineMd5Digest = DigestUtils.getMd5Digest();
-      int i = reader.read();
+    try (Reader reader = new InputStreamReader(new FileInputStream(file), encoding)) {
+      Utf8Digest globalMd5Digest = new Utf8Digest();
+      Utf8Digest lineMd5Digest = new Utf8Digest();
+      char[] buffer = new char[BUFFER_SIZE];
       boolean afterCR = false;
       // First offset of first line is always 0
       originalLineOffsets.add(0L);
       boolean blankline = true;
-      while (i != -1) {
-        c = (char) i;
-        if (c == BOM) {
-          // Ignore
-          i = reader.read();
-          continue;
-        }
-        currentOriginalOffset++;
-        if (afterCR) {
-          afterCR = false;
-          if (c == LINE_FEED) {
-            originalLineOffsets.set(originalLineOffsets.size() - 1, originalLineOffsets.get(originalLineOffsets.size() - 1) + 1);
+      int read;
+      while ((read = reader.read(buffer)) != -1) {
+        for (int idx = 0; idx < read; idx++) {
+          c = buffer[idx];
+          if (c == BOM) {
             // Ignore
-            i = reader.read();
             continue;
           }
-        }
-        if (c == CARRIAGE_RETURN) {
-          afterCR = true;
-          c = LINE_FEED;
-        }
-        if (c == LINE_FEED) {
-          lines++;
-          originalLineOffsets.add(currentOriginalOffset);
-          lineHashes.add(blankline ? null : lineMd5Digest.digest());
-          blankline = true;
-        } else {
-          if (!Character.isWhitespace(c)) {
+          currentOriginalOffset++;
+          if (afterCR) {
+            afterCR = false;
+            if (c == LINE_FEED) {
+              originalLineOffsets.incrementLast();
+              // Ignore
+              continue;
+            }
+          }
+          if (c == CARRIAGE_RETURN) {
+            afterCR = true;
+            c = LINE_FEED;
+          }
+          if (c == LINE_FEED) {
+            lines++;
+            originalLineOffsets.add(currentOriginalOffset);
+            lineHashes.add(blankline ? null : lineMd5Digest.digest());
+            blankline = true;
+          } else if (!Character.isWhitespace(c)) {
             blankline = false;
-            updateDigestUTF8Char(c, lineMd5Digest);
+            lineMd5Digest.update(c);
           }
+          globalMd5Digest.update(c);
         }
-        updateDigestUTF8Char(c, globalMd5Digest);
-        i = reader.read();
       }
       if (c != (char) -1) {
         // Last line
@@ -106,23 +101,71 @@ class FileMetadata {
         lineHashes.add(blankline ? null : lineMd5Digest.digest());
       }
       String filehash = Hex.encodeHexString(globalMd5Digest.digest());
-      return new Metadata(lines, filehash, originalLineOffsets, lineHashes.toArray(new byte[0][]));
+      return new Metadata(lines, filehash, originalLineOffsets.toArray(), lineHashes.toArray(new byte[lineHashes.size()][]));
 
     } catch (IOException e) {
       throw new IllegalStateException(String.format("Fail to read file '%s' with encoding '%s'", file.getAbsolutePath(), encoding), e);
     }
   }
 
-  private void updateDigestUTF8Char(char c, MessageDigest md5Digest) {
-    CharBuffer cb = CharBuffer.allocate(1);
-    cb.put(c);
-    cb.flip();
-    ByteBuffer bb = Charsets.UTF_8.encode(cb);
-    byte[] array = bb.array();
-    for (int i = 0; i < array.length; i++) {
-      if (array[i] != 0) {
-        md5Digest.update(array[i]);
+  /**
+   * MD5 of the UTF-8 encoding of characters, buffered to limit the calls to {@link MessageDigest}.
+   * For backward-compatibility of hashes, characters are encoded one by one, as {@link java.nio.charset.CharsetEncoder}
+   * would do: surrogates are replaced by '?' and null characters are ignored.
+   */
+  private static final class Utf8Digest {
+    private final MessageDigest digest = DigestUtils.getMd5Digest();
+    private final byte[] bytes = new byte[BUFFER_SIZE];
+    private int length = 0;
+
+    void update(char c) {
+      if (length > bytes.length - 3) {
+        flush();
       }
+      if (c < 0x80) {
+        if (c != 0) {
+          bytes[length++] = (byte) c;
+        }
+      } else if (c < 0x800) {
+        bytes[length++] = (byte) (0xC0 | (c >> 6));
+        bytes[length++] = (byte) (0x80 | (c & 0x3F));
+      } else if (Character.isSurrogate(c)) {
+        bytes[length++] = (byte) '?';
+      } else {
+        bytes[length++] = (byte) (0xE0 | (c >> 12));
+        bytes[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+        bytes[length++] = (byte) (0x80 | (c & 0x3F));
+      }
+    }
+
+    byte[] digest() {
+      flush();
+      return digest.digest();
+    }
+
+    private void flush() {
+      digest.update(bytes, 0, length);
+      length = 0;
+    }
+  }
+
+  private static final class LineOffsets {
+    private long[] offsets = new long[64];
+    private int size = 0;
+
+    void add(long offset) {
+      if (size == offsets.length) {
+        offsets = Arrays.copyOf(offsets, size * 2);
+      }
+      offsets[size++] = offset;
+    }
+
+    void incrementLast() {
+      offsets[size - 1]++;
+    }
+
+    long[] toArray() {
+      return Arrays.copyOf(offsets, size);
     }
   }
 
@@ -132,10 +175,10 @@ class FileMetadata {
     final long[] originalLineOffsets;
     final byte[][] lineHashes;
 
-    private Metadata(int lines, String hash, List<Long> originalLineOffsets, byte[][] lineHashes) {
+    private Metadata(int lines, String hash, long[] originalLineOffsets, byte[][] lineHashes) {
       this.lines = lines;
       this.hash = hash;
-      this.originalLineOffsets = Longs.toArray(originalLineOffsets);
+      this.originalLineOffsets = originalLineOffsets;
       this.lineHashes = lineHashes;
     }
   }
@@ -37,6 +37,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.io.StringReader;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -68,6 +69,35 @@ public class CodeColorizers implements BatchComponent {
 
   @CheckForNull
   public SyntaxHighlightingData toSyntaxHighlighting(File file, String encoding, String language) {
+    List<Tokenizer> tokenizers = tokenizers(language);
+    if (tokenizers == null) {
+      return null;
+    }
+    try (Reader reader = new BufferedReader(new InputStreamReader(new BOMInputStream(new FileInputStream(file)), encoding))) {
+      return new HighlightingRenderer().render(reader, tokenizers);
+    } catch (Exception e) {
+      throw new IllegalStateException("Unable to read source file for colorization", e);
+    }
+  }
+
+  /**
+   * Same as {@link #toSyntaxHighlighting(File, String, String)} for source code already loaded in memory, without BOM.
+   */
+  @CheckForNull
+  public SyntaxHighlightingData toSyntaxHighlighting(String source, String language) {
+    List<Tokenizer> tokenizers = tokenizers(language);
+    if (tokenizers == null) {
+      return null;
+    }
+    try (Reader reader = new StringReader(source)) {
+      return new HighlightingRenderer().render(reader, tokenizers);
+    } catch (Exception e) {
+      throw new IllegalStateException("Unable to colorize source code", e);
+    }
+  }
+
+  @CheckForNull
+  private List<Tokenizer> tokenizers(String language) {
     CodeColorizerFormat format = byLang.get(language);
     List<Tokenizer> tokenizers;
     if (format == null) {
@@ -81,10 +111,6 @@ public class CodeColorizers implements BatchComponent {
     } else {
       tokenizers = format.getTokenizers();
     }
-    try (Reader reader = new BufferedReader(new InputStreamReader(new BOMInputStream(new FileInputStream(file)), encoding))) {
-      return new HighlightingRenderer().render(reader, tokenizers);
-    } catch (Exception e) {
-      throw new IllegalStateException("Unable to read source file for colorization", e);
-    }
+    return tokenizers;
   }
 }
@@ -20,12 +20,19 @@
 package org.sonar.batch.index;
 
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 public class CacheTest {
@@ -37,10 +44,14 @@ public class CacheTest {
 
   @Before
   public void start() throws Exception {
-    caches = CachesTest.createCacheOnTemp(temp);
+    caches = createCaches(temp);
     caches.start();
   }
 
+  protected Caches createCaches(TemporaryFolder temp) {
+    return CachesTest.createCacheOnTemp(temp);
+  }
+
   @After
   public void stop() {
     caches.stop();
@@ -254,4 +265,41 @@ public class CacheTest {
     cache.clear("foo", "bar", "baz");
     cache.clear();
   }
+
+  @Test
+  public void concurrent_access() throws Exception {
+    final Cache<Integer> cache = caches.createCache("concurrent");
+    int threads = 4;
+    final int valuesPerThread = 2000;
+
+    List<Callable<Integer>> tasks = Lists.newArrayList();
+    for (int i = 0; i < threads; i++) {
+      final String module = "module" + i;
+      tasks.add(new Callable<Integer>() {
+        @Override
+        public Integer call() {
+          for (int j = 0; j < valuesPerThread; j++) {
+            cache.put(module, j, j);
+            assertThat(cache.get(module, j)).isEqualTo(j);
+          }
+          int sum = 0;
+          for (Integer value : cache.values(module)) {
+            sum += value;
+          }
+          return sum;
+        }
+      });
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      for (Future<Integer> future : executor.invokeAll(tasks)) {
+        assertThat(future.get()).isEqualTo(valuesPerThread * (valuesPerThread - 1) / 2);
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertThat(cache.keySet()).hasSize(threads);
+    assertThat(Iterables.size(cache.values())).isEqualTo(threads * valuesPerThread);
+  }
 }
@@ -26,6 +26,7 @@ import org.junit.ClassRule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.sonar.api.CoreProperties;
+import org.sonar.api.config.Settings;
 import org.sonar.batch.bootstrap.BootstrapProperties;
 import org.sonar.batch.bootstrap.TempFolderProvider;
 
@@ -42,9 +43,13 @@ public class CachesTest {
   public static TemporaryFolder temp = new TemporaryFolder();
 
   public static Caches createCacheOnTemp(TemporaryFolder temp) {
+    return createCacheOnTemp(temp, new Settings());
+  }
+
+  public static Caches createCacheOnTemp(TemporaryFolder temp, Settings settings) {
     try {
       BootstrapProperties bootstrapProps = new BootstrapProperties(ImmutableMap.of(CoreProperties.WORKING_DIRECTORY, temp.newFolder().getAbsolutePath()));
-      return new Caches(new TempFolderProvider().provide(bootstrapProps));
+      return new Caches(new TempFolderProvider().provide(bootstrapProps), settings);
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
@@ -95,6 +100,44 @@ public class CachesTest {
     }
   }
 
+  @Test
+  public void should_create_in_memory_cache() throws Exception {
+    caches.stop();
+    caches = createCacheOnTemp(temp, new Settings().setProperty(Caches.IN_MEMORY_PROPERTY, true));
+    caches.start();
+
+    assertThat(caches.createCache("foo")).isInstanceOf(MemoryCache.class);
+  }
+
+  @Test
+  public void should_create_persistit_cache_by_default() throws Exception {
+    caches.start();
+
+    assertThat(caches.createCache("foo")).isInstanceOf(PersistitCache.class);
+  }
+
+  @Test
+  public void buffer_pool_size_depends_on_heap() throws Exception {
+    long mb = 1024L * 1024L;
+    // 5% of heap
+    assertThat(Caches.bufferCount(new Settings(), 1024 * mb)).isEqualTo(6553);
+    // at least 1MB
+    assertThat(Caches.bufferCount(new Settings(), 10 * mb)).isEqualTo(128);
+    // at most 256MB
+    assertThat(Caches.bufferCount(new Settings(), Long.MAX_VALUE)).isEqualTo(32768);
+  }
+
+  @Test
+  public void buffer_pool_size_can_be_configured() throws Exception {
+    long mb = 1024L * 1024L;
+    Settings settings = new Settings().setProperty(Caches.BUFFER_POOL_SIZE_PROPERTY, 512);
+    assertThat(Caches.bufferCount(settings, 1024 * mb)).isEqualTo(65536);
+
+    // minimum number of buffers
+    settings.setProperty(Caches.BUFFER_POOL_SIZE_PROPERTY, 0);
+    assertThat(Caches.bufferCount(settings, 1024 * mb)).isEqualTo(10);
+  }
+
   static class Element implements Serializable {
 
   }
@@ -23,6 +23,7 @@ import org.apache.commons.lang.StringUtils;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.sonar.api.config.Settings;
 import org.sonar.api.database.model.Snapshot;
 import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.measures.Measure;
@@ -39,6 +40,8 @@ import org.sonar.api.rules.RuleFinder;
 import org.sonar.api.rules.RulePriority;
 import org.sonar.batch.scan.measure.MeasureCache;
 import org.sonar.core.persistence.AbstractDaoTestCase;
+import org.sonar.core.persistence.Database;
+import org.sonar.core.persistence.dialect.Dialect;
 
 import java.util.Arrays;
 
@@ -67,22 +70,24 @@ public class MeasurePersisterTest extends AbstractDaoTestCase {
   BatchResource dirResource = batchResource(aDirectory, PACKAGE_SNAPSHOT_ID);
   BatchResource fileResource = batchResource(aFile, FILE_SNAPSHOT_ID);
   MeasureCache measureCache;
+  ResourceCache resourceCache;
+  MetricFinder metricFinder;
+  Settings settings = new Settings();
 
   @Before
   public void mockResourcePersister() {
     measureCache = mock(MeasureCache.class);
-    ResourceCache resourceCache = mock(ResourceCache.class);
+    resourceCache = mock(ResourceCache.class);
     when(resourceCache.get("foo")).thenReturn(projectResource);
     when(resourceCache.get("foo:org/foo/Bar.java")).thenReturn(fileResource);
     when(resourceCache.get("foo:org/foo")).thenReturn(dirResource);
 
-    MetricFinder metricFinder = mock(MetricFinder.class);
+    metricFinder = mock(MetricFinder.class);
     Metric ncloc = ncloc();
     Metric coverage = coverage();
-    when(metricFinder.findByKey(ncloc.getKey())).thenReturn(ncloc);
-    when(metricFinder.findByKey(coverage.getKey())).thenReturn(coverage);
+    when(metricFinder.findAll()).thenReturn(Arrays.asList(ncloc, coverage));
 
-    measurePersister = new MeasurePersister(getMyBatis(), ruleFinder, metricFinder, measureCache, resourceCache);
+    measurePersister = new MeasurePersister(getMyBatis(), getDatabase(), settings, ruleFinder, metricFinder, measureCache, resourceCache);
   }
 
   @Test
@@ -175,6 +180,55 @@ public class MeasurePersisterTest extends AbstractDaoTestCase {
     checkTables("shouldAlwaysPersistNonFileMeasures", "project_measures");
   }
 
+  @Test
+  public void should_flush_measures_by_batches() {
+    setupData("empty");
+    settings.setProperty(MeasurePersister.BATCH_SIZE_PROPERTY, 1);
+
+    Measure measure1 = new Measure(ncloc()).setValue(200.0);
+    Measure measure2 = new Measure(ncloc()).setValue(300.0);
+    when(measureCache.entries()).thenReturn(Arrays.asList(
+      new Cache.Entry<Measure>(new String[] {"foo", "ncloc"}, measure1),
+      new Cache.Entry<Measure>(new String[] {"foo:org/foo", "ncloc"}, measure2)));
+
+    measurePersister.persist();
+
+    checkTables("shouldAlwaysPersistNonFileMeasures", "project_measures");
+  }
+
+  @Test
+  public void should_limit_size_of_batches() {
+    assertThat(measurePersister.batchSize()).isEqualTo(100);
+
+    settings.setProperty(MeasurePersister.BATCH_SIZE_PROPERTY, 0);
+    assertThat(measurePersister.batchSize()).isEqualTo(1);
+
+    settings.setProperty(MeasurePersister.BATCH_SIZE_PROPERTY, 500);
+    assertThat(measurePersister.batchSize()).isEqualTo(500);
+
+    settings.setProperty(MeasurePersister.BATCH_SIZE_PROPERTY, 5000);
+    assertThat(measurePersister.batchSize()).isEqualTo(MeasurePersister.MAX_BATCH_SIZE);
+  }
+
+  @Test
+  public void should_insert_measures_one_by_one_if_multiple_rows_insert_is_not_supported() {
+    setupData("empty");
+    Dialect dialect = mock(Dialect.class);
+    Database database = mock(Database.class);
+    when(database.getDialect()).thenReturn(dialect);
+    measurePersister = new MeasurePersister(getMyBatis(), database, settings, ruleFinder, metricFinder, measureCache, resourceCache);
+
+    Measure measure1 = new Measure(ncloc()).setValue(200.0);
+    Measure measure2 = new Measure(ncloc()).setValue(300.0);
+    when(measureCache.entries()).thenReturn(Arrays.asList(
+      new Cache.Entry<Measure>(new String[] {"foo", "ncloc"}, measure1),
+      new Cache.Entry<Measure>(new String[] {"foo:org/foo", "ncloc"}, measure2)));
+
+    measurePersister.persist();
+
+    checkTables("shouldAlwaysPersistNonFileMeasures", "project_measures");
+  }
+
   @Test
   public void should_not_save_some_file_measures_with_best_value() {
     assertThat(MeasurePersister.shouldPersistMeasure(aFile, new Measure(CoreMetrics.LINES, 200.0))).isTrue();
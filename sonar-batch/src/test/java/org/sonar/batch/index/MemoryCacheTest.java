@@ -0,0 +1,47 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.index;
+
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.config.Settings;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Same behavior as Persistit caches
+ */
+public class MemoryCacheTest extends CacheTest {
+
+  @Override
+  protected Caches createCaches(TemporaryFolder temp) {
+    return CachesTest.createCacheOnTemp(temp, new Settings().setProperty(Caches.IN_MEMORY_PROPERTY, true));
+  }
+
+  @Test
+  public void values_are_copied() throws Exception {
+    Cache<StringBuilder> cache = caches.createCache("copies");
+    StringBuilder value = new StringBuilder("foo");
+    cache.put("key", value);
+    value.append("bar");
+
+    assertThat(cache.get("key").toString()).isEqualTo("foo");
+  }
+}
@@ -40,6 +40,7 @@ import org.sonar.batch.ProjectTree;
 import org.sonar.batch.duplication.DuplicationCache;
 import org.sonar.batch.highlighting.SyntaxHighlightingData;
 import org.sonar.batch.highlighting.SyntaxHighlightingDataBuilder;
+import org.sonar.batch.scan.filesystem.FileContents;
 import org.sonar.batch.scan.filesystem.InputPathCache;
 import org.sonar.batch.scan.measure.MeasureCache;
 import org.sonar.batch.source.CodeColorizers;
@@ -47,12 +48,16 @@ import org.sonar.batch.symbol.DefaultSymbolTableBuilder;
 import org.sonar.core.persistence.AbstractDaoTestCase;
 import org.sonar.core.source.SnapshotDataTypes;
 import org.sonar.core.source.db.FileSourceDao;
+import org.sonar.core.source.db.FileSourceDataColumn;
+import org.sonar.core.source.db.FileSourceDataReader;
 import org.sonar.core.source.db.FileSourceDto;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.anyString;
@@ -91,7 +96,7 @@ public class SourcePersisterTest extends AbstractDaoTestCase {
     duplicationCache = mock(DuplicationCache.class);
     sourcePersister = new SourcePersister(inputPathCache,
       getMyBatis(), measureCache, componentDataCache, projectTree, system2,
-      resourceCache, mock(CodeColorizers.class), duplicationCache);
+      resourceCache, mock(CodeColorizers.class), duplicationCache, new FileContents());
     Project project = new Project(PROJECT_KEY);
     project.setUuid("projectUuid");
     when(projectTree.getRootProject()).thenReturn(project);
@@ -116,6 +121,71 @@ public class SourcePersisterTest extends AbstractDaoTestCase {
     checkTables("testPersistDontTouchUnchanged", "file_sources");
   }
 
+  @Test
+  public void testPersistFingerprintOfUnchanged() throws Exception {
+    setupData("file_sources");
+    when(system2.newDate()).thenReturn(DateUtils.parseDateTime("2014-10-29T16:44:02+0100"));
+
+    String relativePathSame = "src/same.java";
+    java.io.File sameFile = new java.io.File(basedir, relativePathSame);
+    FileUtils.write(sameFile, "unchanged\ncontent");
+    DefaultInputFile inputFileNew = new DefaultInputFile(PROJECT_KEY, relativePathSame).setLines(2).setAbsolutePath(sameFile.getAbsolutePath())
+      .setHash("123456")
+      .setLineHashes(new byte[][] {md5("unchanged"), md5("ncontent")});
+    when(inputPathCache.all()).thenReturn(Arrays.<InputPath>asList(inputFileNew));
+
+    mockResourceCache(relativePathSame, PROJECT_KEY, "uuidsame");
+
+    sourcePersister.persist();
+
+    FileSourceDto fileSourceDto = new FileSourceDao(getMyBatis()).select("uuidsame");
+    assertThat(fileSourceDto.getDataFingerprint()).isEqualTo(sourcePersister.getDataFingerprint(inputFileNew));
+    // data is not updated
+    assertThat(fileSourceDto.getUpdatedAt()).isEqualTo(1412952242000L);
+    assertThat(fileSourceDto.getBinaryData()).isNull();
+  }
+
+  @Test
+  public void testPersistDontReadFileWhenFingerprintUnchanged() throws Exception {
+    setupData("file_sources");
+    Date now = DateUtils.parseDateTime("2014-10-29T16:44:02+0100");
+    when(system2.newDate()).thenReturn(now);
+
+    String relativePathNew = "src/new.java";
+    java.io.File newFile = new java.io.File(basedir, relativePathNew);
+    FileUtils.write(newFile, "foo\nbar");
+    DefaultInputFile inputFileNew = new DefaultInputFile(PROJECT_KEY, relativePathNew)
+      .setLines(2)
+      .setHash("abcdef")
+      .setAbsolutePath(newFile.getAbsolutePath())
+      .setLineHashes(new byte[][] {md5("foo"), md5("bar")});
+    when(inputPathCache.all()).thenReturn(Arrays.<InputPath>asList(inputFileNew));
+    mockResourceCache(relativePathNew, PROJECT_KEY, "uuidnew");
+    sourcePersister.persist();
+
+    // second analysis, file can't be read anymore
+    FileUtils.forceDelete(newFile);
+    when(system2.newDate()).thenReturn(DateUtils.parseDateTime("2014-10-30T16:44:02+0100"));
+    sourcePersister.persist();
+
+    FileSourceDto fileSourceDto = new FileSourceDao(getMyBatis()).select("uuidnew");
+    assertThat(fileSourceDto.getUpdatedAt()).isEqualTo(now.getTime());
+    assertThat(new FileSourceDataReader(fileSourceDto.getBinaryData()).readStrings(FileSourceDataColumn.SOURCE)).containsExactly("foo", "bar");
+  }
+
+  @Test
+  public void testDataFingerprintDependsOnLineMeasures() throws Exception {
+    DefaultInputFile inputFile = new DefaultInputFile(PROJECT_KEY, "src/foo.java").setLines(2).setHash("abcdef");
+    String fingerprint = sourcePersister.getDataFingerprint(inputFile);
+    assertThat(fingerprint).isNotNull().isEqualTo(sourcePersister.getDataFingerprint(inputFile));
+
+    when(measureCache.byMetric(PROJECT_KEY + ":src/foo.java", CoreMetrics.COVERAGE_LINE_HITS_DATA_KEY)).thenReturn(
+      Arrays.asList(new Measure(CoreMetrics.COVERAGE_LINE_HITS_DATA, "1=1")));
+    assertThat(sourcePersister.getDataFingerprint(inputFile)).isNotEqualTo(fingerprint);
+
+    assertThat(sourcePersister.getDataFingerprint(inputFile.setHash(null))).isNull();
+  }
+
   @Test
   public void testPersistUpdateChanged() throws Exception {
     setupData("file_sources");
@@ -138,10 +208,14 @@ public class SourcePersisterTest extends AbstractDaoTestCase {
     FileSourceDto fileSourceDto = new FileSourceDao(getMyBatis()).select("uuidsame");
     assertThat(fileSourceDto.getCreatedAt()).isEqualTo(DateUtils.parseDateTime("2014-10-10T16:44:02+0200").getTime());
     assertThat(fileSourceDto.getUpdatedAt()).isEqualTo(now.getTime());
-    assertThat(fileSourceDto.getData()).isEqualTo(
-      ",,,,,,,,,,,,,,,changed\r\n,,,,,,,,,,,,,,,content\r\n");
+    // legacy CSV data is replaced by binary data
+    assertThat(fileSourceDto.getData()).isNull();
+    FileSourceDataReader data = new FileSourceDataReader(fileSourceDto.getBinaryData());
+    assertThat(data.lines()).isEqualTo(2);
+    assertThat(data.readStrings(FileSourceDataColumn.SOURCE)).containsExactly("changed", "content");
+    assertThat(data.readStrings(FileSourceDataColumn.SCM_AUTHOR)).containsExactly(null, null);
     assertThat(fileSourceDto.getLineHashes()).isEqualTo(md5Hex("changed") + "\n" + md5Hex("content"));
-    assertThat(fileSourceDto.getDataHash()).isEqualTo("d1a4dd62422639f665a8d80b37c59f8d");
+    assertThat(fileSourceDto.getDataHash()).isEqualTo(DigestUtils.md5Hex(fileSourceDto.getBinaryData()));
     assertThat(fileSourceDto.getSrcHash()).isEqualTo("123456");
   }
 
@@ -184,11 +258,44 @@ public class SourcePersisterTest extends AbstractDaoTestCase {
     FileSourceDto fileSourceDto = new FileSourceDao(getMyBatis()).select("uuidnew");
     assertThat(fileSourceDto.getCreatedAt()).isEqualTo(now.getTime());
     assertThat(fileSourceDto.getUpdatedAt()).isEqualTo(now.getTime());
-    assertThat(fileSourceDto.getData()).isEqualTo(
-      ",,,,,,,,,,,,,,,foo\r\n,,,,,,,,,,,,,,,bar\r\n,,,,,,,,,,,,,,,biz\r\n");
+    FileSourceDataReader data = new FileSourceDataReader(fileSourceDto.getBinaryData());
+    assertThat(data.readStrings(FileSourceDataColumn.SOURCE)).containsExactly("foo", "bar", "biz");
+    assertThat(data.readStrings(FileSourceDataColumn.SCM_REVISION)).containsExactly(null, null, null);
+    assertThat(data.readIntegers(FileSourceDataColumn.UT_LINE_HITS)).containsExactly(null, null, null);
+    assertThat(data.readStrings(FileSourceDataColumn.HIGHLIGHTING)).containsExactly(null, null, null);
     assertThat(fileSourceDto.getLineHashes()).isEqualTo(md5Hex("foo") + "\n" + md5Hex("bar") + "\n" + md5Hex("biz"));
-    assertThat(fileSourceDto.getDataHash()).isEqualTo("a34ed99cc7d27150c82f5cba2b22b665");
+    assertThat(fileSourceDto.getDataHash()).isEqualTo(DigestUtils.md5Hex(fileSourceDto.getBinaryData()));
+
+  }
+
+  @Test
+  public void testPersistSeveralFilesInSmallBatches() throws Exception {
+    setupData("file_sources");
+    Date now = DateUtils.parseDateTime("2014-10-29T16:44:02+0100");
+    when(system2.newDate()).thenReturn(now);
 
+    List<InputPath> inputPaths = new ArrayList<InputPath>();
+    for (int i = 0; i < 5; i++) {
+      String relativePath = "src/new" + i + ".java";
+      java.io.File newFile = new java.io.File(basedir, relativePath);
+      FileUtils.write(newFile, "foo" + i);
+      inputPaths.add(new DefaultInputFile(PROJECT_KEY, relativePath)
+        .setLines(1)
+        .setAbsolutePath(newFile.getAbsolutePath())
+        .setLineHashes(new byte[][] {md5("foo" + i)}));
+      mockResourceCache(relativePath, PROJECT_KEY, "uuidnew" + i);
+    }
+    when(inputPathCache.all()).thenReturn(inputPaths);
+
+    // flush after each file
+    sourcePersister.setMaxBatchBytes(1L).persist();
+
+    FileSourceDao dao = new FileSourceDao(getMyBatis());
+    for (int i = 0; i < 5; i++) {
+      FileSourceDto fileSourceDto = dao.select("uuidnew" + i);
+      FileSourceDataReader data = new FileSourceDataReader(fileSourceDto.getBinaryData());
+      assertThat(data.readStrings(FileSourceDataColumn.SOURCE)).containsExactly("foo" + i);
+    }
   }
 
   @Test
@@ -269,11 +376,25 @@ public class SourcePersisterTest extends AbstractDaoTestCase {
     assertThat(fileSourceDto.getCreatedAt()).isEqualTo(now.getTime());
     assertThat(fileSourceDto.getUpdatedAt()).isEqualTo(now.getTime());
     assertThat(fileSourceDto.getLineHashes()).isEqualTo(md5Hex("foo") + "\n" + md5Hex("bar") + "\n" + md5Hex("biz"));
-    assertThat(fileSourceDto.getData()).isEqualTo(
-      "123,julien,2014-10-11T16:44:02+0100,1,4,2,2,5,3,3,6,4,\"0,3,a\",\"1,2,1;0,2,2\",\"1,3\",foo\r\n"
-        + "234,simon,2014-10-12T16:44:02+0100,,,,,,,,,,\"0,1,cd\",\"0,1,1;0,2,2\",3,bar\r\n"
-        + "345,julien,2014-10-13T16:44:02+0100,0,,,0,,,0,,,\"0,9,c\",\"4,5,1;0,2,2\",2,biz\r\n");
-    assertThat(fileSourceDto.getDataHash()).isEqualTo("26930cf0250d525b04083185ff24a046");
+    FileSourceDataReader data = new FileSourceDataReader(fileSourceDto.getBinaryData());
+    assertThat(data.lines()).isEqualTo(3);
+    assertThat(data.readStrings(FileSourceDataColumn.SCM_REVISION)).containsExactly("123", "234", "345");
+    assertThat(data.readStrings(FileSourceDataColumn.SCM_AUTHOR)).containsExactly("julien", "simon", "julien");
+    assertThat(data.readStrings(FileSourceDataColumn.SCM_DATE)).containsExactly("2014-10-11T16:44:02+0100", "2014-10-12T16:44:02+0100", "2014-10-13T16:44:02+0100");
+    assertThat(data.readIntegers(FileSourceDataColumn.UT_LINE_HITS)).containsExactly(1, null, 0);
+    assertThat(data.readIntegers(FileSourceDataColumn.UT_CONDITIONS)).containsExactly(4, null, null);
+    assertThat(data.readIntegers(FileSourceDataColumn.UT_COVERED_CONDITIONS)).containsExactly(2, null, null);
+    assertThat(data.readIntegers(FileSourceDataColumn.IT_LINE_HITS)).containsExactly(2, null, 0);
+    assertThat(data.readIntegers(FileSourceDataColumn.IT_CONDITIONS)).containsExactly(5, null, null);
+    assertThat(data.readIntegers(FileSourceDataColumn.IT_COVERED_CONDITIONS)).containsExactly(3, null, null);
+    assertThat(data.readIntegers(FileSourceDataColumn.OVERALL_LINE_HITS)).containsExactly(3, null, 0);
+    assertThat(data.readIntegers(FileSourceDataColumn.OVERALL_CONDITIONS)).containsExactly(6, null, null);
+    assertThat(data.readIntegers(FileSourceDataColumn.OVERALL_COVERED_CONDITIONS)).containsExactly(4, null, null);
+    assertThat(data.readStrings(FileSourceDataColumn.HIGHLIGHTING)).containsExactly("0,3,a", "0,1,cd", "0,9,c");
+    assertThat(data.readStrings(FileSourceDataColumn.SYMBOLS)).containsExactly("1,2,1;0,2,2", "0,1,1;0,2,2", "4,5,1;0,2,2");
+    assertThat(data.readIntegerLists(FileSourceDataColumn.DUPLICATIONS)).containsExactly(new int[] {1, 3}, new int[] {3}, new int[] {2});
+    assertThat(data.readStrings(FileSourceDataColumn.SOURCE)).containsExactly("foo", "bar", "biz");
+    assertThat(fileSourceDto.getDataHash()).isEqualTo(DigestUtils.md5Hex(fileSourceDto.getBinaryData()));
   }
 
   @Test
@@ -30,6 +30,7 @@ import org.sonar.batch.issue.ignore.pattern.IssueExclusionPatternInitializer;
 import org.sonar.batch.issue.ignore.pattern.IssuePattern;
 import org.sonar.batch.issue.ignore.pattern.LineRange;
 import org.sonar.batch.issue.ignore.pattern.PatternMatcher;
+import org.sonar.batch.scan.filesystem.FileContents;
 
 import java.io.File;
 import java.util.Arrays;
@@ -70,7 +71,7 @@ public class IssueExclusionsRegexpScannerTest {
     when(patternsInitializer.getBlockPatterns()).thenReturn(Arrays.asList(blockPattern1, blockPattern2));
     when(patternsInitializer.getPatternMatcher()).thenReturn(patternMatcher);
 
-    regexpScanner = new IssueExclusionsRegexpScanner(patternsInitializer);
+    regexpScanner = new IssueExclusionsRegexpScanner(patternsInitializer, new FileContents());
     verify(patternsInitializer, times(1)).getAllFilePatterns();
     verify(patternsInitializer, times(1)).getBlockPatterns();
 
@@ -19,12 +19,19 @@
  */
 package org.sonar.batch.phases;
 
+import com.google.common.collect.Lists;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.sonar.api.batch.BatchExtensionDictionnary;
 import org.sonar.api.batch.Decorator;
 import org.sonar.api.batch.DecoratorContext;
 import org.sonar.api.batch.SonarIndex;
+import org.sonar.api.config.Settings;
+import org.sonar.api.measures.Measure;
 import org.sonar.api.measures.MetricFinder;
+import org.sonar.api.platform.ComponentContainer;
+import org.sonar.api.resources.Directory;
 import org.sonar.api.resources.File;
 import org.sonar.api.resources.Project;
 import org.sonar.api.resources.Resource;
@@ -35,14 +42,25 @@ import org.sonar.batch.events.EventBus;
 import org.sonar.batch.scan.measure.MeasureCache;
 import org.sonar.batch.sensor.coverage.CoverageExclusions;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class DecoratorsExecutorTest {
 
+  Set<Thread> indexThreads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+
   @Test
   public void shouldProfileExecutionTime() {
     Decorator1 decorator1 = new Decorator1();
@@ -67,7 +85,7 @@ public class DecoratorsExecutorTest {
     doThrow(new SonarException()).when(decorator).decorate(any(Resource.class), any(DecoratorContext.class));
 
     DecoratorsExecutor executor = new DecoratorsExecutor(mock(BatchExtensionDictionnary.class), new Project("key"), mock(SonarIndex.class),
-      mock(EventBus.class), mock(CoverageExclusions.class), mock(MeasureCache.class), mock(MetricFinder.class), mock(DuplicationCache.class));
+      mock(EventBus.class), mock(CoverageExclusions.class), mock(MeasureCache.class), mock(MetricFinder.class), mock(DuplicationCache.class), new Settings());
     try {
       executor.executeDecorator(decorator, mock(DefaultDecoratorContext.class), File.create("src/org/foo/Bar.java", "org/foo/Bar.java", null, false));
       fail("Exception has not been thrown");
@@ -77,6 +95,133 @@ public class DecoratorsExecutorTest {
     }
   }
 
+  @Test
+  public void decorate_children_before_parents_when_concurrent() {
+    ChildrenCheckDecorator decorator = new ChildrenCheckDecorator();
+
+    newConcurrentExecutor(decorator).execute();
+
+    assertThat(decorator.decorated).hasSize(9);
+    assertThat(decorator.errors).isEmpty();
+  }
+
+  @Test
+  public void execute_non_thread_safe_decorators_one_at_a_time() {
+    NotThreadSafeDecorator decorator1 = new NotThreadSafeDecorator();
+    NotThreadSafeDecorator decorator2 = new NotThreadSafeDecorator();
+
+    newConcurrentExecutor(decorator1, decorator2).execute();
+
+    assertThat(NotThreadSafeDecorator.maxRunning.get()).isEqualTo(1);
+    assertThat(decorator1.count + decorator2.count).isEqualTo(18);
+  }
+
+  @Test
+  public void read_index_from_calling_thread_only_when_concurrent() {
+    ChildrenCheckDecorator decorator = new ChildrenCheckDecorator();
+
+    newConcurrentExecutor(decorator).execute();
+
+    assertThat(indexThreads).containsOnly(Thread.currentThread());
+  }
+
+  @Test
+  public void exception_should_include_resource_when_concurrent() {
+    Decorator decorator = mock(Decorator.class);
+    when(decorator.shouldExecuteOnProject(any(Project.class))).thenReturn(true);
+    doThrow(new IllegalStateException()).when(decorator).decorate(any(org.sonar.api.resources.File.class), any(DecoratorContext.class));
+
+    try {
+      newConcurrentExecutor(decorator).execute();
+      fail("Exception has not been thrown");
+
+    } catch (SonarException e) {
+      assertThat(e.getMessage()).contains("Fail to decorate");
+    }
+  }
+
+  /**
+   * Project with two directories of three files
+   */
+  private DecoratorsExecutor newConcurrentExecutor(Decorator... decorators) {
+    Project project = new Project("key");
+    SonarIndex index = mock(SonarIndex.class);
+    List<Resource> dirs = Lists.newArrayList();
+    for (int i = 0; i < 2; i++) {
+      Directory dir = Directory.create("src/dir" + i, "dir" + i);
+      List<Resource> files = Lists.newArrayList();
+      for (int j = 0; j < 3; j++) {
+        files.add(File.create("src/dir" + i + "/File" + j + ".java", "dir" + i + "/File" + j + ".java", null, false));
+      }
+      when(index.getChildren(dir)).thenAnswer(recordThread(files));
+      dirs.add(dir);
+    }
+    when(index.getChildren(project)).thenAnswer(recordThread(dirs));
+    MeasureCache measureCache = mock(MeasureCache.class);
+    when(measureCache.byResource(any(Resource.class))).thenReturn(Collections.<Measure>emptyList());
+    Settings settings = new Settings();
+    settings.setProperty(DecoratorsExecutor.THREADS_PROPERTY, 4);
+
+    ComponentContainer container = new ComponentContainer();
+    for (Decorator decorator : decorators) {
+      container.addSingleton(decorator);
+    }
+
+    return new DecoratorsExecutor(new BatchExtensionDictionnary(container), project, index,
+      mock(EventBus.class), mock(CoverageExclusions.class), measureCache, mock(MetricFinder.class), mock(DuplicationCache.class), settings);
+  }
+
+  private Answer<List<Resource>> recordThread(final List<Resource> children) {
+    return new Answer<List<Resource>>() {
+      @Override
+      public List<Resource> answer(InvocationOnMock invocation) {
+        indexThreads.add(Thread.currentThread());
+        return children;
+      }
+    };
+  }
+
+  @ThreadSafeDecorator
+  static class ChildrenCheckDecorator implements Decorator {
+    Set<Resource> decorated = Collections.newSetFromMap(new ConcurrentHashMap<Resource, Boolean>());
+    Queue<String> errors = new ConcurrentLinkedQueue<String>();
+
+    public void decorate(Resource resource, DecoratorContext context) {
+      for (DecoratorContext child : context.getChildren()) {
+        if (!decorated.contains(child.getResource())) {
+          errors.add(child.getResource() + " is not decorated before " + resource);
+        }
+      }
+      decorated.add(resource);
+    }
+
+    public boolean shouldExecuteOnProject(Project project) {
+      return true;
+    }
+  }
+
+  static class NotThreadSafeDecorator implements Decorator {
+    static AtomicInteger running = new AtomicInteger();
+    static AtomicInteger maxRunning = new AtomicInteger();
+    int count = 0;
+
+    public void decorate(Resource resource, DecoratorContext context) {
+      int current = running.incrementAndGet();
+      maxRunning.set(Math.max(maxRunning.get(), current));
+      try {
+        Thread.sleep(5);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      count++;
+      running.decrementAndGet();
+    }
+
+    public boolean shouldExecuteOnProject(Project project) {
+      return true;
+    }
+  }
+
   static class Decorator1 implements Decorator {
     public void decorate(Resource resource, DecoratorContext context) {
     }
@@ -32,7 +32,7 @@ public class DefaultPhaseExecutorTest {
   @Test
   public void shouldSortPersisters() {
     ScanPersister otherPersister = mock(ScanPersister.class);
-    MeasurePersister measurePersister = new MeasurePersister(null, null, null, null, null);
+    MeasurePersister measurePersister = new MeasurePersister(null, null, null, null, null, null, null);
     ResourcePersister resourcePersister = new ResourcePersister(null, null, null, null, null);
     ScanPersister[] persisters = new ScanPersister[] {otherPersister, measurePersister, resourcePersister};
     DefaultPhaseExecutor executor = new DefaultPhaseExecutor(null, null, null, null, null, null,
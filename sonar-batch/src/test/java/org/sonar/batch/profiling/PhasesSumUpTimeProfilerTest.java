@@ -20,6 +20,11 @@
 package org.sonar.batch.profiling;
 
 import com.google.common.collect.Maps;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.apache.commons.io.FileUtils;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -53,7 +58,9 @@ import org.sonar.batch.index.ScanPersister;
 import org.sonar.batch.phases.Phases.Phase;
 import org.sonar.batch.phases.event.PersisterExecutionHandler;
 import org.sonar.batch.phases.event.PersistersPhaseHandler;
+import org.sonar.batch.protocol.output.ReportHelper;
 
+import java.io.File;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -70,12 +77,14 @@ public class PhasesSumUpTimeProfilerTest {
 
   private MockedSystem clock;
   private PhasesSumUpTimeProfiler profiler;
+  private File workingDir;
 
   @Before
   public void prepare() throws Exception {
     clock = new MockedSystem();
+    workingDir = temp.newFolder();
     Map<String, String> props = Maps.newHashMap();
-    props.put(CoreProperties.WORKING_DIRECTORY, temp.newFolder().getAbsolutePath());
+    props.put(CoreProperties.WORKING_DIRECTORY, workingDir.getAbsolutePath());
     profiler = new PhasesSumUpTimeProfiler(clock, new BootstrapProperties(props));
   }
 
@@ -125,6 +134,75 @@ public class PhasesSumUpTimeProfilerTest {
     assertThat(profiler.totalProfiling.getProfilingPerPhase(Phase.POSTJOB).getProfilingPerItem(new FakePostJob()).totalTime()).isEqualTo(90L);
   }
 
+  @Test
+  public void testJsonExport() throws Exception {
+    final Project project = mockProject("project root", true);
+    final Project moduleA = mockProject("moduleA", false);
+    when(project.getModules()).thenReturn(Arrays.asList(moduleA));
+
+    fakeAnalysis(profiler, moduleA);
+    fakeAnalysis(profiler, project);
+
+    JsonArray modules = readJson(new File(workingDir, "profiling/profiling.json")).getAsJsonArray("modules");
+    assertThat(modules.size()).isEqualTo(2);
+    JsonObject module = modules.get(0).getAsJsonObject();
+    assertThat(module.get("name").getAsString()).isEqualTo("moduleA");
+    assertThat(module.get("running").getAsBoolean()).isFalse();
+    assertThat(module.get("cpuTimeMs").getAsLong()).isGreaterThanOrEqualTo(0L);
+    assertThat(module.get("allocatedBytes").getAsLong()).isGreaterThanOrEqualTo(0L);
+
+    JsonObject sensors = phase(module, "Sensors");
+    assertThat(sensors.get("wallTimeMs").getAsLong()).isEqualTo(10L);
+    JsonObject sensor = sensors.getAsJsonArray("items").get(0).getAsJsonObject();
+    assertThat(sensor.get("name").getAsString()).isEqualTo("FakeSensor");
+    assertThat(sensor.get("wallTimeMs").getAsLong()).isEqualTo(10L);
+    assertThat(sensor.get("calls").getAsInt()).isEqualTo(1);
+
+    JsonArray decorators = phase(module, "Decorators").getAsJsonArray("items");
+    assertThat(decorators.size()).isEqualTo(2);
+    JsonObject decorator = decorators.get(0).getAsJsonObject();
+    assertThat(decorator.get("name").getAsString()).isEqualTo("FakeDecorator1");
+    assertThat(decorator.get("wallTimeMs").getAsLong()).isEqualTo(20L);
+    assertThat(decorator.get("calls").getAsInt()).isEqualTo(2);
+
+    assertThat(phase(module, "Persisters").getAsJsonArray("items").get(0).getAsJsonObject().get("wallTimeMs").getAsLong()).isEqualTo(40L);
+    JsonObject step = module.getAsJsonArray("steps").get(0).getAsJsonObject();
+    assertThat(step.get("name").getAsString()).isEqualTo("Free memory");
+    assertThat(step.get("wallTimeMs").getAsLong()).isEqualTo(9L);
+  }
+
+  @Test
+  public void testReportExport() throws Exception {
+    final Project project = mockProject("project", true);
+    when(project.getModules()).thenReturn(Collections.<Project>emptyList());
+    File reportDir = temp.newFolder();
+
+    profiler.onProjectAnalysis(projectEvent(project, true));
+    sensorPhase(profiler);
+    clock.sleep(5);
+    profiler.export(ReportHelper.create(reportDir));
+
+    JsonArray modules = readJson(new File(reportDir, "profiling.json")).getAsJsonArray("modules");
+    assertThat(modules.size()).isEqualTo(1);
+    JsonObject module = modules.get(0).getAsJsonObject();
+    assertThat(module.get("running").getAsBoolean()).isTrue();
+    assertThat(module.get("wallTimeMs").getAsLong()).isEqualTo(15L);
+    assertThat(phase(module, "Sensors").get("running").getAsBoolean()).isFalse();
+  }
+
+  private JsonObject readJson(File file) throws Exception {
+    return new JsonParser().parse(FileUtils.readFileToString(file)).getAsJsonObject();
+  }
+
+  private JsonObject phase(JsonObject module, String name) {
+    for (JsonElement phase : module.getAsJsonArray("phases")) {
+      if (name.equals(phase.getAsJsonObject().get("name").getAsString())) {
+        return phase.getAsJsonObject();
+      }
+    }
+    throw new IllegalArgumentException("No phase " + name);
+  }
+
   @Test
   public void testDisplayTimings() {
     AbstractTimeProfiling profiling = new AbstractTimeProfiling(System2.INSTANCE) {
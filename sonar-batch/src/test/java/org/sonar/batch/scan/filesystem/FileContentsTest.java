@@ -0,0 +1,116 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.scan.filesystem;
+
+import com.google.common.base.Charsets;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FileContentsTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  FileContents fileContents = new FileContents();
+
+  @Test
+  public void read_content_once() throws Exception {
+    File file = temp.newFile();
+    FileUtils.write(file, "foo\r\nbàr\n", Charsets.UTF_8);
+
+    assertThat(fileContents.content(file, Charsets.UTF_8)).isEqualTo("foo\r\nbàr\n");
+    assertThat(fileContents.lines(file, Charsets.UTF_8)).containsExactly("foo", "bàr");
+
+    // content is in cache
+    FileUtils.write(file, "other", Charsets.UTF_8);
+    assertThat(fileContents.content(file, Charsets.UTF_8)).isEqualTo("foo\r\nbàr\n");
+    assertThat(fileContents.sizeInBytes()).isEqualTo(18L);
+  }
+
+  @Test
+  public void read_again_with_other_encoding() throws Exception {
+    File file = temp.newFile();
+    FileUtils.write(file, "bàr", Charsets.UTF_8);
+
+    assertThat(fileContents.content(file, Charsets.UTF_8)).isEqualTo("bàr");
+    assertThat(fileContents.content(file, Charsets.ISO_8859_1)).isEqualTo("bÃ r");
+    assertThat(fileContents.sizeInBytes()).isEqualTo(8L);
+  }
+
+  @Test
+  public void remove_bom() throws Exception {
+    File file = temp.newFile();
+    FileUtils.write(file, "﻿foo\nbar", Charsets.UTF_8);
+
+    assertThat(fileContents.lines(file, Charsets.UTF_8)).containsExactly("foo", "bar");
+  }
+
+  @Test
+  public void empty_file() throws Exception {
+    File file = temp.newFile();
+
+    assertThat(fileContents.content(file, Charsets.UTF_8)).isEmpty();
+    assertThat(fileContents.lines(file, Charsets.UTF_8)).isEmpty();
+  }
+
+  @Test
+  public void evict_least_recently_used_contents() throws Exception {
+    fileContents.setMaxSizeInBytes(10L);
+    File file1 = temp.newFile();
+    FileUtils.write(file1, "aa", Charsets.UTF_8);
+    File file2 = temp.newFile();
+    FileUtils.write(file2, "bb", Charsets.UTF_8);
+    File file3 = temp.newFile();
+    FileUtils.write(file3, "cc", Charsets.UTF_8);
+
+    fileContents.content(file1, Charsets.UTF_8);
+    fileContents.content(file2, Charsets.UTF_8);
+    // file1 is now the most recently used
+    fileContents.content(file1, Charsets.UTF_8);
+    fileContents.content(file3, Charsets.UTF_8);
+    assertThat(fileContents.sizeInBytes()).isEqualTo(8L);
+
+    FileUtils.write(file1, "new", Charsets.UTF_8);
+    FileUtils.write(file2, "new", Charsets.UTF_8);
+    assertThat(fileContents.content(file1, Charsets.UTF_8)).isEqualTo("aa");
+    assertThat(fileContents.content(file2, Charsets.UTF_8)).isEqualTo("new");
+  }
+
+  @Test
+  public void do_not_cache_file_bigger_than_limit() throws Exception {
+    fileContents.setMaxSizeInBytes(10L);
+    File file = temp.newFile();
+    FileUtils.write(file, "too long content", Charsets.UTF_8);
+
+    assertThat(fileContents.content(file, Charsets.UTF_8)).isEqualTo("too long content");
+    assertThat(fileContents.sizeInBytes()).isEqualTo(0L);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void fail_if_file_does_not_exist() throws Exception {
+    fileContents.content(new File(temp.newFolder(), "unknown.txt"), Charsets.UTF_8);
+  }
+}
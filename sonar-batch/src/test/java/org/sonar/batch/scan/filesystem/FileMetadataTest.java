@@ -81,6 +81,36 @@ public class FileMetadataTest {
     assertThat(metadata.lineHashes[3]).isNull();
   }
 
+  @Test
+  public void hash_of_null_chars_and_surrogates_is_stable() throws Exception {
+    File tempFile = temp.newFile();
+    FileUtils.write(tempFile, "a\u0000b\uD834\uDD1Ec", Charsets.UTF_8, true);
+
+    FileMetadata.Metadata metadata = new FileMetadata().read(tempFile, Charsets.UTF_8);
+    assertThat(metadata.lines).isEqualTo(1);
+    // null chars are ignored and surrogates are replaced by '?'
+    assertThat(metadata.hash).isEqualTo(md5Hex("ab??c"));
+    assertThat(metadata.lineHashes[0]).containsOnly(md5("ab??c"));
+  }
+
+  @Test
+  public void big_file() throws Exception {
+    File tempFile = temp.newFile();
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 10000; i++) {
+      sb.append("line ").append(i).append(" é\n");
+    }
+    FileUtils.write(tempFile, sb, Charsets.UTF_8, true);
+
+    FileMetadata.Metadata metadata = new FileMetadata().read(tempFile, Charsets.UTF_8);
+    assertThat(metadata.lines).isEqualTo(10001);
+    assertThat(metadata.hash).isEqualTo(md5Hex(sb.toString()));
+    assertThat(metadata.originalLineOffsets).hasSize(10001);
+    assertThat(metadata.originalLineOffsets[10000]).isEqualTo(sb.length());
+    assertThat(metadata.lineHashes[9999]).containsOnly(md5("line9999é"));
+    assertThat(metadata.lineHashes[10000]).isNull();
+  }
+
   @Test
   public void non_ascii_utf_16() throws Exception {
     File tempFile = temp.newFile();
@@ -72,6 +72,18 @@ public class CodeColorizersTest {
     assertThat(syntaxHighlighting.writeString()).isEqualTo(HIGHLIGHTING_JS);
   }
 
+  @Test
+  public void testConvertSourceToHighlighting() throws Exception {
+    CodeColorizers codeColorizers = new CodeColorizers(Arrays.<CodeColorizerFormat>asList(new JavaScriptColorizerFormat()));
+
+    File jsFile = new File(this.getClass().getResource("CodeColorizersTest/Person.js").toURI());
+
+    SyntaxHighlightingData syntaxHighlighting = codeColorizers.toSyntaxHighlighting(FileUtils.readFileToString(jsFile, "UTF-8"), "js");
+
+    assertThat(syntaxHighlighting.writeString()).isEqualTo(HIGHLIGHTING_JS);
+    assertThat(codeColorizers.toSyntaxHighlighting("function foo() {}", "cobol")).isNull();
+  }
+
   @Test
   public void shouldSupportJavaIfNotProvidedByJavaPluginForBackwardCompatibility() throws Exception {
     CodeColorizers codeColorizers = new CodeColorizers(Arrays.<CodeColorizerFormat>asList());
@@ -89,6 +89,11 @@ public class AnalysisReportDto {
     return id;
   }
 
+  public AnalysisReportDto setId(Long id) {
+    this.id = id;
+    return this;
+  }
+
   @Override
   public String toString() {
     return Objects.toStringHelper(this)
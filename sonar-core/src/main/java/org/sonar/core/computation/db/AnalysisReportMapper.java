@@ -40,6 +40,10 @@ public interface AnalysisReportMapper {
     @Param("availableStatus") AnalysisReportDto.Status availableStatus,
     @Param("busyStatus") AnalysisReportDto.Status busyStatus);
 
+  int updateWithUnbookingReport(@Param("id") Long id,
+    @Param("availableStatus") AnalysisReportDto.Status availableStatus,
+    @Param("busyStatus") AnalysisReportDto.Status busyStatus);
+
   AnalysisReportDto selectById(long id);
 
   void delete(long id);
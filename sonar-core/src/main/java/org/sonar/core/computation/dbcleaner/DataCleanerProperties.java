@@ -24,6 +24,7 @@ import org.sonar.api.CoreProperties;
 import org.sonar.api.PropertyType;
 import org.sonar.api.config.PropertyDefinition;
 import org.sonar.api.resources.Qualifiers;
+import org.sonar.core.purge.PurgeConfiguration;
 
 import java.util.Arrays;
 import java.util.List;
@@ -102,6 +103,17 @@ public final class DataCleanerProperties {
         .category(CoreProperties.CATEGORY_GENERAL)
         .subCategory(CoreProperties.SUBCATEGORY_DATABASE_CLEANER)
         .index(6)
+        .build(),
+
+      PropertyDefinition.builder(DbCleanerConstants.MAX_ROWS_PER_TRANSACTION)
+        .defaultValue(String.valueOf(PurgeConfiguration.DEFAULT_MAX_ROWS_PER_TRANSACTION))
+        .name("Maximum number of rows deleted per transaction")
+        .description("Deletions are committed in several transactions, each one deleting about this number of measures or issues. "
+          + "Lower it if the database runs out of undo/redo space or holds locks for too long during the cleanup of huge projects.")
+        .type(PropertyType.INTEGER)
+        .category(CoreProperties.CATEGORY_GENERAL)
+        .subCategory(CoreProperties.SUBCATEGORY_DATABASE_CLEANER)
+        .index(7)
         .build()
       );
   }
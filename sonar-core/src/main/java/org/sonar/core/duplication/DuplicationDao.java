@@ -19,14 +19,19 @@
  */
 package org.sonar.core.duplication;
 
+import com.google.common.collect.Maps;
+import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.SqlSession;
 import org.sonar.api.BatchComponent;
 import org.sonar.api.ServerComponent;
 import org.sonar.core.persistence.DbSession;
 import org.sonar.core.persistence.MyBatis;
 
+import javax.annotation.Nullable;
+
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public class DuplicationDao implements BatchComponent, ServerComponent {
 
@@ -46,6 +51,41 @@ public class DuplicationDao implements BatchComponent, ServerComponent {
     }
   }
 
+  /**
+   * Streams the blocks of the last snapshots of other projects that share a hash with any block of the given
+   * project snapshot. This replaces one call to {@link #selectCandidates(int, Integer, String)} per file
+   * by a single query.
+   *
+   * @since 5.1
+   */
+  public void selectCandidatesOfProject(int projectSnapshotId, @Nullable Integer lastSnapshotId, String language, ResultHandler handler) {
+    Map<String, Object> params = Maps.newHashMap();
+    params.put("project_snapshot_id", projectSnapshotId);
+    params.put("last_project_snapshot_id", lastSnapshotId);
+    params.put("language", language);
+    SqlSession session = mybatis.openSession(false);
+    try {
+      session.select("org.sonar.core.duplication.DuplicationMapper.selectCandidatesOfProject", params, handler);
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
+  }
+
+  /**
+   * Number of blocks returned by {@link #selectCandidatesOfProject(int, Integer, String, ResultHandler)}, without
+   * reading them.
+   *
+   * @since 5.1
+   */
+  public long countCandidatesOfProject(int projectSnapshotId, @Nullable Integer lastSnapshotId, String language) {
+    SqlSession session = mybatis.openSession(false);
+    try {
+      return session.getMapper(DuplicationMapper.class).countCandidatesOfProject(projectSnapshotId, lastSnapshotId, language);
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
+  }
+
   /**
    * Insert rows in the table DUPLICATIONS_INDEX.
    * Note that generated ids are not returned.
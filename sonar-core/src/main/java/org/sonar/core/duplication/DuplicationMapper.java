@@ -30,6 +30,11 @@ public interface DuplicationMapper {
       @Param("last_project_snapshot_id") Integer lastSnapshotId,
       @Param("language") String language);
 
+  long countCandidatesOfProject(
+      @Param("project_snapshot_id") int projectSnapshotId,
+      @Param("last_project_snapshot_id") Integer lastSnapshotId,
+      @Param("language") String language);
+
   void batchInsert(DuplicationUnitDto unit);
 
 }
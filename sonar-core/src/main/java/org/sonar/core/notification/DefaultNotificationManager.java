@@ -36,6 +36,7 @@ import org.sonar.core.notification.db.NotificationQueueDao;
 import org.sonar.core.notification.db.NotificationQueueDto;
 import org.sonar.core.properties.PropertiesDao;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 
 import java.io.IOException;
@@ -96,21 +97,44 @@ public class DefaultNotificationManager implements NotificationManager {
   /**
    * Give the notification queue so that it can be processed
    */
+  @CheckForNull
   public Notification getFromQueue() {
-    int batchSize = 1;
-    List<NotificationQueueDto> notificationDtos = notificationQueueDao.findOldest(batchSize);
-    if (notificationDtos.isEmpty()) {
-      return null;
-    }
-    notificationQueueDao.delete(notificationDtos);
+    List<Notification> notifications = getFromQueue(1);
+    return notifications.isEmpty() ? null : notifications.get(0);
+  }
 
-    return convertToNotification(notificationDtos);
+  /**
+   * Give the oldest notifications of the queue so that they can be processed. The notifications
+   * that can't be read are ignored, so more than <code>maxNotifications</code> rows may be removed from
+   * the queue. The returned list is empty only if the queue is empty.
+   *
+   * @param maxNotifications the maximum number of notifications returned
+   * @since 5.1
+   */
+  public List<Notification> getFromQueue(int maxNotifications) {
+    List<Notification> notifications = Lists.newArrayListWithCapacity(maxNotifications);
+    List<NotificationQueueDto> notificationDtos = notificationQueueDao.findOldest(maxNotifications);
+    while (!notificationDtos.isEmpty()) {
+      notificationQueueDao.delete(notificationDtos);
+      for (NotificationQueueDto notificationDto : notificationDtos) {
+        Notification notification = convertToNotification(notificationDto);
+        if (notification != null) {
+          notifications.add(notification);
+        }
+      }
+      if (!notifications.isEmpty()) {
+        break;
+      }
+      // none of the rows can be read, but the queue may contain other notifications
+      notificationDtos = notificationQueueDao.findOldest(maxNotifications);
+    }
+    return notifications;
   }
 
-  private Notification convertToNotification(List<NotificationQueueDto> notifications) {
+  @CheckForNull
+  private Notification convertToNotification(NotificationQueueDto notificationDto) {
     try {
-      // If batchSize is increased then we should return a list instead of a single element
-      return notifications.get(0).toNotification();
+      return notificationDto.toNotification();
     } catch (InvalidClassException e) {
       // SONAR-4739
       if (!alreadyLoggedDeserializationIssue) {
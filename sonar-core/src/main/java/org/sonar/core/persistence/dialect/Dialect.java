@@ -87,4 +87,11 @@ public interface Dialect {
    * @since 5.0
    */
   int getScrollSingleRowFetchSize();
+
+  /**
+   * Whether a single INSERT statement can write several rows with <code>VALUES (...), (...)</code>.
+   *
+   * @since 5.1
+   */
+  boolean supportsMultipleRowsInsert();
 }
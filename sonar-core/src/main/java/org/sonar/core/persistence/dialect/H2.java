@@ -43,4 +43,8 @@ public class H2 extends AbstractDialect {
     return StringUtils.startsWithIgnoreCase(jdbcConnectionURL, "jdbc:h2:");
   }
 
+  @Override
+  public boolean supportsMultipleRowsInsert() {
+    return true;
+  }
 }
@@ -64,4 +64,9 @@ public class PostgreSql extends AbstractDialect {
   public List<String> getConnectionInitStatements() {
     return INIT_STATEMENTS;
   }
+
+  @Override
+  public boolean supportsMultipleRowsInsert() {
+    return true;
+  }
 }
@@ -20,24 +20,35 @@
 package org.sonar.core.purge;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Function;
 import com.google.common.collect.Lists;
 import org.apache.ibatis.session.SqlSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.List;
 
 class PurgeCommands {
 
+  private static final Logger LOG = LoggerFactory.getLogger(PurgeCommands.class);
+
   private static final int MAX_SNAPSHOTS_PER_QUERY = 1000;
   private static final int MAX_RESOURCES_PER_QUERY = 1000;
 
   private final SqlSession session;
   private final PurgeMapper purgeMapper;
   private final PurgeProfiler profiler;
+  private final int maxRowsPerTransaction;
 
   PurgeCommands(SqlSession session, PurgeMapper purgeMapper, PurgeProfiler profiler) {
+    this(session, purgeMapper, profiler, PurgeConfiguration.DEFAULT_MAX_ROWS_PER_TRANSACTION);
+  }
+
+  PurgeCommands(SqlSession session, PurgeMapper purgeMapper, PurgeProfiler profiler, int maxRowsPerTransaction) {
     this.session = session;
     this.purgeMapper = purgeMapper;
     this.profiler = profiler;
+    this.maxRowsPerTransaction = maxRowsPerTransaction;
   }
 
   @VisibleForTesting
@@ -49,107 +60,128 @@ class PurgeCommands {
     return purgeMapper.selectSnapshotIds(query);
   }
 
+  /**
+   * The snapshots of the resources are deleted first, by their own transactions. Then the resources are
+   * deleted by transactions of about maxRowsPerTransaction issues, each one being committed once.
+   */
   void deleteResources(List<Long> resourceIds) {
-    List<List<Long>> resourceIdsPartition = Lists.partition(resourceIds, MAX_RESOURCES_PER_QUERY);
+    List<Long> snapshotIds = Lists.newArrayList();
+    for (List<Long> partResourceIds : Lists.partition(resourceIds, MAX_RESOURCES_PER_QUERY)) {
+      snapshotIds.addAll(purgeMapper.selectSnapshotIdsByResource(partResourceIds));
+    }
+    deleteSnapshots(snapshotIds);
+
+    List<List<Long>> transactions = partitionByRows(resourceIds, MAX_RESOURCES_PER_QUERY, new Function<List<Long>, Long>() {
+      @Override
+      public Long apply(List<Long> partResourceIds) {
+        return purgeMapper.countResourceIssues(partResourceIds);
+      }
+    });
+    int done = 0;
+    for (List<Long> transactionResourceIds : transactions) {
+      deleteResourcesInTransaction(Lists.partition(transactionResourceIds, MAX_RESOURCES_PER_QUERY));
+      session.commit();
+      done += transactionResourceIds.size();
+      logProgress("resources", transactions.size(), done, resourceIds.size());
+    }
+  }
+
+  private void deleteResourcesInTransaction(List<List<Long>> resourceIdsPartition) {
     // Note : do not merge the delete statements into a single loop of resource ids. It's
     // voluntarily grouped by tables in order to benefit from JDBC batch mode.
     // Batch requests can only relate to the same PreparedStatement.
 
-    for (List<Long> partResourceIds : resourceIdsPartition) {
-      deleteSnapshots(purgeMapper.selectSnapshotIdsByResource(partResourceIds));
-    }
-
     // possible missing optimization: filter requests according to resource scope
 
     profiler.start("deleteResourceLinks (project_links)");
     for (List<Long> partResourceIds : resourceIdsPartition) {
       purgeMapper.deleteResourceLinks(partResourceIds);
     }
-    session.commit();
+    session.flushStatements();
     profiler.stop();
 
     profiler.start("deleteResourceProperties (properties)");
     for (List<Long> partResourceIds : resourceIdsPartition) {
       purgeMapper.deleteResourceProperties(partResourceIds);
     }
-    session.commit();
+    session.flushStatements();
     profiler.stop();
 
     profiler.start("deleteResourceIndex (resource_index)");
     for (List<Long> partResourceIds : resourceIdsPartition) {
       purgeMapper.deleteResourceIndex(partResourceIds);
     }
-    session.commit();
+    session.flushStatements();
     profiler.stop();
 
     profiler.start("deleteResourceGroupRoles (group_roles)");
     for (List<Long> partResourceIds : resourceIdsPartition) {
       purgeMapper.deleteResourceGroupRoles(partResourceIds);
     }
-    session.commit();
+    session.flushStatements();
     profiler.stop();
 
     profiler.start("deleteResourceUserRoles (user_roles)");
     for (List<Long> partResourceIds : resourceIdsPartition) {
       purgeMapper.deleteResourceUserRoles(partResourceIds);
     }
-    session.commit();
+    session.flushStatements();
     profiler.stop();
 
     profiler.start("deleteResourceManualMeasures (manual_measures)");
     for (List<Long> partResourceIds : resourceIdsPartition) {
       purgeMapper.deleteResourceManualMeasures(partResourceIds);
     }
-    session.commit();
+    session.flushStatements();
     profiler.stop();
 
     profiler.start("deleteResourceIssueChanges (issue_changes)");
     for (List<Long> partResourceIds : resourceIdsPartition) {
       purgeMapper.deleteResourceIssueChanges(partResourceIds);
     }
-    session.commit();
+    session.flushStatements();
     profiler.stop();
 
     profiler.start("deleteResourceIssues (issues)");
     for (List<Long> partResourceIds : resourceIdsPartition) {
       purgeMapper.deleteResourceIssues(partResourceIds);
     }
-    session.commit();
+    session.flushStatements();
     profiler.stop();
 
     profiler.start("deleteResourceActionPlans (action_plans)");
     for (List<Long> partResourceIds : resourceIdsPartition) {
       purgeMapper.deleteResourceActionPlans(partResourceIds);
     }
-    session.commit();
+    session.flushStatements();
     profiler.stop();
 
     profiler.start("deleteResourceEvents (events)");
     for (List<Long> partResourceIds : resourceIdsPartition) {
       purgeMapper.deleteResourceEvents(partResourceIds);
     }
-    session.commit();
+    session.flushStatements();
     profiler.stop();
 
     profiler.start("deleteResourceGraphs (graphs)");
     for (List<Long> partResourceIds : resourceIdsPartition) {
       purgeMapper.deleteResourceGraphs(partResourceIds);
     }
-    session.commit();
+    session.flushStatements();
     profiler.stop();
 
     profiler.start("deleteResource (projects)");
     for (List<Long> partResourceIds : resourceIdsPartition) {
       purgeMapper.deleteResource(partResourceIds);
     }
-    session.commit();
+    session.flushStatements();
     profiler.stop();
 
     profiler.start("deleteAuthors (authors)");
     for (List<Long> partResourceIds : resourceIdsPartition) {
       purgeMapper.deleteAuthors(partResourceIds);
     }
-    session.commit();
+    session.flushStatements();
     profiler.stop();
   }
 
@@ -157,11 +189,23 @@ class PurgeCommands {
     deleteSnapshots(purgeMapper.selectSnapshotIds(query));
   }
 
+  /**
+   * Snapshots are deleted by transactions of about maxRowsPerTransaction measures, each one being committed once.
+   * The snapshots are deleted after their data, so that an interrupted deletion can be started again.
+   */
   @VisibleForTesting
   protected void deleteSnapshots(final List<Long> snapshotIds) {
+    List<List<Long>> transactions = partitionBySnapshotMeasures(snapshotIds);
+    int done = 0;
+    for (List<Long> transactionSnapshotIds : transactions) {
+      deleteSnapshotsInTransaction(Lists.partition(transactionSnapshotIds, MAX_SNAPSHOTS_PER_QUERY));
+      session.commit();
+      done += transactionSnapshotIds.size();
+      logProgress("snapshots", transactions.size(), done, snapshotIds.size());
+    }
+  }
 
-    List<List<Long>> snapshotIdsPartition = Lists.partition(snapshotIds, MAX_SNAPSHOTS_PER_QUERY);
-
+  private void deleteSnapshotsInTransaction(List<List<Long>> snapshotIdsPartition) {
     deleteSnapshotDependencies(snapshotIdsPartition);
 
     deleteSnapshotDuplications(snapshotIdsPartition);
@@ -170,14 +214,14 @@ class PurgeCommands {
     for (List<Long> partSnapshotIds : snapshotIdsPartition) {
       purgeMapper.deleteSnapshotEvents(partSnapshotIds);
     }
-    session.commit();
+    session.flushStatements();
     profiler.stop();
 
     profiler.start("deleteSnapshotMeasures (project_measures)");
     for (List<Long> partSnapshotIds : snapshotIdsPartition) {
       purgeMapper.deleteSnapshotMeasures(partSnapshotIds);
     }
-    session.commit();
+    session.flushStatements();
     profiler.stop();
 
     deleteSnapshotGraphs(snapshotIdsPartition);
@@ -186,7 +230,7 @@ class PurgeCommands {
     for (List<Long> partSnapshotIds : snapshotIdsPartition) {
       purgeMapper.deleteSnapshot(partSnapshotIds);
     }
-    session.commit();
+    session.flushStatements();
     profiler.stop();
   }
 
@@ -194,31 +238,75 @@ class PurgeCommands {
     purgeSnapshots(purgeMapper.selectSnapshotIds(query));
   }
 
+  /**
+   * Snapshots are purged by transactions of about maxRowsPerTransaction measures. The purge status is updated
+   * in the same transaction as the deletion of the data.
+   */
   @VisibleForTesting
   protected void purgeSnapshots(final List<Long> snapshotIds) {
     // note that events are not deleted
-    List<List<Long>> snapshotIdsPartition = Lists.partition(snapshotIds, MAX_SNAPSHOTS_PER_QUERY);
-
-    deleteSnapshotDependencies(snapshotIdsPartition);
-
-    deleteSnapshotDuplications(snapshotIdsPartition);
+    List<Long> metricIdsWithoutHistoricalData = null;
+    for (List<Long> transactionSnapshotIds : partitionBySnapshotMeasures(snapshotIds)) {
+      List<List<Long>> snapshotIdsPartition = Lists.partition(transactionSnapshotIds, MAX_SNAPSHOTS_PER_QUERY);
+
+      deleteSnapshotDependencies(snapshotIdsPartition);
+
+      deleteSnapshotDuplications(snapshotIdsPartition);
+
+      deleteSnapshotGraphs(snapshotIdsPartition);
+
+      profiler.start("deleteSnapshotWastedMeasures (project_measures)");
+      if (metricIdsWithoutHistoricalData == null) {
+        metricIdsWithoutHistoricalData = purgeMapper.selectMetricIdsWithoutHistoricalData();
+      }
+      for (List<Long> partSnapshotIds : snapshotIdsPartition) {
+        purgeMapper.deleteSnapshotWastedMeasures(partSnapshotIds, metricIdsWithoutHistoricalData);
+      }
+      session.flushStatements();
+      profiler.stop();
+
+      profiler.start("updatePurgeStatusToOne (snapshots)");
+      for (Long snapshotId : transactionSnapshotIds) {
+        purgeMapper.updatePurgeStatusToOne(snapshotId);
+      }
+      session.flushStatements();
+      profiler.stop();
+
+      session.commit();
+    }
+  }
 
-    deleteSnapshotGraphs(snapshotIdsPartition);
+  private List<List<Long>> partitionBySnapshotMeasures(List<Long> snapshotIds) {
+    return partitionByRows(snapshotIds, MAX_SNAPSHOTS_PER_QUERY, new Function<List<Long>, Long>() {
+      @Override
+      public Long apply(List<Long> partSnapshotIds) {
+        return purgeMapper.countSnapshotMeasures(partSnapshotIds);
+      }
+    });
+  }
 
-    profiler.start("deleteSnapshotWastedMeasures (project_measures)");
-    List<Long> metricIdsWithoutHistoricalData = purgeMapper.selectMetricIdsWithoutHistoricalData();
-    for (List<Long> partSnapshotIds : snapshotIdsPartition) {
-      purgeMapper.deleteSnapshotWastedMeasures(partSnapshotIds, metricIdsWithoutHistoricalData);
+  /**
+   * Splits the ids into transactions of at most {@code maxIdsPerQuery} ids, each one having about
+   * maxRowsPerTransaction child rows, assuming the rows are evenly spread among the ids of a query.
+   */
+  private List<List<Long>> partitionByRows(List<Long> ids, int maxIdsPerQuery, Function<List<Long>, Long> rowCounter) {
+    List<List<Long>> transactions = Lists.newArrayList();
+    for (List<Long> partIds : Lists.partition(ids, maxIdsPerQuery)) {
+      long rows = rowCounter.apply(partIds);
+      int idsPerTransaction = partIds.size();
+      if (rows > maxRowsPerTransaction) {
+        idsPerTransaction = (int) Math.max(1L, (long) maxRowsPerTransaction * partIds.size() / rows);
+      }
+      transactions.addAll(Lists.partition(partIds, idsPerTransaction));
     }
-    session.commit();
-    profiler.stop();
+    return transactions;
+  }
 
-    profiler.start("updatePurgeStatusToOne (snapshots)");
-    for (Long snapshotId : snapshotIds) {
-      purgeMapper.updatePurgeStatusToOne(snapshotId);
+  private void logProgress(String items, int transactions, int done, int total) {
+    // progress is worth being logged only when the deletion is done in several transactions
+    if (transactions > 1) {
+      profiler.progress(items, done, total, LOG);
     }
-    session.commit();
-    profiler.stop();
   }
 
   private void deleteSnapshotGraphs(final List<List<Long>> snapshotIdsPartition) {
@@ -226,7 +314,7 @@ class PurgeCommands {
     for (List<Long> partSnapshotIds : snapshotIdsPartition) {
       purgeMapper.deleteSnapshotGraphs(partSnapshotIds);
     }
-    session.commit();
+    session.flushStatements();
     profiler.stop();
   }
 
@@ -235,7 +323,7 @@ class PurgeCommands {
     for (List<Long> partSnapshotIds : snapshotIdsPartition) {
       purgeMapper.deleteSnapshotDuplications(partSnapshotIds);
     }
-    session.commit();
+    session.flushStatements();
     profiler.stop();
   }
 
@@ -249,7 +337,7 @@ class PurgeCommands {
       purgeMapper.deleteSnapshotDependenciesToSnapshotId(partSnapshotIds);
       purgeMapper.deleteSnapshotDependenciesProjectSnapshotId(partSnapshotIds);
     }
-    session.commit();
+    session.flushStatements();
     profiler.stop();
   }
 
@@ -32,20 +32,37 @@ import java.util.Date;
 
 public class PurgeConfiguration {
 
+  /**
+   * Approximate number of measures or issues deleted in a single transaction, in order to bound
+   * the locks and the undo/redo logs held by the database on huge deletions
+   */
+  public static final int DEFAULT_MAX_ROWS_PER_TRANSACTION = 50000;
+
   private final long rootProjectId;
   private final String[] scopesWithoutHistoricalData;
   private final int maxAgeInDaysOfClosedIssues;
+  private final int maxRowsPerTransaction;
   private final System2 system2;
 
   public PurgeConfiguration(long rootProjectId, String[] scopesWithoutHistoricalData, int maxAgeInDaysOfClosedIssues) {
-    this(rootProjectId, scopesWithoutHistoricalData, maxAgeInDaysOfClosedIssues, System2.INSTANCE);
+    this(rootProjectId, scopesWithoutHistoricalData, maxAgeInDaysOfClosedIssues, DEFAULT_MAX_ROWS_PER_TRANSACTION);
+  }
+
+  public PurgeConfiguration(long rootProjectId, String[] scopesWithoutHistoricalData, int maxAgeInDaysOfClosedIssues, int maxRowsPerTransaction) {
+    this(rootProjectId, scopesWithoutHistoricalData, maxAgeInDaysOfClosedIssues, maxRowsPerTransaction, System2.INSTANCE);
   }
 
   @VisibleForTesting
   PurgeConfiguration(long rootProjectId, String[] scopesWithoutHistoricalData, int maxAgeInDaysOfClosedIssues, System2 system2) {
+    this(rootProjectId, scopesWithoutHistoricalData, maxAgeInDaysOfClosedIssues, DEFAULT_MAX_ROWS_PER_TRANSACTION, system2);
+  }
+
+  private PurgeConfiguration(long rootProjectId, String[] scopesWithoutHistoricalData, int maxAgeInDaysOfClosedIssues, int maxRowsPerTransaction,
+    System2 system2) {
     this.rootProjectId = rootProjectId;
     this.scopesWithoutHistoricalData = scopesWithoutHistoricalData;
     this.maxAgeInDaysOfClosedIssues = maxAgeInDaysOfClosedIssues;
+    this.maxRowsPerTransaction = maxRowsPerTransaction > 0 ? maxRowsPerTransaction : DEFAULT_MAX_ROWS_PER_TRANSACTION;
     this.system2 = system2;
   }
 
@@ -54,7 +71,8 @@ public class PurgeConfiguration {
     if (settings.getBoolean(DbCleanerConstants.PROPERTY_CLEAN_DIRECTORY)) {
       scopes = new String[] {Scopes.DIRECTORY, Scopes.FILE};
     }
-    return new PurgeConfiguration(resourceId, scopes, settings.getInt(DbCleanerConstants.DAYS_BEFORE_DELETING_CLOSED_ISSUES));
+    return new PurgeConfiguration(resourceId, scopes, settings.getInt(DbCleanerConstants.DAYS_BEFORE_DELETING_CLOSED_ISSUES),
+      settings.getInt(DbCleanerConstants.MAX_ROWS_PER_TRANSACTION));
   }
 
   public long rootProjectId() {
@@ -65,6 +83,10 @@ public class PurgeConfiguration {
     return scopesWithoutHistoricalData;
   }
 
+  public int maxRowsPerTransaction() {
+    return maxRowsPerTransaction;
+  }
+
   @CheckForNull
   public Date maxLiveDateOfClosedIssues() {
     return maxLiveDateOfClosedIssues(new Date(system2.now()));
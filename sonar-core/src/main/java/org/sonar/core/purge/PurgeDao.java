@@ -20,6 +20,7 @@
 package org.sonar.core.purge;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.ibatis.session.ResultContext;
 import org.apache.ibatis.session.ResultHandler;
@@ -36,6 +37,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Set;
 
 /**
  * @since 2.14
@@ -67,7 +69,7 @@ public class PurgeDao {
 
   public void purge(DbSession session, PurgeConfiguration conf, PurgeListener purgeListener) {
     PurgeMapper mapper = session.getMapper(PurgeMapper.class);
-    PurgeCommands commands = new PurgeCommands(session, mapper, profiler);
+    PurgeCommands commands = new PurgeCommands(session, mapper, profiler, conf.maxRowsPerTransaction());
     List<ResourceDto> projects = getProjects(conf.rootProjectId(), session);
     for (ResourceDto project : projects) {
       LOG.info("-> Clean " + project.getLongName() + " [id=" + project.getId() + "]");
@@ -167,8 +169,9 @@ public class PurgeDao {
     final DbSession session = mybatis.openSession(true);
     final PurgeMapper mapper = session.getMapper(PurgeMapper.class);
     try {
-      deleteProject(rootIdUuid.getId(), mapper, new PurgeCommands(session, profiler));
-      deleteFileSources(rootIdUuid.getUuid(), new PurgeCommands(session, profiler));
+      PurgeCommands commands = new PurgeCommands(session, mapper, profiler);
+      deleteProject(rootIdUuid.getId(), mapper, commands);
+      deleteFileSources(rootIdUuid.getUuid(), commands);
       return this;
     } finally {
       MyBatis.closeQuietly(session);
@@ -179,14 +182,23 @@ public class PurgeDao {
     commands.deleteFileSources(rootUuid);
   }
 
+  /**
+   * The snapshots of the whole tree are first deleted through their root project, then the resources of all
+   * the modules are deleted at once, so that the commands can group them in bounded transactions.
+   */
   private void deleteProject(long rootProjectId, PurgeMapper mapper, PurgeCommands commands) {
-    List<Long> childrenIds = mapper.selectProjectIdsByRootId(rootProjectId);
-    for (Long childId : childrenIds) {
-      deleteProject(childId, mapper, commands);
-    }
+    commands.deleteSnapshots(PurgeSnapshotQuery.create().setRootProjectId(rootProjectId));
 
-    List<Long> resourceIds = mapper.selectResourceIdsByRootId(rootProjectId);
-    commands.deleteResources(resourceIds);
+    List<Long> projectIds = Lists.newArrayList(rootProjectId);
+    for (int i = 0; i < projectIds.size(); i++) {
+      projectIds.addAll(mapper.selectProjectIdsByRootId(projectIds.get(i)));
+    }
+    // sub-modules are deleted before their parents
+    Set<Long> resourceIds = Sets.newLinkedHashSet();
+    for (Long projectId : Lists.reverse(projectIds)) {
+      resourceIds.addAll(mapper.selectResourceIdsByRootId(projectId));
+    }
+    commands.deleteResources(Lists.newArrayList(resourceIds));
   }
 
   private void disableResource(IdUuidPair resourceIdUuid, PurgeMapper mapper) {
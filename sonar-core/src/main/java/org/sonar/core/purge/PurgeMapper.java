@@ -34,6 +34,10 @@ public interface PurgeMapper {
 
   List<Long> selectProjectIdsByRootId(long rootResourceId);
 
+  long countSnapshotMeasures(@Param("snapshotIds") List<Long> snapshotIds);
+
+  long countResourceIssues(@Param("resourceIds") List<Long> resourceIds);
+
   void deleteSnapshot(@Param("snapshotIds") List<Long> snapshotIds);
 
   void deleteSnapshotDependenciesFromSnapshotId(@Param("snapshotIds") List<Long> snapshotIds);
@@ -33,9 +33,12 @@ import java.util.Map.Entry;
 
 public class PurgeProfiler {
 
+  private static final long PROGRESS_PERIOD_MS = 10000L;
+
   private Map<String, Long> durations = new HashMap<String, Long>();
   private long startTime;
   private String currentTable;
+  private long lastProgressTime;
   private final Clock clock;
 
   public PurgeProfiler() {
@@ -66,6 +69,17 @@ public class PurgeProfiler {
     durations.put(currentTable, cumulatedDuration + (clock.now() - startTime));
   }
 
+  /**
+   * Logs the progress of a deletion done in several transactions, at most every 10 seconds and when it's completed.
+   */
+  void progress(String items, long done, long total, Logger logger) {
+    long now = clock.now();
+    if (done >= total || now - lastProgressTime >= PROGRESS_PERIOD_MS) {
+      logger.info(String.format("   o %d/%d %s deleted", done, total, items));
+      lastProgressTime = now;
+    }
+  }
+
   public void dump(long totalTime, Logger logger) {
     List<Entry<String, Long>> data = new ArrayList<Map.Entry<String, Long>>(durations.entrySet());
     Collections.sort(data, new Comparator<Entry<String, Long>>() {
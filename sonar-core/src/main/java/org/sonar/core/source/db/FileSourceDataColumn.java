@@ -0,0 +1,78 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.core.source.db;
+
+/**
+ * Columns of the binary format of FILE_SOURCES.BINARY_DATA. The order of the constants is the order
+ * of the columns in the format, so new columns must be added at the end.
+ * @see FileSourceDataWriter
+ * @see FileSourceDataReader
+ * @since 5.1
+ */
+public enum FileSourceDataColumn {
+  SCM_REVISION(Type.DICTIONARY),
+  SCM_AUTHOR(Type.DICTIONARY),
+  SCM_DATE(Type.DICTIONARY),
+  UT_LINE_HITS(Type.INTEGER),
+  UT_CONDITIONS(Type.INTEGER),
+  UT_COVERED_CONDITIONS(Type.INTEGER),
+  IT_LINE_HITS(Type.INTEGER),
+  IT_CONDITIONS(Type.INTEGER),
+  IT_COVERED_CONDITIONS(Type.INTEGER),
+  OVERALL_LINE_HITS(Type.INTEGER),
+  OVERALL_CONDITIONS(Type.INTEGER),
+  OVERALL_COVERED_CONDITIONS(Type.INTEGER),
+  HIGHLIGHTING(Type.STRING),
+  SYMBOLS(Type.STRING),
+  DUPLICATIONS(Type.INTEGER_LIST),
+  SOURCE(Type.STRING);
+
+  public enum Type {
+    /**
+     * Raw UTF-8 text
+     */
+    STRING,
+
+    /**
+     * Text with few distinct values, like SCM authors. Each distinct value is stored only once.
+     */
+    DICTIONARY,
+
+    /**
+     * Variable-length integer
+     */
+    INTEGER,
+
+    /**
+     * List of variable-length integers. Text values are comma-separated, for example "1,3".
+     */
+    INTEGER_LIST
+  }
+
+  private final Type type;
+
+  FileSourceDataColumn(Type type) {
+    this.type = type;
+  }
+
+  public Type type() {
+    return type;
+  }
+}
@@ -0,0 +1,217 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.core.source.db;
+
+import com.google.common.base.Charsets;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decodes the binary format written by {@link FileSourceDataWriter}. Only the requested columns
+ * are decoded, the others are skipped. Arrays of values are indexed by line index minus one. Values are
+ * null when not defined on the line.
+ * @since 5.1
+ */
+public class FileSourceDataReader {
+
+  private final byte[] body;
+  private final int lines;
+  private final int[] columnOffsets;
+  private final int[] columnLengths;
+
+  public FileSourceDataReader(byte[] data) {
+    if (data.length < 2) {
+      throw new IllegalArgumentException("Source data is corrupted, size is " + data.length + " bytes");
+    }
+    if (data[0] != FileSourceDataWriter.FORMAT_VERSION) {
+      throw new IllegalArgumentException("Unsupported version of source data format: " + data[0]);
+    }
+    if (data[1] == FileSourceDataWriter.DEFLATE_COMPRESSION) {
+      this.body = inflate(data);
+    } else if (data[1] == FileSourceDataWriter.NO_COMPRESSION) {
+      this.body = data;
+    } else {
+      throw new IllegalArgumentException("Unsupported compression of source data: " + data[1]);
+    }
+
+    Cursor cursor = new Cursor(body, body == data ? 2 : 0);
+    this.lines = cursor.readVarInt();
+    int columns = cursor.readVarInt();
+    this.columnLengths = new int[columns];
+    for (int i = 0; i < columns; i++) {
+      columnLengths[i] = cursor.readVarInt();
+    }
+    this.columnOffsets = new int[columns];
+    int offset = cursor.position;
+    for (int i = 0; i < columns; i++) {
+      columnOffsets[i] = offset;
+      offset += columnLengths[i];
+    }
+  }
+
+  public int lines() {
+    return lines;
+  }
+
+  /**
+   * Values of a column of type {@link FileSourceDataColumn.Type#STRING} or {@link FileSourceDataColumn.Type#DICTIONARY}
+   */
+  public String[] readStrings(FileSourceDataColumn column) {
+    String[] result = new String[lines];
+    Cursor cursor = cursor(column, FileSourceDataColumn.Type.STRING, FileSourceDataColumn.Type.DICTIONARY);
+    if (cursor == null) {
+      return result;
+    }
+    if (column.type() == FileSourceDataColumn.Type.DICTIONARY) {
+      String[] dictionary = new String[cursor.readVarInt()];
+      for (int i = 0; i < dictionary.length; i++) {
+        dictionary[i] = cursor.readString(cursor.readVarInt());
+      }
+      for (int line = 0; line < lines; line++) {
+        int index = cursor.readVarInt();
+        result[line] = index == 0 ? null : dictionary[index - 1];
+      }
+    } else {
+      for (int line = 0; line < lines; line++) {
+        int length = cursor.readVarInt();
+        result[line] = length == 0 ? null : cursor.readString(length - 1);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Values of a column of type {@link FileSourceDataColumn.Type#INTEGER}
+   */
+  public Integer[] readIntegers(FileSourceDataColumn column) {
+    Integer[] result = new Integer[lines];
+    Cursor cursor = cursor(column, FileSourceDataColumn.Type.INTEGER);
+    if (cursor != null) {
+      for (int line = 0; line < lines; line++) {
+        long value = cursor.readVarLong();
+        result[line] = value == 0L ? null : unZigZag(value - 1L);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Values of a column of type {@link FileSourceDataColumn.Type#INTEGER_LIST}
+   */
+  public int[][] readIntegerLists(FileSourceDataColumn column) {
+    int[][] result = new int[lines][];
+    Cursor cursor = cursor(column, FileSourceDataColumn.Type.INTEGER_LIST);
+    if (cursor != null) {
+      for (int line = 0; line < lines; line++) {
+        int size = cursor.readVarInt();
+        if (size > 0) {
+          int[] items = new int[size - 1];
+          for (int i = 0; i < items.length; i++) {
+            items[i] = unZigZag(cursor.readVarLong());
+          }
+          result[line] = items;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return null if column is empty or unknown, for example when data has been written by an older version
+   */
+  private Cursor cursor(FileSourceDataColumn column, FileSourceDataColumn.Type... expectedTypes) {
+    boolean supportedType = false;
+    for (FileSourceDataColumn.Type expectedType : expectedTypes) {
+      supportedType |= column.type() == expectedType;
+    }
+    if (!supportedType) {
+      throw new IllegalArgumentException(String.format("Column %s has type %s", column, column.type()));
+    }
+    int index = column.ordinal();
+    if (index >= columnLengths.length || columnLengths[index] == 0) {
+      return null;
+    }
+    return new Cursor(body, columnOffsets[index]);
+  }
+
+  private static int unZigZag(long l) {
+    return (int) ((l >>> 1) ^ -(l & 1L));
+  }
+
+  private static byte[] inflate(byte[] data) {
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(data, 2, data.length - 2);
+      ByteArrayOutputStream output = new ByteArrayOutputStream(data.length * 4);
+      byte[] buffer = new byte[8192];
+      while (!inflater.finished()) {
+        int count = inflater.inflate(buffer);
+        if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw new IllegalArgumentException("Source data is corrupted, compressed data is truncated");
+        }
+        output.write(buffer, 0, count);
+      }
+      return output.toByteArray();
+    } catch (DataFormatException e) {
+      throw new IllegalArgumentException("Source data is corrupted", e);
+    } finally {
+      inflater.end();
+    }
+  }
+
+  private static class Cursor {
+    private final byte[] bytes;
+    private int position;
+
+    Cursor(byte[] bytes, int position) {
+      this.bytes = bytes;
+      this.position = position;
+    }
+
+    int readVarInt() {
+      return (int) readVarLong();
+    }
+
+    long readVarLong() {
+      long result = 0L;
+      int shift = 0;
+      while (true) {
+        if (position >= bytes.length) {
+          throw new IllegalArgumentException("Source data is corrupted, unexpected end of data");
+        }
+        byte b = bytes[position];
+        position++;
+        result |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return result;
+        }
+        shift += 7;
+      }
+    }
+
+    String readString(int length) {
+      String s = new String(bytes, position, length, Charsets.UTF_8);
+      position += length;
+      return s;
+    }
+  }
+}
@@ -0,0 +1,257 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.core.source.db;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import javax.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/**
+ * Encodes the data of the lines of a file into the binary format stored in FILE_SOURCES.BINARY_DATA :
+ * <ul>
+ *   <li>byte 0: version of format</li>
+ *   <li>byte 1: compression (0 for none, 1 for deflate) of the remaining bytes</li>
+ *   <li>number of lines, number of columns, then the size of each column, so that a reader can
+ *   skip the columns it does not need</li>
+ *   <li>the columns, each one storing the values of all the lines. See {@link FileSourceDataColumn.Type}</li>
+ * </ul>
+ * Numbers are stored as variable-length integers.
+ * @since 5.1
+ */
+public class FileSourceDataWriter {
+
+  static final byte FORMAT_VERSION = 1;
+  static final byte NO_COMPRESSION = 0;
+  static final byte DEFLATE_COMPRESSION = 1;
+
+  /**
+   * Small files are not compressed, the gain is not worth the CPU
+   */
+  static final int COMPRESSION_THRESHOLD = 1024;
+
+  private static final Splitter LIST_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+
+  private final int lines;
+  private final String[][] values;
+  private boolean compression = true;
+
+  /**
+   * @param lines number of lines of file
+   */
+  public FileSourceDataWriter(int lines) {
+    this.lines = lines;
+    this.values = new String[FileSourceDataColumn.values().length][];
+  }
+
+  /**
+   * Compression of data is enabled by default
+   */
+  public FileSourceDataWriter setCompression(boolean b) {
+    this.compression = b;
+    return this;
+  }
+
+  /**
+   * @param line line index, starting from 1
+   * @param value text value, converted according to the type of column
+   */
+  public FileSourceDataWriter set(FileSourceDataColumn column, int line, @Nullable String value) {
+    if (line < 1 || line > lines) {
+      throw new IllegalArgumentException(String.format("Line %d is out of range [1,%d]", line, lines));
+    }
+    if (value != null) {
+      String[] columnValues = values[column.ordinal()];
+      if (columnValues == null) {
+        columnValues = new String[lines];
+        values[column.ordinal()] = columnValues;
+      }
+      columnValues[line - 1] = value;
+    }
+    return this;
+  }
+
+  public byte[] toBytes() {
+    byte[] body = encodeBody();
+    ByteArrayOutputStream output = new ByteArrayOutputStream(body.length + 2);
+    output.write(FORMAT_VERSION);
+    if (compression && body.length >= COMPRESSION_THRESHOLD) {
+      output.write(DEFLATE_COMPRESSION);
+      deflate(body, output);
+    } else {
+      output.write(NO_COMPRESSION);
+      output.write(body, 0, body.length);
+    }
+    return output.toByteArray();
+  }
+
+  private byte[] encodeBody() {
+    FileSourceDataColumn[] columns = FileSourceDataColumn.values();
+    List<byte[]> encodedColumns = Lists.newArrayListWithCapacity(columns.length);
+    int size = 0;
+    for (FileSourceDataColumn column : columns) {
+      byte[] encodedColumn = encodeColumn(column, values[column.ordinal()]);
+      encodedColumns.add(encodedColumn);
+      size += encodedColumn.length;
+    }
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream(size + 5 * (columns.length + 2));
+    writeVarInt(output, lines);
+    writeVarInt(output, columns.length);
+    for (byte[] encodedColumn : encodedColumns) {
+      writeVarInt(output, encodedColumn.length);
+    }
+    for (byte[] encodedColumn : encodedColumns) {
+      output.write(encodedColumn, 0, encodedColumn.length);
+    }
+    return output.toByteArray();
+  }
+
+  private byte[] encodeColumn(FileSourceDataColumn column, @Nullable String[] columnValues) {
+    if (columnValues == null) {
+      // no values at all, the column is empty
+      return new byte[0];
+    }
+    ByteArrayOutputStream output = new ByteArrayOutputStream(lines * 2);
+    switch (column.type()) {
+      case STRING:
+        for (String value : columnValues) {
+          writeNullableString(output, value);
+        }
+        break;
+      case DICTIONARY:
+        writeDictionary(output, columnValues);
+        break;
+      case INTEGER:
+        for (String value : columnValues) {
+          writeNullableInteger(output, column, value);
+        }
+        break;
+      case INTEGER_LIST:
+        for (String value : columnValues) {
+          writeNullableIntegerList(output, column, value);
+        }
+        break;
+      default:
+        throw new IllegalStateException("Unsupported type of column: " + column.type());
+    }
+    return output.toByteArray();
+  }
+
+  private static void writeDictionary(ByteArrayOutputStream output, String[] columnValues) {
+    Map<String, Integer> indexByValue = Maps.newLinkedHashMap();
+    for (String value : columnValues) {
+      if (value != null && !indexByValue.containsKey(value)) {
+        indexByValue.put(value, indexByValue.size());
+      }
+    }
+    writeVarInt(output, indexByValue.size());
+    for (String value : indexByValue.keySet()) {
+      writeString(output, value);
+    }
+    for (String value : columnValues) {
+      // zero is reserved to null
+      writeVarInt(output, value == null ? 0 : (indexByValue.get(value) + 1));
+    }
+  }
+
+  private static void writeNullableString(ByteArrayOutputStream output, @Nullable String value) {
+    if (value == null) {
+      writeVarInt(output, 0);
+    } else {
+      byte[] bytes = value.getBytes(Charsets.UTF_8);
+      writeVarInt(output, bytes.length + 1);
+      output.write(bytes, 0, bytes.length);
+    }
+  }
+
+  private static void writeString(ByteArrayOutputStream output, String value) {
+    byte[] bytes = value.getBytes(Charsets.UTF_8);
+    writeVarInt(output, bytes.length);
+    output.write(bytes, 0, bytes.length);
+  }
+
+  private static void writeNullableInteger(ByteArrayOutputStream output, FileSourceDataColumn column, @Nullable String value) {
+    if (value == null || value.isEmpty()) {
+      writeVarLong(output, 0L);
+    } else {
+      writeVarLong(output, zigZag(parseInt(column, value)) + 1L);
+    }
+  }
+
+  private static void writeNullableIntegerList(ByteArrayOutputStream output, FileSourceDataColumn column, @Nullable String value) {
+    if (value == null) {
+      writeVarInt(output, 0);
+    } else {
+      List<String> items = Lists.newArrayList(LIST_SPLITTER.split(value));
+      writeVarInt(output, items.size() + 1);
+      for (String item : items) {
+        writeVarLong(output, zigZag(parseInt(column, item)));
+      }
+    }
+  }
+
+  private static int parseInt(FileSourceDataColumn column, String value) {
+    try {
+      return Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(String.format("Value of column %s is not an integer: %s", column, value), e);
+    }
+  }
+
+  private static long zigZag(int i) {
+    return ((long) i << 1) ^ ((long) i >> 63);
+  }
+
+  static void writeVarInt(ByteArrayOutputStream output, int i) {
+    writeVarLong(output, i & 0xFFFFFFFFL);
+  }
+
+  static void writeVarLong(ByteArrayOutputStream output, long l) {
+    long value = l;
+    while ((value & ~0x7FL) != 0L) {
+      output.write((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    output.write((int) value);
+  }
+
+  private static void deflate(byte[] body, ByteArrayOutputStream output) {
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      deflater.setInput(body);
+      deflater.finish();
+      byte[] buffer = new byte[8192];
+      while (!deflater.finished()) {
+        int count = deflater.deflate(buffer);
+        output.write(buffer, 0, count);
+      }
+    } finally {
+      deflater.end();
+    }
+  }
+}
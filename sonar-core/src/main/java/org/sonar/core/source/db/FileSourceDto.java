@@ -29,9 +29,11 @@ public class FileSourceDto {
   private long createdAt;
   private long updatedAt;
   private String data;
+  private byte[] binaryData;
   private String lineHashes;
   private String dataHash;
   private String srcHash;
+  private String dataFingerprint;
 
   public Long getId() {
     return id;
@@ -70,6 +72,20 @@ public class FileSourceDto {
     return this;
   }
 
+  /**
+   * Data of lines, encoded with {@link FileSourceDataWriter}. It replaces the CSV format
+   * of {@link #getData()}, which is kept for the rows that are not migrated yet.
+   */
+  @CheckForNull
+  public byte[] getBinaryData() {
+    return binaryData;
+  }
+
+  public FileSourceDto setBinaryData(@Nullable byte[] binaryData) {
+    this.binaryData = binaryData;
+    return this;
+  }
+
   @CheckForNull
   public String getLineHashes() {
     return lineHashes;
@@ -98,6 +114,20 @@ public class FileSourceDto {
     return this;
   }
 
+  /**
+   * Hash of all the inputs of {@link #getBinaryData()}: source hash and line measures, highlighting, symbols and
+   * duplications. Data is not rebuilt by the batch when it does not change.
+   */
+  @CheckForNull
+  public String getDataFingerprint() {
+    return dataFingerprint;
+  }
+
+  public FileSourceDto setDataFingerprint(@Nullable String dataFingerprint) {
+    this.dataFingerprint = dataFingerprint;
+    return this;
+  }
+
   public long getCreatedAt() {
     return createdAt;
   }
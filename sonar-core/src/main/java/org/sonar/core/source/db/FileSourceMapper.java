@@ -35,6 +35,8 @@ public interface FileSourceMapper {
 
   void update(FileSourceDto dto);
 
+  void updateDataFingerprint(FileSourceDto dto);
+
   @CheckForNull
   String selectLineHashes(String fileUuid);
 }
@@ -28,6 +28,6 @@ public class DataCleanerPropertiesTest {
 
   @Test
   public void shouldGetExtensions() {
-    assertThat(DataCleanerProperties.all()).hasSize(6);
+    assertThat(DataCleanerProperties.all()).hasSize(7);
   }
 }
@@ -37,6 +37,7 @@ import org.sonar.jpa.test.AbstractDbUnitTestCase;
 import java.io.InvalidClassException;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -44,6 +45,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.only;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
@@ -109,13 +111,55 @@ public class DefaultNotificationManagerTest extends AbstractDbUnitTestCase {
     inOrder.verify(notificationQueueDao).delete(dtos);
   }
 
+  @Test
+  public void get_several_notifications_from_queue() throws Exception {
+    NotificationQueueDto unreadableDto = mock(NotificationQueueDto.class);
+    when(unreadableDto.toNotification()).thenThrow(new InvalidClassException("Pouet"));
+    List<NotificationQueueDto> dtos = Arrays.asList(
+      NotificationQueueDto.toNotificationQueueDto(new Notification("first")),
+      unreadableDto,
+      NotificationQueueDto.toNotificationQueueDto(new Notification("second")));
+    when(notificationQueueDao.findOldest(10)).thenReturn(dtos);
+
+    List<Notification> notifications = manager.getFromQueue(10);
+
+    assertThat(notifications).hasSize(2);
+    assertThat(notifications.get(0).getType()).isEqualTo("first");
+    assertThat(notifications.get(1).getType()).isEqualTo("second");
+    verify(notificationQueueDao).delete(dtos);
+  }
+
+  @Test
+  public void skip_batches_of_unreadable_notifications() throws Exception {
+    NotificationQueueDto unreadableDto = mock(NotificationQueueDto.class);
+    when(unreadableDto.toNotification()).thenThrow(new InvalidClassException("Pouet"));
+    List<NotificationQueueDto> unreadableDtos = Arrays.asList(unreadableDto, unreadableDto);
+    List<NotificationQueueDto> dtos = Arrays.asList(NotificationQueueDto.toNotificationQueueDto(new Notification("first")));
+    when(notificationQueueDao.findOldest(2)).thenReturn(unreadableDtos).thenReturn(dtos);
+
+    List<Notification> notifications = manager.getFromQueue(2);
+
+    assertThat(notifications).hasSize(1);
+    assertThat(notifications.get(0).getType()).isEqualTo("first");
+    verify(notificationQueueDao).delete(unreadableDtos);
+    verify(notificationQueueDao).delete(dtos);
+  }
+
+  @Test
+  public void get_no_notifications_from_empty_queue() {
+    when(notificationQueueDao.findOldest(10)).thenReturn(Collections.<NotificationQueueDto>emptyList());
+
+    assertThat(manager.getFromQueue(10)).isEmpty();
+    verify(notificationQueueDao, never()).delete(any(List.class));
+  }
+
   // SONAR-4739
   @Test
   public void shouldNotFailWhenUnableToDeserialize() throws Exception {
     NotificationQueueDto dto1 = mock(NotificationQueueDto.class);
     when(dto1.toNotification()).thenThrow(new InvalidClassException("Pouet"));
     List<NotificationQueueDto> dtos = Arrays.asList(dto1);
-    when(notificationQueueDao.findOldest(1)).thenReturn(dtos);
+    when(notificationQueueDao.findOldest(1)).thenReturn(dtos).thenReturn(dtos).thenReturn(Collections.<NotificationQueueDto>emptyList());
 
     manager = spy(manager);
     assertThat(manager.getFromQueue()).isNull();
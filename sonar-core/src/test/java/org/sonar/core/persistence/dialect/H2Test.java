@@ -51,4 +51,9 @@ public class H2Test {
   public void testFetchSizeForScrolling() throws Exception {
     assertThat(dialect.getScrollDefaultFetchSize()).isEqualTo(200);
   }
+
+  @Test
+  public void supports_multiple_rows_insert() {
+    assertThat(dialect.supportsMultipleRowsInsert()).isTrue();
+  }
 }
@@ -49,4 +49,9 @@ public class MsSqlTest {
     assertThat(msSql.getDefaultDriverClassName()).isEqualTo("net.sourceforge.jtds.jdbc.Driver");
     assertThat(msSql.getValidationQuery()).isEqualTo("SELECT 1");
   }
+
+  @Test
+  public void supports_multiple_rows_insert() {
+    assertThat(msSql.supportsMultipleRowsInsert()).isFalse();
+  }
 }
@@ -57,4 +57,9 @@ public class PostgreSqlTest {
   public void testFetchSizeForScrolling() throws Exception {
     assertThat(dialect.getScrollDefaultFetchSize()).isEqualTo(200);
   }
+
+  @Test
+  public void supports_multiple_rows_insert() {
+    assertThat(dialect.supportsMultipleRowsInsert()).isTrue();
+  }
 }
@@ -22,6 +22,7 @@ package org.sonar.core.purge;
 import org.apache.ibatis.session.SqlSession;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.InOrder;
 import org.sonar.core.persistence.AbstractDaoTestCase;
 import org.sonar.core.persistence.MyBatis;
 
@@ -29,6 +30,12 @@ import java.util.Arrays;
 import java.util.List;
 
 import static com.google.common.collect.Lists.newArrayList;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class PurgeCommandsTest extends AbstractDaoTestCase {
 
@@ -139,6 +146,74 @@ public class PurgeCommandsTest extends AbstractDaoTestCase {
     // The goal of this test is only to check that the query do no fail, not to check result
   }
 
+  @Test
+  public void commit_deletion_of_snapshots_by_transactions_bounded_by_measures() {
+    SqlSession session = mock(SqlSession.class);
+    PurgeMapper mapper = mock(PurgeMapper.class);
+    when(mapper.countSnapshotMeasures(anyListOf(Long.class))).thenReturn(50L);
+
+    new PurgeCommands(session, mapper, profiler, 20).deleteSnapshots(Arrays.asList(1L, 2L, 3L, 4L, 5L));
+
+    verify(mapper).deleteSnapshot(Arrays.asList(1L, 2L));
+    verify(mapper).deleteSnapshot(Arrays.asList(3L, 4L));
+    verify(mapper).deleteSnapshot(Arrays.asList(5L));
+    verify(session, times(3)).commit();
+  }
+
+  @Test
+  public void commit_deletion_of_snapshots_once_when_measures_do_not_exceed_bound() {
+    SqlSession session = mock(SqlSession.class);
+    PurgeMapper mapper = mock(PurgeMapper.class);
+    when(mapper.countSnapshotMeasures(anyListOf(Long.class))).thenReturn(20L);
+
+    new PurgeCommands(session, mapper, profiler, 20).deleteSnapshots(Arrays.asList(1L, 2L, 3L, 4L, 5L));
+
+    verify(mapper).deleteSnapshot(Arrays.asList(1L, 2L, 3L, 4L, 5L));
+    verify(session).commit();
+  }
+
+  @Test
+  public void commit_purge_of_snapshots_by_transactions_bounded_by_measures() {
+    SqlSession session = mock(SqlSession.class);
+    PurgeMapper mapper = mock(PurgeMapper.class);
+    when(mapper.countSnapshotMeasures(anyListOf(Long.class))).thenReturn(30L);
+
+    new PurgeCommands(session, mapper, profiler, 20).purgeSnapshots(Arrays.asList(1L, 2L, 3L));
+
+    verify(mapper).deleteSnapshotGraphs(Arrays.asList(1L, 2L));
+    verify(mapper).deleteSnapshotGraphs(Arrays.asList(3L));
+    verify(session, times(2)).commit();
+  }
+
+  @Test
+  public void commit_deletion_of_resources_by_transactions_bounded_by_issues() {
+    SqlSession session = mock(SqlSession.class);
+    PurgeMapper mapper = mock(PurgeMapper.class);
+    when(mapper.countResourceIssues(anyListOf(Long.class))).thenReturn(30L);
+
+    new PurgeCommands(session, mapper, profiler, 20).deleteResources(Arrays.asList(1L, 2L, 3L));
+
+    verify(mapper).deleteResource(Arrays.asList(1L, 2L));
+    verify(mapper).deleteResource(Arrays.asList(3L));
+    verify(session, times(2)).commit();
+  }
+
+  @Test
+  public void commit_deletion_of_resource_snapshots_before_resource_transactions() {
+    SqlSession session = mock(SqlSession.class);
+    PurgeMapper mapper = mock(PurgeMapper.class);
+    when(mapper.selectSnapshotIdsByResource(Arrays.asList(1L, 2L))).thenReturn(Arrays.asList(10L, 20L));
+
+    new PurgeCommands(session, mapper, profiler, 20).deleteResources(Arrays.asList(1L, 2L));
+
+    InOrder inOrder = inOrder(mapper, session);
+    inOrder.verify(mapper).deleteSnapshot(Arrays.asList(10L, 20L));
+    inOrder.verify(session).commit();
+    inOrder.verify(mapper).deleteResource(Arrays.asList(1L, 2L));
+    inOrder.verify(session).commit();
+    verify(session, times(2)).commit();
+  }
+
   private List<Long> getHugeNumberOfIds() {
     List<Long> hugeNbOfSnapshotIds = newArrayList();
     for (long i = 0; i < 4500; i++) {
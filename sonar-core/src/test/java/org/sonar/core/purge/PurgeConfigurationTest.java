@@ -47,4 +47,11 @@ public class PurgeConfigurationTest {
     assertThat(toDate.getMonth()).isEqualTo(3); // means April
     assertThat(toDate.getDate()).isEqualTo(18);
   }
+
+  @Test
+  public void use_default_max_rows_per_transaction_when_not_positive() throws Exception {
+    assertThat(new PurgeConfiguration(1L, new String[0], 30).maxRowsPerTransaction()).isEqualTo(PurgeConfiguration.DEFAULT_MAX_ROWS_PER_TRANSACTION);
+    assertThat(new PurgeConfiguration(1L, new String[0], 30, 0).maxRowsPerTransaction()).isEqualTo(PurgeConfiguration.DEFAULT_MAX_ROWS_PER_TRANSACTION);
+    assertThat(new PurgeConfiguration(1L, new String[0], 30, 500).maxRowsPerTransaction()).isEqualTo(500);
+  }
 }
@@ -25,6 +25,7 @@ import org.slf4j.Logger;
 
 import static org.mockito.Matchers.contains;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 
 public class PurgeProfilerTest {
@@ -80,6 +81,20 @@ public class PurgeProfilerTest {
     verify(logger).info(contains("bar: 5ms"));
   }
 
+  @Test
+  public void log_progress_periodically_and_at_the_end() {
+    clock.sleep(10000);
+    profiler.progress("snapshots", 100, 300, logger);
+    clock.sleep(5000);
+    profiler.progress("snapshots", 200, 300, logger);
+    clock.sleep(1000);
+    profiler.progress("snapshots", 300, 300, logger);
+
+    verify(logger).info(contains("100/300 snapshots deleted"));
+    verify(logger, never()).info(contains("200/300 snapshots deleted"));
+    verify(logger).info(contains("300/300 snapshots deleted"));
+  }
+
   private class MockedClock extends org.sonar.core.purge.PurgeProfiler.Clock {
     private long now = 0;
 
@@ -45,6 +45,7 @@ public class FileSourceDaoTest extends AbstractDaoTestCase {
     FileSourceDto fileSourceDto = dao.select("ab12");
 
     assertThat(fileSourceDto.getData()).isEqualTo("aef12a,alice,2014-04-25T12:34:56+0100,,class Foo");
+    assertThat(fileSourceDto.getBinaryData()).isNull();
     assertThat(fileSourceDto.getDataHash()).isEqualTo("hash");
     assertThat(fileSourceDto.getProjectUuid()).isEqualTo("abcd");
     assertThat(fileSourceDto.getFileUuid()).isEqualTo("ab12");
@@ -67,14 +68,18 @@ public class FileSourceDaoTest extends AbstractDaoTestCase {
 
   @Test
   public void insert() throws Exception {
-    dao.insert(new FileSourceDto().setProjectUuid("prj").setFileUuid("file").setData("bla bla")
+    byte[] binaryData = new FileSourceDataWriter(1).set(FileSourceDataColumn.SOURCE, 1, "bla bla").toBytes();
+    dao.insert(new FileSourceDto().setProjectUuid("prj").setFileUuid("file").setBinaryData(binaryData)
       .setDataHash("hash2")
       .setLineHashes("foo\nbar")
       .setSrcHash("hache")
+      .setDataFingerprint("fingerprint")
       .setCreatedAt(DateUtils.parseDateTime("2014-10-31T16:44:02+0100").getTime())
       .setUpdatedAt(DateUtils.parseDateTime("2014-10-31T16:44:02+0100").getTime()));
 
-    checkTable("insert", "file_sources");
+    checkTables("insert", new String[] {"binary_data"}, "file_sources");
+    FileSourceDataReader reader = new FileSourceDataReader(dao.select("file").getBinaryData());
+    assertThat(reader.readStrings(FileSourceDataColumn.SOURCE)).containsExactly("bla bla");
   }
 
   @Test
@@ -83,9 +88,10 @@ public class FileSourceDaoTest extends AbstractDaoTestCase {
       .setData("updated data")
       .setDataHash("hash2")
       .setSrcHash("123456")
+      .setDataFingerprint("fingerprint2")
       .setLineHashes("foo2\nbar2")
       .setUpdatedAt(DateUtils.parseDateTime("2014-10-31T16:44:02+0100").getTime()));
 
-    checkTable("update", "file_sources");
+    checkTables("update", new String[] {"binary_data"}, "file_sources");
   }
 }
@@ -0,0 +1,144 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.core.source.db;
+
+import com.google.common.base.Strings;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class FileSourceDataWriterTest {
+
+  @Test
+  public void write_and_read_all_columns() throws Exception {
+    byte[] data = new FileSourceDataWriter(3)
+      .set(FileSourceDataColumn.SCM_REVISION, 1, "123")
+      .set(FileSourceDataColumn.SCM_REVISION, 3, "123")
+      .set(FileSourceDataColumn.SCM_AUTHOR, 1, "julien")
+      .set(FileSourceDataColumn.SCM_AUTHOR, 2, "simon")
+      .set(FileSourceDataColumn.SCM_AUTHOR, 3, "julien")
+      .set(FileSourceDataColumn.SCM_DATE, 1, "2014-10-11T16:44:02+0100")
+      .set(FileSourceDataColumn.UT_LINE_HITS, 1, "1")
+      .set(FileSourceDataColumn.UT_LINE_HITS, 3, "0")
+      .set(FileSourceDataColumn.IT_CONDITIONS, 2, "-5")
+      .set(FileSourceDataColumn.OVERALL_COVERED_CONDITIONS, 2, "")
+      .set(FileSourceDataColumn.HIGHLIGHTING, 1, "0,3,a")
+      .set(FileSourceDataColumn.SYMBOLS, 2, "1,2,1;0,2,2")
+      .set(FileSourceDataColumn.DUPLICATIONS, 1, "1,3")
+      .set(FileSourceDataColumn.DUPLICATIONS, 2, "")
+      .set(FileSourceDataColumn.SOURCE, 1, "class Foo {")
+      .set(FileSourceDataColumn.SOURCE, 2, "  // été")
+      .set(FileSourceDataColumn.SOURCE, 3, "}")
+      .toBytes();
+
+    FileSourceDataReader reader = new FileSourceDataReader(data);
+    assertThat(reader.lines()).isEqualTo(3);
+    assertThat(reader.readStrings(FileSourceDataColumn.SCM_REVISION)).containsExactly("123", null, "123");
+    assertThat(reader.readStrings(FileSourceDataColumn.SCM_AUTHOR)).containsExactly("julien", "simon", "julien");
+    assertThat(reader.readStrings(FileSourceDataColumn.SCM_DATE)).containsExactly("2014-10-11T16:44:02+0100", null, null);
+    assertThat(reader.readIntegers(FileSourceDataColumn.UT_LINE_HITS)).containsExactly(1, null, 0);
+    assertThat(reader.readIntegers(FileSourceDataColumn.UT_CONDITIONS)).containsExactly(null, null, null);
+    assertThat(reader.readIntegers(FileSourceDataColumn.IT_CONDITIONS)).containsExactly(null, -5, null);
+    assertThat(reader.readIntegers(FileSourceDataColumn.OVERALL_COVERED_CONDITIONS)).containsExactly(null, null, null);
+    assertThat(reader.readStrings(FileSourceDataColumn.HIGHLIGHTING)).containsExactly("0,3,a", null, null);
+    assertThat(reader.readStrings(FileSourceDataColumn.SYMBOLS)).containsExactly(null, "1,2,1;0,2,2", null);
+    assertThat(reader.readIntegerLists(FileSourceDataColumn.DUPLICATIONS)).containsExactly(new int[] {1, 3}, new int[0], null);
+    assertThat(reader.readStrings(FileSourceDataColumn.SOURCE)).containsExactly("class Foo {", "  // été", "}");
+  }
+
+  @Test
+  public void compress_big_data() throws Exception {
+    int lines = 1000;
+    FileSourceDataWriter writer = new FileSourceDataWriter(lines);
+    for (int line = 1; line <= lines; line++) {
+      writer.set(FileSourceDataColumn.SCM_AUTHOR, line, "simon");
+      writer.set(FileSourceDataColumn.SOURCE, line, Strings.repeat("x", 80));
+    }
+
+    byte[] compressed = writer.toBytes();
+    byte[] uncompressed = writer.setCompression(false).toBytes();
+    assertThat(compressed[1]).isEqualTo(FileSourceDataWriter.DEFLATE_COMPRESSION);
+    assertThat(uncompressed[1]).isEqualTo(FileSourceDataWriter.NO_COMPRESSION);
+    assertThat(compressed.length).isLessThan(uncompressed.length / 10);
+
+    for (byte[] data : new byte[][] {compressed, uncompressed}) {
+      FileSourceDataReader reader = new FileSourceDataReader(data);
+      assertThat(reader.lines()).isEqualTo(lines);
+      assertThat(reader.readStrings(FileSourceDataColumn.SCM_AUTHOR)[lines - 1]).isEqualTo("simon");
+      assertThat(reader.readStrings(FileSourceDataColumn.SOURCE)[lines - 1]).hasSize(80);
+    }
+  }
+
+  @Test
+  public void do_not_compress_small_data() throws Exception {
+    byte[] data = new FileSourceDataWriter(1).set(FileSourceDataColumn.SOURCE, 1, "foo").toBytes();
+
+    assertThat(data[0]).isEqualTo(FileSourceDataWriter.FORMAT_VERSION);
+    assertThat(data[1]).isEqualTo(FileSourceDataWriter.NO_COMPRESSION);
+  }
+
+  @Test
+  public void empty_columns_are_null() throws Exception {
+    FileSourceDataReader reader = new FileSourceDataReader(new FileSourceDataWriter(2).toBytes());
+
+    assertThat(reader.lines()).isEqualTo(2);
+    assertThat(reader.readStrings(FileSourceDataColumn.SOURCE)).containsExactly(null, null);
+    assertThat(reader.readIntegers(FileSourceDataColumn.UT_LINE_HITS)).containsExactly(null, null);
+    assertThat(reader.readIntegerLists(FileSourceDataColumn.DUPLICATIONS)).containsExactly(null, null);
+  }
+
+  @Test
+  public void fail_if_line_is_out_of_range() throws Exception {
+    try {
+      new FileSourceDataWriter(2).set(FileSourceDataColumn.SOURCE, 3, "foo");
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("Line 3 is out of range [1,2]");
+    }
+  }
+
+  @Test
+  public void fail_if_integer_value_is_invalid() throws Exception {
+    FileSourceDataWriter writer = new FileSourceDataWriter(1).set(FileSourceDataColumn.UT_LINE_HITS, 1, "abc");
+    try {
+      writer.toBytes();
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("Value of column UT_LINE_HITS is not an integer: abc");
+    }
+  }
+
+  @Test
+  public void fail_to_read_column_with_other_type() throws Exception {
+    FileSourceDataReader reader = new FileSourceDataReader(new FileSourceDataWriter(1).toBytes());
+    try {
+      reader.readIntegers(FileSourceDataColumn.SOURCE);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("Column SOURCE has type STRING");
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void fail_to_read_unsupported_version() throws Exception {
+    new FileSourceDataReader(new byte[] {42, 0, 0, 0});
+  }
+}
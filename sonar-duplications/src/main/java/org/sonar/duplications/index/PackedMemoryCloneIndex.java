@@ -134,35 +134,34 @@ public class PackedMemoryCloneIndex extends AbstractCloneIndex {
 
   /**
    * {@inheritDoc}
+   * <p>
+   * Once the index is sorted (see {@link #ensureSorted()}), this method does not modify it, so that it can be
+   * called concurrently as long as no block is inserted.
+   * </p>
    */
   @Override
   public Collection<Block> getBySequenceHash(ByteArray sequenceHash) {
     ensureSorted();
 
-    // prepare hash for binary search
     int[] hash = sequenceHash.toIntArray();
     if (hash.length != hashInts) {
       throw new IllegalArgumentException("Expected " + hashInts + " ints in hash, but got " + hash.length);
     }
-    int offset = size * blockInts;
-    for (int i = 0; i < hashInts; i++) {
-      blockData[offset++] = hash[i];
-    }
-
-    int index = DataUtils.binarySearch(byBlockHash);
+    int index = binarySearchByHash(hash);
 
     List<Block> result = Lists.newArrayList();
-    while (index < size && !isLessByHash(size, index)) {
+    Block.Builder builder = Block.builder();
+    while (index < size && compareHash(index, hash) == 0) {
       // extract block (note that there is no need to extract hash)
       String resourceId = resourceIds[index];
-      offset = index * blockInts + hashInts;
+      int offset = index * blockInts + hashInts;
       int indexInFile = blockData[offset++];
       int firstLineNumber = blockData[offset++];
       int lastLineNumber = blockData[offset++];
       int startUnit = blockData[offset++];
       int endUnit = blockData[offset];
 
-      Block block = blockBuilder
+      Block block = builder
           .setResourceId(resourceId)
           .setBlockHash(sequenceHash)
           .setIndexInFile(indexInFile)
@@ -175,6 +174,37 @@ public class PackedMemoryCloneIndex extends AbstractCloneIndex {
     return result;
   }
 
+  /**
+   * Index of the first block whose hash is not less than the given one. Unlike {@link DataUtils#binarySearch(DataUtils.Sortable)},
+   * the searched hash is not copied into the index.
+   */
+  private int binarySearchByHash(int[] hash) {
+    int lower = 0;
+    int upper = size;
+    while (lower < upper) {
+      int mid = (lower + upper) >> 1;
+      if (compareHash(mid, hash) < 0) {
+        lower = mid + 1;
+      } else {
+        upper = mid;
+      }
+    }
+    return lower;
+  }
+
+  private int compareHash(int index, int[] hash) {
+    int offset = index * blockInts;
+    for (int k = 0; k < hashInts; k++, offset++) {
+      if (blockData[offset] < hash[k]) {
+        return -1;
+      }
+      if (blockData[offset] > hash[k]) {
+        return 1;
+      }
+    }
+    return 0;
+  }
+
   /**
    * {@inheritDoc}
    * <p>
@@ -227,9 +257,10 @@ public class PackedMemoryCloneIndex extends AbstractCloneIndex {
   }
 
   /**
-   * Performs sorting, if necessary.
+   * Performs sorting, if necessary. Lookups sort the index if needed, but sorting it beforehand allows
+   * to search it by hash from several threads.
    */
-  private void ensureSorted() {
+  public void ensureSorted() {
     if (sorted) {
       return;
     }
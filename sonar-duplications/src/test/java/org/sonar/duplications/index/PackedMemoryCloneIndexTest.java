@@ -19,12 +19,18 @@
  */
 package org.sonar.duplications.index;
 
+import com.google.common.collect.Lists;
 import org.junit.Before;
 import org.junit.Test;
 import org.sonar.duplications.block.Block;
 import org.sonar.duplications.block.ByteArray;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.sameInstance;
@@ -109,6 +115,42 @@ public class PackedMemoryCloneIndexTest {
     index.getBySequenceHash(new ByteArray(1L));
   }
 
+  @Test
+  public void search_by_hash_concurrently_once_sorted() throws Exception {
+    for (int i = 0; i < 1000; i++) {
+      index.insert(newBlock("r" + i, i % 100));
+    }
+    index.ensureSorted();
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Boolean>> results = Lists.newArrayList();
+      for (int i = 0; i < 4; i++) {
+        results.add(executor.submit(new Callable<Boolean>() {
+          @Override
+          public Boolean call() {
+            for (long hash = 0; hash < 100; hash++) {
+              for (Block block : index.getBySequenceHash(new ByteArray(hash))) {
+                if (!block.getBlockHash().equals(new ByteArray(hash))) {
+                  return false;
+                }
+              }
+              if (index.getBySequenceHash(new ByteArray(hash)).size() != 10) {
+                return false;
+              }
+            }
+            return true;
+          }
+        }));
+      }
+      for (Future<Boolean> result : results) {
+        assertThat(result.get(), is(true));
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
   private static Block newBlock(String resourceId, long hash) {
     return Block.builder()
         .setResourceId(resourceId)
@@ -0,0 +1,246 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.home.cache;
+
+import org.apache.commons.io.FileUtils;
+import org.sonar.api.batch.scm.BlameLine;
+import org.sonar.home.log.Log;
+
+import javax.annotation.CheckForNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local cache of the blame of files, shared by all the analyses run with the same user home. An entry is
+ * identified by the revision of the history it was computed on, the path of the file and the hash of its
+ * content, so that files which did not change since a previous analysis of the same revision (another branch,
+ * a preview analysis or a fresh checkout) are not blamed again.
+ * <p/>
+ * The cache is a best effort: entries which can't be read are ignored.
+ * <p/>
+ * Entries which were not used during {@link #MAX_AGE_IN_MS} are removed, then the least recently used ones
+ * while the cache exceeds its maximum size. This cleanup is executed by {@link #clean()} at most once a day.
+ *
+ * @since 5.1
+ */
+public class BlameCache {
+
+  /**
+   * Default maximum size of the cache, in bytes
+   */
+  public static final long DEFAULT_MAX_SIZE = 100L * 1024 * 1024;
+
+  /**
+   * Entries which are neither read nor written during this period are removed
+   */
+  static final long MAX_AGE_IN_MS = TimeUnit.DAYS.toMillis(30);
+
+  private static final long CLEAN_PERIOD_IN_MS = TimeUnit.DAYS.toMillis(1);
+  private static final String LAST_CLEAN_FILENAME = "_last_clean";
+  private static final String FIELD_SEPARATOR = "\t";
+  private static final String ENCODING = "UTF-8";
+
+  private final File dir;
+  private final File tmpDir;
+  private final long maxSize;
+  private final Log log;
+
+  BlameCache(File dir, long maxSize, Log log) {
+    this.dir = dir;
+    this.maxSize = maxSize;
+    this.log = log;
+    this.tmpDir = new File(dir, "_tmp");
+    try {
+      FileUtils.forceMkdir(tmpDir);
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to create blame cache " + dir.getAbsolutePath(), e);
+    }
+  }
+
+  public static BlameCache create(File dir, Log log) {
+    return new BlameCache(dir, DEFAULT_MAX_SIZE, log);
+  }
+
+  public static BlameCache create(File dir, long maxSize, Log log) {
+    return new BlameCache(dir, maxSize, log);
+  }
+
+  public File getDir() {
+    return dir;
+  }
+
+  /**
+   * @param revision identifies the history the blame depends on, for example the id of the HEAD commit
+   * @param path path of the file in the repository
+   * @param contentHash hash of the content of the file, for example its blob id
+   * @return the blame lines previously put with the same key, or null if not in the cache
+   */
+  @CheckForNull
+  public List<BlameLine> get(String revision, String path, String contentHash) {
+    File entry = entry(revision, path, contentHash);
+    if (!entry.exists()) {
+      return null;
+    }
+    try {
+      List<BlameLine> lines = new ArrayList<BlameLine>();
+      for (String line : FileUtils.readLines(entry, ENCODING)) {
+        String[] fields = line.split(FIELD_SEPARATOR, -1);
+        if (fields.length != 3) {
+          log.debug("Ignore corrupted blame cache entry " + entry.getAbsolutePath());
+          return null;
+        }
+        lines.add(new BlameLine()
+          .revision(fields[0])
+          .date(fields[1].isEmpty() ? null : new Date(Long.parseLong(fields[1])))
+          .author(fields[2].isEmpty() ? null : fields[2]));
+      }
+      // the entry is recently used, so it is the last to be removed when the cache is full
+      entry.setLastModified(System.currentTimeMillis());
+      return lines;
+    } catch (IOException e) {
+      log.debug("Unable to read blame cache entry " + entry.getAbsolutePath() + ": " + e.getMessage());
+      return null;
+    } catch (NumberFormatException e) {
+      log.debug("Ignore corrupted blame cache entry " + entry.getAbsolutePath());
+      return null;
+    }
+  }
+
+  /**
+   * Stores the blame of a file. Lines which can't be stored, for example because the author contains
+   * a line break, are silently not cached.
+   */
+  public void put(String revision, String path, String contentHash, List<BlameLine> lines) {
+    List<String> rows = new ArrayList<String>(lines.size());
+    for (BlameLine line : lines) {
+      String author = line.author() == null ? "" : line.author();
+      if (!isStorable(line.revision()) || !isStorable(author)) {
+        return;
+      }
+      Date date = line.date();
+      rows.add(line.revision() + FIELD_SEPARATOR + (date == null ? "" : date.getTime()) + FIELD_SEPARATOR + author);
+    }
+    File entry = entry(revision, path, contentHash);
+    try {
+      File tempFile = File.createTempFile("blame", null, tmpDir);
+      FileUtils.writeLines(tempFile, ENCODING, rows, "\n");
+      FileUtils.forceMkdir(entry.getParentFile());
+      if (!tempFile.renameTo(entry)) {
+        // another analysis cached the same entry in the meantime
+        FileUtils.deleteQuietly(tempFile);
+      }
+    } catch (IOException e) {
+      log.debug("Unable to write blame cache entry " + entry.getAbsolutePath() + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * Removes the entries which are too old, then the least recently used ones if the cache exceeds its maximum size.
+   * Does nothing if the cache was already cleaned during the last 24 hours, by this process or another one.
+   */
+  public void clean() {
+    File lastClean = new File(dir, LAST_CLEAN_FILENAME);
+    long now = System.currentTimeMillis();
+    if (now - lastClean.lastModified() < CLEAN_PERIOD_IN_MS) {
+      return;
+    }
+    try {
+      FileUtils.touch(lastClean);
+    } catch (IOException e) {
+      log.debug("Unable to clean blame cache " + dir.getAbsolutePath() + ": " + e.getMessage());
+      return;
+    }
+    purge(now);
+  }
+
+  void purge(long now) {
+    List<CacheEntry> entries = new ArrayList<CacheEntry>();
+    long size = 0L;
+    for (File file : FileUtils.listFiles(dir, null, true)) {
+      if (LAST_CLEAN_FILENAME.equals(file.getName()) && dir.equals(file.getParentFile())) {
+        continue;
+      }
+      long lastModified = file.lastModified();
+      if (now - lastModified > MAX_AGE_IN_MS || (tmpDir.equals(file.getParentFile()) && now - lastModified > CLEAN_PERIOD_IN_MS)) {
+        // temporary files of analyses which were killed are removed too
+        FileUtils.deleteQuietly(file);
+      } else {
+        entries.add(new CacheEntry(file, lastModified));
+        size += file.length();
+      }
+    }
+    if (size > maxSize) {
+      Collections.sort(entries, CacheEntry.OLDEST_FIRST);
+      for (CacheEntry entry : entries) {
+        if (size <= maxSize) {
+          break;
+        }
+        size -= entry.file.length();
+        FileUtils.deleteQuietly(entry.file);
+      }
+    }
+  }
+
+  private static class CacheEntry {
+    private static final Comparator<CacheEntry> OLDEST_FIRST = new Comparator<CacheEntry>() {
+      @Override
+      public int compare(CacheEntry e1, CacheEntry e2) {
+        return Long.compare(e1.lastModified, e2.lastModified);
+      }
+    };
+
+    private final File file;
+    private final long lastModified;
+
+    CacheEntry(File file, long lastModified) {
+      this.file = file;
+      this.lastModified = lastModified;
+    }
+  }
+
+  private static boolean isStorable(String field) {
+    return field.indexOf('\t') < 0 && field.indexOf('\n') < 0 && field.indexOf('\r') < 0;
+  }
+
+  File entry(String revision, String path, String contentHash) {
+    String key = sha1(revision + '\n' + path + '\n' + contentHash);
+    return new File(new File(dir, key.substring(0, 2)), key.substring(2));
+  }
+
+  private static String sha1(String s) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      return FileHashes.toHex(digest.digest(s.getBytes(ENCODING)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-1 is not supported", e);
+    } catch (IOException e) {
+      throw new IllegalStateException(ENCODING + " is not supported", e);
+    }
+  }
+}
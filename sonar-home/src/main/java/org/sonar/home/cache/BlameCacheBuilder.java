@@ -0,0 +1,63 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.home.cache;
+
+import org.sonar.home.log.Log;
+import org.sonar.home.log.StandardLog;
+
+import javax.annotation.Nullable;
+
+import java.io.File;
+
+public class BlameCacheBuilder {
+
+  private File userHome;
+  private long maxSize = BlameCache.DEFAULT_MAX_SIZE;
+  private Log log = new StandardLog();
+
+  public BlameCacheBuilder setUserHome(File d) {
+    this.userHome = d;
+    return this;
+  }
+
+  public BlameCacheBuilder setLog(Log log) {
+    this.log = log;
+    return this;
+  }
+
+  public BlameCacheBuilder setUserHome(@Nullable String path) {
+    this.userHome = (path == null ? null : new File(path));
+    return this;
+  }
+
+  /**
+   * @param maxSize maximum size of the cache in bytes, the least recently used entries are removed above it
+   */
+  public BlameCacheBuilder setMaxSize(long maxSize) {
+    this.maxSize = maxSize;
+    return this;
+  }
+
+  public BlameCache build() {
+    BlameCache cache = BlameCache.create(new File(FileCacheBuilder.cacheDir(userHome), "_blame"), maxSize, log);
+    cache.clean();
+    return cache;
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.home.cache;
+
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.scm.BlameCommand.BlameOutput;
+import org.sonar.api.batch.scm.BlameLine;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decorates the {@link BlameOutput} of a SCM provider in order to serve the files which were already blamed
+ * with the same key from the {@link BlameCache}, and to store the blame of the other files once computed.
+ * <p/>
+ * All the calls to {@link #serveFromCache(InputFile, String, String, String)} must be done before the files
+ * are blamed, so that {@link #blameResult(InputFile, List)} can be called concurrently.
+ *
+ * @since 5.1
+ */
+public class CachedBlameOutput implements BlameOutput {
+
+  private final BlameCache cache;
+  private final BlameOutput output;
+  private final Map<InputFile, Key> keys = new HashMap<InputFile, Key>();
+
+  public CachedBlameOutput(BlameCache cache, BlameOutput output) {
+    this.cache = cache;
+    this.output = output;
+  }
+
+  /**
+   * @see BlameCache#get(String, String, String)
+   * @return true if the blame of the file was found in the cache, else its blame is cached once computed
+   */
+  public boolean serveFromCache(InputFile inputFile, String revision, String path, String contentHash) {
+    List<BlameLine> lines = cache.get(revision, path, contentHash);
+    if (lines != null && lines.size() == inputFile.lines()) {
+      output.blameResult(inputFile, lines);
+      return true;
+    }
+    keys.put(inputFile, new Key(revision, path, contentHash));
+    return false;
+  }
+
+  @Override
+  public void blameResult(InputFile file, List<BlameLine> lines) {
+    output.blameResult(file, lines);
+    Key key = keys.get(file);
+    if (key != null) {
+      cache.put(key.revision, key.path, key.contentHash, lines);
+    }
+  }
+
+  private static class Key {
+    private final String revision;
+    private final String path;
+    private final String contentHash;
+
+    Key(String revision, String path, String contentHash) {
+      this.revision = revision;
+      this.path = path;
+      this.contentHash = contentHash;
+    }
+  }
+}
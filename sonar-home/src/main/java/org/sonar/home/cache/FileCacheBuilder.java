@@ -47,15 +47,19 @@ public class FileCacheBuilder {
   }
 
   public FileCache build() {
-    if (userHome == null) {
+    return FileCache.create(cacheDir(userHome), log);
+  }
+
+  static File cacheDir(@Nullable File userHome) {
+    File home = userHome;
+    if (home == null) {
       String path = System.getenv("SONAR_USER_HOME");
       if (path == null) {
         // Default
         path = System.getProperty("user.home") + File.separator + ".sonar";
       }
-      userHome = new File(path);
+      home = new File(path);
     }
-    File cacheDir = new File(userHome, "cache");
-    return FileCache.create(cacheDir, log);
+    return new File(home, "cache");
   }
 }
@@ -0,0 +1,166 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.home.cache;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.batch.scm.BlameLine;
+import org.sonar.home.log.Slf4jLog;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BlameCacheTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private static final List<BlameLine> LINES = Arrays.asList(new BlameLine().revision("rev1").date(new Date(1400000000000L)).author("foo@bar.com"));
+
+  private Slf4jLog log = new Slf4jLog(BlameCacheTest.class);
+
+  @Test
+  public void not_in_cache() throws Exception {
+    BlameCache cache = BlameCache.create(temp.newFolder(), log);
+
+    assertThat(cache.get("HEAD", "src/Foo.java", "ABCDE")).isNull();
+  }
+
+  @Test
+  public void put_and_get() throws Exception {
+    BlameCache cache = BlameCache.create(temp.newFolder(), log);
+    List<BlameLine> lines = Arrays.asList(
+      new BlameLine().revision("rev1").date(new Date(1400000000000L)).author("foo@bar.com"),
+      new BlameLine().revision("rev2").date(null).author(null));
+
+    cache.put("HEAD", "src/Foo.java", "ABCDE", lines);
+
+    assertThat(cache.get("HEAD", "src/Foo.java", "ABCDE")).isEqualTo(lines);
+    assertThat(cache.get("OTHER", "src/Foo.java", "ABCDE")).isNull();
+    assertThat(cache.get("HEAD", "src/Bar.java", "ABCDE")).isNull();
+    assertThat(cache.get("HEAD", "src/Foo.java", "FGHIJ")).isNull();
+  }
+
+  @Test
+  public void entries_are_persisted() throws Exception {
+    File dir = temp.newFolder();
+    List<BlameLine> lines = Arrays.asList(new BlameLine().revision("rev1").date(new Date(1400000000000L)).author("foo@bar.com"));
+    BlameCache.create(dir, log).put("HEAD", "src/Foo.java", "ABCDE", lines);
+
+    assertThat(BlameCache.create(dir, log).get("HEAD", "src/Foo.java", "ABCDE")).isEqualTo(lines);
+  }
+
+  @Test
+  public void do_not_cache_unstorable_lines() throws Exception {
+    BlameCache cache = BlameCache.create(temp.newFolder(), log);
+
+    cache.put("HEAD", "src/Foo.java", "ABCDE", Arrays.asList(new BlameLine().revision("rev1").author("foo\nbar")));
+
+    assertThat(cache.get("HEAD", "src/Foo.java", "ABCDE")).isNull();
+  }
+
+  @Test
+  public void ignore_corrupted_entries() throws Exception {
+    BlameCache cache = BlameCache.create(temp.newFolder(), log);
+    cache.put("HEAD", "src/Foo.java", "ABCDE", Arrays.asList(new BlameLine().revision("rev1").date(new Date()).author("foo@bar.com")));
+    Collection<File> entries = FileUtils.listFiles(cache.getDir(), null, true);
+    assertThat(entries).hasSize(1);
+    FileUtils.write(entries.iterator().next(), "rev1\tnot a date\tfoo@bar.com");
+
+    assertThat(cache.get("HEAD", "src/Foo.java", "ABCDE")).isNull();
+  }
+
+  @Test
+  public void remove_entries_not_used_for_a_long_time() throws Exception {
+    BlameCache cache = BlameCache.create(temp.newFolder(), log);
+    cache.put("HEAD", "src/Foo.java", "ABCDE", LINES);
+    cache.put("HEAD", "src/Bar.java", "ABCDE", LINES);
+    long now = System.currentTimeMillis();
+    setLastUse(cache, "src/Foo.java", now - BlameCache.MAX_AGE_IN_MS - 1000L);
+
+    cache.purge(now);
+
+    assertThat(cache.get("HEAD", "src/Foo.java", "ABCDE")).isNull();
+    assertThat(cache.get("HEAD", "src/Bar.java", "ABCDE")).isEqualTo(LINES);
+  }
+
+  @Test
+  public void remove_least_recently_used_entries_above_max_size() throws Exception {
+    File dir = temp.newFolder();
+    BlameCache cache = BlameCache.create(dir, log);
+    cache.put("HEAD", "src/Foo.java", "ABCDE", LINES);
+    long entrySize = FileUtils.sizeOfDirectory(dir);
+    cache = BlameCache.create(dir, 2 * entrySize, log);
+    cache.put("HEAD", "src/Bar.java", "ABCDE", LINES);
+    cache.put("HEAD", "src/Baz.java", "ABCDE", LINES);
+    long now = System.currentTimeMillis();
+    setLastUse(cache, "src/Foo.java", now - 3000L);
+    setLastUse(cache, "src/Bar.java", now - 2000L);
+    setLastUse(cache, "src/Baz.java", now - 1000L);
+    // reading an entry makes it the most recently used
+    assertThat(cache.get("HEAD", "src/Foo.java", "ABCDE")).isEqualTo(LINES);
+
+    cache.purge(now);
+
+    assertThat(FileUtils.listFiles(dir, null, true)).hasSize(2);
+    assertThat(cache.get("HEAD", "src/Bar.java", "ABCDE")).isNull();
+    assertThat(cache.get("HEAD", "src/Foo.java", "ABCDE")).isEqualTo(LINES);
+    assertThat(cache.get("HEAD", "src/Baz.java", "ABCDE")).isEqualTo(LINES);
+  }
+
+  @Test
+  public void remove_temporary_files_of_killed_analyses() throws Exception {
+    BlameCache cache = BlameCache.create(temp.newFolder(), log);
+    File tmpFile = new File(cache.getDir(), "_tmp/blame123.tmp");
+    FileUtils.write(tmpFile, "rev1");
+    long now = System.currentTimeMillis();
+    tmpFile.setLastModified(now - TimeUnit.DAYS.toMillis(2));
+
+    cache.purge(now);
+
+    assertThat(tmpFile).doesNotExist();
+  }
+
+  @Test
+  public void clean_at_most_once_a_day() throws Exception {
+    BlameCache cache = BlameCache.create(temp.newFolder(), log);
+    cache.put("HEAD", "src/Foo.java", "ABCDE", LINES);
+    setLastUse(cache, "src/Foo.java", System.currentTimeMillis() - BlameCache.MAX_AGE_IN_MS - 1000L);
+    cache.clean();
+    assertThat(cache.get("HEAD", "src/Foo.java", "ABCDE")).isNull();
+
+    cache.put("HEAD", "src/Bar.java", "ABCDE", LINES);
+    setLastUse(cache, "src/Bar.java", System.currentTimeMillis() - BlameCache.MAX_AGE_IN_MS - 1000L);
+    cache.clean();
+    assertThat(FileUtils.listFiles(cache.getDir(), null, true)).hasSize(2);
+  }
+
+  private static void setLastUse(BlameCache cache, String path, long time) {
+    assertThat(cache.entry("HEAD", path, "ABCDE").setLastModified(time)).isTrue();
+  }
+}
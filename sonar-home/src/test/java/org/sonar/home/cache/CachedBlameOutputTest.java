@@ -0,0 +1,85 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.home.cache;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.scm.BlameCommand.BlameOutput;
+import org.sonar.api.batch.scm.BlameLine;
+import org.sonar.home.log.Slf4jLog;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CachedBlameOutputTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private static final List<BlameLine> LINES = Arrays.asList(new BlameLine().revision("rev1").date(new Date(1400000000000L)).author("foo@bar.com"));
+
+  @Test
+  public void serve_blame_from_cache() throws Exception {
+    BlameCache cache = BlameCache.create(temp.newFolder(), new Slf4jLog(CachedBlameOutputTest.class));
+    cache.put("head", "src/Foo.java", "hash", LINES);
+    InputFile inputFile = mock(InputFile.class);
+    when(inputFile.lines()).thenReturn(1);
+    BlameOutput output = mock(BlameOutput.class);
+
+    assertThat(new CachedBlameOutput(cache, output).serveFromCache(inputFile, "head", "src/Foo.java", "hash")).isTrue();
+    verify(output).blameResult(inputFile, LINES);
+  }
+
+  @Test
+  public void do_not_serve_cached_blame_with_another_number_of_lines() throws Exception {
+    BlameCache cache = BlameCache.create(temp.newFolder(), new Slf4jLog(CachedBlameOutputTest.class));
+    cache.put("head", "src/Foo.java", "hash", LINES);
+    InputFile inputFile = mock(InputFile.class);
+    when(inputFile.lines()).thenReturn(2);
+
+    assertThat(new CachedBlameOutput(cache, mock(BlameOutput.class)).serveFromCache(inputFile, "head", "src/Foo.java", "hash")).isFalse();
+  }
+
+  @Test
+  public void cache_blame_of_files_not_in_cache() throws Exception {
+    BlameCache cache = BlameCache.create(temp.newFolder(), new Slf4jLog(CachedBlameOutputTest.class));
+    InputFile inputFile = mock(InputFile.class);
+    when(inputFile.lines()).thenReturn(1);
+    InputFile otherFile = mock(InputFile.class);
+    BlameOutput output = mock(BlameOutput.class);
+    CachedBlameOutput cachedOutput = new CachedBlameOutput(cache, output);
+
+    assertThat(cachedOutput.serveFromCache(inputFile, "head", "src/Foo.java", "hash")).isFalse();
+    cachedOutput.blameResult(inputFile, LINES);
+    cachedOutput.blameResult(otherFile, LINES);
+
+    verify(output).blameResult(inputFile, LINES);
+    verify(output).blameResult(otherFile, LINES);
+    assertThat(cache.get("head", "src/Foo.java", "hash")).isEqualTo(LINES);
+  }
+}
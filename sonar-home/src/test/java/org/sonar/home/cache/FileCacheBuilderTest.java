@@ -57,4 +57,14 @@ public class FileCacheBuilderTest {
     assertThat(cache.getDir()).isDirectory().exists();
     assertThat(cache.getDir().getName()).isEqualTo("cache");
   }
+
+  @Test
+  public void build_blame_cache() throws Exception {
+    File userHome = temp.newFolder();
+    BlameCache cache = new BlameCacheBuilder().setUserHome(userHome).build();
+
+    assertThat(cache.getDir()).isDirectory().exists();
+    assertThat(cache.getDir().getName()).isEqualTo("_blame");
+    assertThat(cache.getDir().getParentFile()).isEqualTo(new File(userHome, "cache"));
+  }
 }
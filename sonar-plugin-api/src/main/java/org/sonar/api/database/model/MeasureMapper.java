@@ -19,8 +19,17 @@
  */
 package org.sonar.api.database.model;
 
+import java.util.List;
+
 public interface MeasureMapper {
   void insert(MeasureModel measure);
 
+  /**
+   * Inserts all the measures with a single statement. Requires a dialect supporting multiple rows insert.
+   *
+   * @since 5.1
+   */
+  void insertRows(List<MeasureModel> measures);
+
   void update(MeasureModel measure);
 }
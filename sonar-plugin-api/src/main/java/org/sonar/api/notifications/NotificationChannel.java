@@ -47,6 +47,11 @@ public abstract class NotificationChannel implements ServerExtension {
 
   /**
    * Implements the delivery of the given notification to the given user.
+   * <p/>
+   * Notifications are delivered one at a time by default. Since 5.1, when the server property
+   * sonar.notifications.threadsPerChannel is greater than 1, this method is called concurrently
+   * for different users, so it must be thread-safe. The notifications of a given user are
+   * always delivered in sequence.
    * 
    * @param notification the notification to deliver
    * @param userlogin the login of the user who should receive the notification